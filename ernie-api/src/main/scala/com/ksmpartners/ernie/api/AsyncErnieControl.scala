@@ -0,0 +1,196 @@
+/*
+	Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+
+package com.ksmpartners.ernie.api
+
+import com.ksmpartners.ernie.{ engine, model }
+import java.io.InputStream
+import scala.collection.{ JavaConversions, immutable }
+import scala.concurrent.{ Future, Promise }
+import scala.util.{ Failure, Success }
+import akka.pattern.AskTimeoutException
+import scala.concurrent.duration.FiniteDuration
+import com.ksmpartners.ernie.engine.{ JobIndex, JobQuery, JobsCatalogResponse, JobsListResponse, QueueStatusResponse, ReadinessResponse }
+import com.ksmpartners.ernie.engine.report.ReportContent
+
+/**
+ * Non-blocking API for interacting with Ernie. Every method returns at once with a Future of the result that
+ * [[com.ksmpartners.ernie.api.ErnieControl]] would return, so no caller thread waits on the engine. For example:
+ * {{{
+ *   val ernie = ErnieEngine(ErnieBuilder() withMemoryReportManager() build()).start
+ *   implicit val ec = ernie.executionContext
+ *   ernie.async.createJob(defId, PDF, None, Map.empty[String, String], "user").flatMap(r => ernie.async.getJobStatus(r._1))
+ * }}}
+ * A Future fails with a [[com.ksmpartners.ernie.api.MissingArgumentException]] where the blocking method would throw one, and with an
+ * [[akka.pattern.AskTimeoutException]] if the engine does not answer within the configured timeout.
+ */
+class AsyncErnieControl protected[api] (ernie: ErnieControl) {
+
+  private def ifJobId[B](jobId: Long)(func: => Future[B]): Future[B] =
+    if (jobId <= 0) Future.failed(new MissingArgumentException("Null job ID"))
+    else func
+
+  /**
+   * Create and start a report generation job.
+   * @param defId an existing report definition/design
+   * @param rptType the report output format
+   * @param retentionPeriod optional override for default number of days to retain report output
+   * @param reportParameters a set of BIRT Report Parameters corresponding to the parameters specified in the report definition.
+   * @param userName username of the user creating the job
+   * @param renditions further formats into which the output is rendered once the job completes
+   * @param timeout optional override for the definition's limit on how long the job may run
+   * @return a Future of the generated job ID and [[com.ksmpartners.ernie.model.JobStatus]].
+   */
+  def createJob(defId: String, rptType: model.ReportType, retentionPeriod: Option[Int], reportParameters: immutable.Map[String, String], userName: String,
+    renditions: List[model.ReportType] = Nil, timeout: Option[FiniteDuration] = None): Future[(Long, model.JobStatus)] =
+    ernie.jobsResource.createJobFuture(defId, rptType, retentionPeriod, reportParameters, userName, renditions, timeout)
+
+  /**
+   * Create and start a report generation job for each of requests, submitting them to the engine together.
+   * @return a Future of the generated job ID and [[com.ksmpartners.ernie.model.JobStatus]] of each request, in the order of requests
+   */
+  def createJobs(requests: List[model.ReportRequest], userName: String): Future[List[(Long, model.JobStatus)]] =
+    ernie.jobsResource.createJobsFuture(requests.map(r => engine.ReportRequest(r.getDefId, r.getRptType,
+      if (r.getRetentionDays == 0) None else Some(r.getRetentionDays),
+      if (r.getReportParameters == null) immutable.Map.empty[String, String] else JavaConversions.mapAsScalaMap(r.getReportParameters).toMap, userName)))
+
+  /**
+   * Cancel a job.
+   * @return a Future of the status [[com.ksmpartners.ernie.api.ErnieControl.cancelJob]] would return
+   */
+  def cancelJob(jobId: Long): Future[model.JobStatus] = ifJobId(jobId)(ernie.jobsResource.cancelJobFuture(jobId))
+
+  /**
+   * Get a Future of the status of a given job ID
+   */
+  def getJobStatus(jobId: Long): Future[model.JobStatus] = ifJobId(jobId)(ernie.jobStatusResource.getStatusFuture(jobId))
+
+  /**
+   * Follow a job through its status changes using the engine's job notifications rather than by polling its status. onChange is called,
+   * on the callback dispatcher and in order, with each status the job moves to after current.
+   * @param jobId the job to follow
+   * @param current the status the caller last saw
+   * @return a Future of the first status the job reaches that is not PENDING, IN_PROGRESS or RESTARTING, which is current if the job has
+   *         already finished
+   */
+  def watchJob(jobId: Long, current: model.JobStatus)(onChange: model.JobStatus => Unit): Future[model.JobStatus] = {
+    val finished = Promise[model.JobStatus]()
+    def watch(status: model.JobStatus) {
+      if (!JobIndex.activeStatuses.contains(status)) finished.success(status)
+      else ernie.jobStatusResource.getFuture(jobId, None, Some(status), ernie.timeoutDuration).onComplete({
+        case Success(resp) => {
+          if (resp.status != status) onChange(resp.status)
+          watch(resp.status)
+        }
+        case Failure(e: AskTimeoutException) => watch(status)
+        case Failure(e) => finished.failure(e)
+      })(ernie.executionContext)
+    }
+    watch(current)
+    finished.future
+  }
+
+  /**
+   * Get a Future of the 1-based position of a job in the queue of jobs waiting for a worker, or [[scala.None]] if it is not queued.
+   */
+  def getQueuePosition(jobId: Long): Future[Option[Int]] = ifJobId(jobId)(ernie.jobStatusResource.getQueuePositionFuture(jobId))
+
+  /**
+   * Get a Future of the state of the queue of jobs waiting for a worker.
+   */
+  def getQueueStatus(): Future[QueueStatusResponse] = ernie.jobsResource.getQueueStatusFuture
+
+  /**
+   * Get a Future of the readiness of the engine.
+   */
+  def getReadiness(): Future[ReadinessResponse] = ernie.jobsResource.getReadinessFuture
+
+  /**
+   * Get a Future of a catalog of jobs.
+   * @param catalog optionally specify a subset of jobs to retrieve
+   */
+  def getJobCatalog(catalog: Option[model.JobCatalog]): Future[JobsCatalogResponse] = getJobCatalog(catalog, JobQuery())
+
+  /**
+   * Get a Future of a page of a catalog of jobs.
+   * @param catalog optionally specify a subset of jobs to retrieve
+   * @param query filters, page size, cursor and order of the page; pass the nextCursor of one page as the cursor of the next
+   */
+  def getJobCatalog(catalog: Option[model.JobCatalog], query: JobQuery): Future[JobsCatalogResponse] =
+    ernie.jobCatalogResource.getCatalogFuture(catalog, query)
+
+  /**
+   * Get a Future of a page of job IDs as strings.
+   * @param query filters, page size, cursor and order of the page; pass the nextCursor of one page as the cursor of the next
+   */
+  def getJobList(query: JobQuery = JobQuery()): Future[JobsListResponse] = ernie.jobsResource.getListFuture(query)
+
+  /**
+   * Retrieve a Future of job metadata, which is [[scala.None]] if the jobId is not found.
+   */
+  def getJobEntity(jobId: Long): Future[Option[model.JobEntity]] = ifJobId(jobId)(ernie.jobEntityResource.getJobEntityFuture(jobId))
+
+  /**
+   * Retrieve a Future of report output metadata, which is [[scala.None]] if the job ID is not found.
+   */
+  def getReportEntity(jobId: Long): Future[Option[model.ReportEntity]] = ifJobId(jobId)(ernie.jobResultsResource.getReportEntityFuture(jobId))
+
+  /**
+   * Retrieve a Future of report output metadata, which is [[scala.None]] if the report ID is not found.
+   */
+  def getReportEntity(rptId: String): Future[Option[model.ReportEntity]] =
+    if (rptId == null) Future.failed(new MissingArgumentException("Null report ID"))
+    else ernie.jobResultsResource.getReportEntityFuture(com.ksmpartners.ernie.util.Utility.rptToJobId(rptId))
+
+  /**
+   * Retrieve a Future of job output, which is [[scala.None]] if the output is not available, and fails with a
+   * [[com.ksmpartners.ernie.api.ReportOutputException]] if the job has not completed.
+   */
+  def getReportOutput(jobId: Long): Future[Option[InputStream]] = ifJobId(jobId)(ernie.jobResultsResource.getFuture(jobId))
+
+  /**
+   * Retrieve a Future of job output in the given format, rendering it from the job's stored report document on first request.
+   */
+  def getReportOutput(jobId: Long, rptType: model.ReportType): Future[Option[InputStream]] =
+    ifJobId(jobId)(ernie.jobResultsResource.getFuture(jobId, rptType))
+
+  /**
+   * Retrieve a Future of job output as a [[com.ksmpartners.ernie.engine.report.ReportContent]], which the caller must close.
+   */
+  def getReportContent(jobId: Long): Future[Option[ReportContent]] = ifJobId(jobId)(ernie.jobResultsResource.getContentFuture(jobId))
+
+  /**
+   * Retrieve a Future of job output in the given format as a [[com.ksmpartners.ernie.engine.report.ReportContent]], which the caller
+   * must close.
+   */
+  def getReportContent(jobId: Long, rptType: model.ReportType): Future[Option[ReportContent]] =
+    ifJobId(jobId)(ernie.jobResultsResource.getContentFuture(jobId, rptType))
+
+  /**
+   * Delete a job's output and any associated metadata, returning a Future of the status of the deletion
+   */
+  def deleteReportOutput(jobId: Long): Future[model.DeleteStatus] = ifJobId(jobId)(ernie.jobResultsResource.delFuture(jobId))
+
+  /**
+   * Purge jobs in expired catalog, returning a Future of the status of the batch deletion and a list of purged report IDs.
+   */
+  def purgeExpiredReports(): Future[(model.DeleteStatus, List[String])] = ernie.jobCatalogResource.purgeFuture
+
+  /**
+   * Delete a definition, returning a Future of the DeleteStatus indicating the result of deletion.
+   */
+  def deleteDefinition(defId: String): Future[model.DeleteStatus] = ernie.defsResource.deleteDefinitionFuture(defId)
+
+}
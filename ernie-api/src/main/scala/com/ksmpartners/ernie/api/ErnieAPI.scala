@@ -16,17 +16,32 @@ limitations under the License.
 package com.ksmpartners.ernie.api
 
 import com.ksmpartners.ernie.api.service._
-import com.ksmpartners.ernie.model
+import com.ksmpartners.ernie.{ engine, model }
 import java.io.{ InputStream, ByteArrayInputStream }
+import java.nio.channels.WritableByteChannel
 import scala.collection.immutable
 import java.util.concurrent.TimeoutException
 import akka.pattern.AskTimeoutException
 
 import scala.Some
 import com.ksmpartners.ernie.api.ErnieBuilder._
+import com.ksmpartners.ernie.engine.report.ReportContent
+import com.ksmpartners.ernie.util.ActionMetrics
 import scala.concurrent.duration.FiniteDuration
-import scala.concurrent.Future
-import com.ksmpartners.ernie.engine.JobNotificationResponse
+import scala.concurrent.{ Await, ExecutionContext, Future }
+import com.ksmpartners.ernie.engine.{
+  AutoscaleSettings,
+  DispatcherSettings,
+  JournalSettings,
+  JobNotificationResponse,
+  JobQuery,
+  JobsCatalogResponse,
+  JobsListResponse,
+  QueueStatusResponse,
+  ReadinessResponse,
+  RestartSettings
+}
+import com.ksmpartners.ernie.engine.report.{ BirtReportGenerator, DataSourceSettings, PoolStatistics }
 
 /**
  * API for interacting with Ernie.
@@ -40,21 +55,62 @@ import com.ksmpartners.ernie.engine.JobNotificationResponse
  * {{{
  *   val control = ErnieEngine(ErnieBuilder() withMemoryReportManager() build()).start
  * }}}
+ * Each method waits for the engine's answer; [[com.ksmpartners.ernie.api.ErnieControl.async]] offers the same operations without blocking.
  */
 protected[api] class ErnieControl extends ErnieDependencies {
 
-  private def wrapper[B](func: () => B): B = try {
-    func()
-  } catch {
-    case a: AskTimeoutException => {
-      val t = new TimeoutException(a.getMessage)
-      t.initCause(a.getCause())
-      t.setStackTrace(a.getStackTrace)
-      throw t
+  /**
+   * Call counts, error counts and latency histograms of the methods of this API, keyed by method name and registered over JMX under type
+   * ErnieControl. Errors are keyed by [[com.ksmpartners.ernie.api.ErrorKey]] of the exception thrown, or of the status returned by a call
+   * that was refused.
+   */
+  val metrics = new ActionMetrics("ErnieControl")
+
+  private def wrapper[B](name: String)(func: () => B): B = wrapper[B](name, (_: B) => None)(func)
+
+  /**
+   * Invoke func and record its latency and outcome in metrics under name
+   * @param refusal the status of a result that reports a failure without throwing, such as FAILED_QUEUE_FULL
+   */
+  private def wrapper[B](name: String, refusal: B => Option[java.lang.Enum[_]])(func: () => B): B = {
+    val start = System.nanoTime
+    try {
+      val res = func()
+      metrics.record(name, start, refusal(res).map(ErrorKey(_)).orNull)
+      res
+    } catch {
+      case a: AskTimeoutException => {
+        val t = new TimeoutException(a.getMessage)
+        t.initCause(a.getCause())
+        t.setStackTrace(a.getStackTrace)
+        metrics.record(name, start, ErrorKey(t))
+        throw t
+      }
+      case t: Throwable => {
+        metrics.record(name, start, ErrorKey(t))
+        throw t
+      }
     }
-    case t: Throwable => throw t
   }
 
+  private def await[B](name: String)(future: => Future[B]): B = wrapper(name)(() => Await.result(future, timeoutDuration))
+
+  private def await[B](name: String, refusal: B => Option[java.lang.Enum[_]])(future: => Future[B]): B =
+    wrapper(name, refusal)(() => Await.result(future, timeoutDuration))
+
+  private def notAccepted(status: model.JobStatus) = Some(status).filter(s => (s != model.JobStatus.PENDING) && (s != model.JobStatus.COMPLETE))
+
+  private def jobNotAccepted(job: (Long, model.JobStatus)) = notAccepted(job._2)
+
+  private def noSuchJob(status: model.JobStatus) = Some(status).filter(_ == model.JobStatus.NO_SUCH_JOB)
+
+  private def notDeleted(status: model.DeleteStatus) = Some(status).filter(_ != model.DeleteStatus.SUCCESS)
+
+  /**
+   * Non-blocking variant of this API, whose methods return Futures instead of waiting on the engine.
+   */
+  lazy val async: AsyncErnieControl = new AsyncErnieControl(this)
+
   /**
    * Create a report definition.
    * @param rptDesign BIRT report design XML as byte array input stream
@@ -65,7 +121,7 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @return the resultant definition metadata.
    */
   def createDefinition(rptDesign: Option[InputStream], description: String, createdUser: String): model.DefinitionEntity =
-    wrapper(() => {
+    wrapper("createDefinition")(() => {
       defsResource.putDefinition(None,
         rptDesign,
         {
@@ -80,7 +136,7 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * Return DefinitionEntities for all definitions.
    */
   def getDefinitionsCatalog(): List[model.DefinitionEntity] =
-    wrapper(() => defsResource.getCatalog())
+    wrapper("getDefinitionsCatalog")(() => defsResource.getCatalog())
 
   /**
    *  Update a definition.
@@ -94,7 +150,7 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @return updated definition metadata.
    */
   def updateDefinition(defId: String, defEnt: Option[model.DefinitionEntity], rptDesign: Option[InputStream]): model.DefinitionEntity =
-    wrapper(() => {
+    wrapper("updateDefinition")(() => {
       if (defId == null) throw new MissingArgumentException("Null definition ID")
       defsResource.putDefinition(Some(defId), rptDesign, defEnt)
     })
@@ -105,7 +161,7 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @throws AskTimeoutException if request times out
    * @return DefinitionEntity if defId is found; otherwise, [[scala.None]].
    */
-  def getDefinitionEntityOpt(defId: String): Option[model.DefinitionEntity] = wrapper(() => {
+  def getDefinitionEntityOpt(defId: String): Option[model.DefinitionEntity] = wrapper("getDefinitionEntity")(() => {
     if (defId == null) throw new MissingArgumentException("Null definition ID")
     defsResource.getDefinitionEntity(defId)
   })
@@ -125,7 +181,7 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @throws AskTimeoutException if request times out
    * @return InputStream if defId is found; otherwise, [[scala.None]].
    */
-  def getDefinitionDesignOpt(defId: String)(b: (Option[InputStream]) => Unit): Unit = wrapper(() => {
+  def getDefinitionDesignOpt(defId: String)(b: (Option[InputStream]) => Unit): Unit = wrapper("getDefinitionDesign")(() => {
     if (defId == null) throw new MissingArgumentException("Null definition ID")
     b(defsResource.getDefinitionDesign(defId))
   })
@@ -139,7 +195,7 @@ protected[api] class ErnieControl extends ErnieDependencies {
    */
   def getDefinitionDesign(defId: String)(b: (InputStream) => Unit): Unit = {
     if (defId == null) throw new MissingArgumentException("Null definition ID")
-    wrapper(() => defsResource.getDefinitionDesign(defId)).map(is => b(is)).getOrElse(throw new NotFoundException(defId + " design not found"))
+    wrapper("getDefinitionDesign")(() => defsResource.getDefinitionDesign(defId)).map(is => b(is)).getOrElse(throw new NotFoundException(defId + " design not found"))
   }
 
   /**
@@ -149,10 +205,7 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @throws AskTimeoutException if request times out
    * @return a DeleteStatus indicating the result of deletion.
    */
-  def deleteDefinition(defId: String): model.DeleteStatus = wrapper(() => {
-    if (defId == null) throw new MissingArgumentException("Null definition ID")
-    defsResource.deleteDefinition(defId)
-  })
+  def deleteDefinition(defId: String): model.DeleteStatus = await("deleteDefinition", notDeleted)(async.deleteDefinition(defId))
 
   /**
    * Create and start a report generation job.
@@ -162,11 +215,48 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @param reportParameters a set of BIRT Report Parameters corresponding to the parameters specified in the report definition.
    * @param userName username of the user creating the job
    * @throws AskTimeoutException if request times out
-   * @return the generated job ID and a [[com.ksmpartners.ernie.model.JobStatus]]
+   * @return the generated job ID and a [[com.ksmpartners.ernie.model.JobStatus]]. The status is PENDING for an accepted job and FAILED_QUEUE_FULL if the job queue is full.
    */
-  def createJob(defId: String, rptType: model.ReportType, retentionPeriod: Option[Int], reportParameters: immutable.Map[String, String], userName: String): (Long, model.JobStatus) = wrapper(() => {
-    jobsResource.createJob(defId, rptType, retentionPeriod, reportParameters, userName)
-  })
+  def createJob(defId: String, rptType: model.ReportType, retentionPeriod: Option[Int], reportParameters: immutable.Map[String, String], userName: String): (Long, model.JobStatus) =
+    await("createJob", jobNotAccepted)(async.createJob(defId, rptType, retentionPeriod, reportParameters, userName))
+
+  /**
+   * Create and start a report generation job whose output is also rendered as each of renditions once the job completes.
+   * Renditions are only rendered while report documents are kept; see [[com.ksmpartners.ernie.engine.report.BirtReportGenerator.setKeepReportDocuments]].
+   * @throws AskTimeoutException if request times out
+   * @return the generated job ID and a [[com.ksmpartners.ernie.model.JobStatus]].
+   */
+  def createJob(defId: String, rptType: model.ReportType, retentionPeriod: Option[Int], reportParameters: immutable.Map[String, String], userName: String,
+    renditions: List[model.ReportType]): (Long, model.JobStatus) = await("createJob", jobNotAccepted)(async.createJob(defId, rptType, retentionPeriod, reportParameters, userName, renditions))
+
+  /**
+   * Create and start a report generation job that is stopped and marked TIMED_OUT if it runs for longer than timeout.
+   * timeout overrides any timeout set on the report definition.
+   * @throws AskTimeoutException if request times out
+   * @return the generated job ID and a [[com.ksmpartners.ernie.model.JobStatus]].
+   */
+  def createJob(defId: String, rptType: model.ReportType, retentionPeriod: Option[Int], reportParameters: immutable.Map[String, String], userName: String,
+    timeout: FiniteDuration): (Long, model.JobStatus) = await("createJob", jobNotAccepted)(async.createJob(defId, rptType, retentionPeriod, reportParameters, userName, timeout = Some(timeout)))
+
+  /**
+   * Create and start a report generation job for each of requests, submitting them to the engine together. Each request is handled as
+   * createJob would handle it; a retention period of 0 selects the default.
+   * @param requests the definition, output format, retention period and report parameters of each job
+   * @param userName username of the user creating the jobs
+   * @throws AskTimeoutException if request times out
+   * @return the generated job ID and [[com.ksmpartners.ernie.model.JobStatus]] of each request, in the order of requests
+   */
+  def createJobs(requests: List[model.ReportRequest], userName: String): List[(Long, model.JobStatus)] = await("createJobs", (r: List[(Long, model.JobStatus)]) => r.flatMap(jobNotAccepted).headOption)(async.createJobs(requests, userName))
+
+  /**
+   * Cancel a job. A job that has not started is cancelled at once; a running job is asked to stop and is marked CANCELLED once it has.
+   * @param jobId the job to cancel
+   * @throws AskTimeoutException if request times out
+   * @throws MissingArgumentException if jobId is null or invalid
+   * @return CANCELLED if the job was cancelled at once, IN_PROGRESS if its run has been asked to stop, NO_SUCH_JOB if the job does not
+   *         exist, or the status of a job that had already finished
+   */
+  def cancelJob(jobId: Long): model.JobStatus = await("cancelJob", noSuchJob)(async.cancelJob(jobId))
 
   /**
    * Get the status of a given job ID
@@ -174,9 +264,43 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @throws AskTimeoutException if request times out
    * @return [[com.ksmpartners.ernie.model.JobStatus]] of given jobId.
    */
-  def getJobStatus(jobId: Long): model.JobStatus = wrapper(() =>
-    if (jobId <= 0) throw new MissingArgumentException("Null job ID")
-    else jobStatusResource.get(jobId))
+  def getJobStatus(jobId: Long): model.JobStatus = await("getJobStatus", noSuchJob)(async.getJobStatus(jobId))
+
+  /**
+   * Get the position of a job in the queue of jobs waiting for a worker
+   * @param jobId to interrogate
+   * @throws AskTimeoutException if request times out
+   * @return the 1-based queue position, or [[scala.None]] if the job is not queued.
+   */
+  def getQueuePosition(jobId: Long): Option[Int] = await("getQueuePosition")(async.getQueuePosition(jobId))
+
+  /**
+   * Get the state of the queue of jobs waiting for a worker.
+   * @throws AskTimeoutException if request times out
+   * @return the queue length, idle, total and target worker counts, and the current and average queue wait in milliseconds.
+   */
+  def getQueueStatus(): QueueStatusResponse = await("getQueueStatus")(async.getQueueStatus)
+
+  /**
+   * Get the usage of the configured JDBC connection pools.
+   * @return active and idle connection counts and wait times for each pool, keyed by pool name.
+   */
+  def getDataSourceStatistics(): Map[String, PoolStatistics] = BirtReportGenerator.getDataSources.map(p => p._1 -> p._2.statistics)
+
+  /**
+   * Get the readiness of the engine. Jobs can be created while persisted jobs are still being recovered, but requests that depend on
+   * jobs not yet recovered wait until recovery completes.
+   * @throws AskTimeoutException if request times out
+   * @return whether the report generator has started, whether recovery is under way, the number of jobs recovered so far, and the number of
+   *         unfinished jobs still waiting to be restarted and restarted so far.
+   */
+  def getReadiness(): ReadinessResponse = await("getReadiness")(async.getReadiness)
+
+  /**
+   * Return true if the report generator has started and all persisted jobs have been recovered.
+   * @throws AskTimeoutException if request times out
+   */
+  def isReady(): Boolean = getReadiness.ready
 
   /**
    * Get a catalog of jobs.
@@ -184,18 +308,35 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @throws AskTimeoutException if request times out
    * @return a list of [[com.ksmpartners.ernie.model.JobEntity]] constituting the catalog.
    */
-  def getJobCatalog(catalog: Option[model.JobCatalog]): List[model.JobEntity] = wrapper(() => jobCatalogResource.getCatalog(catalog))
+  def getJobCatalog(catalog: Option[model.JobCatalog]): List[model.JobEntity] = await("getJobCatalog")(async.getJobCatalog(catalog)).catalog
+
+  /**
+   * Get a page of a catalog of jobs.
+   * @param catalog optionally specify a subset of jobs to retrieve
+   * @param query filters, page size, cursor and order of the page; pass the nextCursor of one page as the cursor of the next
+   * @throws AskTimeoutException if request times out
+   * @return the [[com.ksmpartners.ernie.model.JobEntity]] list of the page, and the cursor of the following page if there is one.
+   */
+  def getJobCatalog(catalog: Option[model.JobCatalog], query: JobQuery): JobsCatalogResponse =
+    await("getJobCatalog")(async.getJobCatalog(catalog, query))
 
   /**
    * Get a list of all job IDs as strings.
    * @throws AskTimeoutException if request times out
    */
-  def getJobList(): List[String] = wrapper(() => jobsResource.getList)
+  def getJobList(): List[String] = await("getJobList")(async.getJobList()).jobsList.toList
+
+  /**
+   * Get a page of job IDs as strings.
+   * @param query filters, page size, cursor and order of the page; pass the nextCursor of one page as the cursor of the next
+   * @throws AskTimeoutException if request times out
+   */
+  def getJobList(query: JobQuery): JobsListResponse = await("getJobList")(async.getJobList(query))
 
   /**
    * Return all existing definition IDs.
    */
-  def getDefinitionList(): List[String] = wrapper(() => defsResource.getList)
+  def getDefinitionList(): List[String] = wrapper("getDefinitionList")(() => defsResource.getList)
 
   /**
    * Retrieve job metadata.
@@ -204,9 +345,7 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @throws AskTimeoutException if request times out
    * @return a JobEntity if the jobId is found; otherwise, [[scala.None]].
    */
-  def getJobEntity(jobId: Long): Option[model.JobEntity] = wrapper(() =>
-    if (jobId <= 0) throw new MissingArgumentException("Null job ID")
-    else jobEntityResource.getJobEntity(jobId))
+  def getJobEntity(jobId: Long): Option[model.JobEntity] = await("getJobEntity")(async.getJobEntity(jobId))
 
   /**
    * Retrieve report output metadata.
@@ -215,9 +354,7 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @throws AskTimeoutException if request times out
    * @return a [[com.ksmpartners.ernie.model.ReportEntity]] if the job ID is found.
    */
-  def getReportEntity(jobId: Long): Option[model.ReportEntity] = wrapper(() =>
-    if (jobId <= 0) throw new MissingArgumentException("Null job ID")
-    else jobResultsResource.getReportEntity(jobId))
+  def getReportEntity(jobId: Long): Option[model.ReportEntity] = await("getReportEntity")(async.getReportEntity(jobId))
 
   /**
    * Retrieve report output metadata.
@@ -226,9 +363,7 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @throws AskTimeoutException if request times out
    * @return a [[com.ksmpartners.ernie.model.ReportEntity]] if the report ID is found.
    */
-  def getReportEntity(rptId: String): Option[model.ReportEntity] = wrapper(() =>
-    if (rptId == null) throw new MissingArgumentException("Null report ID")
-    else jobResultsResource.getReportEntity(com.ksmpartners.ernie.util.Utility.rptToJobId(rptId)))
+  def getReportEntity(rptId: String): Option[model.ReportEntity] = await("getReportEntity")(async.getReportEntity(rptId))
 
   /**
    * Retrieve job output.
@@ -237,9 +372,49 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @throws AskTimeoutException if request times out
    * @return a [[java.io.InputStream]] if the report output is available; otherwise, [[scala.None]]
    */
-  def getReportOutput(jobId: Long): Option[InputStream] = wrapper(() =>
-    if (jobId <= 0) throw new MissingArgumentException("Null job ID")
-    else jobResultsResource.get(jobId))
+  def getReportOutput(jobId: Long): Option[InputStream] = await("getReportOutput")(async.getReportOutput(jobId))
+
+  /**
+   * Retrieve job output in the given format, rendering it from the job's stored report document on first request.
+   * @param jobId the jobId whose output is to be retrieved
+   * @param rptType the output format
+   * @throws MissingArgumentException if jobId is null or invalid
+   * @throws AskTimeoutException if request times out
+   * @return a [[java.io.InputStream]] if the report output is available in or can be rendered as rptType; otherwise, [[scala.None]]
+   */
+  def getReportOutput(jobId: Long, rptType: model.ReportType): Option[InputStream] = await("getReportOutput")(async.getReportOutput(jobId, rptType))
+
+  /**
+   * Retrieve job output as a [[com.ksmpartners.ernie.engine.report.ReportContent]], whose size is known and which can be written to a
+   * channel without being copied through the heap. The caller must close it.
+   * @param jobId the jobId whose output is to be retrieved
+   * @throws MissingArgumentException if jobId is null or invalid
+   * @throws AskTimeoutException if request times out
+   * @return the report output if it is available; otherwise, [[scala.None]]
+   */
+  def getReportContent(jobId: Long): Option[ReportContent] = await("getReportContent")(async.getReportContent(jobId))
+
+  /**
+   * Retrieve job output in the given format as a [[com.ksmpartners.ernie.engine.report.ReportContent]], rendering it from the job's
+   * stored report document on first request. The caller must close it.
+   * @param jobId the jobId whose output is to be retrieved
+   * @param rptType the output format
+   * @throws MissingArgumentException if jobId is null or invalid
+   * @throws AskTimeoutException if request times out
+   * @return the report output if it is available in or can be rendered as rptType; otherwise, [[scala.None]]
+   */
+  def getReportContent(jobId: Long, rptType: model.ReportType): Option[ReportContent] = await("getReportContent")(async.getReportContent(jobId, rptType))
+
+  /**
+   * Write job output to target, such as a socket or file channel, without copying it through the heap where the report manager allows.
+   * @param jobId the jobId whose output is to be written
+   * @param target the channel to write to; it is not closed
+   * @throws MissingArgumentException if jobId is null or invalid
+   * @throws AskTimeoutException if request times out
+   * @return the number of bytes written if the report output is available; otherwise, [[scala.None]]
+   */
+  def transferReportOutput(jobId: Long, target: WritableByteChannel): Option[Long] = getReportContent(jobId).map(content =>
+    try content.transferTo(target) finally content.close())
 
   /**
    * Delete a job's output and any associated metadata
@@ -248,15 +423,13 @@ protected[api] class ErnieControl extends ErnieDependencies {
    * @throws MissingArgumentException if jobId is null or invalid
    * @return the status of the deletion
    */
-  def deleteReportOutput(jobId: Long): model.DeleteStatus = wrapper(() =>
-    if (jobId <= 0) throw new MissingArgumentException("Null job ID")
-    else jobResultsResource.del(jobId))
+  def deleteReportOutput(jobId: Long): model.DeleteStatus = await("deleteReportOutput", notDeleted)(async.deleteReportOutput(jobId))
 
   /**
    * Purge jobs in expired catalog.
    * @return the status of the batch deletion and a list of purged report IDs.
    */
-  def purgeExpiredReports(): (model.DeleteStatus, List[String]) = wrapper(() => jobCatalogResource.purge)
+  def purgeExpiredReports(): (model.DeleteStatus, List[String]) = await("purgeExpiredReports", (r: (model.DeleteStatus, List[String])) => notDeleted(r._1))(async.purgeExpiredReports)
 
   /**
    * Request notification of job status change via an Akka Future
@@ -274,10 +447,29 @@ protected[api] class ErnieControl extends ErnieDependencies {
    */
   def getJobStatusFuture(jobId: Long, status: Option[model.JobStatus]): Future[JobNotificationResponse] = jobStatusResource.getFuture(jobId, status).mapTo[JobNotificationResponse]
 
+  /**
+   * Request notification of job status change via an Akka Future that fails with an [[akka.pattern.AskTimeoutException]] if no notification arrives within the given time.
+   * The Future completes at once if the job already has status, or can no longer reach it.
+   * @param status Notify when job status changes to status, or pass None to be notified on any change
+   * @param current the status last seen by the caller; if the job's status already differs, the Future completes at once
+   * @param within the maximum time to wait for a notification
+   */
+  def getJobStatusFuture(jobId: Long, status: Option[model.JobStatus], current: Option[model.JobStatus], within: FiniteDuration): Future[JobNotificationResponse] =
+    jobStatusResource.getFuture(jobId, status, current, within)
+
+  /**
+   * Return the execution context on which callbacks of the Futures returned by this object should run. It is backed by the callback
+   * dispatcher if one is configured, and by the actor system's default dispatcher otherwise.
+   */
+  def executionContext: ExecutionContext = DispatcherSettings.executionContext(system, DispatcherSettings.callbackDispatcherId)
+
   /**
    * Shut down the instance of [[com.ksmpartners.ernie.engine]] in use by this object
    */
-  def shutDown() = shutdownResource.shutdown
+  def shutDown() = {
+    metrics.unregister()
+    shutdownResource.shutdown
+  }
 
 }
 
@@ -322,6 +514,14 @@ object ErnieEngine {
  *    withMemoryReportManager()
  *    timeoutAfter(30 seconds)
  *    withWorkers(50)
+ *    withMaxQueueDepth(1000)
+ *    withAutoscaling(AutoscaleSettings(minWorkers = 5, maxWorkers = 100))
+ *    withJobJournal()
+ *    withDataSource("warehouse", DataSourceSettings("jdbc:derby:warehouse", maxActive = 20))
+ *    withDispatchers(DispatcherSettings(bulkheads = Map("heavy" -> 5)))
+ *    withRestartThrottle(RestartSettings(batchSize = 20))
+ *    withDesignCacheSize(128)
+ *    withKeepReportDocuments(true)
  *    build()
  * }}}
  */
@@ -333,33 +533,68 @@ object ErnieBuilder {
   abstract class TRUE extends BOOL
   abstract class FALSE extends BOOL
 
-  class ConfigBuilder[HRM](val reportManager: Option[ReportManager], val timeout: Option[FiniteDuration], val defaultRetentionDays: Option[Int], val maxRetentionDays: Option[Int], val workerCount: Option[Int]) {
+  class ConfigBuilder[HRM](val reportManager: Option[ReportManager], val timeout: Option[FiniteDuration], val defaultRetentionDays: Option[Int], val maxRetentionDays: Option[Int], val workerCount: Option[Int],
+      val maxQueueDepth: Option[Int], val journal: Option[JournalSettings], val dataSources: Map[String, DataSourceSettings],
+      val autoscale: Option[AutoscaleSettings], val dispatchers: Option[DispatcherSettings], val restart: Option[RestartSettings], val designCacheSize: Option[Int],
+      val keepReportDocuments: Option[Boolean]) {
 
     def withFileReportManager(jobDir: String, defDir: String, outputDir: String): ConfigBuilder[TRUE] = new ConfigBuilder[TRUE](Some(FileReportManager(jobDir, defDir, outputDir)),
-      timeout, defaultRetentionDays, maxRetentionDays, workerCount)
+      timeout, defaultRetentionDays, maxRetentionDays, workerCount, maxQueueDepth, journal, dataSources, autoscale, dispatchers, restart, designCacheSize, keepReportDocuments)
 
     def withMemoryReportManager(): ConfigBuilder[TRUE] = new ConfigBuilder[TRUE](Some(MemoryReportManager()),
-      timeout, defaultRetentionDays, maxRetentionDays, workerCount)
+      timeout, defaultRetentionDays, maxRetentionDays, workerCount, maxQueueDepth, journal, dataSources, autoscale, dispatchers, restart, designCacheSize, keepReportDocuments)
 
     def timeoutAfter(fD: FiniteDuration) =
-      new ConfigBuilder[HRM](reportManager, Some(fD), defaultRetentionDays, maxRetentionDays, workerCount)
+      new ConfigBuilder[HRM](reportManager, Some(fD), defaultRetentionDays, maxRetentionDays, workerCount, maxQueueDepth, journal, dataSources, autoscale, dispatchers, restart, designCacheSize, keepReportDocuments)
 
     def withDefaultRetentionDays(days: Int) =
-      new ConfigBuilder[HRM](reportManager, timeout, Some(days), maxRetentionDays, workerCount)
+      new ConfigBuilder[HRM](reportManager, timeout, Some(days), maxRetentionDays, workerCount, maxQueueDepth, journal, dataSources, autoscale, dispatchers, restart, designCacheSize, keepReportDocuments)
 
     def withMaxRetentionDays(days: Int) =
-      new ConfigBuilder[HRM](reportManager, timeout, defaultRetentionDays, Some(days), workerCount)
+      new ConfigBuilder[HRM](reportManager, timeout, defaultRetentionDays, Some(days), workerCount, maxQueueDepth, journal, dataSources, autoscale, dispatchers, restart, designCacheSize, keepReportDocuments)
 
     def withWorkers(count: Int) =
-      new ConfigBuilder[HRM](reportManager, timeout, defaultRetentionDays, maxRetentionDays, Some(count))
+      new ConfigBuilder[HRM](reportManager, timeout, defaultRetentionDays, maxRetentionDays, Some(count), maxQueueDepth, journal, dataSources, autoscale, dispatchers, restart, designCacheSize, keepReportDocuments)
+
+    def withMaxQueueDepth(depth: Int) =
+      new ConfigBuilder[HRM](reportManager, timeout, defaultRetentionDays, maxRetentionDays, workerCount, Some(depth), journal, dataSources, autoscale, dispatchers, restart, designCacheSize, keepReportDocuments)
+
+    def withJobJournal(settings: JournalSettings = JournalSettings()) =
+      new ConfigBuilder[HRM](reportManager, timeout, defaultRetentionDays, maxRetentionDays, workerCount, maxQueueDepth, Some(settings), dataSources, autoscale, dispatchers, restart, designCacheSize, keepReportDocuments)
+
+    def withDataSource(name: String, settings: DataSourceSettings) =
+      new ConfigBuilder[HRM](reportManager, timeout, defaultRetentionDays, maxRetentionDays, workerCount, maxQueueDepth, journal,
+        dataSources + (name -> settings), autoscale, dispatchers, restart, designCacheSize, keepReportDocuments)
+
+    def withAutoscaling(settings: AutoscaleSettings = AutoscaleSettings()) =
+      new ConfigBuilder[HRM](reportManager, timeout, defaultRetentionDays, maxRetentionDays, workerCount, maxQueueDepth, journal, dataSources,
+        Some(settings), dispatchers, restart, designCacheSize, keepReportDocuments)
+
+    def withDispatchers(settings: DispatcherSettings = DispatcherSettings()) =
+      new ConfigBuilder[HRM](reportManager, timeout, defaultRetentionDays, maxRetentionDays, workerCount, maxQueueDepth, journal, dataSources,
+        autoscale, Some(settings), restart, designCacheSize, keepReportDocuments)
+
+    def withRestartThrottle(settings: RestartSettings = RestartSettings()) =
+      new ConfigBuilder[HRM](reportManager, timeout, defaultRetentionDays, maxRetentionDays, workerCount, maxQueueDepth, journal, dataSources,
+        autoscale, dispatchers, Some(settings), designCacheSize, keepReportDocuments)
+
+    def withDesignCacheSize(size: Int) =
+      new ConfigBuilder[HRM](reportManager, timeout, defaultRetentionDays, maxRetentionDays, workerCount, maxQueueDepth, journal, dataSources,
+        autoscale, dispatchers, restart, Some(size), keepReportDocuments)
+
+    def withKeepReportDocuments(keep: Boolean) =
+      new ConfigBuilder[HRM](reportManager, timeout, defaultRetentionDays, maxRetentionDays, workerCount, maxQueueDepth, journal, dataSources,
+        autoscale, dispatchers, restart, designCacheSize, Some(keep))
   }
 
   implicit def enableBuild(builder: ConfigBuilder[TRUE]) = new {
     def build() =
-      new ErnieConfiguration(builder.reportManager.get, builder.timeout, builder.defaultRetentionDays, builder.maxRetentionDays, builder.workerCount)
+      new ErnieConfiguration(builder.reportManager.get, builder.timeout, builder.defaultRetentionDays, builder.maxRetentionDays, builder.workerCount,
+        builder.maxQueueDepth, builder.journal, builder.dataSources, builder.autoscale, builder.dispatchers, builder.restart, builder.designCacheSize,
+        builder.keepReportDocuments)
   }
 
-  def ernieBuilder = new ConfigBuilder[FALSE](None, None, None, None, None)
+  def ernieBuilder = new ConfigBuilder[FALSE](None, None, None, None, None, None, None, Map.empty[String, DataSourceSettings], None, None, None, None, None)
 }
 
 /**
@@ -387,5 +622,18 @@ case class MemoryReportManager() extends ReportManager
  * @param defaultRetentionDays default number of days to retain report output
  * @param maxRetentionDays maximum number of days allowed for report output retention
  * @param workerCount number of Akka Actors to generate to serve report output generation requests
+ * @param maxQueueDepth maximum number of jobs waiting for a worker before new jobs are rejected; unbounded if not specified
+ * @param journal if specified, persist jobs of a FileReportManager to an append-only journal in jobDir instead of one file per job
+ * @param dataSources settings for pools of JDBC connections, keyed by the name of the report design data sources they serve
+ * @param autoscale if specified, grow and shrink the number of workers between the given bounds; workerCount is the initial number
+ * @param dispatchers if specified, run workers, the coordinator and Future callbacks on dedicated dispatchers, and limit the jobs run at
+ *                    once by each named bulkhead
+ * @param restart pace at which jobs left unfinished by a previous shutdown are restarted; if not specified, the defaults of RestartSettings
+ * @param designCacheSize maximum number of opened report designs kept in memory; if not specified, the current size is kept
+ * @param keepReportDocuments whether the report document of each run is kept so its output can later be rendered in other formats; if not
+ *                            specified, the current setting is kept
  */
-case class ErnieConfiguration(val reportManager: ReportManager, val timeout: Option[FiniteDuration], val defaultRetentionDays: Option[Int], val maxRetentionDays: Option[Int], val workerCount: Option[Int])
+case class ErnieConfiguration(val reportManager: ReportManager, val timeout: Option[FiniteDuration], val defaultRetentionDays: Option[Int], val maxRetentionDays: Option[Int], val workerCount: Option[Int],
+  val maxQueueDepth: Option[Int], val journal: Option[JournalSettings], val dataSources: Map[String, DataSourceSettings],
+  val autoscale: Option[AutoscaleSettings], val dispatchers: Option[DispatcherSettings], val restart: Option[RestartSettings], val designCacheSize: Option[Int],
+  val keepReportDocuments: Option[Boolean])
@@ -28,3 +28,16 @@ case class ReportOutputException(status: Option[com.ksmpartners.ernie.model.JobS
   }
 }
 
+/**
+ * Keys under which failed calls are counted in [[com.ksmpartners.ernie.util.ActionMetrics]], shared by the API and the REST server
+ */
+object ErrorKey {
+  /** The simple name of the type of t, followed by the job status of a ReportOutputException that has one */
+  def apply(t: Throwable): String = t match {
+    case r: ReportOutputException => r.status.map(s => "ReportOutputException(" + s + ")") getOrElse "ReportOutputException"
+    case _ => t.getClass.getSimpleName
+  }
+
+  /** The type and name of the status returned by a call that was refused, such as JobStatus.FAILED_QUEUE_FULL */
+  def apply(status: java.lang.Enum[_]): String = status.getDeclaringClass.getSimpleName + "." + status.name
+}
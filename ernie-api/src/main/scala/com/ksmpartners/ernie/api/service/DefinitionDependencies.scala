@@ -22,7 +22,7 @@ import com.ksmpartners.ernie.engine.report.BirtReportGenerator
 import com.ksmpartners.ernie.api._
 import com.ksmpartners.ernie.engine.DeleteDefinitionResponse
 import akka.pattern.ask
-import scala.concurrent.Await
+import scala.concurrent.{ Await, Future }
 import scala.xml.NodeSeq
 
 /**
@@ -131,9 +131,14 @@ trait DefinitionDependencies extends RequiresReportManager with RequiresCoordina
      * @throws MissingArgumentException if defId is null
      * @return a DeleteStatus indicating the result of deletion.
      */
-    def deleteDefinition(defId: String): DeleteStatus = {
-      if (defId == null) throw new MissingArgumentException("Definition ID null")
-      Await.result((coordinator ? (engine.DeleteDefinitionRequest(defId))).mapTo[DeleteDefinitionResponse], timeoutDuration).deleteStatus
-    }
+    def deleteDefinition(defId: String): DeleteStatus = Await.result(deleteDefinitionFuture(defId), timeoutDuration)
+
+    /**
+     * Delete a definition, returning a Future of the DeleteStatus indicating the result of deletion, which fails with a
+     * MissingArgumentException if defId is null.
+     */
+    def deleteDefinitionFuture(defId: String): Future[DeleteStatus] =
+      if (defId == null) Future.failed(new MissingArgumentException("Definition ID null"))
+      else (coordinator ? (engine.DeleteDefinitionRequest(defId))).mapTo[DeleteDefinitionResponse].map(_.deleteStatus)
   }
 }
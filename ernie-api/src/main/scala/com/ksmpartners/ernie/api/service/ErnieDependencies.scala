@@ -16,10 +16,11 @@ limitations under the License.
 package com.ksmpartners.ernie.api.service
 
 import com.ksmpartners.ernie.engine.report._
-import com.ksmpartners.ernie.engine.Coordinator
+import com.ksmpartners.ernie.engine.{ RestartSettings, DispatcherSettings, Coordinator }
 import java.io.File
 import scala.concurrent.duration._
-import akka.actor.{ ActorRef, ActorSystem, ActorDSL }
+import akka.actor.{ Props, ActorRef, ActorSystem }
+import com.typesafe.config.ConfigFactory
 import com.ksmpartners.ernie.api.ErnieBuilder
 import com.ksmpartners.ernie.engine.report.FileReportManager
 import com.ksmpartners.ernie.api._
@@ -40,7 +41,7 @@ abstract class ErnieDependencies extends JobDependencies
 
   private def fileReportManager: Option[com.ksmpartners.ernie.api.FileReportManager] =
     ernieConfig match {
-      case Some(ErnieConfiguration(f: com.ksmpartners.ernie.api.FileReportManager, _, _, _, _)) => Some(f)
+      case Some(ErnieConfiguration(f: com.ksmpartners.ernie.api.FileReportManager, _, _, _, _, _, _, _, _, _, _, _, _)) => Some(f)
       case _ => None
     }
 
@@ -49,10 +50,21 @@ abstract class ErnieDependencies extends JobDependencies
    */
   def timeoutDuration = ernieConfig.map(c => c.timeout.getOrElse(5 minutes)) getOrElse (5 minutes)
 
-  protected val system = ActorSystem("ernie-actor-system")
-
   private var reportManagerOpt: Option[ReportManager] = None
   private var coordinatorOpt: Option[ActorRef] = None
+  private var systemOpt: Option[ActorSystem] = None
+
+  private def workerCount = ernieConfig.map(c => c.workerCount getOrElse (50)) getOrElse 50
+
+  /**
+   * The actor system, created on first use with the dispatchers of the current configuration
+   */
+  protected def system = systemOpt getOrElse {
+    val dispatchers = ernieConfig.flatMap(c => c.dispatchers.map(_.config(c.autoscale.map(_.maxWorkers) getOrElse workerCount)))
+    val sys = ActorSystem("ernie-actor-system", dispatchers.map(_.withFallback(ConfigFactory.load)) getOrElse ConfigFactory.load)
+    systemOpt = Some(sys)
+    sys
+  }
 
   protected def reportManager = reportManagerOpt.getOrElse {
     var rm: ReportManager = null
@@ -68,13 +80,16 @@ abstract class ErnieDependencies extends JobDependencies
   }
 
   protected def coordinator = coordinatorOpt getOrElse {
-    val coord = ActorDSL.actor(system)({
-      val c = new Coordinator(if (fileReportManager.isDefined) Some(fileReportManager.get.jobDir) else None, reportManager,
-        ernieConfig.map(c => c.timeout getOrElse (5 minutes)),
-        ernieConfig.map(c => c.workerCount getOrElse (50)) getOrElse 50) with BirtReportGeneratorFactory
-      c.startReportGenerator()
-      c
-    })
+    val dispatchers = ernieConfig.flatMap(c => c.dispatchers)
+    val props = Props(new Coordinator(if (fileReportManager.isDefined) Some(fileReportManager.get.jobDir) else None, reportManager,
+      ernieConfig.map(c => c.timeout getOrElse (5 minutes)),
+      workerCount,
+      ernieConfig.flatMap(c => c.maxQueueDepth),
+      ernieConfig.flatMap(c => c.journal),
+      ernieConfig.flatMap(c => c.autoscale),
+      dispatchers.map(_.bulkheads) getOrElse Map.empty[String, Int],
+      ernieConfig.flatMap(c => c.restart) getOrElse RestartSettings()) with BirtReportGeneratorFactory)
+    val coord = system.actorOf(if (dispatchers.isDefined) props.withDispatcher(DispatcherSettings.coordinatorDispatcherId) else props)
     coordinatorOpt = Some(coord)
     coord
   }
@@ -93,12 +108,17 @@ abstract class ErnieDependencies extends JobDependencies
 
   /**
    * Prepare the dependencies using the provided [[com.ksmpartners.ernie.api.ErnieConfiguration]]
+   * Connection pools are created for the configured data sources, replacing any previously configured, the design cache is resized if a
+   * size is configured, and report documents are kept or not if configured.
    * @param config a configuration for this class built using [[com.ksmpartners.ernie.api.ErnieBuilder]]
    * @throws RuntimeException if invalid directories are provided
    */
   def configure(config: ErnieConfiguration) {
     ernieConfig = Some(config)
     if (fileReportManager.isDefined) if (!(new File(fileReportManager.get.jobDir)).isDirectory) throw new RuntimeException("Jobs path is not a directory")
+    BirtReportGenerator.setDataSources(config.dataSources.map(p => p._1 -> new ConnectionPool(p._1, p._2)))
+    config.designCacheSize.map(BirtReportGenerator.setDesignCacheSize(_))
+    config.keepReportDocuments.map(BirtReportGenerator.setKeepReportDocuments(_))
     coordinatorOpt = None
     reportManagerOpt = None
     reportManager
@@ -23,11 +23,16 @@ import scala.collection.immutable
 import com.ksmpartners.ernie.api
 import akka.pattern.ask
 import scala.concurrent.{ Future, Await }
+import scala.concurrent.duration.FiniteDuration
+import akka.util.Timeout
 import com.ksmpartners.ernie.engine.{ JobNotificationResponse, PurgeRequest, PurgeResponse }
+import com.ksmpartners.ernie.engine.report.ReportContent
 import scala.Some
 
 /**
  * Dependencies for starting and interacting with jobs for the creation of reports.
+ * Each operation that consults the Coordinator has a variant returning a Future, whose callbacks run on callbackContext; the
+ * blocking operations wait on those Futures for at most timeoutDuration.
  */
 trait JobDependencies extends RequiresCoordinator
     with RequiresReportManager {
@@ -44,20 +49,83 @@ trait JobDependencies extends RequiresCoordinator
      * @param retentionPeriod optional override for default number of days to retain report output
      * @param reportParameters a set of BIRT Report Parameters corresponding to the parameters specified in the report definition.
      * @param userName username of the user creating the job
+     * @param renditions further formats into which the output is rendered once the job completes
+     * @param timeout optional override for the definition's limit on how long the job may run
      * @return the generated job ID and a [[com.ksmpartners.ernie.model.JobStatus]]
      */
-    def createJob(defId: String, rptType: ReportType, retentionPeriod: Option[Int], reportParameters: immutable.Map[String, String], userName: String): (Long, model.JobStatus) = {
-      val respOpt = Await.result((coordinator ? (engine.ReportRequest(defId, rptType, retentionPeriod,
-        reportParameters, userName))).mapTo[engine.ReportResponse], timeoutDuration)
-      (respOpt.jobId, respOpt.jobStatus)
-    }
+    def createJob(defId: String, rptType: ReportType, retentionPeriod: Option[Int], reportParameters: immutable.Map[String, String], userName: String,
+      renditions: List[ReportType] = Nil, timeout: Option[FiniteDuration] = None): (Long, model.JobStatus) =
+      Await.result(createJobFuture(defId, rptType, retentionPeriod, reportParameters, userName, renditions, timeout), timeoutDuration)
+
+    /**
+     * Create and start a report generation job, returning a Future of the generated job ID and [[com.ksmpartners.ernie.model.JobStatus]]
+     */
+    def createJobFuture(defId: String, rptType: ReportType, retentionPeriod: Option[Int], reportParameters: immutable.Map[String, String], userName: String,
+      renditions: List[ReportType] = Nil, timeout: Option[FiniteDuration] = None): Future[(Long, model.JobStatus)] =
+      (coordinator ? (engine.ReportRequest(defId, rptType, retentionPeriod, reportParameters, userName, renditions, timeout)))
+        .mapTo[engine.ReportResponse].map(r => (r.jobId, r.jobStatus))
+
+    /**
+     * Create and start a report generation job for each of requests. The jobs are created in one Coordinator turn and persisted together.
+     * @return the generated job ID and [[com.ksmpartners.ernie.model.JobStatus]] of each request, in the order of requests
+     */
+    def createJobs(requests: List[engine.ReportRequest]): List[(Long, model.JobStatus)] = Await.result(createJobsFuture(requests), timeoutDuration)
+
+    /**
+     * Create and start a report generation job for each of requests, returning a Future of the job ID and status of each request
+     */
+    def createJobsFuture(requests: List[engine.ReportRequest]): Future[List[(Long, model.JobStatus)]] =
+      (coordinator ? (engine.BatchReportRequest(requests))).mapTo[engine.BatchReportResponse].map(_.responses.map(r => (r.jobId, r.jobStatus)))
+
+    /**
+     * Cancel a job, stopping its run if it has started.
+     * @return CANCELLED if the job was cancelled at once, IN_PROGRESS if its run has been asked to stop, NO_SUCH_JOB if the job does not
+     *         exist, or the status of a job that had already finished
+     */
+    def cancelJob(jobId: Long): model.JobStatus = Await.result(cancelJobFuture(jobId), timeoutDuration)
+
+    /**
+     * Cancel a job, returning a Future of the status cancelJob would return
+     */
+    def cancelJobFuture(jobId: Long): Future[model.JobStatus] =
+      (coordinator ? (engine.CancelRequest(jobId))).mapTo[engine.CancelResponse].map(_.jobStatus)
 
     /**
      * Get a list of all job IDs as strings.
      */
-    def getList(): List[String] = {
-      Await.result((coordinator ? (engine.JobsListRequest())).mapTo[engine.JobsListResponse], timeoutDuration).jobsList.toList
-    }
+    def getList(): List[String] = getList(engine.JobQuery()).jobsList.toList
+
+    /**
+     * Get a page of job IDs as strings, and the cursor of the following page.
+     */
+    def getList(query: engine.JobQuery): engine.JobsListResponse = Await.result(getListFuture(query), timeoutDuration)
+
+    /**
+     * Get a Future of a page of job IDs as strings, and the cursor of the following page.
+     */
+    def getListFuture(query: engine.JobQuery): Future[engine.JobsListResponse] =
+      (coordinator ? (engine.JobsListRequest(query))).mapTo[engine.JobsListResponse]
+
+    /**
+     * Get the number of queued jobs, idle and total workers, and queue wait times.
+     */
+    def getQueueStatus(): engine.QueueStatusResponse = Await.result(getQueueStatusFuture, timeoutDuration)
+
+    /**
+     * Get a Future of the number of queued jobs, idle and total workers, and queue wait times.
+     */
+    def getQueueStatusFuture(): Future[engine.QueueStatusResponse] =
+      (coordinator ? (engine.QueueStatusRequest())).mapTo[engine.QueueStatusResponse]
+
+    /**
+     * Get whether the report generator has started and whether persisted jobs are still being recovered.
+     */
+    def getReadiness(): engine.ReadinessResponse = Await.result(getReadinessFuture, timeoutDuration)
+
+    /**
+     * Get a Future of whether the report generator has started and whether persisted jobs are still being recovered.
+     */
+    def getReadinessFuture(): Future[engine.ReadinessResponse] = (coordinator ? (engine.ReadinessRequest())).mapTo[engine.ReadinessResponse]
 
   }
 
@@ -70,18 +138,34 @@ trait JobDependencies extends RequiresCoordinator
      * @param catalog optionally specify a subset of jobs to retrieve
      * @return a list of [[com.ksmpartners.ernie.model.JobEntity]] constituting the catalog.
      */
-    def getCatalog(catalog: Option[JobCatalog]): List[JobEntity] = {
-      Await.result((coordinator ? (engine.JobsCatalogRequest(catalog))).mapTo[engine.JobsCatalogResponse], timeoutDuration).catalog
-    }
+    def getCatalog(catalog: Option[JobCatalog]): List[JobEntity] = getCatalog(catalog, engine.JobQuery()).catalog
+
+    /**
+     * Get a page of a catalog of jobs.
+     * @param catalog optionally specify a subset of jobs to retrieve
+     * @param query filters, page size, cursor and order of the page
+     * @return the page of [[com.ksmpartners.ernie.model.JobEntity]] and the cursor of the following page.
+     */
+    def getCatalog(catalog: Option[JobCatalog], query: engine.JobQuery): engine.JobsCatalogResponse =
+      Await.result(getCatalogFuture(catalog, query), timeoutDuration)
+
+    /**
+     * Get a Future of a page of a catalog of jobs.
+     */
+    def getCatalogFuture(catalog: Option[JobCatalog], query: engine.JobQuery): Future[engine.JobsCatalogResponse] =
+      (coordinator ? (engine.JobsCatalogRequest(catalog, query))).mapTo[engine.JobsCatalogResponse]
 
     /**
      * Purge jobs in expired catalog.
      * @return the status of the batch deletion and a list of purged report IDs.
      */
-    def purge(): (model.DeleteStatus, List[String]) = {
-      val respOpt = Await.result((coordinator ? (PurgeRequest())).mapTo[PurgeResponse], timeoutDuration)
-      (respOpt.deleteStatus, respOpt.purgedRptIds)
-    }
+    def purge(): (model.DeleteStatus, List[String]) = Await.result(purgeFuture, timeoutDuration)
+
+    /**
+     * Purge jobs in expired catalog, returning a Future of the status of the batch deletion and a list of purged report IDs.
+     */
+    def purgeFuture(): Future[(model.DeleteStatus, List[String])] =
+      (coordinator ? (PurgeRequest())).mapTo[PurgeResponse].map(r => (r.deleteStatus, r.purgedRptIds))
   }
 
   /**
@@ -91,9 +175,13 @@ trait JobDependencies extends RequiresCoordinator
     /**
      * Get the status of a given job ID.
      */
-    def get(jobId: Long): model.JobStatus = {
-      Await.result((coordinator ? (engine.StatusRequest(jobId))).mapTo[engine.StatusResponse], timeoutDuration).jobStatus
-    }
+    def get(jobId: Long): model.JobStatus = Await.result(getStatusFuture(jobId), timeoutDuration)
+
+    /**
+     * Get a Future of the status of a given job ID.
+     */
+    def getStatusFuture(jobId: Long): Future[model.JobStatus] =
+      (coordinator ? (engine.StatusRequest(jobId))).mapTo[engine.StatusResponse].map(_.jobStatus)
 
     /**
      * Get a Future to notify caller on job status change
@@ -101,6 +189,25 @@ trait JobDependencies extends RequiresCoordinator
     def getFuture(jobId: Long, status: Option[JobStatus]): Future[JobNotificationResponse] = {
       (coordinator ? engine.JobNotificationRequest(jobId, status)).mapTo[JobNotificationResponse]
     }
+
+    /**
+     * Get a Future to notify caller on job status change, failing with an AskTimeoutException if no notification arrives within the given time.
+     * @param current the status the caller last saw; if the job's status already differs, the caller is notified at once
+     */
+    def getFuture(jobId: Long, status: Option[JobStatus], current: Option[JobStatus], within: FiniteDuration): Future[JobNotificationResponse] = {
+      coordinator.ask(engine.JobNotificationRequest(jobId, status, current))(Timeout(within)).mapTo[JobNotificationResponse]
+    }
+
+    /**
+     * Get the 1-based position of a job in the pending queue, or [[scala.None]] if it is not waiting for a worker.
+     */
+    def getQueuePosition(jobId: Long): Option[Int] = Await.result(getQueuePositionFuture(jobId), timeoutDuration)
+
+    /**
+     * Get a Future of the 1-based position of a job in the pending queue, or [[scala.None]] if it is not waiting for a worker.
+     */
+    def getQueuePositionFuture(jobId: Long): Future[Option[Int]] =
+      (coordinator ? (engine.QueuePositionRequest(jobId))).mapTo[engine.QueuePositionResponse].map(_.position)
   }
 
   /**
@@ -112,8 +219,13 @@ trait JobDependencies extends RequiresCoordinator
      * @param jobId the ID of the job to interrogate.
      * @return a JobEntity if the jobId is found; otherwise, [[scala.None]]
      */
-    def getJobEntity(jobId: Long): Option[model.JobEntity] =
-      Await.result((coordinator ? (engine.JobDetailRequest(jobId))).mapTo[engine.JobDetailResponse], timeoutDuration).jobEntity
+    def getJobEntity(jobId: Long): Option[model.JobEntity] = Await.result(getJobEntityFuture(jobId), timeoutDuration)
+
+    /**
+     * Retrieve a Future of job metadata, which is [[scala.None]] if the jobId is not found.
+     */
+    def getJobEntityFuture(jobId: Long): Future[Option[model.JobEntity]] =
+      (coordinator ? (engine.JobDetailRequest(jobId))).mapTo[engine.JobDetailResponse].map(_.jobEntity)
   }
 
   /**
@@ -126,38 +238,105 @@ trait JobDependencies extends RequiresCoordinator
      * @param jobId the jobId whose output is to be retrieved
      * @return a [[java.io.InputStream]] if the report output is available; otherwise, [[scala.None]]
      */
-    def get(jobId: Long): Option[InputStream] = {
-      val statusResponse = Await.result((coordinator ? (engine.StatusRequest(jobId))).mapTo[engine.StatusResponse], timeoutDuration)
-      if (statusResponse.jobStatus == model.JobStatus.NO_SUCH_JOB) None
-      else if (statusResponse.jobStatus != model.JobStatus.COMPLETE) {
-        throw new api.ReportOutputException(Some(statusResponse.jobStatus), "Failure to retrieve job output")
-      } else {
-        val response = Await.result((coordinator ? (engine.ResultRequest(jobId.toLong))).mapTo[engine.ResultResponse], timeoutDuration)
-        if (response.rptId.isDefined) {
-          reportManager.getReportContent(response.rptId.get)
-        } else None
-      }
+    def get(jobId: Long): Option[InputStream] = Await.result(getFuture(jobId), timeoutDuration)
+
+    /**
+     * Retrieve a Future of job output, which fails with a ReportOutputException if the job has not completed.
+     */
+    def getFuture(jobId: Long): Future[Option[InputStream]] = outputId(jobId).map(_.flatMap(reportManager.getReportContent(_)))
 
+    /**
+     * Retrieve job output in the given format, rendering it from the job's stored report document if it has not been rendered yet.
+     * @param jobId the jobId whose output is to be retrieved
+     * @param rptType the output format
+     * @return a [[java.io.InputStream]] if the report output is available in or can be rendered as rptType; otherwise, [[scala.None]]
+     */
+    def get(jobId: Long, rptType: ReportType): Option[InputStream] = Await.result(getFuture(jobId, rptType), timeoutDuration)
+
+    /**
+     * Retrieve a Future of job output in the given format, which fails with a ReportOutputException if the job has not completed.
+     */
+    def getFuture(jobId: Long, rptType: ReportType): Future[Option[InputStream]] =
+      renditionId(jobId, rptType).map(_.flatMap(reportManager.getReportContent(_)))
+
+    /**
+     * Retrieve job output as a [[com.ksmpartners.ernie.engine.report.ReportContent]] that can be written to a channel without being
+     * copied through a stream. The caller must close it.
+     * @param jobId the jobId whose output is to be retrieved
+     * @return the output if it is available; otherwise, [[scala.None]]
+     */
+    def getContent(jobId: Long): Option[ReportContent] = Await.result(getContentFuture(jobId), timeoutDuration)
+
+    /**
+     * Retrieve a Future of job output as a [[com.ksmpartners.ernie.engine.report.ReportContent]], which the caller must close.
+     */
+    def getContentFuture(jobId: Long): Future[Option[ReportContent]] = outputId(jobId).map(_.flatMap(reportManager.getReportChannel(_)))
+
+    /**
+     * Retrieve job output in the given format as a [[com.ksmpartners.ernie.engine.report.ReportContent]], rendering it from the job's
+     * stored report document if it has not been rendered yet. The caller must close it.
+     * @param jobId the jobId whose output is to be retrieved
+     * @param rptType the output format
+     * @return the output if it is available in or can be rendered as rptType; otherwise, [[scala.None]]
+     */
+    def getContent(jobId: Long, rptType: ReportType): Option[ReportContent] = Await.result(getContentFuture(jobId, rptType), timeoutDuration)
+
+    /**
+     * Retrieve a Future of job output in the given format as a [[com.ksmpartners.ernie.engine.report.ReportContent]], which the caller
+     * must close.
+     */
+    def getContentFuture(jobId: Long, rptType: ReportType): Future[Option[ReportContent]] =
+      renditionId(jobId, rptType).map(_.flatMap(reportManager.getReportChannel(_)))
+
+    /**
+     * Return a Future of the report ID of the output of jobId, which is None if jobId does not exist
+     */
+    private def outputId(jobId: Long): Future[Option[String]] = ifComplete(jobId) {
+      (coordinator ? (engine.ResultRequest(jobId))).mapTo[engine.ResultResponse].map(_.rptId)
+    }
+
+    /**
+     * Return a Future of the report ID of the output of jobId in rptType, rendering it if needed, which is None if it is not available
+     */
+    private def renditionId(jobId: Long, rptType: ReportType): Future[Option[String]] = ifComplete(jobId) {
+      (coordinator ? (engine.RenderRequest(jobId, rptType))).mapTo[engine.RenderResponse].map(_.rptId)
     }
 
+    /**
+     * Return rptId if jobId has completed, a Future of None if it does not exist, or a Future that fails with a ReportOutputException
+     */
+    private def ifComplete(jobId: Long)(rptId: => Future[Option[String]]): Future[Option[String]] =
+      (coordinator ? (engine.StatusRequest(jobId))).mapTo[engine.StatusResponse].flatMap(statusResponse =>
+        if (statusResponse.jobStatus == model.JobStatus.NO_SUCH_JOB) Future.successful(None)
+        else if (statusResponse.jobStatus != model.JobStatus.COMPLETE) {
+          Future.failed(new api.ReportOutputException(Some(statusResponse.jobStatus), "Failure to retrieve job output"))
+        } else rptId)
+
     /**
      * Retrieve report output metadata.
      * @param jobId the job whose report output metadata is to be interrogated
      * @return a [[com.ksmpartners.ernie.model.ReportEntity]] if the job ID is found.
      */
-    def getReportEntity(jobId: Long): Option[model.ReportEntity] = {
-      Await.result((coordinator ? (engine.ReportDetailRequest(jobId))).mapTo[engine.ReportDetailResponse], timeoutDuration).rptEntity
-    }
+    def getReportEntity(jobId: Long): Option[model.ReportEntity] = Await.result(getReportEntityFuture(jobId), timeoutDuration)
+
+    /**
+     * Retrieve a Future of report output metadata, which is [[scala.None]] if the job ID is not found.
+     */
+    def getReportEntityFuture(jobId: Long): Future[Option[model.ReportEntity]] =
+      (coordinator ? (engine.ReportDetailRequest(jobId))).mapTo[engine.ReportDetailResponse].map(_.rptEntity)
 
     /**
      * Delete a job's output and any associated metadata
      * @param jobId the job whose output and metadata is to be deleted
      * @return the status of the deletion
      */
-    def del(jobId: Long): DeleteStatus = {
-      Await.result((coordinator ? (engine.DeleteRequest(jobId))).mapTo[engine.DeleteResponse], timeoutDuration).deleteStatus
-    }
+    def del(jobId: Long): DeleteStatus = Await.result(delFuture(jobId), timeoutDuration)
+
+    /**
+     * Delete a job's output and any associated metadata, returning a Future of the status of the deletion
+     */
+    def delFuture(jobId: Long): Future[DeleteStatus] =
+      (coordinator ? (engine.DeleteRequest(jobId))).mapTo[engine.DeleteResponse].map(_.deleteStatus)
   }
 
 }
-
@@ -19,6 +19,8 @@ import com.ksmpartners.ernie.engine.report.ReportManager
 import akka.actor.{ ActorRef, ActorSystem }
 import scala.concurrent.duration.FiniteDuration
 import akka.util.Timeout
+import scala.concurrent.ExecutionContext
+import com.ksmpartners.ernie.engine.DispatcherSettings
 
 /**
  * Trait that indicates a requirement on a Coordinator
@@ -27,7 +29,9 @@ trait RequiresCoordinator {
   protected def coordinator: ActorRef
   def timeoutDuration: FiniteDuration
   implicit def timeoutAkka = Timeout(timeoutDuration)
-  protected val system: ActorSystem
+  protected def system: ActorSystem
+  /** Execution context on which the callbacks of Futures of Coordinator responses run */
+  protected implicit def callbackContext: ExecutionContext = DispatcherSettings.executionContext(system, DispatcherSettings.callbackDispatcherId)
 }
 
 /**
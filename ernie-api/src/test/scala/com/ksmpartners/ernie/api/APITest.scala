@@ -31,6 +31,7 @@ import com.ksmpartners.ernie.api.MissingArgumentException
 import scala.Some
 import com.ksmpartners.ernie.api.NotFoundException
 import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.Await
 
 object ApiTestUtil {
   def testException[B <: Exception](func: () => Unit, ex: Class[B]) = try {
@@ -192,6 +193,31 @@ class APITest { //extends TestNGSuite {
     }
   }
 
+  @Test(dependsOnMethods = Array("init"))
+  def asyncRejectsMissingArguments() {
+    testException(() => Await.result(ernie.async.getJobStatus(-1L), 5 seconds), classOf[MissingArgumentException])
+    testException(() => Await.result(ernie.async.getReportOutput(-1L), 5 seconds), classOf[MissingArgumentException])
+    testException(() => Await.result(ernie.async.deleteDefinition(null), 5 seconds), classOf[MissingArgumentException])
+  }
+
+  @Test(dependsOnMethods = Array("init"))
+  def recordsMetrics() {
+    ernie.getDefinitionList
+    testException(() => ernie.getJobStatus(-1L), classOf[MissingArgumentException])
+    Assert.assertEquals(ernie.cancelJob(1L), com.ksmpartners.ernie.model.JobStatus.NO_SUCH_JOB)
+    val stats = ernie.metrics.getStatistics
+    Assert.assertTrue(stats.get("getDefinitionList").count >= 1)
+    Assert.assertTrue(stats.get("getJobStatus").errors.get("MissingArgumentException") >= 1L)
+    Assert.assertTrue(stats.get("cancelJob").errors.get("JobStatus.NO_SUCH_JOB") >= 1L)
+    Assert.assertTrue(stats.get("getJobStatus").p99Millis <= stats.get("getJobStatus").maxMillis)
+  }
+
+  @Test(dependsOnGroups = Array("setup"), groups = Array("main"))
+  def getAsyncJobStatus() {
+    val status = Await.result(ernie.async.getJobEntity(jobId).flatMap(e => ernie.async.getJobStatus(e.get.getJobId)), 5 seconds)
+    Assert.assertNotSame(status, com.ksmpartners.ernie.model.JobStatus.NO_SUCH_JOB)
+  }
+
   @Test(dependsOnGroups = Array("setup"), groups = Array("main"))
   def getJobEntity() {
     testException(() => ernie.getJobEntity(-1L), classOf[MissingArgumentException])
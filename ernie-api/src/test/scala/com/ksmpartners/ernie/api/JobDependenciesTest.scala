@@ -32,6 +32,7 @@ import org.slf4j.{ LoggerFactory, Logger }
 import scala.Array
 
 import scala.concurrent.duration._
+import scala.concurrent.Await
 import com.ksmpartners.ernie.model.DeleteStatus
 import scala.Some
 import akka.actor.{ ActorRef, ActorDSL, ActorSystem }
@@ -148,7 +149,16 @@ class JobDependenciesTest extends JobDependencies with RequiresCoordinator with
     val (id, status) = jobsResource.createJob(testDef, model.ReportType.PDF, Some(5), Map.empty[String, String], "testUser")
     Assert.assertTrue(id > 0)
     jobId = id
-    Assert.assertEquals(status, model.JobStatus.IN_PROGRESS)
+    Assert.assertEquals(status, model.JobStatus.PENDING)
+  }
+
+  @Test(groups = Array("main"), dependsOnGroups = Array("timeout"))
+  def canPostJobBatch() {
+    val jobsResource = new JobsResource
+    val results = jobsResource.createJobs(List(ReportRequest(testDef, model.ReportType.PDF, Some(5), Map.empty[String, String], "testUser"),
+      ReportRequest("no_such_def", model.ReportType.PDF, Some(5), Map.empty[String, String], "testUser")))
+    Assert.assertEquals(results.map(_._2), List(model.JobStatus.PENDING, model.JobStatus.FAILED_NO_SUCH_DEFINITION))
+    Assert.assertTrue(results.forall(_._1 > 0))
   }
 
   @Test(dependsOnMethods = Array("canPostNewJob"), groups = Array("main"))
@@ -165,6 +175,20 @@ class JobDependenciesTest extends JobDependencies with RequiresCoordinator with
     Assert.assertTrue(resp != null)
   }
 
+  @Test(dependsOnMethods = Array("canPostNewJob"), groups = Array("main"))
+  def canGetJobStatusFuture() {
+    val jobStatusResource = new JobStatusResource
+    val resp = Await.result(jobStatusResource.getStatusFuture(jobId), timeoutDuration)
+    Assert.assertNotSame(resp, model.JobStatus.NO_SUCH_JOB)
+  }
+
+  @Test(groups = Array("main"))
+  def missingJobResultsFutureIsEmpty() {
+    val jobResultsResource = new JobResultsResource
+    Assert.assertTrue(Await.result(jobResultsResource.getFuture(Long.MaxValue), timeoutDuration).isEmpty)
+    Assert.assertTrue(Await.result(jobResultsResource.getContentFuture(Long.MaxValue, model.ReportType.CSV), timeoutDuration).isEmpty)
+  }
+
   @Test(dependsOnMethods = Array("canGetJobResults"), groups = Array("main"))
   def canGetRptEntity() {
     val jobStatusResource = new JobResultsResource
@@ -180,6 +204,15 @@ class JobDependenciesTest extends JobDependencies with RequiresCoordinator with
     Assert.assertTrue(resp.size > 0)
   }
 
+  @Test(dependsOnMethods = Array("canPostNewJob"), groups = Array("main"))
+  def canPageJobCatalog() {
+    val jobCatalogResource = new JobCatalogResource
+    val page = jobCatalogResource.getCatalog(None, JobQuery(limit = Some(1), descending = true))
+    Assert.assertEquals(page.catalog.size, 1)
+    Assert.assertTrue(page.catalog.head.getJobId.longValue >= jobCatalogResource.getCatalog(None).map(_.getJobId.longValue).max)
+    Assert.assertTrue(jobCatalogResource.getCatalog(None, JobQuery(user = Some("no such user"))).catalog.isEmpty)
+  }
+
   @Test(dependsOnMethods = Array("canPostNewJob"), groups = Array("main"))
   def canGetJobResults() {
     val jobResultsResource = new JobResultsResource
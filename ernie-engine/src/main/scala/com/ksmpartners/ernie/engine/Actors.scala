@@ -21,7 +21,7 @@ import collection.JavaConversions._
 import com.ksmpartners.ernie.model._
 import com.ksmpartners.ernie.engine.report._
 import org.slf4j.{ Logger, LoggerFactory }
-import org.joda.time.{ Days, DateTime }
+import org.joda.time.DateTime
 import com.ksmpartners.ernie.util.Utility._
 import org.eclipse.birt.report.engine.api.UnsupportedFormatException
 import com.ksmpartners.ernie.util.MapperUtility._
@@ -30,17 +30,19 @@ import Coordinator._
 import akka.actor._
 import scala.concurrent._
 import scala.Some
-import ExecutionContext.Implicits.global
 import akka.util.Timeout
 import akka.actor.Props
 import scala.concurrent.duration._
 import scala.concurrent.duration.DurationInt
+import DispatcherSettings.{ startupDispatcherId, workerDispatcherId }
 
 /**
  * Companion singleton for the Coordinator
  */
 object Coordinator {
   val log: Logger = LoggerFactory.getLogger("com.ksmpartners.ernie.engine.report.Coordinator")
+  /** Number of recovered jobs handed to the Coordinator at a time */
+  val recoveryBatchSize = 500
 }
 
 /**
@@ -51,43 +53,248 @@ trait ErnieCoordinator extends Actor {
 }
 /**
  * Actor for coordinating report generation.
+ * If scale is given, the number of workers is adjusted between its bounds by an [[com.ksmpartners.ernie.engine.Autoscaler]].
+ * Workers run on the worker dispatcher if the actor system defines one. bulkheads limits how many jobs may run at once for the definitions
+ * assigned to each named bulkhead; jobs over the limit wait in the queue while other jobs are dispatched past them.
+ * Jobs left unfinished by a previous shutdown are restarted at the pace set by restart, and only when no newly submitted job is waiting.
  */
-class Coordinator(_pathToJobEntities: Option[String], rptMgr: ReportManager, to: Option[FiniteDuration], wC: Int = 1) extends ErnieActions {
+class Coordinator(_pathToJobEntities: Option[String], rptMgr: ReportManager, to: Option[FiniteDuration], wC: Int = 1, mQD: Option[Int] = None,
+    jnl: Option[JournalSettings] = None, scale: Option[AutoscaleSettings] = None, bulkheads: Map[String, Int] = Map.empty,
+    restart: RestartSettings = RestartSettings()) extends ErnieActions {
   this: ReportGeneratorFactory =>
 
   private val year: FiniteDuration = 365 days
 
-  private var workerCount = wC
+  /** Decides the worker count if autoscaling is enabled; otherwise the count only changes through NewWorkerRequest */
+  private val autoscaler = scale.map(new Autoscaler(_))
+  /** Number of workers wanted, including those not started yet because the report generator is not up */
+  private var workerCount = scale.map(_.bound(wC)) getOrElse wC
+  /** Number of worker actors started and not yet stopped */
+  private var startedWorkers = 0
+  private var targetWorkers = workerCount
+  private var autoscaleTicks: Option[Cancellable] = None
   implicit val timeout = Timeout.durationToTimeout(to getOrElse year)
-  private var currentWorker = -1
 
-  protected def worker: ActorRef = {
-    currentWorker += 1
-    if (currentWorker >= workerCount) currentWorker = 0
-    context.children.toList(currentWorker)
+  /** Jobs and renders waiting for a free worker, paired with the time they were queued */
+  private val pendingJobs = new mutable.Queue[(WorkItem, Long)]()
+  /** Workers that have asked for work and have not yet been given any */
+  private val idleWorkers = new mutable.LinkedHashSet[ActorRef]()
+  /** Time each idle worker became idle */
+  private val idleSince = new mutable.HashMap[ActorRef, Long]()
+  /** Maximum number of pending jobs; None for an unbounded queue */
+  private val maxQueueDepth = mQD
+  private var dispatchedJobs = 0L
+  private var totalWait = 0L
+  /** Bulkhead of each running job that is limited by one */
+  private val runningBulkheads = new mutable.HashMap[Long, String]()
+  /** Number of running jobs in each bulkhead */
+  private val bulkheadUsage = new mutable.HashMap[String, Int]()
+
+  /**
+   * Queue req and hand out as much pending work as there are idle workers
+   */
+  protected def dispatch(req: WorkItem) {
+    pendingJobs.enqueue((req, System.currentTimeMillis))
+    dispatchPending()
+  }
+
+  protected def queueFull: Boolean = maxQueueDepth.exists(pendingJobs.size >= _)
+
+  /**
+   * Return whether req may run now without exceeding the limit of its bulkhead
+   */
+  private def admits(req: WorkItem): Boolean = req match {
+    case j: JobRequest => j.bulkhead.flatMap(b => bulkheads.get(b).map(bulkheadUsage.getOrElse(b, 0) < _)) getOrElse true
+    case _ => true
+  }
+
+  private def dispatchPending() {
+    var next = nextAdmitted()
+    while (next.isDefined) {
+      val w = idleWorkers.head
+      idleWorkers -= w
+      idleSince -= w
+      val (req, queued) = next.get
+      val wait = System.currentTimeMillis - queued
+      dispatchedJobs += 1
+      totalWait += wait
+      log.debug("Dispatching jobId {} after {} ms in queue", req.jobId, wait)
+      w ! req
+      req match {
+        case j: JobRequest => {
+          j.timeout.map(t => timeouts += (j.jobId -> context.system.scheduler.scheduleOnce(t, self, JobTimedOut(j.jobId))))
+          j.bulkhead.filter(bulkheads.contains(_)).map(b => {
+            runningBulkheads += (j.jobId -> b)
+            bulkheadUsage += (b -> (bulkheadUsage.getOrElse(b, 0) + 1))
+          })
+        }
+        case _ =>
+      }
+      next = nextAdmitted()
+    }
+  }
+
+  private def nextAdmitted(): Option[(WorkItem, Long)] = if (idleWorkers.isEmpty) None
+  else pendingJobs.dequeueFirst(p => admits(p._1)) orElse nextRestart()
+
+  /**
+   * Take the next restarted job that may run now, if the current interval's allowance has not been used up
+   */
+  private def nextRestart(): Option[(WorkItem, Long)] = if (restartAllowance <= 0) None
+  else restartQueue.dequeueFirst(p => admits(p._1)).map(p => {
+    restartAllowance -= 1
+    restartedCount += 1
+    p
+  })
+
+  /**
+   * Free the bulkhead slot held by jobId, if any, and dispatch any jobs that were waiting for it
+   */
+  private def releaseBulkhead(jobId: Long) = runningBulkheads.remove(jobId).map(b => {
+    bulkheadUsage += (b -> (bulkheadUsage.getOrElse(b, 1) - 1))
+    dispatchPending()
+  })
+
+  protected def undispatch(jobId: Long): Boolean = pendingJobs.dequeueFirst(_._1 match {
+    case j: JobRequest => j.jobId == jobId
+    case _ => false
+  }).isDefined || restartQueue.dequeueFirst(_._1.jobId == jobId).isDefined
+
+  protected def cancelRunning(jobId: Long): Boolean = {
+    cancelTimeout(jobId)
+    getReportGenerator(reportManager).cancelReport(jobToRptId(jobId))
+  }
+
+  protected def runFinished(jobId: Long) = {
+    cancelTimeout(jobId)
+    getReportGenerator(reportManager).reportFinished(jobToRptId(jobId))
+  }
+
+  /**
+   * Drop the pending timeout of jobId's run, if any, once the run has finished or been asked to stop
+   */
+  private def cancelTimeout(jobId: Long) = timeouts.remove(jobId).map(_.cancel())
+
+  private def workRequest(w: ActorRef) {
+    idleWorkers += w
+    idleSince += (w -> System.currentTimeMillis)
+    dispatchPending()
+  }
+
+  /**
+   * Add workers while jobs wait too long, and retire workers that have been idle past the cooldown once nothing is waiting
+   */
+  private def autoscale() = autoscaler.filter(_ => generatorReady).map(a => {
+    val now = System.currentTimeMillis
+    val retirable = idleWorkers.filter(w => idleSince.get(w).exists(now - _ >= a.settings.idleCooldown.toMillis)).toList
+    // Jobs held back by their bulkhead would not be run by extra workers
+    val admitted = pendingJobs.filter(p => admits(p._1))
+    targetWorkers = a.target(workerCount, admitted.size, admitted.headOption.map(now - _._2) getOrElse 0L, retirable.size,
+      Autoscaler.processCpuLoad)
+    if (targetWorkers > workerCount) {
+      log.info("Scaling workers from {} to {}", workerCount, targetWorkers)
+      for (i <- workerCount until targetWorkers) spawnWorker()
+    } else if (targetWorkers < workerCount) {
+      log.info("Scaling workers from {} to {}", workerCount, targetWorkers)
+      retirable.take(workerCount - targetWorkers).foreach(retireWorker(_))
+    }
+  })
+
+  private def retireWorker(w: ActorRef) {
+    idleWorkers -= w
+    idleSince -= w
+    workerCount -= 1
+    startedWorkers -= 1
+    context.unwatch(w)
+    context.stop(w)
   }
 
+  private def queueStatusRequest(req: QueueStatusRequest, sender: ActorRef) {
+    val now = System.currentTimeMillis
+    sender ! QueueStatusResponse(pendingJobs.size, idleWorkers.size, workerCount, targetWorkers,
+      pendingJobs.headOption.map(now - _._2) getOrElse 0L,
+      if (dispatchedJobs > 0) totalWait / dispatchedJobs else 0L, req)
+  }
+
+  private def queuePositionRequest(req: QueuePositionRequest, sender: ActorRef) {
+    val index = pendingJobs.indexWhere(_._1.jobId == req.jobId)
+    lazy val restartIndex = restartQueue.indexWhere(_._1.jobId == req.jobId)
+    if (index >= 0) sender ! QueuePositionResponse(Some(index + 1), Some(System.currentTimeMillis - pendingJobs(index)._2), req)
+    else if (restartIndex >= 0) sender ! QueuePositionResponse(Some(pendingJobs.size + restartIndex + 1),
+      Some(System.currentTimeMillis - restartQueue(restartIndex)._2), req)
+    else sender ! QueuePositionResponse(None, None, req)
+  }
+
+  /**
+   * Add a worker, starting it at once if the report generator is up and otherwise once it is
+   */
   private def spawnWorker() {
-    context.actorOf(Props(new Worker(getReportGenerator(reportManager))))
     workerCount += 1
+    if (generatorReady) startWorker()
+  }
+
+  private def startWorker() {
+    context.watch(context.actorOf(workerProps))
+    startedWorkers += 1
+  }
+
+  private def workerProps: Props = {
+    val props = Props(new Worker(getReportGenerator(reportManager)))
+    DispatcherSettings.dispatcher(context.system, workerDispatcherId).map(props.withDispatcher(_)) getOrElse props
   }
 
   protected val jobIdToResultMap: mutable.HashMap[Long, JobEntity] = new mutable.HashMap[Long, JobEntity]() /* rptId */
-  protected val jobNotificationRequests: mutable.HashMap[ActorRef, JobNotificationRequest] = new mutable.HashMap[ActorRef, JobNotificationRequest]() /* rptId */
+  protected val jobIndex = new JobIndex
+  protected val resultCache = new ResultCache
+  protected val renderRequests = new mutable.HashMap[String, mutable.Set[(ActorRef, RenderRequest)]] with mutable.MultiMap[String, (ActorRef, RenderRequest)]
+  protected val jobNotificationRequests = new mutable.HashMap[Long, mutable.Set[(ActorRef, JobNotificationRequest)]] with mutable.MultiMap[Long, (ActorRef, JobNotificationRequest)]
+  protected val cancelling = new mutable.HashMap[Long, JobStatus]()
+  /** Scheduled timeouts of dispatched runs, by jobId */
+  private val timeouts = new mutable.HashMap[Long, Cancellable]()
   protected val reportManager = rptMgr
   protected val pathToJobEntities: Option[String] = _pathToJobEntities
+  /** Journal that job state is appended to in place of per-job entity files; requires pathToJobEntities */
+  private val journal: Option[JobJournal] = pathToJobEntities.flatMap(path => jnl.map(new JobJournal(new File(path), _)))
 
   private var noRestartingJobs = true
 
+  protected def restartsAwaitingQueue: Boolean = !noRestartingJobs
+  /** Jobs being restarted that have not yet been handed to a worker, in order of submission, paired with the time they were queued */
+  private val restartQueue = new mutable.Queue[(WorkItem, Long)]()
+  /** Number of restarted jobs that may still be dispatched in the current interval */
+  private var restartAllowance = 0
+  private var restartedCount = 0
+  private var restartTicks: Option[Cancellable] = None
+
+  /**
+   * Queue the jobs left RESTARTING by a previous shutdown, to be dispatched in batches of at most restart.batchSize per restart.interval
+   */
   private def handleRestartingJobs() = if (!noRestartingJobs) {
     noRestartingJobs = true
-    val restJobs = jobIdToResultMap.filter(p => p._2.getJobStatus == JobStatus.RESTARTING)
-    restJobs.foreach(f => {
-      val jobEnt = f._2
-      val jobId = f._1
-      worker ! JobRequest(jobEnt.getRptEntity.getSourceDefId, jobEnt.getRptEntity.getReportType, jobId, Some(Days.daysBetween(DateTime.now, jobEnt.getRptEntity.getRetentionDate).getDays),
-        if (jobEnt.getRptEntity.getParams != null) immutable.Map(jobEnt.getRptEntity.getParams.toList: _*) else immutable.Map.empty[String, String], jobEnt.getRptEntity.getCreatedUser)
-    })
+    val now = System.currentTimeMillis
+    // Job IDs are allocated in increasing order, so sorting restarts jobs in the order they were submitted
+    jobIndex.withStatus(JobStatus.RESTARTING).toList.sorted.foreach(jobId =>
+      jobIdToResultMap.get(jobId).flatMap(jobRequestFor(jobId, _)).map(r => restartQueue.enqueue((r, now))))
+    if (restartQueue.nonEmpty) {
+      log.info("Restarting {} jobs, {} every {}", Array[AnyRef](Int.box(restartQueue.size), Int.box(restart.batchSize), restart.interval): _*)
+      restartAllowance = restart.batchSize
+      restartTicks.map(_.cancel())
+      restartTicks = Some(context.system.scheduler.schedule(restart.interval, restart.interval, self, RestartTick()))
+      dispatchPending()
+    }
+  }
+
+  /**
+   * Renew the allowance of restarted jobs for the next interval, and stop the ticks once every restarted job has been dispatched
+   */
+  private def restartTick() {
+    if (restartAllowance < restart.batchSize) log.info("Restarted {} jobs, {} remaining", Array[AnyRef](Int.box(restartedCount), Int.box(restartQueue.size)): _*)
+    restartAllowance = restart.batchSize
+    dispatchPending()
+    if (restartQueue.isEmpty) {
+      restartTicks.map(_.cancel())
+      restartTicks = None
+    }
   }
 
   private def checkExpired(jobId: Long) {
@@ -110,15 +317,35 @@ class Coordinator(_pathToJobEntities: Option[String], rptMgr: ReportManager, to:
     rptGen.startup
   }
 
+  private var generatorReady = false
+  private var generatorFailed = false
+  private var recovering = false
+  private var recoveredCount = 0
+  /** Requests that depend on jobs that have not been recovered yet, paired with their senders */
+  private val deferred = new mutable.Queue[(Any, ActorRef)]()
+  /** Runs the blocking startup of the report generator and recovery of jobs, on the startup dispatcher if the system defines it */
+  private implicit lazy val startupContext: ExecutionContext = DispatcherSettings.executionContext(context.system, startupDispatcherId)
+
   /**
-   * Prior to beginning receiving requests, load persisted job entities, start the report generator and all subordinate worker actors, and schedule a restart of all jobs that were in progress when the coordinator shut down
+   * Prior to beginning receiving requests, start the report generator in the background, and begin recovering persisted jobs in the background.
+   * Workers are started once the report generator is up. New jobs are accepted while recovery is under way; requests that depend on jobs
+   * that have not been recovered yet are held until recovery completes, after which all jobs that were in progress when the coordinator
+   * shut down are restarted.
    */
   override def preStart() {
     log.debug("in start()")
-    var i: Int = 0
-    startReportGenerator
-    for (i <- 1.to(workerCount))
-      context.actorOf(Props(new Worker(getReportGenerator(reportManager))))
+    val coordinator = self
+    autoscaleTicks = scale.map(s => context.system.scheduler.schedule(s.checkInterval, s.checkInterval, coordinator, AutoscaleTick()))
+    Future {
+      blocking(startReportGenerator)
+      true
+    } recover {
+      case e: Exception => {
+        log.error("Caught exception while starting report generator: {}", e.getMessage)
+        false
+      }
+    } foreach (success => coordinator ! GeneratorStarted(success))
+
     if (pathToJobEntities.isDefined) {
       val path = pathToJobEntities.get
       val jobDir = new java.io.File(path)
@@ -127,29 +354,96 @@ class Coordinator(_pathToJobEntities: Option[String], rptMgr: ReportManager, to:
           "Job Dir: " + jobDir)
 
       val files = (new java.io.File(path)).listFiles()
-      if (files != null)
-        files.filter({ _.isFile }).filter({ _.getName.endsWith("entity") }).foreach({ file =>
-          try {
-            val jobEnt = mapper.readValue(file, classOf[JobEntity])
-            val jobId = file.getName.replaceFirst("[.][^.]+$", "").toLong
-            jobIdToResultMap += (jobId -> jobEnt)
-            if (((jobEnt.getJobStatus == JobStatus.IN_PROGRESS) || (jobEnt.getJobStatus == JobStatus.PENDING)) && (jobEnt.getRptEntity != null)) {
-              jobEnt.setJobStatus(JobStatus.RESTARTING)
-              noRestartingJobs = false
-              updateJob(jobId, jobEnt)
-            }
-          } catch {
-            case e: Exception => log.error("Caught exception while loading job entities: {}", e.getMessage)
-          }
-        })
+      val entityFiles = if (files != null) files.filter({ _.isFile }).filter({ _.getName.endsWith("entity") }).toList else Nil
+      recovering = true
+      Future(blocking {
+        journal.map(_.replay().toSeq.grouped(recoveryBatchSize).foreach(batch => coordinator ! JobsRecovered(batch)))
+        entityFiles.grouped(recoveryBatchSize).toList.par.foreach(batch => coordinator ! JobsRecovered(batch.flatMap(readJobFile(_))))
+        coordinator ! RecoveryComplete(if (journal.isDefined) entityFiles else Nil)
+      }) onFailure {
+        case e: Exception => {
+          log.error("Caught exception while recovering jobs: {}", e.getMessage)
+          coordinator ! RecoveryComplete(Nil)
+        }
+      }
     }
-    context.system.scheduler.scheduleOnce(5 seconds) {
-      handleRestartingJobs
+  }
+
+  private def readJobFile(file: File): Option[(Long, JobEntity)] = try {
+    Some((file.getName.replaceFirst("[.][^.]+$", "").toLong, mapper.readValue(file, classOf[JobEntity])))
+  } catch {
+    case e: Exception => {
+      log.error("Caught exception while loading job entities: {}", e.getMessage)
+      None
     }
   }
 
+  /**
+   * Start the workers wanted so far, topping up any started already. If the report generator failed to start, no workers are started
+   * and jobs stay queued.
+   */
+  private def generatorStarted(success: Boolean) {
+    generatorReady = success
+    generatorFailed = !success
+    if (success) for (i <- startedWorkers until workerCount) startWorker()
+    else log.error("Report generator failed to start; holding {} queued jobs", pendingJobs.size)
+  }
+
+  private def jobsRecovered(jobs: Seq[(Long, JobEntity)]) = jobs.foreach(p => if (!jobIdToResultMap.contains(p._1)) {
+    loadJob(p._1, p._2)
+    recoveredCount += 1
+  })
+
+  private def recoveryComplete(migrated: Seq[File]) {
+    recovering = false
+    journal.map(j => {
+      j.start()
+      if (migrated.nonEmpty) {
+        jobIdToResultMap.foreach(p => j.append(p._1, p._2))
+        j.sync()
+        migrated.foreach(_.delete)
+        log.info("Migrated {} job entity files to the job journal", migrated.size)
+      }
+    })
+    log.info("Recovered {} jobs", recoveredCount)
+    persistTogether(jobIndex.withStatus(JobStatus.RESTARTING).foreach(jobId => updateJob(jobId, jobIdToResultMap(jobId))))
+    self ! RestartJobsRequest()
+    deferred.dequeueAll(_ => true).foreach(p => self.tell(p._1, p._2))
+  }
+
+  /**
+   * Return whether jobId is known. While jobs are being recovered from entity files, an unknown job is read from its file directly.
+   */
+  private def knownJob(jobId: Long): Boolean = jobIdToResultMap.contains(jobId) || (recovering && journal.isEmpty &&
+    pathToJobEntities.map(path => new File(path, jobId + ".entity")).filter(_.isFile).flatMap(readJobFile(_)).map(p => {
+      jobsRecovered(List(p))
+      true
+    }).getOrElse(false))
+
+  /**
+   * Return whether msg must wait for recovery to complete, either because it spans all jobs or because it refers to a job not yet recovered
+   */
+  private def awaitsRecovery(msg: Any): Boolean = recovering && (msg match {
+    case JobsListRequest(_) | JobsCatalogRequest(_, _) | PurgeRequest() | DeleteDefinitionRequest(_) => true
+    case StatusRequest(jobId) => !knownJob(jobId)
+    case ReportDetailRequest(jobId) => !knownJob(jobId)
+    case JobDetailRequest(jobId) => !knownJob(jobId)
+    case JobNotificationRequest(jobId, _, _) => !knownJob(jobId)
+    case DeleteRequest(jobId) => !knownJob(jobId)
+    case ResultRequest(jobId) => !knownJob(jobId)
+    case RenderRequest(jobId, _) => !knownJob(jobId)
+    case CancelRequest(jobId) => !knownJob(jobId)
+    case _ => false
+  })
+
   override def receive = {
-    case req @ ReportRequest(defId, rptType, retentionOption, reportParameters, userName) => reportRequest(req, sender)
+    case msg if awaitsRecovery(msg) => deferred.enqueue((msg, sender))
+    case GeneratorStarted(success) => generatorStarted(success)
+    case JobsRecovered(jobs) => jobsRecovered(jobs)
+    case RecoveryComplete(migrated) => recoveryComplete(migrated)
+    case req @ ReadinessRequest() => sender ! ReadinessResponse(generatorReady, generatorFailed, recovering, recoveredCount, restartQueue.size, restartedCount, req)
+    case req: ReportRequest => reportRequest(req, sender)
+    case req: BatchReportRequest => batchReportRequest(req, sender)
     case req @ DeleteRequest(jobId) => deleteRequest(req, sender)
     case req @ DeleteDefinitionRequest(defId) => deleteDefinitionRequest(req, sender)
     case req @ PurgeRequest() => purgeRequest(req, sender)
@@ -158,21 +452,35 @@ class Coordinator(_pathToJobEntities: Option[String], rptMgr: ReportManager, to:
       sender ! StatusResponse(jobIdToResultMap.get(jobId).map(je => je.getJobStatus) getOrElse (JobStatus.NO_SUCH_JOB), req)
     }
     case req @ ReportDetailRequest(jobId) => {
-      sender ! ReportDetailResponse(jobIdToResultMap.get(jobId).map(je => reportManager.getReport(jobToRptId(je.getJobId)).map(f => f.getEntity)) getOrElse None, req)
+      sender ! ReportDetailResponse(jobIdToResultMap.get(jobId).map(je => reportManager.getReport(Option(je.getRptId) getOrElse jobToRptId(je.getJobId)).map(f => f.getEntity)) getOrElse None, req)
     }
     case req: JobNotificationRequest => jobNotificationRequest(req, sender)
+    case req: RenderRequest => renderRequest(req, sender)
+    case resp: RenderJobResponse => renderJobResponse(resp)
+    case req: CancelRequest => cancelRequest(req, sender)
+    case JobTimedOut(jobId) => cancelJob(jobId, JobStatus.TIMED_OUT)
     case req @ JobDetailRequest(jobId) => {
       sender ! JobDetailResponse(jobIdToResultMap.get(jobId), req)
     }
     case NewWorkerRequest() => spawnWorker()
-    case req @ ResultRequest(jobId) => resultRequest(req, sender)
-    case req @ JobsListRequest() => {
-      val jobsList: Array[String] = jobIdToResultMap.keySet.map({ _.toString }).toArray
-      sender ! JobsListResponse(jobsList, req)
+    case AutoscaleTick() => autoscale()
+    case WorkRequest() => workRequest(sender)
+    case RestartJobsRequest() => handleRestartingJobs()
+    case RestartTick() => restartTick()
+    case req @ QueueStatusRequest() => queueStatusRequest(req, sender)
+    case req @ QueuePositionRequest(jobId) => queuePositionRequest(req, sender)
+    case Terminated(w) => {
+      idleWorkers -= w
+      idleSince -= w
+      workerCount -= 1
+      startedWorkers -= 1
     }
-    case req @ JobsCatalogRequest(jobCatalog) => jobsCatalogRequest(req, sender)
+    case req @ ResultRequest(jobId) => resultRequest(req, sender)
+    case req: JobsListRequest => jobsListRequest(req, sender)
+    case req: JobsCatalogRequest => jobsCatalogRequest(req, sender)
     case resp @ JobResponse(jobStatus, rptId, req) => {
       jobResponse(resp, sender)
+      if (jobStatus != JobStatus.IN_PROGRESS) releaseBulkhead(req.jobId)
     }
     case ShutDownRequest() => {
       log.info("Shutting down")
@@ -182,19 +490,66 @@ class Coordinator(_pathToJobEntities: Option[String], rptMgr: ReportManager, to:
     case msg => log.info("Received unexpected message: {}", msg)
   }
 
+  private def indexJob(jobId: Long, jobEnt: JobEntity) =
+    jobIndex.update(jobId, jobEnt, reportManager.getReport(jobToRptId(jobId)).map(_.getEntity))
+
+  /**
+   * Record a job loaded from persistent storage, marking it for restart if it had not finished
+   */
+  private def loadJob(jobId: Long, jobEnt: JobEntity) {
+    jobIdToResultMap += (jobId -> jobEnt)
+    if (JobIndex.activeStatuses.contains(jobEnt.getJobStatus) && (jobEnt.getRptEntity != null)) {
+      jobEnt.setJobStatus(JobStatus.RESTARTING)
+      noRestartingJobs = false
+    }
+    // Jobs that share another job's output hold it against deletion of that job
+    Option(jobEnt.getRptId).filter(rptId => (jobEnt.getJobStatus == JobStatus.COMPLETE) && (rptId != jobToRptId(jobId))).map(resultCache.alias(_, jobId))
+    indexJob(jobId, jobEnt)
+  }
+
+  override def postStop() {
+    autoscaleTicks.map(_.cancel())
+    restartTicks.map(_.cancel())
+    timeouts.values.map(_.cancel())
+    journal.map(_.close())
+  }
+
+  /** Jobs updated inside persistTogether, to be persisted when it returns */
+  private var deferredWrites: Option[mutable.LinkedHashSet[Long]] = None
+
+  protected def persistTogether[T](body: => T): T = if (deferredWrites.isDefined) body else {
+    deferredWrites = Some(new mutable.LinkedHashSet[Long]())
+    try body finally {
+      val jobIds = deferredWrites.get
+      deferredWrites = None
+      if (journal.isDefined) journal.map(_.appendAll(jobIds.toSeq.flatMap(jobId => jobIdToResultMap.get(jobId).map(jobId -> _))))
+      else jobIds.foreach(jobId => jobIdToResultMap.get(jobId).map(writeJobFile(jobId, _)))
+    }
+  }
+
+  private def writeJobFile(jobId: Long, jobEnt: JobEntity) = pathToJobEntities.map(path => {
+    val jobEntFile = new File(path, jobId + ".entity")
+    // Write a temporary file and rename it over the entity file, so that readers and recovery see the old or new entity in full
+    val tmp = new File(path, jobId + ".entity.tmp")
+    try_(new FileOutputStream(tmp)) { fos =>
+      mapper.writeValue(fos, jobEnt)
+    }
+    // Platforms that cannot rename over an existing file need the old file removed first
+    if (!tmp.renameTo(jobEntFile) && !(jobEntFile.delete && tmp.renameTo(jobEntFile)))
+      throw new IOException("Unable to rename job file " + tmp)
+  })
+
   protected def updateJob(jobId: Long, jobEnt: JobEntity) {
     jobIdToResultMap += (jobId -> jobEnt)
-    pathToJobEntities.map(path => {
-      val jobEntFile = new File(path, jobId + ".entity")
-      jobEntFile.delete
-      jobEntFile.createNewFile
-      try_(new FileOutputStream(jobEntFile, false)) { fos =>
-        mapper.writeValue(fos, jobEnt)
-      }
-    })
-    jobNotificationRequests.foreach(j => {
-      if ((j._2.jobId == jobId) && (j._2.status.map(status => status == jobEnt.getJobStatus) getOrElse (true))) j._1 ! JobNotificationResponse(jobEnt.getJobStatus, j._2)
-    })
+    indexJob(jobId, jobEnt)
+    if (deferredWrites.isDefined) deferredWrites.get += jobId
+    else if (journal.isDefined) journal.map(_.append(jobId, jobEnt))
+    else writeJobFile(jobId, jobEnt)
+    val status = jobEnt.getJobStatus
+    jobNotificationRequests.get(jobId).map(_.filter(j => j._2.status.forall(_ == status) || JobIndex.settled(status, j._2.status)).foreach(j => {
+      j._1 ! JobNotificationResponse(status, j._2)
+      jobNotificationRequests.removeBinding(jobId, j)
+    }))
   }
 
   private var currJobId = System.currentTimeMillis
@@ -208,13 +563,15 @@ class Coordinator(_pathToJobEntities: Option[String], rptMgr: ReportManager, to:
 
 /**
  * Actor that is paired with a Coordinator, and executes report requests.
+ * A Worker asks its Coordinator for work when it starts and again each time it finishes a job.
  */
 class Worker(rptGenerator: ReportGenerator) extends Actor {
 
   private val log = LoggerFactory.getLogger(classOf[Worker])
 
   override def receive = {
-    case req @ JobRequest(defId, rptType, jobId, retentionOption, reportParameters, userName) => jobRequest(req, sender)
+    case req: JobRequest => jobRequest(req, sender)
+    case req: RenderJobRequest => renderJobRequest(req, sender)
 
     case ShutDownRequest() => {
       stopRptGenerator()
@@ -227,6 +584,7 @@ class Worker(rptGenerator: ReportGenerator) extends Actor {
   override def preStart() = {
     log.debug("in start()")
     startRptGenerator()
+    context.parent ! WorkRequest()
   }
 
   private def jobRequest(req: JobRequest, sender: ActorRef) {
@@ -238,7 +596,23 @@ class Worker(rptGenerator: ReportGenerator) extends Actor {
     } catch {
       case ex: Exception => resultStatus = handleReportException(ex)
     }
+    rptId.map(id => req.renditions.filter(_ != req.rptType).distinct.foreach(rptType => renderReport(id, rptType)))
     sender ! JobResponse(resultStatus, rptId, req)
+    sender ! WorkRequest()
+  }
+
+  private def renderJobRequest(req: RenderJobRequest, sender: ActorRef) {
+    sender ! RenderJobResponse(renderReport(req.rptId, req.rptType), req)
+    sender ! WorkRequest()
+  }
+
+  private def renderReport(rptId: String, rptType: ReportType): Option[String] = try {
+    rptGenerator.renderReport(rptId, rptType)
+  } catch {
+    case ex: Exception => {
+      log.error("Caught " + ex.getClass + " exception while rendering report " + rptId + ": {}", ex.getMessage)
+      None
+    }
   }
 
   private def handleReportException(ex: Exception): JobStatus = ex match {
@@ -266,6 +640,10 @@ class Worker(rptGenerator: ReportGenerator) extends Actor {
       log.error("Caught UnsupportedFormatException exception while generating report: {}", ex.getMessage)
       JobStatus.FAILED_UNSUPPORTED_FORMAT
     }
+    case ex: ReportCancelledException => {
+      log.info("Report generation was cancelled: {}", ex.getMessage)
+      JobStatus.CANCELLED
+    }
     case ex: ClassCastException => {
       log.error("Caught ClassCastException exception while generating report: {}", ex.getMessage)
       JobStatus.FAILED_INVALID_PARAMETER_VALUES
@@ -0,0 +1,101 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine
+
+import java.lang.management.ManagementFactory
+import scala.concurrent.duration._
+
+/**
+ * Settings for a [[com.ksmpartners.ernie.engine.Autoscaler]].
+ * @param minWorkers fewest workers kept running
+ * @param maxWorkers most workers ever running
+ * @param scaleUpWait queue wait of the oldest pending job at which workers are added
+ * @param idleCooldown time a worker must sit idle before it may be retired
+ * @param checkInterval time between scaling decisions
+ * @param maxCpuLoad process CPU load, from 0 to 1, at or above which no workers are added
+ * @param maxStep most workers added by a single scaling decision
+ */
+case class AutoscaleSettings(minWorkers: Int = 1, maxWorkers: Int = 50, scaleUpWait: FiniteDuration = 2 seconds,
+    idleCooldown: FiniteDuration = 5 minutes, checkInterval: FiniteDuration = 5 seconds, maxCpuLoad: Double = 0.9, maxStep: Int = 10) {
+  if ((minWorkers < 0) || (maxWorkers < math.max(minWorkers, 1))) throw new IllegalArgumentException("Invalid worker bounds")
+
+  /**
+   * Return workers limited to the range allowed by these settings
+   */
+  def bound(workers: Int): Int = math.min(math.max(workers, minWorkers), maxWorkers)
+}
+
+/**
+ * Companion object for AutoscaleSettings
+ */
+object AutoscaleSettings {
+  /** Default settings, for callers that cannot use default arguments */
+  def defaults = AutoscaleSettings()
+}
+
+/**
+ * Decides how many workers a Coordinator should run. Workers are added while jobs wait longer than scaleUpWait and the process has
+ * CPU to spare, and workers that have been idle for longer than idleCooldown are retired once nothing is waiting.
+ */
+class Autoscaler(val settings: AutoscaleSettings) {
+
+  /**
+   * Return the number of workers wanted.
+   * @param workers the number of workers running
+   * @param pending the number of jobs waiting for a worker
+   * @param oldestWait milliseconds the oldest pending job has waited
+   * @param retirable the number of workers that have been idle for at least idleCooldown
+   * @param cpuLoad the process CPU load from 0 to 1, if known
+   */
+  def target(workers: Int, pending: Int, oldestWait: Long, retirable: Int, cpuLoad: Option[Double]): Int = {
+    val current = settings.bound(workers)
+    if ((pending > 0) && (oldestWait >= settings.scaleUpWait.toMillis) && cpuLoad.forall(_ < settings.maxCpuLoad))
+      settings.bound(current + math.min(pending, settings.maxStep))
+    else if (pending == 0) settings.bound(current - retirable)
+    else current
+  }
+}
+
+/**
+ * Companion object for Autoscaler
+ */
+object Autoscaler {
+
+  /**
+   * getProcessCpuLoad of com.sun.management.OperatingSystemMXBean, which only Java 7 and later JVMs provide. It is looked up
+   * reflectively so that the engine still runs on Java 6.
+   */
+  private lazy val processCpuLoadMethod: Option[java.lang.reflect.Method] = try {
+    Some(Class.forName("com.sun.management.OperatingSystemMXBean").getMethod("getProcessCpuLoad"))
+  } catch {
+    case e: Exception => None
+    case e: LinkageError => None
+  }
+
+  /**
+   * Return the recent CPU load of this process from 0 to 1 if the JVM reports it, or else the system load average per processor,
+   * capped at 1, if the platform reports that.
+   */
+  def processCpuLoad: Option[Double] = {
+    val os = ManagementFactory.getOperatingSystemMXBean
+    processCpuLoadMethod.filter(_.getDeclaringClass.isInstance(os)).flatMap(m => try {
+      Some(m.invoke(os).asInstanceOf[java.lang.Double].doubleValue)
+    } catch {
+      case e: Exception => None
+    }).filter(_ >= 0) orElse Some(os.getSystemLoadAverage).filter(_ >= 0).map(l => math.min(l / os.getAvailableProcessors, 1.0))
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine
+
+import akka.actor.ActorSystem
+import com.typesafe.config.{ ConfigFactory, Config }
+import scala.concurrent.ExecutionContext
+
+/**
+ * Settings for the dispatchers that isolate report generation from job coordination, API callbacks and Coordinator startup.
+ * @param workerThreads number of threads shared by Workers; if None, one per worker
+ * @param pinnedCoordinator whether the Coordinator runs on a thread of its own
+ * @param callbackThreads maximum number of threads that run callbacks of API Futures
+ * @param bulkheads maximum number of jobs that may run at once for the definitions assigned to each named bulkhead
+ */
+case class DispatcherSettings(workerThreads: Option[Int] = None, pinnedCoordinator: Boolean = true, callbackThreads: Int = 4,
+    bulkheads: Map[String, Int] = Map.empty) {
+
+  /**
+   * Return these settings with at most maxJobs jobs at once allowed to run for the definitions assigned to the bulkhead name
+   */
+  def withBulkhead(name: String, maxJobs: Int) = copy(bulkheads = bulkheads + (name -> maxJobs))
+
+  /**
+   * Return the Akka configuration defining the dispatchers, with workers threads used if workerThreads is None
+   */
+  def config(workers: Int): Config = {
+    val threads = math.max(workerThreads getOrElse workers, 1)
+    ConfigFactory.parseString(
+      DispatcherSettings.workerDispatcherId + """ {
+        type = Dispatcher
+        executor = "thread-pool-executor"
+        throughput = 1
+        thread-pool-executor {
+          core-pool-size-min = """ + threads + """
+          core-pool-size-max = """ + threads + """
+          max-pool-size-min = """ + threads + """
+          max-pool-size-max = """ + threads + """
+        }
+      }
+      """ + DispatcherSettings.coordinatorDispatcherId + " { " +
+        (if (pinnedCoordinator) "type = PinnedDispatcher\n executor = \"thread-pool-executor\"" else "type = Dispatcher") + """ }
+      """ + DispatcherSettings.callbackDispatcherId + """ {
+        type = Dispatcher
+        executor = "fork-join-executor"
+        fork-join-executor {
+          parallelism-min = 1
+          parallelism-max = """ + math.max(callbackThreads, 1) + """
+        }
+      }
+      """ + DispatcherSettings.startupDispatcherId + """ {
+        type = Dispatcher
+        executor = "thread-pool-executor"
+        thread-pool-executor {
+          core-pool-size-min = 2
+          core-pool-size-max = 2
+        }
+      }""")
+  }
+}
+
+/**
+ * Companion object for DispatcherSettings containing the dispatcher IDs
+ */
+object DispatcherSettings {
+  val workerDispatcherId = "ernie.worker-dispatcher"
+  val coordinatorDispatcherId = "ernie.coordinator-dispatcher"
+  val callbackDispatcherId = "ernie.callback-dispatcher"
+  /** Runs the blocking report generator startup and job recovery of the Coordinator */
+  val startupDispatcherId = "ernie.startup-dispatcher"
+
+  /** Default settings, for callers that cannot use default arguments */
+  def defaults = DispatcherSettings()
+
+  /**
+   * Return the dispatcher id of system, or None if system does not define it
+   */
+  def dispatcher(system: ActorSystem, id: String): Option[String] = if (system.settings.config.hasPath(id)) Some(id) else None
+
+  /**
+   * Return the execution context of the dispatcher id of system, or the system's default dispatcher if system does not define it
+   */
+  def executionContext(system: ActorSystem, id: String): ExecutionContext =
+    dispatcher(system, id).map(system.dispatchers.lookup(_)) getOrElse system.dispatcher
+}
@@ -18,7 +18,7 @@ package com.ksmpartners.ernie.engine
 
 import scala.collection.{ JavaConversions, mutable }
 import com.ksmpartners.ernie.model.{ JobEntity, ReportEntity, JobStatus, DeleteStatus, JobCatalog }
-import org.joda.time.DateTime
+import org.joda.time.{ Days, DateTime }
 import com.ksmpartners.ernie.engine.report.ReportManager
 import Coordinator._
 import com.ksmpartners.ernie.util.Utility._
@@ -27,32 +27,72 @@ import scala.Some
 import akka.actor._
 import akka.util.Timeout
 import scala.concurrent.Promise
+import scala.concurrent.duration._
 
 /**
  * Template for a [[com.ksmpartners.ernie.engine.ErnieCoordinator]] that can perform various integral operations
  */
 trait ErnieActions extends ErnieCoordinator {
-  protected def worker: ActorRef
+  protected def dispatch(req: WorkItem)
+  protected def queueFull: Boolean
   protected val jobIdToResultMap: mutable.HashMap[Long, JobEntity]
+  protected val jobIndex: JobIndex
+  protected val resultCache: ResultCache
   implicit val timeout: Timeout
   protected val reportManager: ReportManager
   protected val pathToJobEntities: Option[String]
   protected def generateJobId(): Long
   protected def updateJob(jobId: Long, jobEnt: JobEntity)
-  protected val jobNotificationRequests: mutable.HashMap[ActorRef, JobNotificationRequest]
+  /** Evaluate body, deferring the persistence of jobs it updates until it returns so that they are written together */
+  protected def persistTogether[T](body: => T): T
+  /** Pending job notification requests and their senders, keyed by job ID */
+  protected val jobNotificationRequests: mutable.MultiMap[Long, (ActorRef, JobNotificationRequest)]
+  /** Pending render requests and their senders, keyed by the report ID of the rendition being rendered */
+  protected val renderRequests: mutable.MultiMap[String, (ActorRef, RenderRequest)]
+  /** Remove jobId from the pending job queue, returning true if it was queued */
+  protected def undispatch(jobId: Long): Boolean
+  /** Ask the report generator to stop the run of jobId, returning true if the run was in progress */
+  protected def cancelRunning(jobId: Long): Boolean
+  /** Tell the report generator that the run of jobId has finished, so that a request to stop it that came too late is dropped */
+  protected def runFinished(jobId: Long)
+  /** Whether jobs left RESTARTING by a previous shutdown are still waiting to be put on the restart queue, and so are not held by a worker */
+  protected def restartsAwaitingQueue: Boolean
+  /** Jobs whose runs have been asked to stop, and the status each is to finish with */
+  protected val cancelling: mutable.Map[Long, JobStatus]
 
   /**
    * Process a request for report generation, initiate a job if possible, and respond to sender.
+   * If the pending job queue is full, the request is rejected with FAILED_QUEUE_FULL and no job is recorded.
+   * Parameters are bound with the definition's [[com.ksmpartners.ernie.engine.report.ParameterPlan]], and a job whose parameters are
+   * missing or invalid fails at once rather than on a worker.
+   * If the definition has result caching enabled, a request identical to one whose output is cached completes at once with that output,
+   * and a request identical to one in progress is attached to that run rather than starting another.
    * Response: [[com.ksmpartners.ernie.engine.ReportResponse]]
    */
-  def reportRequest(req: ReportRequest, sender: ActorRef): Long = {
+  def reportRequest(req: ReportRequest, sender: ActorRef): Long = submitReport(req, sender ! _)
+
+  /**
+   * Process a batch of requests for report generation in order, as reportRequest would each one, persisting the new jobs together and
+   * responding to sender once with every job's ID and status.
+   * Response: [[com.ksmpartners.ernie.engine.BatchReportResponse]]
+   */
+  def batchReportRequest(req: BatchReportRequest, sender: ActorRef) {
+    val responses = new mutable.ListBuffer[ReportResponse]()
+    persistTogether(req.requests.foreach(r => submitReport(r, responses += _)))
+    sender ! BatchReportResponse(responses.toList, req)
+  }
+
+  private def submitReport(req: ReportRequest, reply: ReportResponse => Unit): Long = {
     val reportParameters = if (req.reportParameters != null) req.reportParameters else Map.empty[String, String]
     val retentionOption = req.retentionPeriod
     val defId = req.defId
     val userName = req.userName
     val rptType = req.rptType
     val jobId = generateJobId()
-    if (reportManager.getDefinition(defId).isDefined) {
+    if (queueFull) {
+      log.warn("Job queue is full, rejecting request for definition {}", defId)
+      reply(ReportResponse(jobId, JobStatus.FAILED_QUEUE_FULL, req))
+    } else if (reportManager.getDefinition(defId).isDefined) {
       val rptEntity = new ReportEntity()
       rptEntity.setSourceDefId(defId)
       rptEntity.setReportType(rptType)
@@ -60,7 +100,7 @@ trait ErnieActions extends ErnieCoordinator {
       rptEntity.setParams(JavaConversions.asJavaMap(reportParameters))
       rptEntity.setCreatedDate(DateTime.now)
       rptEntity.setCreatedUser(userName)
-      updateJob(jobId, new JobEntity(jobId, JobStatus.IN_PROGRESS, DateTime.now, null, rptEntity))
+      updateJob(jobId, new JobEntity(jobId, JobStatus.PENDING, DateTime.now, null, rptEntity))
       reportManager.getDefinition(defId).map(m => if ((m.getEntity.getUnsupportedReportTypes != null) && m.getEntity.getUnsupportedReportTypes.contains(rptType)) {
         try {
           val jobEnt = jobIdToResultMap.get(jobId).map(je => { je.setJobStatus(JobStatus.FAILED_UNSUPPORTED_FORMAT); je }).get
@@ -70,33 +110,139 @@ trait ErnieActions extends ErnieCoordinator {
             log.error("Caught exception while running report: {}", e.getMessage)
           }
         }
-        sender ! ReportResponse(jobId, JobStatus.FAILED_UNSUPPORTED_FORMAT, req)
+        reply(ReportResponse(jobId, JobStatus.FAILED_UNSUPPORTED_FORMAT, req))
       } else {
         val retentionDate = DateTime.now().plusDays(retentionOption getOrElse reportManager.getDefaultRetentionDays)
-        if (retentionDate.isBefore(DateTime.now()) || retentionDate.isEqual(DateTime.now())) sender ! ReportResponse(jobId, JobStatus.FAILED_RETENTION_DATE_PAST, req)
-        else if (retentionDate.isAfter(DateTime.now().plusDays(reportManager.getMaximumRetentionDays))) sender ! ReportResponse(jobId, JobStatus.FAILED_RETENTION_DATE_EXCEEDS_MAXIMUM, req)
-        else {
-          sender ! ReportResponse(jobId, JobStatus.IN_PROGRESS, req)
-          val w = worker
-          val msg = JobRequest(defId, rptType, jobId, retentionOption, reportParameters, rptEntity.getCreatedUser)
-          w ! msg
+        lazy val parameterFailure = reportManager.getParameterPlan(defId).flatMap(_.check(reportParameters))
+        if (retentionDate.isBefore(DateTime.now()) || retentionDate.isEqual(DateTime.now())) {
+          updateJob(jobId, jobIdToResultMap.get(jobId).map(je => { je.setJobStatus(JobStatus.FAILED_RETENTION_DATE_PAST); je }).get)
+          reply(ReportResponse(jobId, JobStatus.FAILED_RETENTION_DATE_PAST, req))
+        } else if (retentionDate.isAfter(DateTime.now().plusDays(reportManager.getMaximumRetentionDays))) {
+          updateJob(jobId, jobIdToResultMap.get(jobId).map(je => { je.setJobStatus(JobStatus.FAILED_RETENTION_DATE_EXCEEDS_MAXIMUM); je }).get)
+          reply(ReportResponse(jobId, JobStatus.FAILED_RETENTION_DATE_EXCEEDS_MAXIMUM, req))
+        } else if (parameterFailure.isDefined) {
+          // Parameters that cannot be bound would fail on a worker, so the job fails before it is queued
+          log.info("Rejecting jobId " + jobId + " with invalid parameters: {}", parameterFailure.get)
+          updateJob(jobId, jobIdToResultMap.get(jobId).map(je => { je.setJobStatus(parameterFailure.get); je }).get)
+          reply(ReportResponse(jobId, parameterFailure.get, req))
+        } else {
+          val cacheKey = m.getResultCacheSeconds.map(ttl => (ResultCache.key(defId, reportManager.getDefinitionVersion(defId), rptType, reportParameters), ttl))
+          cacheKey.flatMap(k => resultCache.result(k._1)).filter(reportManager.hasReport(_)) match {
+            case Some(rptId) => {
+              log.debug("Answering jobId {} with cached report {}", jobId, rptId)
+              resultCache.alias(rptId, jobId)
+              retainShared(rptId, retentionDate)
+              updateJob(jobId, jobIdToResultMap.get(jobId).map(je => {
+                je.setJobStatus(JobStatus.COMPLETE)
+                je.setRptId(rptId)
+                je.setRptEntity(null)
+                je
+              }).get)
+              reply(ReportResponse(jobId, JobStatus.COMPLETE, req))
+            }
+            case None => {
+              reply(ReportResponse(jobId, JobStatus.PENDING, req))
+              cacheKey.flatMap(k => resultCache.running(k._1)) match {
+                case Some(leader) => {
+                  log.debug("Attaching jobId {} to identical jobId {}", jobId, leader)
+                  resultCache.attach(leader, jobId)
+                }
+                case None => {
+                  cacheKey.map(k => resultCache.start(k._1, defId, jobId, k._2))
+                  dispatch(JobRequest(defId, rptType, jobId, retentionOption, reportParameters, rptEntity.getCreatedUser, req.renditions,
+                    req.timeout orElse m.getTimeoutSeconds.map(_.seconds), m.getBulkhead))
+                }
+              }
+            }
+          }
         }
       })
     } else {
       updateJob(jobId, new JobEntity(jobId, JobStatus.FAILED_NO_SUCH_DEFINITION, DateTime.now, null, null))
-      sender ! ReportResponse(jobId, JobStatus.FAILED_NO_SUCH_DEFINITION, req)
+      reply(ReportResponse(jobId, JobStatus.FAILED_NO_SUCH_DEFINITION, req))
     }
     jobId
   }
 
   /**
-   * Process a request for job status notification
+   * Process a request for job status notification, responding at once if the notification is already due and otherwise registering it
+   * until the job's status changes. Registering a request drops the job's registrations whose requesters have stopped, such as asks that
+   * timed out before a long-poll or event stream re-armed, so that repeated waits on an idle job do not pile up.
+   * Response: [[com.ksmpartners.ernie.engine.JobNotificationResponse]]
+   */
+  def jobNotificationRequest(req: JobNotificationRequest, sender: ActorRef) = jobIdToResultMap.get(req.jobId).map(_.getJobStatus) match {
+    case None => sender ! JobNotificationResponse(JobStatus.NO_SUCH_JOB, req)
+    case Some(status) if (req.status.exists(_ == status) || req.current.exists(_ != status) || JobIndex.settled(status, req.status)) =>
+      sender ! JobNotificationResponse(status, req)
+    case _ => {
+      jobNotificationRequests.get(req.jobId).map(_.filter(_._1.isTerminated).foreach(jobNotificationRequests.removeBinding(req.jobId, _)))
+      jobNotificationRequests.addBinding(req.jobId, (sender, req))
+    }
+  }
+
+  /**
+   * Process a request to cancel a job and respond to sender.
+   * Response: [[com.ksmpartners.ernie.engine.CancelResponse]]
    */
-  def jobNotificationRequest(req: JobNotificationRequest, sender: ActorRef) = {
-    if (jobIdToResultMap.find(p => p._1 == req.jobId).isEmpty) sender ! JobNotificationResponse(JobStatus.NO_SUCH_JOB, req)
-    jobNotificationRequests += (sender -> req)
+  def cancelRequest(req: CancelRequest, sender: ActorRef) {
+    sender ! CancelResponse(cancelJob(req.jobId, JobStatus.CANCELLED), req)
   }
 
+  /**
+   * Stop jobId and mark it with status, which is CANCELLED or TIMED_OUT. A job that is queued, waiting on an identical run, or waiting to
+   * be restarted is marked at once. A job that has been handed to a worker, including a restarted one, is asked to stop, and is marked
+   * once the worker reports back.
+   * @return the status of the job: status if it was marked at once, IN_PROGRESS if it has been asked to stop, NO_SUCH_JOB if it does
+   *         not exist, or the status of a job that had already finished
+   */
+  protected def cancelJob(jobId: Long, status: JobStatus): JobStatus = jobIdToResultMap.get(jobId).map(_.getJobStatus) match {
+    case None => JobStatus.NO_SUCH_JOB
+    case Some(current) if (JobIndex.activeStatuses.contains(current)) => {
+      if (undispatch(jobId)) {
+        log.info("Cancelled queued jobId {}", jobId)
+        markCancelled(jobId, status)
+        redispatch(jobId, status)
+        status
+      } else if (resultCache.detach(jobId) || ((current == JobStatus.RESTARTING) && restartsAwaitingQueue)) {
+        log.info("Cancelled waiting jobId {}", jobId)
+        markCancelled(jobId, status)
+        status
+      } else {
+        log.info("Stopping jobId {} as {}", jobId, status)
+        if (!cancelling.contains(jobId)) cancelling += (jobId -> status)
+        cancelRunning(jobId)
+        JobStatus.IN_PROGRESS
+      }
+    }
+    case Some(current) => current
+  }
+
+  private def markCancelled(jobId: Long, status: JobStatus) = jobIdToResultMap.get(jobId).map(je => {
+    je.setJobStatus(status)
+    je.setRptId(null)
+    je.setRptEntity(null)
+    updateJob(jobId, je)
+  })
+
+  /**
+   * Handle the jobs that were attached to the run of leader, which stopped with status: a run that timed out is taken to time out for
+   * every job attached to it, but a cancelled run is handed to the earliest attached job, which is queued to run for the others.
+   */
+  private def redispatch(leader: Long, status: JobStatus) =
+    if (status == JobStatus.TIMED_OUT) resultCache.finish(leader, None, None).foreach(markCancelled(_, status))
+    else resultCache.handOver(leader).flatMap(next => jobIdToResultMap.get(next).flatMap(jobRequestFor(next, _))).map(dispatch(_))
+
+  /**
+   * Rebuild the JobRequest for a job that has not finished from its pending ReportEntity. The definition's timeout and bulkhead apply.
+   */
+  protected def jobRequestFor(jobId: Long, jobEnt: JobEntity): Option[JobRequest] = Option(jobEnt.getRptEntity).map(rpt => {
+    val defn = reportManager.getDefinition(rpt.getSourceDefId)
+    // Count calendar days so that the rerun keeps the retention date the job was submitted with
+    JobRequest(rpt.getSourceDefId, rpt.getReportType, jobId, Some(Days.daysBetween(DateTime.now.toLocalDate, rpt.getRetentionDate.toLocalDate).getDays),
+      if (rpt.getParams != null) JavaConversions.mapAsScalaMap(rpt.getParams).toMap else Map.empty[String, String], rpt.getCreatedUser,
+      timeout = defn.flatMap(_.getTimeoutSeconds).map(_.seconds), bulkhead = defn.flatMap(_.getBulkhead))
+  })
+
   /**
    * Process a request for report output deletion, perform the deletion, and respond to sender.
    * Response: [[com.ksmpartners.ernie.engine.DeleteResponse]]
@@ -107,7 +253,7 @@ trait ErnieActions extends ErnieCoordinator {
       if ((jobIdToResultMap.get(jobId).map(je => je.getJobStatus).getOrElse(null) == JobStatus.COMPLETE) &&
         (jobIdToResultMap.get(jobId).map(je => je.getRptId).map(f => f != "").getOrElse(false))) {
         try {
-          reportManager.deleteReport(jobIdToResultMap.get(jobId).map(je => je.getRptId).get)
+          release(jobId, jobIdToResultMap.get(jobId).map(je => je.getRptId).get)
           updateJob(jobId, jobIdToResultMap.get(jobId).map(je => { je.setJobStatus(JobStatus.DELETED); je }).get)
           sender ! DeleteResponse(jobIdToResultMap.get(jobId).map(je => je.getJobStatus match {
             case JobStatus.DELETED => DeleteStatus.SUCCESS
@@ -132,15 +278,11 @@ trait ErnieActions extends ErnieCoordinator {
    */
   def deleteDefinitionRequest(req: DeleteDefinitionRequest, sender: ActorRef) {
     val defId = req.defId
-    if (jobIdToResultMap.find(p => {
-      val defIdOpt = if (p._2.getRptEntity != null) Some(p._2.getRptEntity.getSourceDefId)
-      else reportManager.getReport(p._2.getRptId).map(r => r.getSourceDefId)
-      if (defIdOpt.isDefined) (defIdOpt.get == defId) && ((p._2.getJobStatus == JobStatus.IN_PROGRESS) || (p._2.getJobStatus == JobStatus.PENDING) || (p._2.getJobStatus == JobStatus.RESTARTING))
-      else false
-    }).isDefined) {
+    if (jobIndex.forDefinition(defId).exists(jobId => jobIndex.status(jobId).exists(JobIndex.activeStatuses.contains(_)))) {
       sender ! DeleteDefinitionResponse(DeleteStatus.FAILED_IN_USE, req)
     } else try {
       reportManager.deleteDefinition(defId)
+      resultCache.definitionDeleted(defId)
       sender ! DeleteDefinitionResponse(DeleteStatus.SUCCESS, req)
     } catch { case _ => sender ! DeleteDefinitionResponse(DeleteStatus.FAILED, req) }
   }
@@ -152,9 +294,11 @@ trait ErnieActions extends ErnieCoordinator {
   def purgeRequest(req: PurgeRequest, sender: ActorRef) {
     var purgedReports: List[String] = Nil
     var deleteStatus = DeleteStatus.SUCCESS
-    jobIdToResultMap.foreach(f => if ((f._2 != null)) {
+    jobIndex.retentionBefore(DateTime.now).flatMap(jobId => jobIdToResultMap.get(jobId).map(jobId -> _)).foreach(f => if ((f._2 != null)) {
       val rptOpt = reportManager.getReport(jobToRptId(f._1))
-      if (((f._2.getJobStatus == JobStatus.COMPLETE) || (f._2.getJobStatus == JobStatus.EXPIRED)) && (rptOpt isDefined)) {
+      // A deleted job's output that still exists is held by the jobs sharing it, and is purged once it expires
+      if (((f._2.getJobStatus == JobStatus.COMPLETE) || (f._2.getJobStatus == JobStatus.EXPIRED) || (f._2.getJobStatus == JobStatus.DELETED)) &&
+        (rptOpt isDefined)) {
         val rptId = rptOpt.get.getRptId
 
         if (reportManager.getReport(rptId).isDefined) {
@@ -162,6 +306,7 @@ trait ErnieActions extends ErnieCoordinator {
             purgedReports ::= rptId
             try {
               reportManager.deleteReport(rptId)
+              reportDeleted(rptId)
               updateJob(f._1, jobIdToResultMap.get(f._1).map(je => { je.setJobStatus(JobStatus.DELETED); je }).get)
             } catch {
               case e: NoSuchElementException => {
@@ -197,52 +342,155 @@ trait ErnieActions extends ErnieCoordinator {
   }
 
   /**
-   * Process a request to retrieve a job catalog.
+   * Process a request for a job's output in a given format. Output already in that format is returned at once; otherwise the job's
+   * stored report document, if it has one, is queued for rendering. Concurrent requests for the same rendition share one render.
+   * Response: [[com.ksmpartners.ernie.engine.RenderResponse]]
+   */
+  def renderRequest(req: RenderRequest, sender: ActorRef) {
+    val rpt = jobIdToResultMap.get(req.jobId).filter(_.getJobStatus == JobStatus.COMPLETE).flatMap(je => Option(je.getRptId)).flatMap(reportManager.getReport(_))
+    rpt match {
+      case Some(r) if (r.getReportType == req.rptType) => sender ! RenderResponse(Some(r.getRptId), req)
+      case Some(r) => {
+        val renditionId = ReportManager.renditionId(r.getRptId, req.rptType)
+        if (reportManager.hasReport(renditionId)) sender ! RenderResponse(Some(renditionId), req)
+        else if (!reportManager.getReportDocument(r.getRptId).isFile) sender ! RenderResponse(None, req)
+        else {
+          if (!renderRequests.contains(renditionId)) dispatch(RenderJobRequest(req.jobId, r.getRptId, req.rptType))
+          renderRequests.addBinding(renditionId, (sender, req))
+        }
+      }
+      case None => sender ! RenderResponse(None, req)
+    }
+  }
+
+  /**
+   * Process a message from a [[com.ksmpartners.ernie.engine.Worker]] that has rendered a report document, answering every request
+   * waiting on the rendition.
+   */
+  def renderJobResponse(resp: RenderJobResponse) {
+    renderRequests.remove(ReportManager.renditionId(resp.req.rptId, resp.req.rptType)).map(_.foreach(r => r._1 ! RenderResponse(resp.renditionId, r._2)))
+  }
+
+  /**
+   * Process a request to retrieve a page of job IDs.
+   * Response: [[com.ksmpartners.ernie.engine.JobsListResponse]]
+   */
+  def jobsListRequest(req: JobsListRequest, sender: ActorRef) {
+    val (page, nextCursor) = selectJobs(None, req.query)
+    sender ! JobsListResponse(page.map(_.toString).toArray, req, nextCursor)
+  }
+
+  /**
+   * Process a request to retrieve a page of a job catalog.
    * Response: [[com.ksmpartners.ernie.engine.JobsCatalogResponse]]
    */
   def jobsCatalogRequest(req: JobsCatalogRequest, sender: ActorRef) {
-    val jobCatalog = req.jobCatalog
-    val jobsList: List[JobEntity] = if (jobCatalog.isDefined) jobCatalog.getOrElse(null) match {
-      case JobCatalog.FAILED => jobIdToResultMap.filter(f => f._2.getJobStatus match {
-        case JobStatus.FAILED => true
-        case JobStatus.FAILED_INVALID_PARAMETER_VALUES => true
-        case JobStatus.FAILED_NO_SUCH_DEFINITION => true
-        case JobStatus.FAILED_PARAMETER_NULL => true
-        case JobStatus.FAILED_RETENTION_DATE_EXCEEDS_MAXIMUM => true
-        case JobStatus.FAILED_RETENTION_DATE_PAST => true
-        case JobStatus.FAILED_UNSUPPORTED_FORMAT => true
-        case JobStatus.FAILED_UNSUPPORTED_PARAMETER_TYPE => true
-        case _ => false
-      }).map(f => f._2).toList
-      case JobCatalog.COMPLETE => jobIdToResultMap.filter(f => f._2.getJobStatus == JobStatus.COMPLETE).map(f => f._2).toList
-      case JobCatalog.DELETED => jobIdToResultMap.filter(f => f._2.getJobStatus == JobStatus.DELETED).map(f => f._2).toList
-      case JobCatalog.IN_PROGRESS => jobIdToResultMap.filter(f => f._2.getJobStatus == JobStatus.IN_PROGRESS).map(f => f._2).toList
-      case JobCatalog.EXPIRED => jobIdToResultMap.filter(f => {
-        val rptOpt = reportManager.getReport(f._2.getRptId)
-        rptOpt.map(rpt => DateTime.now.isAfter(rpt.getRetentionDate)).getOrElse(false)
-      }).map(f => f._2).toList
-      case _ => jobIdToResultMap.map(f => f._2).toList
+    val (page, nextCursor) = selectJobs(req.jobCatalog, req.query)
+    sender ! JobsCatalogResponse(page.flatMap(jobIdToResultMap.get(_)), req, nextCursor)
+  }
+
+  /**
+   * Return the IDs of the jobs in catalog that match query, at most query.limit of them, and the cursor of the following page if
+   * more jobs match. Only as many jobs as the page needs are visited when the query's filters are not selective.
+   */
+  protected def selectJobs(catalog: Option[JobCatalog], query: JobQuery): (List[Long], Option[Long]) = {
+    val catalogStatuses = catalog.filter(_ != JobCatalog.EXPIRED).map(JobIndex.catalogStatuses(_).toSet)
+    val statuses = catalogStatuses.map(c => if (query.statuses.isEmpty) c else c & query.statuses) getOrElse query.statuses
+    if (catalogStatuses.isDefined && statuses.isEmpty) (Nil, None)
+    else {
+      val expired = catalog.filter(_ == JobCatalog.EXPIRED).map(c => jobIndex.inCatalog(c))
+      val matching = jobIndex.select(query.copy(statuses = statuses), expired).filter(jobId => jobIdToResultMap.get(jobId).exists(je =>
+        expired.isEmpty || reportManager.getReport(je.getRptId).map(rpt => DateTime.now.isAfter(rpt.getRetentionDate)).getOrElse(false)))
+      query.limit.map(limit => {
+        val page = matching.take(limit + 1).toList
+        if (page.size > limit) (page.take(limit), Some(page(limit - 1))) else (page, None)
+      }) getOrElse (matching.toList, None)
     }
-    else jobIdToResultMap.map(f => f._2).toList
-    sender ! JobsCatalogResponse(jobsList, req)
   }
 
+  /**
+   * Record that jobId, which is being deleted, no longer holds its output rptId, and delete the output once no job holds it. The job that
+   * produced an output holds it while it is COMPLETE, and the jobs answered from the result cache or attached to its run hold it while
+   * they share it, so deleting any one of them leaves the output to the others.
+   * @return true if the output was deleted
+   */
+  private def release(jobId: Long, rptId: String): Boolean = {
+    resultCache.unalias(rptId, jobId)
+    val producer = scala.util.Try(rptToJobId(rptId)).toOption.filter(_ != jobId)
+    val held = resultCache.sharing(rptId).nonEmpty || producer.exists(id => jobIdToResultMap.get(id).exists(_.getJobStatus == JobStatus.COMPLETE))
+    if (held) log.info("Keeping output " + rptId + " of deleted jobId {} for the jobs sharing it", jobId)
+    else {
+      reportManager.deleteReport(rptId)
+      reportDeleted(rptId)
+    }
+    !held
+  }
+
+  /**
+   * Mark the jobs that shared the output of rptId, which has been deleted, as deleted
+   */
+  protected def reportDeleted(rptId: String) = resultCache.reportDeleted(rptId).foreach(jobId => jobIdToResultMap.get(jobId).filter(je =>
+    je.getJobStatus == JobStatus.COMPLETE).map(je => {
+    je.setJobStatus(JobStatus.DELETED)
+    updateJob(jobId, je)
+  }))
+
+  /**
+   * Extend the retention date of the shared report rptId to retentionDate if that is later, so that a job answered from the result cache
+   * or attached to another job's run keeps the output for as long as its own request asked. The report keeps the creator of the job
+   * that produced it.
+   */
+  private def retainShared(rptId: String, retentionDate: DateTime) = reportManager.getReport(rptId)
+    .filter(r => (r.getRetentionDate != null) && r.getRetentionDate.isBefore(retentionDate)).map(r => try {
+      log.debug("Extending retention of shared report " + rptId + " to {}", retentionDate)
+      reportManager.updateReportEntity(Map(ReportManager.rptId -> rptId, ReportManager.sourceDefId -> r.getSourceDefId,
+        ReportManager.reportType -> r.getReportType, ReportManager.createdUser -> r.getCreatedUser, ReportManager.retentionDate -> retentionDate,
+        ReportManager.paramMap -> r.getParams) ++ Option(r.getStartDate).map(ReportManager.startDate -> _) ++
+        Option(r.getFinishDate).map(ReportManager.finishDate -> _))
+    } catch {
+      case e: Exception => log.warn("Unable to extend retention of shared report " + rptId + ": {}", e.getMessage)
+    })
+
   /**
    * Process a message from a [[com.ksmpartners.ernie.engine.Worker]] that has completed a report generation job.
+   * Jobs attached to the job's run by the result cache take on the same status and output, which is kept until the latest retention date
+   * any of them asked for. A job that was asked to stop and did not complete takes the status it was stopped with. A job already marked
+   * CANCELLED or TIMED_OUT keeps that status.
    * @return the status of the job.
    */
   def jobResponse(resp: JobResponse, sender: ActorRef) = {
     val req = resp.req
-    val jobStatus = resp.jobStatus
+    val jobStatus = if ((resp.jobStatus == JobStatus.IN_PROGRESS) || (resp.jobStatus == JobStatus.COMPLETE)) resp.jobStatus
+    else cancelling.get(req.jobId) getOrElse resp.jobStatus
+    if (jobStatus != JobStatus.IN_PROGRESS) {
+      cancelling -= req.jobId
+      runFinished(req.jobId)
+    }
+    val stopped = jobIdToResultMap.get(req.jobId).exists(je => (je.getJobStatus == JobStatus.CANCELLED) || (je.getJobStatus == JobStatus.TIMED_OUT))
+    if (stopped) log.info("Keeping status of stopped jobId {} over reported {}", req.jobId, jobStatus)
     val rptId = resp.rptId
     log.info("Got notify for jobId {} with status {}", req.jobId, jobStatus)
-    try {
-      updateJob(req.jobId, jobIdToResultMap.get(req.jobId).map(je => { je.setJobStatus(jobStatus); je.setRptId(rptId.getOrElse(null)); je.setRptEntity(null); je }).get)
+    val retentionDate = jobIdToResultMap.get(req.jobId).flatMap(je => Option(je.getRptEntity)).flatMap(r => Option(r.getRetentionDate)).map(_.getMillis)
+    val sharingJobs = if (jobStatus == JobStatus.IN_PROGRESS) resultCache.attached(req.jobId)
+    else if (jobStatus == JobStatus.CANCELLED) {
+      redispatch(req.jobId, jobStatus)
+      Set.empty[Long]
+    } else resultCache.finish(req.jobId, rptId.filter(_ => jobStatus == JobStatus.COMPLETE), retentionDate)
+    if (jobStatus == JobStatus.COMPLETE) rptId.map(id => sharingJobs.flatMap(jobId => jobIdToResultMap.get(jobId)).flatMap(je => Option(je.getRptEntity))
+      .flatMap(r => Option(r.getRetentionDate)).reduceOption((a, b) => if (a.isAfter(b)) a else b).map(retainShared(id, _)))
+    ((if (stopped) Nil else List(req.jobId)) ++ sharingJobs.toList).foreach(jobId => try {
+      updateJob(jobId, jobIdToResultMap.get(jobId).map(je => {
+        je.setJobStatus(jobStatus)
+        je.setRptId(rptId.getOrElse(null))
+        // Keep the request until the job finishes so that an interrupted job can be restarted
+        if (jobStatus != JobStatus.IN_PROGRESS) je.setRptEntity(null)
+        je
+      }).get)
     } catch {
       case e: Exception => {
         log.error("Caught exception while running report: {}", e.getMessage)
       }
-    }
+    })
     if (jobStatus == JobStatus.FAILED_UNSUPPORTED_FORMAT) reportManager.getDefinition(req.defId).map(defn =>
       {
         val entity = defn.getEntity
@@ -0,0 +1,205 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine
+
+import scala.collection.mutable
+import scala.collection.JavaConversions._
+import com.ksmpartners.ernie.model.{ JobCatalog, ReportEntity, JobEntity, JobStatus }
+import org.joda.time.DateTime
+
+/**
+ * Secondary indexes over a job table, keyed by job status, source definition, creating user, submission date and retention date,
+ * together with the ordered set of all job IDs used to page through the table.
+ * JobEntities are mutated in place before they are passed to [[com.ksmpartners.ernie.engine.JobIndex.update]], so the keys each job was
+ * last indexed under are kept separately. This class is not thread safe; it is meant to be owned by a single Coordinator.
+ */
+class JobIndex {
+
+  private case class Keys(status: JobStatus, defId: Option[String], user: Option[String], submitDate: Option[Long], retentionDate: Option[Long])
+
+  private val keys = new mutable.HashMap[Long, Keys]()
+  private val byStatus = new mutable.HashMap[JobStatus, mutable.Set[Long]] with mutable.MultiMap[JobStatus, Long]
+  private val byDefId = new mutable.HashMap[String, mutable.Set[Long]] with mutable.MultiMap[String, Long]
+  private val byUser = new mutable.HashMap[String, mutable.Set[Long]] with mutable.MultiMap[String, Long]
+  private val bySubmitDate = new java.util.TreeMap[java.lang.Long, mutable.Set[Long]]()
+  private val byRetentionDate = new java.util.TreeMap[java.lang.Long, mutable.Set[Long]]()
+  private val ordered = new java.util.TreeSet[java.lang.Long]()
+
+  /**
+   * Index or re-index jobId. Keys are taken from the job's pending ReportEntity if it has one, then from report, then from the
+   * keys the job was previously indexed under.
+   * @param report the job's report output metadata; only evaluated if the job has no pending ReportEntity
+   */
+  def update(jobId: Long, jobEnt: JobEntity, report: => Option[ReportEntity]) {
+    val prev = keys.get(jobId)
+    val rptEnt = Option(jobEnt.getRptEntity) orElse report
+    val next = Keys(jobEnt.getJobStatus,
+      rptEnt.flatMap(r => Option(r.getSourceDefId)) orElse prev.flatMap(_.defId),
+      rptEnt.flatMap(r => Option(r.getCreatedUser)) orElse prev.flatMap(_.user),
+      Option(jobEnt.getSubmitDate).map(_.getMillis) orElse prev.flatMap(_.submitDate),
+      rptEnt.flatMap(r => Option(r.getRetentionDate)).map(_.getMillis) orElse prev.flatMap(_.retentionDate))
+    if (prev.isEmpty) ordered.add(jobId)
+    if (prev != Some(next)) {
+      prev.map(unindex(jobId, _))
+      index(jobId, next)
+      keys += (jobId -> next)
+    }
+  }
+
+  private def index(jobId: Long, k: Keys) {
+    if (k.status != null) byStatus.addBinding(k.status, jobId)
+    k.defId.map(byDefId.addBinding(_, jobId))
+    k.user.map(byUser.addBinding(_, jobId))
+    k.submitDate.map(bind(bySubmitDate, _, jobId))
+    k.retentionDate.map(bind(byRetentionDate, _, jobId))
+  }
+
+  private def unindex(jobId: Long, k: Keys) {
+    if (k.status != null) byStatus.removeBinding(k.status, jobId)
+    k.defId.map(byDefId.removeBinding(_, jobId))
+    k.user.map(byUser.removeBinding(_, jobId))
+    k.submitDate.map(unbind(bySubmitDate, _, jobId))
+    k.retentionDate.map(unbind(byRetentionDate, _, jobId))
+  }
+
+  private def bind(byDate: java.util.TreeMap[java.lang.Long, mutable.Set[Long]], date: Long, jobId: Long) {
+    if (!byDate.containsKey(date)) byDate.put(date, mutable.HashSet.empty[Long])
+    byDate.get(date) += jobId
+  }
+
+  private def unbind(byDate: java.util.TreeMap[java.lang.Long, mutable.Set[Long]], date: Long, jobId: Long) {
+    Option(byDate.get(date)).map(ids => {
+      ids -= jobId
+      if (ids.isEmpty) byDate.remove(date)
+    })
+  }
+
+  /**
+   * Return the IDs of all jobs whose status is one of statuses
+   */
+  def withStatus(statuses: JobStatus*): Set[Long] = statuses.flatMap(s => byStatus.getOrElse(s, Nil)).toSet
+
+  /**
+   * Return the IDs of all jobs in catalog
+   */
+  def inCatalog(catalog: JobCatalog): Set[Long] = catalog match {
+    case JobCatalog.EXPIRED => retentionBefore(DateTime.now)
+    case c => withStatus(JobIndex.catalogStatuses(c): _*)
+  }
+
+  /**
+   * Return the IDs of all jobs generated from defId
+   */
+  def forDefinition(defId: String): Set[Long] = byDefId.get(defId).map(_.toSet) getOrElse Set.empty[Long]
+
+  /**
+   * Return the IDs of all jobs created by user
+   */
+  def forUser(user: String): Set[Long] = byUser.get(user).map(_.toSet) getOrElse Set.empty[Long]
+
+  /**
+   * Return the IDs of all jobs whose retention date is before date
+   */
+  def retentionBefore(date: DateTime): Set[Long] = byRetentionDate.headMap(date.getMillis, false).values.flatten.toSet
+
+  /**
+   * Return the view of the submission date index that falls within the submission range of query
+   */
+  private def submittedIn(query: JobQuery): java.util.NavigableMap[java.lang.Long, mutable.Set[Long]] = {
+    val from = query.submittedFrom.map(d => bySubmitDate.tailMap(d.getMillis, true)) getOrElse bySubmitDate
+    query.submittedTo.map(d => from.headMap(d.getMillis, false)) getOrElse from
+  }
+
+  /**
+   * Return the IDs of the jobs whose indexed keys match the statuses, defId, user and submission range of query, in the order of query
+   * and starting after its cursor. The IDs are drawn from the smallest matching index when it holds a small share of all jobs, and
+   * otherwise by walking every job ID in order, so that taking a page never sorts a large part of the table. A submission range is
+   * matched through the range view of the submission date index.
+   * @param within if defined, only return jobs in this set
+   */
+  def select(query: JobQuery, within: Option[Set[Long]] = None): Iterator[Long] = {
+    val candidates: List[(Int, () => Iterable[Long])] = List(
+      if (query.statuses.isEmpty) None
+      else Some((query.statuses.toList.map(byStatus.get(_).map(_.size) getOrElse 0).sum, () => withStatus(query.statuses.toSeq: _*))),
+      query.defId.map(d => (byDefId.get(d).map(_.size) getOrElse 0, () => forDefinition(d))),
+      query.user.map(u => (byUser.get(u).map(_.size) getOrElse 0, () => forUser(u))),
+      if (query.submittedFrom.isEmpty && query.submittedTo.isEmpty) None
+      else Some(submittedIn(query)).map(range => (range.values.map(_.size).sum, () => range.values.flatten)),
+      within.map(w => (w.size, () => w))).flatten
+    val ids: java.util.NavigableSet[java.lang.Long] =
+      if (candidates.isEmpty || (candidates.map(_._1).min > keys.size / JobIndex.sortShare)) ordered
+      else {
+        val sorted = new java.util.TreeSet[java.lang.Long]()
+        candidates.minBy(_._1)._2().foreach(sorted.add(_))
+        sorted
+      }
+    val from = query.cursor.map(c => if (query.descending) ids.headSet(c, false) else ids.tailSet(c, false)) getOrElse ids
+    val it: Iterator[java.lang.Long] = if (query.descending) from.descendingIterator else from.iterator
+    it.map(_.longValue).filter(jobId => within.forall(_.contains(jobId)) && keys.get(jobId).exists(k =>
+      (query.statuses.isEmpty || query.statuses.contains(k.status)) && query.defId.forall(k.defId == Some(_)) &&
+        query.user.forall(k.user == Some(_)) && query.submittedWithin(k.submitDate.map(new DateTime(_)).orNull)))
+  }
+
+  /**
+   * Return the status jobId was last indexed with
+   */
+  def status(jobId: Long): Option[JobStatus] = keys.get(jobId).map(_.status)
+
+  /**
+   * Return the source definition jobId was last indexed with
+   */
+  def definition(jobId: Long): Option[String] = keys.get(jobId).flatMap(_.defId)
+}
+
+/**
+ * Companion object for JobIndex containing the job statuses that make up each JobCatalog
+ */
+object JobIndex {
+
+  val failedStatuses = List(JobStatus.FAILED, JobStatus.FAILED_INVALID_PARAMETER_VALUES, JobStatus.FAILED_NO_SUCH_DEFINITION,
+    JobStatus.FAILED_PARAMETER_NULL, JobStatus.FAILED_RETENTION_DATE_EXCEEDS_MAXIMUM, JobStatus.FAILED_RETENTION_DATE_PAST,
+    JobStatus.FAILED_UNSUPPORTED_FORMAT, JobStatus.FAILED_UNSUPPORTED_PARAMETER_TYPE, JobStatus.FAILED_QUEUE_FULL, JobStatus.CANCELLED,
+    JobStatus.TIMED_OUT)
+
+  /** Indexes holding more than one in this many jobs are walked in job ID order by select rather than sorted */
+  val sortShare = 8
+
+  /** Statuses of jobs that have not yet finished */
+  val activeStatuses = List(JobStatus.PENDING, JobStatus.IN_PROGRESS, JobStatus.RESTARTING)
+
+  /**
+   * Return true if a job with status can no longer reach awaited, or can no longer change at all if awaited is None
+   */
+  def settled(status: JobStatus, awaited: Option[JobStatus]): Boolean = status match {
+    case JobStatus.DELETED => true
+    case s if failedStatuses.contains(s) => true
+    case JobStatus.EXPIRED => awaited.exists(a => a == JobStatus.COMPLETE || activeStatuses.contains(a))
+    case JobStatus.COMPLETE => awaited.exists(activeStatuses.contains(_))
+    case _ => false
+  }
+
+  /**
+   * Return the statuses that make up catalog. The EXPIRED catalog depends on retention date rather than status and maps to no statuses.
+   */
+  def catalogStatuses(catalog: JobCatalog): List[JobStatus] = catalog match {
+    case JobCatalog.FAILED => failedStatuses
+    case JobCatalog.COMPLETE => List(JobStatus.COMPLETE)
+    case JobCatalog.DELETED => List(JobStatus.DELETED)
+    case JobCatalog.IN_PROGRESS => List(JobStatus.IN_PROGRESS, JobStatus.PENDING)
+    case _ => Nil
+  }
+}
@@ -0,0 +1,308 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine
+
+import java.io._
+import java.util.concurrent.{ TimeUnit, CountDownLatch, LinkedBlockingQueue }
+import java.util.concurrent.atomic.AtomicInteger
+import scala.collection.mutable
+import scala.concurrent.duration._
+import com.ksmpartners.ernie.model.{ JobEntity, JobStatus }
+import com.ksmpartners.ernie.util.MapperUtility._
+import com.ksmpartners.ernie.util.Utility._
+import org.slf4j.{ LoggerFactory, Logger }
+
+/**
+ * Settings for a [[com.ksmpartners.ernie.engine.JobJournal]].
+ * @param fsyncInterval minimum time between forced writes to disk; if None, every batch is forced to disk before the next is written
+ * @param maxBatchSize maximum number of records written as a single batch
+ * @param segmentSize size in bytes after which the journal rolls over to a new segment file
+ * @param compactAfterSegments number of full segments after which the journal is compacted into a snapshot
+ */
+case class JournalSettings(fsyncInterval: Option[FiniteDuration] = None, maxBatchSize: Int = 256, segmentSize: Long = 16L * 1024 * 1024,
+  compactAfterSegments: Int = 4)
+
+/**
+ * Companion object for JournalSettings
+ */
+object JournalSettings {
+  /** Settings that force every batch to disk, for callers that cannot use default arguments */
+  def defaults = JournalSettings()
+}
+
+/**
+ * Append-only log of JobEntity state, stored in dir as a series of segment files and an optional snapshot.
+ * Each record is one line holding a job ID and the job's JSON serialized JobEntity; the last record for a job ID wins.
+ * Records are serialized on the appending thread and written in batches by a background writer, so callers never block on disk I/O.
+ * When enough segments have filled, a background compactor folds the snapshot and the full segments into a new snapshot holding the
+ * latest readable record of each job that has not been deleted, while the writer goes on appending to the open segment.
+ */
+class JobJournal(dir: File, settings: JournalSettings) {
+
+  private val log: Logger = LoggerFactory.getLogger("com.ksmpartners.ernie.engine.JobJournal")
+
+  private sealed trait Entry
+  private case class Record(line: Array[Byte]) extends Entry
+  private case class Barrier(latch: CountDownLatch) extends Entry
+
+  private val queue = new LinkedBlockingQueue[Entry]()
+  @volatile private var running = false
+  private var writerThread: Option[Thread] = None
+  @volatile private var compactorThread: Option[Thread] = None
+
+  private var segmentSeq = 0L
+  private var segment: Option[FileOutputStream] = None
+  private var segmentBytes = 0L
+  private val fullSegments = new AtomicInteger(0)
+  private var dirty = false
+  private var lastSync = System.currentTimeMillis
+
+  /**
+   * Read the snapshot and all segments in order.
+   * Records are deserialized in parallel, a chunk at a time. Records that cannot be read, such as a record torn by a crash mid-write,
+   * are skipped in favor of the job's previous record.
+   * @return the most recent readable JobEntity for each job ID, in the order the job IDs were first journaled.
+   */
+  def replay(): mutable.LinkedHashMap[Long, JobEntity] = fold(journalFiles(_ => true))((record, jobEnt) => Some(jobEnt))
+
+  /**
+   * Open a new segment and start the background writer. Call after [[com.ksmpartners.ernie.engine.JobJournal.replay]].
+   */
+  def start() = synchronized {
+    if (!running) {
+      if (!(dir.isDirectory && dir.canWrite))
+        throw new IOException("Journal directory does not exist or does not have the correct read/write access: " + dir)
+      dir.listFiles().filter(_.getName.endsWith(".tmp")).foreach(_.delete)
+      fullSegments.set(segments.count(s => snapshot.forall(s._1 >= _._1)))
+      segmentSeq = (segments.map(_._1) ++ snapshot.map(_._1)).foldLeft(0L)(math.max) + 1
+      openSegment()
+      running = true
+      val t = new Thread(new Runnable { def run() { writeLoop() } }, "ernie-job-journal")
+      t.setDaemon(true)
+      t.start()
+      writerThread = Some(t)
+    }
+  }
+
+  /**
+   * Queue the current state of jobEnt for writing. jobEnt is serialized immediately, so it may be mutated once this returns.
+   */
+  def append(jobId: Long, jobEnt: JobEntity) {
+    queue.put(Record((jobId + "\t" + mapper.writeValueAsString(jobEnt) + "\n").getBytes("UTF-8")))
+  }
+
+  /**
+   * Queue the current state of each of jobs for writing as a single record, so that they reach the journal in one write.
+   */
+  def appendAll(jobs: Seq[(Long, JobEntity)]) = if (jobs.nonEmpty) {
+    val buf = new ByteArrayOutputStream()
+    jobs.foreach(p => buf.write((p._1 + "\t" + mapper.writeValueAsString(p._2) + "\n").getBytes("UTF-8")))
+    queue.put(Record(buf.toByteArray))
+  }
+
+  /**
+   * Block until every record appended before this call has been written and forced to disk.
+   */
+  def sync() {
+    if (running) {
+      val latch = new CountDownLatch(1)
+      queue.put(Barrier(latch))
+      latch.await()
+    }
+  }
+
+  /**
+   * Write and force all outstanding records to disk, stop the background writer and wait for any compaction to finish. Segments that
+   * filled while a compaction ran are compacted before this returns.
+   */
+  def close() = synchronized {
+    if (running) {
+      sync()
+      running = false
+      writerThread.map(t => { t.interrupt(); t.join() })
+      writerThread = None
+      compactorThread.map(_.join())
+      compactorThread = None
+      if (fullSegments.get >= settings.compactAfterSegments) compact(segmentSeq)
+      segment.map(_.close)
+      segment = None
+    }
+  }
+
+  private def writeLoop() {
+    val batch = new java.util.ArrayList[Entry]()
+    while (running) try {
+      val first = queue.poll(settings.fsyncInterval.map(_.toMillis).getOrElse(1000L), TimeUnit.MILLISECONDS)
+      if (first != null) {
+        batch.add(first)
+        queue.drainTo(batch, settings.maxBatchSize - 1)
+        writeBatch(batch)
+        batch.clear()
+      }
+      if (dirty && settings.fsyncInterval.exists(i => System.currentTimeMillis - lastSync >= i.toMillis)) force()
+    } catch {
+      case e: InterruptedException => {}
+      case e: Exception => log.error("Caught exception while writing job journal: {}", e.getMessage + "\n" + e.getStackTraceString)
+    }
+  }
+
+  private def writeBatch(batch: java.util.List[Entry]) {
+    val buf = new ByteArrayOutputStream()
+    val barriers = new mutable.ListBuffer[CountDownLatch]()
+    for (i <- 0 until batch.size) batch.get(i) match {
+      case Record(line) => buf.write(line)
+      case Barrier(latch) => barriers += latch
+    }
+    try {
+      if (buf.size > 0) {
+        segment.map(_.write(buf.toByteArray))
+        segmentBytes += buf.size
+        dirty = true
+        if (settings.fsyncInterval.isEmpty) force()
+      }
+      if (barriers.nonEmpty) force()
+      if (segmentBytes >= settings.segmentSize) rollSegment()
+    } finally barriers.foreach(_.countDown)
+  }
+
+  private def force() {
+    segment.map(_.getFD.sync)
+    dirty = false
+    lastSync = System.currentTimeMillis
+  }
+
+  private def openSegment() {
+    segment = Some(new FileOutputStream(new File(dir, JobJournal.segmentPrefix + segmentSeq + JobJournal.suffix), true))
+    segmentBytes = 0L
+  }
+
+  private def rollSegment() {
+    force()
+    segment.map(_.close)
+    segmentSeq += 1
+    openSegment()
+    if ((fullSegments.incrementAndGet() >= settings.compactAfterSegments) && compactorThread.forall(!_.isAlive)) {
+      // Only segments that are already closed are folded, so the writer never waits on a compaction
+      val upTo = segmentSeq
+      val t = new Thread(new Runnable {
+        def run() {
+          try compact(upTo) catch {
+            case e: Exception => log.error("Caught exception while compacting job journal: {}", e.getMessage + "\n" + e.getStackTraceString)
+          }
+        }
+      }, "ernie-job-journal-compactor")
+      t.setDaemon(true)
+      t.start()
+      compactorThread = Some(t)
+    }
+  }
+
+  /**
+   * Fold the snapshot and the segments numbered below upTo, which are all closed, into a new snapshot numbered upTo, then remove the
+   * folded files. The new snapshot keeps the latest readable record of each job, and drops jobs whose latest record marks them DELETED.
+   */
+  private def compact(upTo: Long) {
+    val oldSnapshot = snapshot
+    val oldSegments = segments.filter(s => (s._1 < upTo) && oldSnapshot.forall(s._1 >= _._1))
+    val latest = fold(journalFiles(_ < upTo))((record, jobEnt) => if (jobEnt.getJobStatus == JobStatus.DELETED) None else Some(record))
+    val tmp = new File(dir, JobJournal.snapshotPrefix + upTo + ".tmp")
+    try_(new FileOutputStream(tmp)) { fos =>
+      val out = new BufferedOutputStream(fos)
+      latest.foreach(p => out.write((p._1 + "\t" + p._2 + "\n").getBytes("UTF-8")))
+      out.flush()
+      fos.getFD.sync
+    }
+    if (!tmp.renameTo(new File(dir, JobJournal.snapshotPrefix + upTo + JobJournal.suffix)))
+      throw new IOException("Unable to rename journal snapshot " + tmp)
+    oldSnapshot.map(_._2.delete)
+    oldSegments.foreach(_._2.delete)
+    fullSegments.addAndGet(-oldSegments.size)
+    log.debug("Compacted {} journal segments into a snapshot of {} jobs", oldSegments.size, latest.size)
+  }
+
+  /**
+   * Return the snapshot and the segments written after it whose sequence number satisfies include, in the order they were written
+   */
+  private def journalFiles(include: Long => Boolean): List[File] = {
+    val snap = snapshot
+    snap.map(_._2).toList ++ segments.filter(s => include(s._1) && snap.forall(s._1 >= _._1)).map(_._2)
+  }
+
+  /**
+   * Read files in order and keep one value for each job, computed by keep from the job's latest readable record and its JobEntity.
+   * Records are read and deserialized a chunk at a time, so only the value kept for each job stays in memory.
+   * @param keep the value to keep for a job given its raw record and JobEntity, or None to drop the job
+   * @return the value kept for each job ID, in the order the job IDs were first journaled
+   */
+  private def fold[A](files: List[File])(keep: (String, JobEntity) => Option[A]): mutable.LinkedHashMap[Long, A] = {
+    val latest = new mutable.LinkedHashMap[Long, A]()
+    val chunk = new mutable.ArrayBuffer[(Long, String)]()
+    def flush() {
+      chunk.par.map(r => (r._1, r._2, parse(r._1, r._2))).seq.foreach(r => r._3.map(jobEnt => keep(r._2, jobEnt) match {
+        case Some(value) => latest += (r._1 -> value)
+        case None => latest -= r._1
+      }))
+      chunk.clear()
+    }
+    files.foreach(file => try_(new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) { reader =>
+      var line = reader.readLine
+      while (line != null) {
+        val tab = line.indexOf('\t')
+        if (tab > 0) try {
+          chunk += ((line.substring(0, tab).toLong, line.substring(tab + 1)))
+          if (chunk.size >= JobJournal.parseChunk) flush()
+        } catch {
+          case e: NumberFormatException => log.warn("Skipping malformed journal record in {}", file.getName)
+        }
+        line = reader.readLine
+      }
+    })
+    flush()
+    latest
+  }
+
+  private def parse(jobId: Long, record: String): Option[JobEntity] = try {
+    Some(mapper.readValue(record, classOf[JobEntity]))
+  } catch {
+    case e: Exception => {
+      log.warn("Skipping unreadable journal record for job {}: {}", jobId, e.getMessage)
+      None
+    }
+  }
+
+  private def numbered(prefix: String): List[(Long, File)] = {
+    val files = dir.listFiles()
+    if (files == null) Nil
+    else files.toList.filter(f => f.isFile && f.getName.startsWith(prefix) && f.getName.endsWith(JobJournal.suffix)).flatMap(f => try {
+      Some((f.getName.substring(prefix.length, f.getName.length - JobJournal.suffix.length).toLong, f))
+    } catch { case e: NumberFormatException => None }).sortBy(_._1)
+  }
+
+  private def segments = numbered(JobJournal.segmentPrefix)
+  private def snapshot = numbered(JobJournal.snapshotPrefix).lastOption
+}
+
+/**
+ * Companion object for JobJournal containing journal file naming
+ */
+object JobJournal {
+  val segmentPrefix = "journal-"
+  val snapshotPrefix = "snapshot-"
+  val suffix = ".log"
+  /** Number of records deserialized together when a journal is read */
+  val parseChunk = 4096
+}
@@ -0,0 +1,73 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine
+
+import com.ksmpartners.ernie.model.JobStatus
+import org.joda.time.DateTime
+
+/**
+ * Filters and paging for job list and catalog requests. Jobs are returned in job ID order, which is the order they were submitted in.
+ * @param statuses only return jobs with one of these statuses; any status if empty
+ * @param defId only return jobs generated from this definition
+ * @param user only return jobs created by this user
+ * @param submittedFrom only return jobs submitted at or after this time
+ * @param submittedTo only return jobs submitted before this time
+ * @param limit most jobs returned; every matching job if None
+ * @param cursor only return jobs that come after this job ID in the requested order, such as the nextCursor of a previous page
+ * @param descending return the most recently submitted jobs first
+ */
+case class JobQuery(statuses: Set[JobStatus] = Set.empty, defId: Option[String] = None, user: Option[String] = None,
+    submittedFrom: Option[DateTime] = None, submittedTo: Option[DateTime] = None, limit: Option[Int] = None, cursor: Option[Long] = None,
+    descending: Boolean = false) {
+  if (limit.exists(_ < 1)) throw new IllegalArgumentException("Invalid page size")
+
+  /** Return this query restricted to jobs with one of statuses */
+  @scala.annotation.varargs
+  def withStatuses(s: JobStatus*) = copy(statuses = s.toSet)
+
+  /** Return this query restricted to jobs generated from definition id */
+  def forDefinition(id: String) = copy(defId = Option(id))
+
+  /** Return this query restricted to jobs created by createdUser */
+  def forUser(createdUser: String) = copy(user = Option(createdUser))
+
+  /** Return this query restricted to jobs submitted at or after from and before to; either may be null */
+  def submittedBetween(from: DateTime, to: DateTime) = copy(submittedFrom = Option(from), submittedTo = Option(to))
+
+  /** Return this query with pages of at most pageSize jobs */
+  def withLimit(pageSize: Int) = copy(limit = Some(pageSize))
+
+  /** Return this query for the page that follows the job ID nextCursor */
+  def after(nextCursor: Long) = copy(cursor = Some(nextCursor))
+
+  /** Return this query with the most recently submitted jobs first */
+  def newestFirst = copy(descending = true)
+
+  /**
+   * Return true if submitDate falls within the submission range of this query
+   */
+  def submittedWithin(submitDate: DateTime): Boolean = (submittedFrom.isEmpty && submittedTo.isEmpty) || ((submitDate != null) &&
+    submittedFrom.forall(!submitDate.isBefore(_)) && submittedTo.forall(submitDate.isBefore(_)))
+}
+
+/**
+ * Companion object for JobQuery
+ */
+object JobQuery {
+  /** A query for every job, for callers that cannot use default arguments */
+  def all = JobQuery()
+}
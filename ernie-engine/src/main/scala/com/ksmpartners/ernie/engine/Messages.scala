@@ -18,11 +18,20 @@ package com.ksmpartners.ernie.engine
 
 import com.ksmpartners.ernie.model._
 import scala.collection.immutable
+import scala.concurrent.duration.FiniteDuration
 
-/** Request that the report defId be generated resulting in an output of type rptType */
-case class ReportRequest(defId: String, rptType: ReportType, retentionPeriod: Option[Int], reportParameters: immutable.Map[String, String], userName: String)
+/**
+ * Request that the report defId be generated resulting in an output of type rptType, and eagerly rendered as each of renditions when report documents are kept.
+ * A run that takes longer than timeout, or the definition's timeout if timeout is None, is stopped and the job marked TIMED_OUT.
+ */
+case class ReportRequest(defId: String, rptType: ReportType, retentionPeriod: Option[Int], reportParameters: immutable.Map[String, String], userName: String,
+  renditions: List[ReportType] = Nil, timeout: Option[FiniteDuration] = None)
 /** The response to the given ReportRequest or ReportAndNotifyRequest */
 case class ReportResponse(jobId: Long, jobStatus: JobStatus, req: ReportRequest)
+/** Request that a job be created for each of requests in a single Coordinator turn, with the new jobs persisted together */
+case class BatchReportRequest(requests: List[ReportRequest])
+/** The response to the given BatchReportRequest, holding one ReportResponse for each request in the same order */
+case class BatchReportResponse(responses: List[ReportResponse], req: BatchReportRequest)
 /** Request the resulting file for the given jobId */
 case class ResultRequest(jobId: Long)
 /** The response to the given ResultRequest */
@@ -43,14 +52,41 @@ case class DeleteDefinitionResponse(deleteStatus: DeleteStatus, req: DeleteDefin
 case class PurgeRequest()
 /** The response to the given PurgeRequest */
 case class PurgeResponse(deleteStatus: DeleteStatus, purgedRptIds: List[String], req: PurgeRequest)
-/** Request a list of the currently known jobIds */
-case class JobsListRequest()
-/** The response to the given JobsListRequest */
-case class JobsListResponse(jobsList: Array[String], req: JobsListRequest)
-/** Request that the definition defId be generated into a rptType document */
-case class JobRequest(defId: String, rptType: ReportType, jobId: Long, retentionPeriod: Option[Int], reportParameters: immutable.Map[String, String], userName: String)
+/** Request a list of the currently known jobIds matching query */
+case class JobsListRequest(query: JobQuery = JobQuery())
+/** The response to the given JobsListRequest; nextCursor is the cursor of the following page if there is one */
+case class JobsListResponse(jobsList: Array[String], req: JobsListRequest, nextCursor: Option[Long] = None)
+/** Work queued by the Coordinator for the next idle Worker */
+sealed trait WorkItem {
+  def jobId: Long
+}
+/**
+ * Request that the definition defId be generated into a rptType document, and rendered as each of renditions when report documents are kept.
+ * If bulkhead is given, the job only runs while fewer than that bulkhead's limit of jobs are running.
+ */
+case class JobRequest(defId: String, rptType: ReportType, jobId: Long, retentionPeriod: Option[Int], reportParameters: immutable.Map[String, String], userName: String,
+  renditions: List[ReportType] = Nil, timeout: Option[FiniteDuration] = None, bulkhead: Option[String] = None) extends WorkItem
 /** The response(s) associated with the given JobRequest */
 case class JobResponse(jobStatus: JobStatus, rptId: Option[String], req: JobRequest)
+/** Request the output of jobId as rptType, rendering it from the job's stored report document if necessary */
+case class RenderRequest(jobId: Long, rptType: ReportType)
+/** The response to the given RenderRequest. rptId is None if the job has no output in, and cannot be rendered as, rptType */
+case class RenderResponse(rptId: Option[String], req: RenderRequest)
+/** Request that the stored report document for rptId be rendered as rptType */
+case class RenderJobRequest(jobId: Long, rptId: String, rptType: ReportType) extends WorkItem
+/** The response to the given RenderJobRequest */
+case class RenderJobResponse(renditionId: Option[String], req: RenderJobRequest)
+/** Request that jobId be cancelled, stopping its run if it has started */
+case class CancelRequest(jobId: Long)
+/**
+ * The response to the given CancelRequest. jobStatus is CANCELLED if the job was cancelled at once, IN_PROGRESS if its run has been asked
+ * to stop, NO_SUCH_JOB if the job does not exist, and otherwise the status of a job that had already finished
+ */
+case class CancelResponse(jobStatus: JobStatus, req: CancelRequest)
+/** Sent by the Coordinator to itself when jobId has run for as long as its timeout allows */
+case class JobTimedOut(jobId: Long)
+/** Sent by the Coordinator to itself each time it should reconsider how many workers it runs */
+case class AutoscaleTick()
 /** Request that the Actor be shut down */
 case class ShutDownRequest()
 /** The response that indicates that the Actor's facilities are shut down */
@@ -63,13 +99,46 @@ case class ReportDetailResponse(rptEntity: Option[ReportEntity], req: ReportDeta
 case class JobDetailRequest(jobId: Long)
 /**The response associated with the given ReportDetailRequest*/
 case class JobDetailResponse(jobEntity: Option[JobEntity], req: JobDetailRequest)
-/**Request a catalog for some subset of jobs */
-case class JobsCatalogRequest(jobCatalog: Option[JobCatalog])
-/**The response associated with the given ReportDetailRequest*/
-case class JobsCatalogResponse(catalog: List[JobEntity], req: JobsCatalogRequest)
+/**Request a catalog for some subset of jobs, narrowed and paged by query */
+case class JobsCatalogRequest(jobCatalog: Option[JobCatalog], query: JobQuery = JobQuery())
+/**The response associated with the given JobsCatalogRequest; nextCursor is the cursor of the following page if there is one */
+case class JobsCatalogResponse(catalog: List[JobEntity], req: JobsCatalogRequest, nextCursor: Option[Long] = None)
 /**Request a worker added to the Coordinator pool */
 case class NewWorkerRequest()
-/**Request notification on job status change or on specified job status **/
-case class JobNotificationRequest(jobId: Long, status: Option[JobStatus])
+/**Request notification on job status change or on specified job status; answered at once if the status is already reached, differs from current, or can no longer be reached **/
+case class JobNotificationRequest(jobId: Long, status: Option[JobStatus], current: Option[JobStatus] = None)
 /**The response associated with the given JobNotificationRequest **/
-case class JobNotificationResponse(status: JobStatus, req: JobNotificationRequest)
\ No newline at end of file
+case class JobNotificationResponse(status: JobStatus, req: JobNotificationRequest)
+/** Request from an idle Worker for the next pending job */
+case class WorkRequest()
+/** Request that jobs left RESTARTING by a previous shutdown be resubmitted */
+case class RestartJobsRequest()
+/** Internal message that renews the allowance of restarted jobs that may be dispatched */
+case class RestartTick()
+/** Request the state of the pending job queue */
+case class QueueStatusRequest()
+/** The response to the given QueueStatusRequest. Wait times are in milliseconds. */
+case class QueueStatusResponse(pendingJobs: Int, idleWorkers: Int, workerCount: Int, targetWorkers: Int, oldestWait: Long, averageWait: Long,
+  req: QueueStatusRequest)
+/** Request the position of jobId in the pending job queue */
+case class QueuePositionRequest(jobId: Long)
+/** The response to the given QueuePositionRequest. position is 1-based, and both fields are None if jobId is not queued. */
+case class QueuePositionResponse(position: Option[Int], waitTime: Option[Long], req: QueuePositionRequest)
+/** Request the Coordinator's readiness to serve requests */
+case class ReadinessRequest()
+/**
+ * The response to the given ReadinessRequest. The Coordinator is ready once the report generator has started and all persisted jobs are recovered.
+ * generatorFailed is true once the report generator has failed to start; neither it nor generatorStarted is true while it is starting.
+ * jobsRestarting is the number of unfinished jobs from before the last shutdown still waiting to be restarted, and jobsRestarted the number
+ * handed to workers so far.
+ */
+case class ReadinessResponse(generatorStarted: Boolean, generatorFailed: Boolean, recovering: Boolean, jobsRecovered: Int, jobsRestarting: Int, jobsRestarted: Int,
+    req: ReadinessRequest) {
+  def ready = generatorStarted && !recovering
+}
+/** Internal message indicating that the report generator has finished starting */
+case class GeneratorStarted(success: Boolean)
+/** Internal message carrying a batch of jobs recovered from persistent storage */
+case class JobsRecovered(jobs: Seq[(Long, JobEntity)])
+/** Internal message indicating that all persisted jobs have been recovered; migrated lists legacy job entity files to remove once journaled */
+case class RecoveryComplete(migrated: Seq[java.io.File])
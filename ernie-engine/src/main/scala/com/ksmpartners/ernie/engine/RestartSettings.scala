@@ -0,0 +1,37 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine
+
+import scala.concurrent.duration._
+
+/**
+ * Settings for resubmitting jobs that were unfinished when the Coordinator last shut down. Restarted jobs are only handed to workers that
+ * no newly submitted job is waiting for, and at most batchSize of them are handed out in each interval.
+ * @param batchSize most restarted jobs dispatched in each interval
+ * @param interval time between batches of restarted jobs
+ */
+case class RestartSettings(batchSize: Int = 10, interval: FiniteDuration = 1 second) {
+  if (batchSize < 1) throw new IllegalArgumentException("Invalid restart batch size")
+}
+
+/**
+ * Companion object for RestartSettings
+ */
+object RestartSettings {
+  /** Default settings, for callers that cannot use default arguments */
+  def defaults = RestartSettings()
+}
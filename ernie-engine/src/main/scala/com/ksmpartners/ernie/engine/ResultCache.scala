@@ -0,0 +1,183 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine
+
+import scala.collection.mutable
+import java.security.MessageDigest
+import com.ksmpartners.ernie.model.ReportType
+
+/**
+ * Cache of report runs keyed by [[com.ksmpartners.ernie.engine.ResultCache.key]].
+ * A run in progress collects the jobs of identical requests made while it runs; once it completes, its output is reused by identical
+ * requests until the run's time to live expires. Keys leave out the requesting user and retention period: a shared output keeps the
+ * creator of the job that produced it, and the Coordinator extends its retention date to the latest one requested by the jobs sharing it.
+ * Jobs that share another job's output are tracked so that they can be updated when that output is deleted. This class is not thread safe; it is meant to be owned by a single Coordinator.
+ */
+class ResultCache {
+
+  private case class Run(key: String, defId: String, ttlMillis: Long)
+  private case class Cached(rptId: String, defId: String, expires: Long)
+
+  private val runs = new mutable.HashMap[String, Long]()
+  private val leaders = new mutable.HashMap[Long, Run]()
+  private val followers = new mutable.HashMap[Long, mutable.Set[Long]] with mutable.MultiMap[Long, Long]
+  private val results = new mutable.HashMap[String, Cached]()
+  private val aliases = new mutable.HashMap[String, mutable.Set[Long]] with mutable.MultiMap[String, Long]
+  private var puts = 0
+
+  /**
+   * Return the ID of the cached report for key, if it has not expired
+   */
+  def result(key: String, now: Long = System.currentTimeMillis): Option[String] = results.get(key) match {
+    case Some(c) if (c.expires > now) => Some(c.rptId)
+    case Some(c) => {
+      results -= key
+      None
+    }
+    case None => None
+  }
+
+  /**
+   * Return the job ID of the run in progress for key
+   */
+  def running(key: String): Option[Long] = runs.get(key)
+
+  /**
+   * Record that jobId has started a run for key whose output may be reused for ttlSeconds once it completes
+   */
+  def start(key: String, defId: String, jobId: Long, ttlSeconds: Int) {
+    runs += (key -> jobId)
+    leaders += (jobId -> Run(key, defId, ttlSeconds * 1000L))
+  }
+
+  /**
+   * Attach jobId to the run started by leader
+   */
+  def attach(leader: Long, jobId: Long) {
+    followers.addBinding(leader, jobId)
+  }
+
+  /**
+   * Detach jobId from whichever run it is attached to
+   * @return true if jobId was attached to a run
+   */
+  def detach(jobId: Long): Boolean = followers.find(_._2.contains(jobId)).map(f => followers.removeBinding(f._1, jobId)).isDefined
+
+  /**
+   * Return the jobs attached to the run started by leader
+   */
+  def attached(leader: Long): Set[Long] = followers.get(leader).map(_.toSet) getOrElse Set.empty[Long]
+
+  /**
+   * Record that the run started by leader has finished. If it produced rptId, the report is cached until the run's time to live or
+   * retentionDate passes, whichever is first, and the attached jobs are recorded as sharing it.
+   * @return the jobs that were attached to the run
+   */
+  def finish(leader: Long, rptId: Option[String], retentionDate: Option[Long], now: Long = System.currentTimeMillis): Set[Long] = {
+    val attachedJobs = attached(leader)
+    followers -= leader
+    leaders.remove(leader).map(run => {
+      runs -= run.key
+      rptId.map(id => {
+        attachedJobs.foreach(aliases.addBinding(id, _))
+        if (run.ttlMillis > 0) put(run.key, Cached(id, run.defId, math.min(now + run.ttlMillis, retentionDate getOrElse Long.MaxValue)), now)
+      })
+    })
+    attachedJobs
+  }
+
+  /**
+   * Record that the run started by leader stopped without output, and hand the run to the earliest of the jobs attached to it. The other
+   * attached jobs stay attached to the new leader, so that identical requests still run once and the run can still fill the cache.
+   * @return the job that took over the run, if any job was attached to it
+   */
+  def handOver(leader: Long): Option[Long] = {
+    val attachedJobs = attached(leader)
+    followers -= leader
+    leaders.remove(leader).flatMap(run => {
+      runs -= run.key
+      attachedJobs.toList.sorted.headOption.map(next => {
+        runs += (run.key -> next)
+        leaders += (next -> run)
+        attachedJobs.filter(_ != next).foreach(followers.addBinding(next, _))
+        next
+      })
+    })
+  }
+
+  /**
+   * Record that jobId shares the output rptId
+   */
+  def alias(rptId: String, jobId: Long) {
+    aliases.addBinding(rptId, jobId)
+  }
+
+  /**
+   * Return the jobs that share the output rptId with the job that produced it
+   */
+  def sharing(rptId: String): Set[Long] = aliases.get(rptId).map(_.toSet) getOrElse Set.empty[Long]
+
+  /**
+   * Record that jobId no longer shares the output rptId
+   */
+  def unalias(rptId: String, jobId: Long) {
+    aliases.removeBinding(rptId, jobId)
+  }
+
+  /**
+   * Drop any cached result for rptId, which has been deleted.
+   * @return the jobs that shared rptId
+   */
+  def reportDeleted(rptId: String): Set[Long] = {
+    results.retain((key, c) => c.rptId != rptId)
+    aliases.remove(rptId).map(_.toSet) getOrElse Set.empty[Long]
+  }
+
+  /**
+   * Drop all cached results for defId
+   */
+  def definitionDeleted(defId: String) {
+    results.retain((key, c) => c.defId != defId)
+  }
+
+  private def put(key: String, cached: Cached, now: Long) {
+    results += (key -> cached)
+    puts += 1
+    if (puts % ResultCache.sweepInterval == 0) results.retain((k, c) => c.expires > now)
+  }
+}
+
+/**
+ * Companion object for ResultCache containing the cache key function
+ */
+object ResultCache {
+
+  /** Number of results cached between sweeps for expired results */
+  val sweepInterval = 256
+
+  /**
+   * Return a canonical hash of a report request. Parameters are ordered by name and null values are dropped, so requests that differ
+   * only in parameter order share a key. Names and values are kept as given, because they are bound to the report without trimming and
+   * padded values can produce a different report. Including the definition version ensures that results are never reused across
+   * changes to the definition.
+   */
+  def key(defId: String, definitionVersion: Long, rptType: ReportType, reportParameters: Map[String, String]): String = {
+    val params = reportParameters.filter(p => (p._1 != null) && (p._2 != null)).toList.sortBy(_._1)
+    val canonical = (defId :: definitionVersion.toString :: rptType.toString :: params.map(p => p._1 + "=" + p._2)).mkString("\u0000")
+    MessageDigest.getInstance("SHA-256").digest(canonical.getBytes("UTF-8")).map("%02x".format(_)).mkString
+  }
+}
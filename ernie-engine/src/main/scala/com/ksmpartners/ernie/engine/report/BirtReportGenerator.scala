@@ -27,14 +27,19 @@ import com.ksmpartners.ernie.util.Utility._
 import scala.collection._
 import JavaConversions._
 import org.joda.time.DateTime
-import java.sql.Time
-import org.joda.time.format.DateTimeFormat
 import org.mozilla.javascript.GeneratedClassLoader
 import java.security.AccessController
 import org.eclipse.birt.report.engine.javascript.ScriptUtil
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.ConcurrentHashMap
+import org.eclipse.birt.report.model.api.{ OdaDataSourceHandle, ReportDesignHandle }
 
 /**
  * Class used to generate BIRT reports
+ * When report documents are kept, a report is run once into a stored report document and rendered from that document, so that
+ * further formats can be rendered without running the report's data sources again.
+ * CSV reports of definitions that name a CSV result set are not rendered: the rows of that result set are extracted from the report
+ * document and streamed straight to the output.
  * This Class is not thread safe.
  */
 class BirtReportGenerator(reportManager: ReportManager) extends ReportGenerator {
@@ -67,51 +72,78 @@ class BirtReportGenerator(reportManager: ReportManager) extends ReportGenerator
   def runReport(defId: String, rptId: String, rptType: ReportType, retentionDate: Option[Int], reportParameters: Map[String, String], userName: String) {
     if (engine == null) throw new IllegalStateException("ReportGenerator was not started")
     log.debug("Generating report from definition {}", defId)
-    try_(reportManager.getDefinitionContent(defId).get) { defInputStream =>
-      {
-        val entity: mutable.Map[String, Any] = new mutable.HashMap()
-        entity += (ReportManager.rptId -> rptId)
-        entity += (ReportManager.sourceDefId -> defId)
-        entity += (ReportManager.reportType -> rptType)
-        entity += (ReportManager.createdUser -> userName)
-        entity += (ReportManager.retentionDate -> DateTime.now().plusDays(retentionDate.getOrElse(reportManager.getDefaultRetentionDays)))
-
-        var rptParams: Map[String, Any] = reportParameters
-        //Ensure all parameter values are supported by the definition
-        if (reportManager.getDefinition(defId).get.getEntity.getParams != null)
-          reportParameters.foreach(param => reportManager.getDefinition(defId).get.getEntity.getParams.toList.find(p => p.getParamName == param._1) match {
-            case Some(paramEntity) => rptParams += (paramEntity.getParamName -> stringToBirtParamData(param._2, paramEntity))
-          })
-
-        val entParams = reportManager.getDefinition(defId).get.getEntity.getParams
-
-        if (entParams != null) {
-          entParams.toList.foreach(param =>
-            if (!rptParams.contains(param.getParamName)) {
-              rptParams += (param.getParamName -> stringToBirtParamData(param.getDefaultValue, param))
-            })
-        }
-
-        entity += (ReportManager.paramMap -> rptParams)
-        entity += (ReportManager.startDate -> DateTime.now)
-        try_(reportManager.putReport(entity)) { rptOutputStream =>
-          runReport(defInputStream, rptOutputStream, rptType, rptParams)
-        }
-        entity += (ReportManager.finishDate -> DateTime.now)
-        if (reportManager.getReport(rptId).isDefined) try { reportManager.updateReportEntity(entity) }
+    val entity: mutable.Map[String, Any] = new mutable.HashMap()
+    entity += (ReportManager.rptId -> rptId)
+    entity += (ReportManager.sourceDefId -> defId)
+    entity += (ReportManager.reportType -> rptType)
+    entity += (ReportManager.createdUser -> userName)
+    entity += (ReportManager.retentionDate -> DateTime.now().plusDays(retentionDate.getOrElse(reportManager.getDefaultRetentionDays)))
 
+    //Ensure all parameter values are supported by the definition, and fill in the defaults of the others
+    val rptParams: Map[String, Any] = reportManager.getParameterPlan(defId).getOrElse(throw new NoSuchElementException("No such definition: " +
+      defId)).bind(reportParameters.toMap)
+
+    entity += (ReportManager.paramMap -> rptParams)
+    val design = openDesign(defId, reportManager.getDefinitionVersion(defId), reportManager.getDefinitionContent(defId))
+    entity += (ReportManager.startDate -> DateTime.now)
+    try {
+      val csvResultSet = csvResultSetOf(defId, rptType)
+      try_(reportManager.putReport(entity)) { rptOutputStream =>
+        if (keepReportDocuments || csvResultSet.isDefined) {
+          val document = reportManager.getReportDocument(rptId)
+          try {
+            runDocument(rptId, design, document, rptParams)
+            writeDocument(rptId, document, rptOutputStream, rptType, csvResultSet)
+          } finally if (!keepReportDocuments) document.delete()
+        } else runReport(rptId, design, renderOption(rptOutputStream, rptType), rptParams)
       }
-    }
+    } catch {
+      case e: ReportCancelledException => {
+        reportManager.deleteReport(rptId)
+        throw e
+      }
+    } finally cancelledReports.remove(rptId)
+    entity += (ReportManager.finishDate -> DateTime.now)
+    if (reportManager.getReport(rptId).isDefined) try { reportManager.updateReportEntity(entity) }
+  }
+
+  /**
+   * Render the stored report document of rptId as rptType into a new report that shares rptId's metadata
+   */
+  override def renderReport(rptId: String, rptType: ReportType): Option[String] = {
+    if (engine == null) throw new IllegalStateException("ReportGenerator was not started")
+    val document = reportManager.getReportDocument(rptId)
+    reportManager.getReport(rptId).filter(_ => document.isFile).map(rpt => {
+      log.debug("Rendering report " + rptId + " as {}", rptType)
+      val renditionId = ReportManager.renditionId(rptId, rptType)
+      val entity: mutable.Map[String, Any] = new mutable.HashMap()
+      entity += (ReportManager.rptId -> renditionId)
+      entity += (ReportManager.sourceDefId -> rpt.getSourceDefId)
+      entity += (ReportManager.reportType -> rptType)
+      entity += (ReportManager.createdUser -> rpt.getCreatedUser)
+      entity += (ReportManager.retentionDate -> rpt.getRetentionDate)
+      entity += (ReportManager.paramMap -> rpt.getParams)
+      entity += (ReportManager.startDate -> DateTime.now)
+      try_(reportManager.putReport(entity)) { rptOutputStream =>
+        writeDocument(renditionId, document, rptOutputStream, rptType, csvResultSetOf(rpt.getSourceDefId, rptType))
+      }
+      entity += (ReportManager.finishDate -> DateTime.now)
+      reportManager.updateReportEntity(entity)
+      renditionId
+    })
   }
 
   /**
-   * Method that runs the .rtpdesign file in the input stream defInputStream, and outputs the results to
-   * rptOutputStream as rptType
+   * Return the name of the result set extracted for rptType reports of defId, if they are extracted rather than rendered
    */
-  private def runReport(defInputStream: InputStream, rptOutputStream: OutputStream, rptType: ReportType): Unit = runReport(defInputStream, rptOutputStream, rptType, Map.empty[String, Any])
-  private def runReport(defInputStream: InputStream, rptOutputStream: OutputStream, rptType: ReportType, rptParams: Map[String, Any]): Unit = {
+  private def csvResultSetOf(defId: String, rptType: ReportType): Option[String] =
+    if (rptType == ReportType.CSV) reportManager.getDefinition(defId).flatMap(_.getCsvResultSet) else None
+
+  /**
+   * Return render options that output rptType to rptOutputStream
+   */
+  private def renderOption(rptOutputStream: OutputStream, rptType: ReportType): RenderOption = {
     if (engine == null) throw new IllegalStateException("ReportGenerator was not started")
-    val design = engine.openReportDesign(defInputStream)
     var renderOption: RenderOption = null
     rptType match {
       case ReportType.PDF => {
@@ -132,8 +164,7 @@ class BirtReportGenerator(reportManager: ReportManager) extends ReportGenerator
       }
     }
     renderOption.setOutputStream(rptOutputStream)
-    //BirtReportGenerator.runReport(design, renderOption, rptParams)
-    runReport(design, renderOption, rptParams)
+    renderOption
   }
 
   /**
@@ -147,13 +178,113 @@ class BirtReportGenerator(reportManager: ReportManager) extends ReportGenerator
   /**
    * Method that creates and runs a BIRT task based on the given design and options,
    */
-  private def runReport(design: IReportRunnable, option: RenderOption, rptParams: Map[String, Any]) = {
+  private def runReport(rptId: String, design: IReportRunnable, option: RenderOption, rptParams: Map[String, Any]) = {
     val task: IRunAndRenderTask = engine.createRunAndRenderTask(design)
     task.setRenderOption(option)
+    setParameters(task, rptParams)
+    withPooledConnection(design, task) {
+      cancellable(rptId, task) { task.run() }
+    }
+  }
+
+  /**
+   * Method that runs the given design into a report document stored in document, without rendering it
+   */
+  private def runDocument(rptId: String, design: IReportRunnable, document: File, rptParams: Map[String, Any]) = {
+    val task: IRunTask = engine.createRunTask(design)
+    setParameters(task, rptParams)
+    withPooledConnection(design, task) {
+      cancellable(rptId, task) { task.run(document.getAbsolutePath) }
+    }
+  }
+
+  /**
+   * Run body with a connection from the pool that serves the design's JDBC data sources, if there is one, passed to task in place of
+   * the connection BIRT would open itself. The connection is returned to the pool afterwards.
+   */
+  private def withPooledConnection(design: IReportRunnable, task: IEngineTask)(body: => Unit) {
+    val conn = pooledDataSource(design).map(_.getConnection)
+    try {
+      conn.map(c => {
+        val appContext = new java.util.HashMap[AnyRef, AnyRef]()
+        Option(task.getAppContext).map(ctx => appContext.putAll(ctx.asInstanceOf[java.util.Map[AnyRef, AnyRef]]))
+        appContext.put(passInConnection, c)
+        appContext.put(closePassInConnection, java.lang.Boolean.FALSE)
+        task.setAppContext(appContext)
+      })
+      body
+    } finally conn.map(_.close())
+  }
+
+  /**
+   * Method that renders the report document stored in document to rptOutputStream as rptType
+   */
+  private def renderDocument(rptId: String, document: File, rptOutputStream: OutputStream, rptType: ReportType) = {
+    val rptDocument = engine.openReportDocument(document.getAbsolutePath)
+    try {
+      val task: IRenderTask = engine.createRenderTask(rptDocument)
+      task.setRenderOption(renderOption(rptOutputStream, rptType))
+      cancellable(rptId, task) { task.render() }
+    } finally rptDocument.close()
+  }
+
+  /**
+   * Method that writes the report document stored in document to rptOutputStream as rptType, extracting the rows of csvResultSet if it
+   * is given and rendering the document otherwise
+   */
+  private def writeDocument(rptId: String, document: File, rptOutputStream: OutputStream, rptType: ReportType, csvResultSet: Option[String]) =
+    csvResultSet.map(extractDocument(rptId, document, rptOutputStream, _)) getOrElse renderDocument(rptId, document, rptOutputStream, rptType)
+
+  /**
+   * Method that writes the rows of the result set resultSet of the report document stored in document to rptOutputStream as CSV,
+   * without laying out or rendering the document
+   */
+  private def extractDocument(rptId: String, document: File, rptOutputStream: OutputStream, resultSet: String) {
+    val rptDocument = engine.openReportDocument(document.getAbsolutePath)
+    try {
+      val task: IDataExtractionTask = engine.createDataExtractionTask(rptDocument)
+      cancellable(rptId, task) {
+        task.selectResultSet(resultSet)
+        val results = task.extract()
+        if (results == null) throw new IllegalArgumentException("No such result set: " + resultSet)
+        try writeCsv(rptId, results, rptOutputStream) finally results.close()
+      }
+    } finally rptDocument.close()
+  }
+
+  /**
+   * Run body with task registered under rptId so that [[com.ksmpartners.ernie.engine.report.BirtReportGenerator.cancelReport]] can
+   * cancel it, and close task afterwards.
+   * @throws ReportCancelledException if the task was cancelled
+   */
+  private def cancellable(rptId: String, task: IEngineTask)(body: => Unit) {
+    runningTasks.put(rptId, task)
+    try {
+      if (!cancelledReports.contains(rptId)) body
+      if (cancelledReports.contains(rptId) || (task.getStatus == IEngineTask.STATUS_CANCELLED))
+        throw new ReportCancelledException(rptId)
+    } finally {
+      runningTasks.remove(rptId)
+      task.close()
+    }
+  }
+
+  override def cancelReport(rptId: String): Boolean = {
+    cancelledReports.add(rptId)
+    Option(runningTasks.get(rptId)).map(task => {
+      log.info("Cancelling report {}", rptId)
+      task.cancel()
+      true
+    }) getOrElse false
+  }
+
+  override def reportFinished(rptId: String) {
+    cancelledReports.remove(rptId)
+  }
+
+  private def setParameters(task: IEngineTask, rptParams: Map[String, Any]) {
     task.setParameterValues(rptParams)
     rptParams.foreach(f => { task.setParameterValue(f._1, f._2); if (!task.validateParameters) throw new InvalidParameterValuesException(f._1) })
-    task.run()
-    task.close()
   }
 
 }
@@ -175,18 +306,48 @@ class InvalidParameterValuesException(msg: String) extends Exception(msg);
  */
 class UnsupportedDataTypeException(msg: String) extends Exception(msg);
 
+/**
+ * Exception thrown when a report run is cancelled before it completes
+ */
+class ReportCancelledException(msg: String) extends Exception(msg);
+
 /**
  * Singleton object holding the BIRT engine instance and responsible for running reports and providing helper methods for report generation
  */
 object BirtReportGenerator {
 
-  protected[report] var engine: IReportEngine = null
+  @volatile protected[report] var engine: IReportEngine = null
   private val log = LoggerFactory.getLogger("c.k.e.e.report.BirtReportGenerator")
 
+  private var designCacheSize = 64
+  @volatile private var keepReportDocuments = false
+
+  /** Tasks in progress, keyed by the ID of the report they generate */
+  private val runningTasks = new ConcurrentHashMap[String, IEngineTask]()
+  /** Reports whose runs have been cancelled and not yet stopped */
+  private val cancelledReports = java.util.Collections.newSetFromMap(new ConcurrentHashMap[String, java.lang.Boolean]())
+  /** Connection pools keyed by the name of the design data sources they serve */
+  @volatile private var dataSources = immutable.Map.empty[String, ConnectionPool]
+  /** Application context keys read by BIRT's JDBC driver */
+  private val passInConnection = "OdaJDBCDriverPassInConnection"
+  private val closePassInConnection = "OdaJDBCDriverPassInConnectionCloseAfterUse"
+  private val jdbcExtensionId = "org.eclipse.birt.report.data.oda.jdbc"
+  private val csvBufferSize = 64 * 1024
+  private val designCacheHits = new AtomicLong(0L)
+  private val designCacheMisses = new AtomicLong(0L)
+
+  /**
+   * Least recently used cache of opened designs keyed by definition ID and design version.
+   * All access must synchronize on the cache itself.
+   */
+  private val designCache = new java.util.LinkedHashMap[(String, Long), IReportRunnable](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: java.util.Map.Entry[(String, Long), IReportRunnable]): Boolean = size > designCacheSize
+  }
+
   /**
    * Method to be called before any reports can be generated
    */
-  protected[report] def startEngine() {
+  protected[report] def startEngine(): Unit = synchronized {
     if (engine != null)
       return
 
@@ -198,15 +359,111 @@ object BirtReportGenerator {
     log.debug("BIRT Engine started.")
   }
 
-  protected[report] def shutdownEngine() {
+  protected[report] def shutdownEngine(): Unit = synchronized {
     if (engine == null)
       return
     engine.destroy()
     Platform.shutdown()
     engine = null
+    designCache.synchronized { designCache.clear() }
     log.debug("BIRT Engine shutdown.")
   }
 
+  /**
+   * Return the opened design for version of defId, reading and opening content only if the design is not cached.
+   */
+  protected[report] def openDesign(defId: String, version: Long, content: => Option[InputStream]): IReportRunnable = {
+    if (engine == null) throw new IllegalStateException("ReportGenerator was not started")
+    val key = (defId, version)
+    designCache.synchronized { Option(designCache.get(key)) } match {
+      case Some(design) => {
+        designCacheHits.incrementAndGet
+        design
+      }
+      case None => {
+        designCacheMisses.incrementAndGet
+        log.debug("Opening design for definition {}", defId)
+        val design = fTry_(content.getOrElse(throw new FileNotFoundException(defId))) { is => engine.openReportDesign(is) }
+        designCache.synchronized { designCache.put(key, design) }
+        design
+      }
+    }
+  }
+
+  /**
+   * Set the maximum number of opened designs kept in the design cache
+   */
+  def setDesignCacheSize(size: Int) {
+    if (size < 0) throw new IllegalArgumentException("Design cache size must be non-negative")
+    designCache.synchronized {
+      designCacheSize = size
+      val it = designCache.keySet.iterator
+      while (designCache.size > designCacheSize && it.hasNext) { it.next(); it.remove() }
+    }
+  }
+
+  /**
+   * Set whether reports are run into a stored report document and rendered from it, so that other formats can be rendered on demand.
+   * Disabled by default.
+   */
+  def setKeepReportDocuments(keep: Boolean) {
+    keepReportDocuments = keep
+  }
+
+  /**
+   * Return whether reports are run into a stored report document
+   */
+  def keepsReportDocuments: Boolean = keepReportDocuments
+
+  /**
+   * Set the connection pools used by report runs, keyed by data source name. A design whose JDBC data sources are named after a pool
+   * runs against a connection from that pool rather than opening its own. Pools that are replaced are closed.
+   */
+  def setDataSources(pools: immutable.Map[String, ConnectionPool]) {
+    val replaced = synchronized {
+      val old = dataSources
+      dataSources = pools
+      old.values.filterNot(p => pools.values.exists(_ eq p))
+    }
+    replaced.foreach(_.close())
+  }
+
+  /**
+   * Return the connection pools used by report runs, keyed by data source name
+   */
+  def getDataSources: immutable.Map[String, ConnectionPool] = dataSources
+
+  /**
+   * Return the pool that serves the JDBC data sources of design. BIRT passes a single connection to every JDBC data source in a run, so
+   * no pool is used if the design's JDBC data sources are named after more than one pool.
+   */
+  protected[report] def pooledDataSource(design: IReportRunnable): Option[ConnectionPool] = if (dataSources.isEmpty) None else {
+    val names = design.getDesignHandle match {
+      case handle: ReportDesignHandle => handle.getAllDataSources.toList.collect({
+        case ds: OdaDataSourceHandle if (ds.getExtensionID == jdbcExtensionId) => ds.getName
+      })
+      case _ => Nil
+    }
+    names.flatMap(dataSources.get(_)).distinct match {
+      case pool :: Nil => Some(pool)
+      case Nil => None
+      case pools => {
+        log.warn("Design {} uses more than one pooled data source; its data sources open their own connections", design.getReportName)
+        None
+      }
+    }
+  }
+
+  /**
+   * Return the number of design lookups served from the design cache
+   */
+  def getDesignCacheHits: Long = designCacheHits.get
+
+  /**
+   * Return the number of design lookups that required opening the design
+   */
+  def getDesignCacheMisses: Long = designCacheMisses.get
+
   /**
    * Method that validates a report definition
    */
@@ -226,6 +483,48 @@ object BirtReportGenerator {
       false
   }
 
+  /**
+   * Write the rows of results to out as CSV, preceded by a row of column labels. Rows are streamed through a buffer rather than held in
+   * memory. Columns that do not allow export are left out.
+   * @throws ReportCancelledException if the report rptId is cancelled while its rows are written
+   */
+  protected[report] def writeCsv(rptId: String, results: IExtractionResults, out: OutputStream) {
+    val writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), csvBufferSize)
+    val meta = results.getResultMetaData
+    val columns = (0 until meta.getColumnCount).filter(meta.getAllowExport(_)).toArray
+    val names = columns.map(meta.getColumnName(_))
+    writeCsvRow(writer, columns.map(i => Option(meta.getColumnLabel(i)) getOrElse meta.getColumnName(i)))
+    var rows = 0L
+    var it = results.nextResultIterator
+    while (it != null) {
+      try while (it.next()) {
+        writeCsvRow(writer, names.map(it.getValue(_)))
+        rows += 1
+        if (((rows % 1000) == 0) && cancelledReports.contains(rptId)) throw new ReportCancelledException(rptId)
+      } finally it.close()
+      it = results.nextResultIterator
+    }
+    writer.flush()
+  }
+
+  private def writeCsvRow(writer: Writer, values: Array[_]) {
+    var first = true
+    values.foreach(v => {
+      if (!first) writer.write(',')
+      writer.write(csvField(v))
+      first = false
+    })
+    writer.write("\r\n")
+  }
+
+  /**
+   * Return value as a CSV field, quoted if it contains a separator, quote or line break
+   */
+  protected[report] def csvField(value: Any): String = if (value == null) "" else {
+    val s = value.toString
+    if (s.exists(c => (c == ',') || (c == '"') || (c == '\n') || (c == '\r'))) "\"" + s.replace("\"", "\"\"") + "\"" else s
+  }
+
   /**
    * Convert string data to type expected by BIRT report definition parameter.
    * @param data value to convert
@@ -234,26 +533,7 @@ object BirtReportGenerator {
    * @throws ClassCastException if conversion fails
    * @return converted value.
    */
-  def stringToBirtParamData(data: String = null, param: ParameterEntity): Any = {
-    if (((data == null) || (data == "")) && (!param.getAllowNull)) {
-      throw new ParameterNullException(param.getParamName)
-    } else try {
-      param.getDataType match { //TODO: do not hardcode data type names. http://www.eclipse.org/birt/ref/rom/elements/ScalarParameter.html#Property-dataType
-        case "boolean" => data.toBoolean
-        case "date" => new java.sql.Date((DateTimeFormat.forPattern("yyyy-MM-dd").parseDateTime(data)).getMillis)
-        case "dateTime" => new java.sql.Date(DateTime.parse(data).getMillis)
-        case "decimal" => data.toDouble
-        case "float" => data.toFloat
-        case "integer" => data.toInt.asInstanceOf[Integer]
-        case "string" => data
-        case "time" => Time.valueOf(data)
-        case "any" => data
-        case _ => throw new UnsupportedDataTypeException(param.getParamName)
-      }
-    } catch {
-      case e: UnsupportedDataTypeException => throw new UnsupportedDataTypeException("name: " + param.getParamName + ", type: " + param.getDataType + ", value: " + data)
-      case e: Exception => throw new ClassCastException()
-    }
-  }
+  def stringToBirtParamData(data: String = null, param: ParameterEntity): Any =
+    ParameterPlan.convert(data, param, ParameterPlan.converter(param.getDataType))
 
 }
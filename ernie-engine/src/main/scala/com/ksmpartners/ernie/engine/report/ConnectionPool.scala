@@ -0,0 +1,196 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine.report
+
+import java.io.PrintWriter
+import java.lang.reflect.{ InvocationTargetException, Method, InvocationHandler, Proxy }
+import java.sql.{ SQLFeatureNotSupportedException, SQLException, DriverManager, Connection }
+import java.util.concurrent.{ LinkedBlockingDeque, TimeUnit, Semaphore }
+import java.util.concurrent.atomic.{ AtomicBoolean, AtomicLong }
+import javax.sql.DataSource
+import scala.concurrent.duration._
+import org.slf4j.{ LoggerFactory, Logger }
+
+/**
+ * Settings for a [[com.ksmpartners.ernie.engine.report.ConnectionPool]].
+ * @param url JDBC URL of the database
+ * @param user database user, if the URL does not carry one
+ * @param password database password, if the URL does not carry one
+ * @param driverClass JDBC driver class to load before connecting, if the driver does not register itself
+ * @param maxActive maximum number of connections handed out at once
+ * @param maxIdle maximum number of returned connections kept open for reuse
+ * @param maxWait longest time to wait for a connection when maxActive connections are in use
+ */
+case class DataSourceSettings(url: String, user: Option[String] = None, password: Option[String] = None, driverClass: Option[String] = None,
+  maxActive: Int = 8, maxIdle: Int = 8, maxWait: FiniteDuration = 30 seconds)
+
+/**
+ * Companion object for DataSourceSettings
+ */
+object DataSourceSettings {
+  /** Settings for callers that cannot use default arguments; user and password may be null */
+  def create(url: String, user: String, password: String, maxActive: Int) =
+    DataSourceSettings(url, Option(user), Option(password), maxActive = maxActive, maxIdle = maxActive)
+}
+
+/**
+ * Snapshot of the usage of a [[com.ksmpartners.ernie.engine.report.ConnectionPool]].
+ * @param active connections currently handed out
+ * @param idle open connections waiting to be reused
+ * @param acquired total connections handed out
+ * @param averageWaitMillis average time spent waiting for a connection
+ * @param maxWaitMillis longest time spent waiting for a connection
+ * @param timeouts requests that gave up waiting for a connection
+ */
+case class PoolStatistics(active: Int, idle: Int, acquired: Long, averageWaitMillis: Long, maxWaitMillis: Long, timeouts: Long)
+
+/**
+ * Bounded pool of JDBC connections opened through DriverManager. Closing a connection handed out by the pool returns it to the pool;
+ * any open transaction is rolled back first. This class is thread safe.
+ */
+class ConnectionPool(val name: String, settings: DataSourceSettings) extends DataSource {
+
+  private val log: Logger = LoggerFactory.getLogger("com.ksmpartners.ernie.engine.report.ConnectionPool")
+
+  settings.driverClass.map(Class.forName(_))
+
+  private val permits = new Semaphore(settings.maxActive, true)
+  private val idle = new LinkedBlockingDeque[Connection]()
+  private val acquired = new AtomicLong(0L)
+  private val totalWait = new AtomicLong(0L)
+  private val maxWait = new AtomicLong(0L)
+  private val timeouts = new AtomicLong(0L)
+  @volatile private var closed = false
+
+  /**
+   * Return a pooled connection, opening a new one if none is idle.
+   * @throws SQLException if no connection becomes available within maxWait, or the pool is closed
+   */
+  def getConnection: Connection = {
+    if (closed) throw new SQLException("Connection pool " + name + " is closed")
+    val start = System.nanoTime
+    if (!permits.tryAcquire(settings.maxWait.toMillis, TimeUnit.MILLISECONDS)) {
+      timeouts.incrementAndGet
+      throw new SQLException("Timed out waiting for a connection from pool " + name)
+    }
+    val waited = (System.nanoTime - start) / 1000000L
+    try {
+      val conn = nextIdle() getOrElse open()
+      acquired.incrementAndGet
+      totalWait.addAndGet(waited)
+      var prev = maxWait.get
+      while (waited > prev && !maxWait.compareAndSet(prev, waited)) prev = maxWait.get
+      lease(conn)
+    } catch {
+      case e: Exception => {
+        permits.release()
+        throw e
+      }
+    }
+  }
+
+  def getConnection(user: String, password: String): Connection =
+    throw new SQLFeatureNotSupportedException("Pooled connections use the credentials of pool " + name)
+
+  /**
+   * Return the current usage of this pool
+   */
+  def statistics: PoolStatistics = {
+    val count = acquired.get
+    PoolStatistics(settings.maxActive - permits.availablePermits, idle.size, count, if (count > 0) totalWait.get / count else 0L, maxWait.get,
+      timeouts.get)
+  }
+
+  /**
+   * Close every idle connection and refuse further requests. Connections still handed out are closed when they are returned.
+   */
+  def close() {
+    closed = true
+    var conn = idle.poll()
+    while (conn != null) {
+      closeQuietly(conn)
+      conn = idle.poll()
+    }
+  }
+
+  private def nextIdle(): Option[Connection] = {
+    var conn = idle.pollFirst()
+    while ((conn != null) && conn.isClosed) conn = idle.pollFirst()
+    Option(conn)
+  }
+
+  private def open(): Connection = {
+    log.debug("Opening connection for pool {}", name)
+    if (settings.user.isDefined) DriverManager.getConnection(settings.url, settings.user.get, settings.password.getOrElse(null))
+    else DriverManager.getConnection(settings.url)
+  }
+
+  private def release(conn: Connection) {
+    try {
+      if (closed || conn.isClosed || (idle.size >= settings.maxIdle)) closeQuietly(conn)
+      else {
+        if (!conn.getAutoCommit) {
+          conn.rollback()
+          conn.setAutoCommit(true)
+        }
+        idle.offerFirst(conn)
+      }
+    } catch {
+      case e: SQLException => {
+        log.warn("Discarding connection from pool " + name + ": {}", e.getMessage)
+        closeQuietly(conn)
+      }
+    } finally permits.release()
+  }
+
+  private def closeQuietly(conn: Connection) = try {
+    conn.close()
+  } catch {
+    case e: SQLException => log.debug("Caught exception while closing connection: {}", e.getMessage)
+  }
+
+  /**
+   * Wrap conn so that closing it returns it to the pool
+   */
+  private def lease(conn: Connection): Connection = {
+    val returned = new AtomicBoolean(false)
+    Proxy.newProxyInstance(classOf[Connection].getClassLoader, Array(classOf[Connection]), new InvocationHandler {
+      def invoke(proxy: Any, method: Method, args: Array[AnyRef]): AnyRef = method.getName match {
+        case "close" => {
+          if (returned.compareAndSet(false, true)) release(conn)
+          null
+        }
+        case "isClosed" if returned.get => java.lang.Boolean.TRUE
+        case "toString" | "hashCode" | "equals" => method.invoke(conn, Option(args).getOrElse(Array.empty[AnyRef]): _*)
+        case _ if returned.get => throw new SQLException("Connection has been returned to pool " + name)
+        case _ => try {
+          method.invoke(conn, Option(args).getOrElse(Array.empty[AnyRef]): _*)
+        } catch {
+          case e: InvocationTargetException => throw e.getCause
+        }
+      }
+    }).asInstanceOf[Connection]
+  }
+
+  def getLogWriter: PrintWriter = null
+  def setLogWriter(out: PrintWriter) {}
+  def setLoginTimeout(seconds: Int) {}
+  def getLoginTimeout: Int = 0
+  def getParentLogger: java.util.logging.Logger = throw new SQLFeatureNotSupportedException()
+  def unwrap[T](iface: Class[T]): T = if (iface.isInstance(this)) iface.cast(this) else throw new SQLException("Not a wrapper for " + iface)
+  def isWrapperFor(iface: Class[_]): Boolean = iface.isInstance(this)
+}
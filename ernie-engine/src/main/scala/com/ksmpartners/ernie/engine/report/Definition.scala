@@ -46,6 +46,26 @@ class Definition protected[report] (defEntity: DefinitionEntity) {
 
   def getUnsupportedReportTypes: Array[ReportType] = unsupportedReportTypes
 
+  /**
+   * Return the number of seconds for which output of this definition may be reused by identical requests, if result caching is enabled for it.
+   */
+  def getResultCacheSeconds: Option[Int] = Option(defEntity.getResultCacheSeconds).map(_.intValue)
+
+  /**
+   * Return the number of seconds a job of this definition may run before it is stopped, if jobs of this definition have a timeout.
+   */
+  def getTimeoutSeconds: Option[Int] = Option(defEntity.getTimeoutSeconds).map(_.intValue)
+
+  /**
+   * Return the name of the bulkhead that limits how many jobs of this definition run at once, if there is one.
+   */
+  def getBulkhead: Option[String] = Option(defEntity.getBulkhead).map(_.trim).filter(_.nonEmpty)
+
+  /**
+   * Return the name of the element whose rows CSV reports of this definition extract directly, if CSV reports are not rendered.
+   */
+  def getCsvResultSet: Option[String] = Option(defEntity.getCsvResultSet).map(_.trim).filter(_.nonEmpty)
+
   /**
    * Get a mutable DefinitionEntity, a representation of the definition that is serializable and used for persistence.
    */
@@ -58,6 +78,10 @@ class Definition protected[report] (defEntity: DefinitionEntity) {
     defEnt.setParamNames(defEntity.getParamNames)
     defEnt.setParams(defEntity.getParams)
     defEnt.setUnsupportedReportTypes(defEntity.getUnsupportedReportTypes)
+    defEnt.setResultCacheSeconds(defEntity.getResultCacheSeconds)
+    defEnt.setTimeoutSeconds(defEntity.getTimeoutSeconds)
+    defEnt.setBulkhead(defEntity.getBulkhead)
+    defEnt.setCsvResultSet(defEntity.getCsvResultSet)
     defEnt
   }
 
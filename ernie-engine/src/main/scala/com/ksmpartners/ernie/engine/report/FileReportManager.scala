@@ -32,6 +32,8 @@ class FileReportManager(pathToDefinitions: String, pathToOutputs: String) extend
 
   private val rptDefDir = new File(pathToDefinitions)
   private val outputDir = new File(pathToOutputs)
+  /** Report documents are kept apart from report output, which is loaded from every file in outputDir */
+  private val documentDir = new File(outputDir, "documents")
 
   // Validate directories
   if (!(rptDefDir.isDirectory && rptDefDir.canRead) || !(outputDir.isDirectory && outputDir.canWrite)) {
@@ -112,6 +114,10 @@ class FileReportManager(pathToDefinitions: String, pathToOutputs: String) extend
     getReportContent(report.getRptId)
   }
 
+  override def getReportChannel(rptId: String): Option[ReportContent] = {
+    reports.get(rptId).map({ new FileReportContent(_) })
+  }
+
   override def putDefinition(entity: Map[String, Any]): (DefinitionEntity, OutputStream) = putDefinition(Left(entity))
   override def putDefinition(entity: DefinitionEntity): (DefinitionEntity, OutputStream) = {
     //if ((entity.getCreatedUser == null) || (entity.getCreatedUser.length <= 0))
@@ -152,12 +158,19 @@ class FileReportManager(pathToDefinitions: String, pathToOutputs: String) extend
     }
 
     definitionEntities += (defId -> defEnt)
+    definitionEntityChanged(defId)
 
     if (!entityOnly) {
       val file = new File(rptDefDir, defId + ".rptdesign")
       log.info("Updating definition: {}", file)
       definitions += (defId -> file)
-      new FileOutputStream(file, false)
+      definitionChanged(defId)
+      new FileOutputStream(file, false) {
+        override def close() {
+          super.close()
+          definitionChanged(defId)
+        }
+      }
     } else null
   }
 
@@ -218,6 +231,7 @@ class FileReportManager(pathToDefinitions: String, pathToOutputs: String) extend
       log.info("Definition file {} was deleted successfully.", defId)
       definitions -= defId
       deleteDefinitionEntity(defId)
+      definitionChanged(defId)
       //} else {
       //  log.warn("Definition file {} did not delete successfully.", defId)
       // }
@@ -252,6 +266,7 @@ class FileReportManager(pathToDefinitions: String, pathToOutputs: String) extend
       log.info("Report file {} was deleted successfully.", rptId)
       reports -= rptId
       deleteReportEntity(rptId)
+      deleteRenditions(rptId)
       //  } else {
       // log.warn("Report file {} did not delete successfully.", rptId)
       // }
@@ -260,6 +275,11 @@ class FileReportManager(pathToDefinitions: String, pathToOutputs: String) extend
     }
   }
 
+  override def getReportDocument(rptId: String): File = {
+    if (!documentDir.isDirectory) documentDir.mkdirs
+    new File(documentDir, rptId + ".rptdocument")
+  }
+
   private def deleteReportEntity(rptId: String) {
     val entFile = new File(outputDir, rptId + ".entity")
     if (entFile.exists()) {
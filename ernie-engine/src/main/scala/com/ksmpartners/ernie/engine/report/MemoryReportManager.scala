@@ -21,6 +21,7 @@ import scala.collection._
 import com.ksmpartners.ernie.model.{ ReportEntity, DefinitionEntity }
 import com.ksmpartners.ernie.engine.report.ReportManager._
 import org.slf4j.{ LoggerFactory, Logger }
+import com.ksmpartners.ernie.util.Utility._
 
 /**
  * Implementation of [[com.ksmpartners.ernie.engine.report.ReportManager]] that stores reports and definitions in memory
@@ -35,6 +36,9 @@ class MemoryReportManager extends ReportManager {
 
   private val log: Logger = LoggerFactory.getLogger("com.ksmpartners.ernie.engine.MemoryReportManager")
 
+  /** BIRT report documents must be stored as files, so they are kept in a temporary directory */
+  private lazy val documentDir: File = createTempDirectory
+
   override def getAllDefinitionIds: List[String] = {
     definitions.keys.toList
   }
@@ -75,6 +79,10 @@ class MemoryReportManager extends ReportManager {
     getReportContent(report.getRptId)
   }
 
+  override def getReportChannel(rptId: String): Option[ReportContent] = {
+    reports.get(rptId).map({ new MemoryReportContent(_) })
+  }
+
   override def putDefinition(entity: Map[String, Any]): (DefinitionEntity, OutputStream) = putDefinition(Left(entity))
 
   override def putDefinition(entity: DefinitionEntity): (DefinitionEntity, OutputStream) = {
@@ -100,6 +108,7 @@ class MemoryReportManager extends ReportManager {
     if (definitionEntity.getDefDescription != null) definitionEntity.setDefDescription(definitionEntity.getDefDescription.trim())
     if (entityOnly) {
       definitionEntities += (defId -> definitionEntity)
+      definitionEntityChanged(defId)
       null
     } else new LocalBOS(definitionEntity.getDefId, { (id, content) =>
       {
@@ -135,13 +144,17 @@ class MemoryReportManager extends ReportManager {
   override def deleteDefinition(defId: String) {
     definitions -= defId
     definitionEntities -= defId
+    definitionChanged(defId)
   }
 
   override def deleteReport(rptId: String) {
     reports -= rptId
     reportEntities -= rptId
+    deleteRenditions(rptId)
   }
 
+  override def getReportDocument(rptId: String): File = new File(documentDir, rptId + ".rptdocument")
+
   private class LocalBOS(id: String, f: (String, Array[Byte]) => Unit) extends ByteArrayOutputStream {
 
     override def close() {
@@ -158,6 +171,7 @@ class MemoryReportManager extends ReportManager {
   def putDefinition(defId: String, content: Array[Byte], defEnt: DefinitionEntity) {
     definitionEntities += (defId -> defEnt)
     definitions += (defId -> content)
+    definitionChanged(defId)
   }
 
   /**
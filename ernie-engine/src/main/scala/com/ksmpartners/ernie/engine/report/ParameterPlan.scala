@@ -0,0 +1,110 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine.report
+
+import com.ksmpartners.ernie.model.{ JobStatus, ParameterEntity }
+import org.joda.time.DateTime
+import org.joda.time.format.DateTimeFormat
+import java.sql.Time
+import scala.collection.JavaConversions._
+
+/**
+ * Binding of request parameter values to the parameters of one version of a definition. The definition's ParameterEntity list is
+ * compiled once into a map of parameter name to converter, so binding neither searches the list nor builds formatters per value.
+ * Instances are immutable and thread safe.
+ * @param params the definition's parameters, or null if the definition does not declare any; values are then passed through unconverted
+ */
+class ParameterPlan(params: java.util.List[ParameterEntity]) {
+
+  private case class Binding(param: ParameterEntity, convert: Option[String => Any])
+
+  private val bindings: Option[Map[String, Binding]] = Option(params).map(_.toList.map(p =>
+    p.getParamName -> Binding(p, ParameterPlan.converter(p.getDataType))).toMap)
+
+  /**
+   * Return values converted to the types expected by the definition, with the default value of each parameter not in values.
+   * @throws InvalidParameterValuesException if values names a parameter the definition does not declare
+   * @throws ParameterNullException if a parameter that does not allow null has no value
+   * @throws UnsupportedDataTypeException if a parameter's type is unsupported
+   * @throws ClassCastException if a value cannot be converted
+   */
+  def bind(values: Map[String, String]): Map[String, Any] = bindings.map(b => {
+    val given = values.map(v => v._1 -> convert(v._2, b.getOrElse(v._1, throw new InvalidParameterValuesException(v._1))))
+    given ++ b.filterKeys(!values.contains(_)).map(d => d._1 -> convert(d._2.param.getDefaultValue, d._2))
+  }) getOrElse values
+
+  private def convert(data: String, binding: Binding): Any = ParameterPlan.convert(data, binding.param, binding.convert)
+
+  /**
+   * Return the status of a job whose parameters are values if they cannot be bound, or None if they can
+   */
+  def check(values: Map[String, String]): Option[JobStatus] = try {
+    bind(values)
+    None
+  } catch {
+    case e: Exception => Some(ParameterPlan.failureStatus(e))
+  }
+}
+
+/**
+ * Companion object for ParameterPlan holding the converters of each supported BIRT parameter type
+ */
+object ParameterPlan {
+
+  private val dateFormat = DateTimeFormat.forPattern("yyyy-MM-dd")
+
+  /**
+   * Return the converter from string to the value of a BIRT parameter of dataType, or None if dataType is unsupported
+   */
+  def converter(dataType: String): Option[String => Any] = dataType match { //TODO: do not hardcode data type names. http://www.eclipse.org/birt/ref/rom/elements/ScalarParameter.html#Property-dataType
+    case "boolean" => Some(_.toBoolean)
+    case "date" => Some(d => new java.sql.Date(dateFormat.parseDateTime(d).getMillis))
+    case "dateTime" => Some(d => new java.sql.Date(DateTime.parse(d).getMillis))
+    case "decimal" => Some(_.toDouble)
+    case "float" => Some(_.toFloat)
+    case "integer" => Some(_.toInt.asInstanceOf[Integer])
+    case "string" | "any" => Some(d => d)
+    case "time" => Some(Time.valueOf(_))
+    case _ => None
+  }
+
+  /**
+   * Return the status of a job whose parameters could not be bound because of e
+   */
+  def failureStatus(e: Exception): JobStatus = e match {
+    case _: ParameterNullException => JobStatus.FAILED_PARAMETER_NULL
+    case _: UnsupportedDataTypeException => JobStatus.FAILED_UNSUPPORTED_PARAMETER_TYPE
+    case _ => JobStatus.FAILED_INVALID_PARAMETER_VALUES
+  }
+
+  /**
+   * Convert data with convert, the converter of param's type
+   * @throws ParameterNullException if data is null or empty and param does not allow null
+   * @throws UnsupportedDataTypeException if convert is None
+   * @throws ClassCastException if conversion fails
+   */
+  protected[report] def convert(data: String, param: ParameterEntity, convert: Option[String => Any]): Any = {
+    if (((data == null) || (data == "")) && (!param.getAllowNull)) {
+      throw new ParameterNullException(param.getParamName)
+    } else try {
+      convert.getOrElse(throw new UnsupportedDataTypeException(param.getParamName))(data)
+    } catch {
+      case e: UnsupportedDataTypeException => throw new UnsupportedDataTypeException("name: " + param.getParamName + ", type: " + param.getDataType + ", value: " + data)
+      case e: Exception => throw new ClassCastException()
+    }
+  }
+}
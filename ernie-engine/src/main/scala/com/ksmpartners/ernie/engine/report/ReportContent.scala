@@ -0,0 +1,133 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine.report
+
+import java.io.{ ByteArrayInputStream, Closeable, File, InputStream, RandomAccessFile }
+import java.nio.ByteBuffer
+import java.nio.channels.{ FileChannel, WritableByteChannel }
+
+/**
+ * Content of a stored report that can be written to a channel without being copied through a stream. Instances hold resources
+ * such as an open file and must be closed. Instances are not thread safe.
+ */
+trait ReportContent extends Closeable {
+
+  /**
+   * Return the length of the content in bytes
+   */
+  def size: Long
+
+  /**
+   * Write count bytes of the content starting at position to target, or fewer if the content ends first.
+   * @return the number of bytes written
+   */
+  def transferTo(position: Long, count: Long, target: WritableByteChannel): Long
+
+  /**
+   * Write the whole content to target
+   * @return the number of bytes written
+   */
+  def transferTo(target: WritableByteChannel): Long = transferTo(0, size, target)
+
+  /**
+   * Return a read-only buffer over the whole content, if it can be mapped or wrapped without copying
+   */
+  def map(): Option[ByteBuffer]
+
+  /**
+   * Return a stream over count bytes of the content starting at position, or fewer if the content ends first
+   */
+  def openStream(position: Long, count: Long): InputStream
+
+  /**
+   * Return a stream over the content, for callers that need one
+   */
+  def openStream(): InputStream = openStream(0, size)
+}
+
+/**
+ * ReportContent of a report stored in file. The file is read through a FileChannel, so content is transferred to socket and file
+ * channels by the operating system without passing through the heap.
+ */
+class FileReportContent(file: File) extends ReportContent {
+
+  private val channel: FileChannel = new RandomAccessFile(file, "r").getChannel
+
+  def size: Long = channel.size
+
+  def transferTo(position: Long, count: Long, target: WritableByteChannel): Long = {
+    val end = math.min(position + count, size)
+    var pos = position
+    while (pos < end) {
+      val n = channel.transferTo(pos, end - pos, target)
+      if (n <= 0) return pos - position
+      pos += n
+    }
+    pos - position
+  }
+
+  def map(): Option[ByteBuffer] = if (size > Int.MaxValue) None else Some(channel.map(FileChannel.MapMode.READ_ONLY, 0, size))
+
+  /**
+   * Return a stream that reads the file at its own position, so that several streams over one ReportContent do not interfere
+   */
+  def openStream(position: Long, count: Long): InputStream = new InputStream {
+    private var pos = position
+    private val end = math.min(position + count, size)
+
+    override def read(): Int = {
+      val b = new Array[Byte](1)
+      if (read(b, 0, 1) <= 0) -1 else b(0) & 0xff
+    }
+
+    override def read(b: Array[Byte], off: Int, len: Int): Int = if (pos >= end) -1 else {
+      val n = channel.read(ByteBuffer.wrap(b, off, math.min(len.toLong, end - pos).toInt), pos)
+      if (n > 0) pos += n
+      n
+    }
+
+    override def available: Int = math.min(end - pos, Int.MaxValue).toInt
+  }
+
+  def close() {
+    channel.close()
+  }
+}
+
+/**
+ * ReportContent of a report held in memory
+ */
+class MemoryReportContent(content: Array[Byte]) extends ReportContent {
+
+  def size: Long = content.length
+
+  def transferTo(position: Long, count: Long, target: WritableByteChannel): Long = if (position >= content.length) 0L else {
+    val buf = ByteBuffer.wrap(content, position.toInt, math.min(count, content.length - position).toInt)
+    val start = buf.position
+    while (buf.hasRemaining && (target.write(buf) > 0)) {}
+    buf.position - start
+  }
+
+  def map(): Option[ByteBuffer] = Some(ByteBuffer.wrap(content).asReadOnlyBuffer)
+
+  def openStream(position: Long, count: Long): InputStream = {
+    val offset = math.min(position, content.length.toLong).toInt
+    new ByteArrayInputStream(content, offset, math.min(count, content.length - offset).toInt)
+  }
+
+  def close() {}
+}
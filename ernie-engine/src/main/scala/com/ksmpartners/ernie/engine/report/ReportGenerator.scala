@@ -48,6 +48,26 @@ trait ReportGenerator {
   def runReport(defId: String, rptId: String, rptType: ReportType, retentionDate: Option[Int], reportParameters: scala.collection.Map[String, String], userName: String): Unit
   def runReport(defId: String, rptId: String, rptType: ReportType, retentionDate: Option[Int], userName: String): Unit
 
+  /**
+   * Render the stored report document of rptId as rptType, without running the report's data sources again
+   * @param rptId the report whose document should be rendered
+   * @param rptType the output format
+   * @return the report ID under which the rendered output is stored, or [[scala.None]] if rptId has no stored report document
+   */
+  def renderReport(rptId: String, rptType: ReportType): Option[String] = None
+
+  /**
+   * Request that the run of rptId stop. The run fails with a [[com.ksmpartners.ernie.engine.report.ReportCancelledException]] once it
+   * has stopped; if it has not started yet, it is stopped as soon as it starts. May be called from any thread.
+   * @return true if a run of rptId was in progress
+   */
+  def cancelReport(rptId: String): Boolean = false
+
+  /**
+   * Drop any request to stop the run of rptId once the run has finished, such as one made after it completed. May be called from any thread.
+   */
+  def reportFinished(rptId: String) {}
+
   /**
    * Method to be called after all the reports have been run.
    */
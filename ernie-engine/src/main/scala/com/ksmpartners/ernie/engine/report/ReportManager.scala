@@ -16,11 +16,13 @@
 
 package com.ksmpartners.ernie.engine.report
 
-import java.io.{ OutputStream, InputStream }
+import java.io.{ File, OutputStream, InputStream }
 import scala.collection._
 import com.ksmpartners.ernie.model.{ ParameterEntity, ReportType, ReportEntity, DefinitionEntity }
 import java.util
 import org.joda.time.DateTime
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
 
 /**
  * Trait that contains methods for managing reports and definitions
@@ -69,6 +71,11 @@ trait ReportManager {
    * Get an InputStream containing the content for report
    */
   def getReportContent(report: Report): Option[InputStream]
+  /**
+   * Get the content for rptId as a [[com.ksmpartners.ernie.engine.report.ReportContent]], which the caller must close, so that it can be
+   * written to a channel without being copied through a stream
+   */
+  def getReportChannel(rptId: String): Option[ReportContent]
 
   /**
    * Return an OutputStream into which content can be put. The entity must contain information about the
@@ -104,10 +111,16 @@ trait ReportManager {
    */
   def deleteDefinition(defId: String)
   /**
-   * Delete the given report
+   * Delete the given report, along with its stored report document and renditions
    */
   def deleteReport(rptId: String)
 
+  /**
+   * Return the file in which the BIRT report document for rptId is stored. The file only exists if the report was generated
+   * while report documents were being kept.
+   */
+  def getReportDocument(rptId: String): File
+
   /* Return the default number of days for report output retention */
   def getDefaultRetentionDays: Int
   /* Set the default number of days for report output retention */
@@ -117,6 +130,61 @@ trait ReportManager {
   /* Set the maximum number of days for report output retention */
   def putMaximumRetentionDays(in: Int)
 
+  private val definitionVersions = new ConcurrentHashMap[String, java.lang.Long]()
+  private val parameterStamps = new ConcurrentHashMap[String, java.lang.Long]()
+  private val parameterPlans = new ConcurrentHashMap[String, (Long, ParameterPlan)]()
+
+  /**
+   * Return the current version of the design for defId. The version changes whenever the definition's
+   * content is replaced or the definition is deleted, and is never shared between ReportManager instances.
+   */
+  def getDefinitionVersion(defId: String): Long = {
+    val version = definitionVersions.get(defId)
+    if (version != null) version.longValue
+    else {
+      definitionVersions.putIfAbsent(defId, ReportManager.nextDefinitionVersion())
+      definitionVersions.get(defId).longValue
+    }
+  }
+
+  /**
+   * Return the ParameterPlan of defId, compiling it from the definition's parameters only if the definition has changed since it was
+   * last compiled, or None if defId does not exist. A plan compiled while the definition changes is stamped as stale and compiled again.
+   */
+  def getParameterPlan(defId: String): Option[ParameterPlan] = {
+    val stamp = Option(parameterStamps.get(defId)).map(_.longValue) getOrElse 0L
+    Option(parameterPlans.get(defId)).filter(_._1 == stamp).map(_._2) orElse getDefinition(defId).map(d => {
+      val plan = new ParameterPlan(d.getEntity.getParams)
+      parameterPlans.put(defId, (stamp, plan))
+      plan
+    })
+  }
+
+  /**
+   * Record that the content of defId has changed and drop the parameter plan cached for it. Designs opened for the previous version are
+   * no longer looked up and age out of the design cache.
+   */
+  protected def definitionChanged(defId: String) {
+    definitionVersions.put(defId, ReportManager.nextDefinitionVersion())
+    definitionEntityChanged(defId)
+  }
+
+  /**
+   * Record that the metadata of defId has changed and drop the parameter plan cached for it
+   */
+  protected def definitionEntityChanged(defId: String) {
+    parameterStamps.put(defId, ReportManager.nextDefinitionVersion())
+    parameterPlans.remove(defId)
+  }
+
+  /**
+   * Delete the stored report document and all renditions of rptId
+   */
+  protected def deleteRenditions(rptId: String) {
+    getReportDocument(rptId).delete
+    ReportType.values.map(ReportManager.renditionId(rptId, _)).filter(hasReport(_)).foreach(deleteReport(_))
+  }
+
   private var currDefId = System.currentTimeMillis
 
   protected def generateDefId(): Long = {
@@ -145,6 +213,19 @@ object ReportManager {
   val rptEntity = "rptEntity"
   val sourceDefId = "sourceDefId"
   val unsupportedReportTypes = "unsupportedReportTypes"
+  val resultCacheSeconds = "resultCacheSeconds"
+  val timeoutSeconds = "timeoutSeconds"
+  val bulkhead = "bulkhead"
+  val csvResultSet = "csvResultSet"
+
+  /**
+   * Return the report ID under which rptId rendered as rptType is stored
+   */
+  def renditionId(rptId: String, rptType: ReportType): String = rptId + "_" + rptType
+
+  private val definitionVersion = new AtomicLong(0L)
+
+  private def nextDefinitionVersion(): java.lang.Long = definitionVersion.incrementAndGet
 
   private var defaultRetentionDays = 7
   private var maximumRetentionDays = 14
@@ -164,6 +245,10 @@ object ReportManager {
    * Optional fields are:
    * - PARAM_NAMES (List[String])
    * - DESCRIPTION (String)
+   * - RESULT_CACHE_SECONDS (Int)
+   * - TIMEOUT_SECONDS (Int)
+   * - BULKHEAD (String)
+   * - CSV_RESULT_SET (String)
    */
   def createDefinitionEntity(entity: Map[String, Any]): DefinitionEntity = {
     if (!entity.contains(defId))
@@ -204,6 +289,18 @@ object ReportManager {
       defEnt.setUnsupportedReportTypes(rptTypeList)
     }
 
+    if (entity.contains(resultCacheSeconds))
+      defEnt.setResultCacheSeconds(entity.get(resultCacheSeconds).get.asInstanceOf[Int])
+
+    if (entity.contains(timeoutSeconds))
+      defEnt.setTimeoutSeconds(entity.get(timeoutSeconds).get.asInstanceOf[Int])
+
+    if (entity.contains(bulkhead))
+      defEnt.setBulkhead(entity.get(bulkhead).get.asInstanceOf[String])
+
+    if (entity.contains(csvResultSet))
+      defEnt.setCsvResultSet(entity.get(csvResultSet).get.asInstanceOf[String])
+
     defEnt
   }
 
@@ -28,6 +28,7 @@ import org.slf4j.{ LoggerFactory, Logger }
 import scala.collection.{ JavaConversions, mutable }
 import com.ksmpartners.ernie.util.Utility._
 import com.ksmpartners.ernie.util.TestLogger
+import com.ksmpartners.ernie.util.MapperUtility._
 import org.eclipse.birt.report.engine.api.UnsupportedFormatException
 import akka.actor.{ ActorSystem, ActorRef, ActorDSL }
 import akka.pattern.ask
@@ -88,6 +89,15 @@ class ActorsTest extends TestLogger {
     Assert.assertEquals(Await.result((coordinator ? (StatusRequest(jobId))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.FAILED_UNSUPPORTED_FORMAT)
   }
 
+  @Test
+  def notificationForSettledJobIsImmediate() {
+    val jobId = Await.result((coordinator ? (ReportRequest("test_def", ReportType.CSV, None, Map.empty[String, String], "testUser"))).mapTo[ReportResponse], timeout.duration).jobId
+    Assert.assertEquals(Await.result((coordinator ? JobNotificationRequest(jobId, Some(JobStatus.COMPLETE))).mapTo[JobNotificationResponse], timeout.duration).status,
+      JobStatus.FAILED_UNSUPPORTED_FORMAT)
+    Assert.assertEquals(Await.result((coordinator ? JobNotificationRequest(jobId, None, Some(JobStatus.PENDING))).mapTo[JobNotificationResponse], timeout.duration).status,
+      JobStatus.FAILED_UNSUPPORTED_FORMAT)
+  }
+
   @Test(dependsOnMethods = Array("reportEntitiesIncludeAllRequiredMetadata"))
   def canDeleteJobOutput() {
     import com.ksmpartners.ernie.engine._
@@ -114,6 +124,236 @@ class ActorsTest extends TestLogger {
     coordinator ! NewWorkerRequest()
   }
 
+  @Test
+  def newJobIsPending() {
+    val rsp = Await.result((coordinator ? (ReportRequest("test_def", ReportType.PDF, None, Map.empty[String, String], "testUser"))).mapTo[ReportResponse], timeout.duration)
+    Assert.assertEquals(rsp.jobStatus, JobStatus.PENDING)
+  }
+
+  @Test
+  def batchRequestCreatesJobsInOrder() {
+    val jobDir = createTempDirectory
+    val batchCoordinator = ActorDSL.actor(system)(new Coordinator(Some(jobDir.getAbsolutePath), reportManager, None, 1) with TestReportGeneratorFactory)
+    val req = BatchReportRequest(List(ReportRequest("test_def", ReportType.PDF, None, Map.empty[String, String], "testUser"),
+      ReportRequest("no_such_def", ReportType.PDF, None, Map.empty[String, String], "testUser"),
+      ReportRequest("test_def", ReportType.CSV, None, Map.empty[String, String], "testUser")))
+    val rsp = Await.result((batchCoordinator ? req).mapTo[BatchReportResponse], timeout.duration)
+    Assert.assertEquals(rsp.responses.map(_.req), req.requests)
+    Assert.assertEquals(rsp.responses.map(_.jobStatus), List(JobStatus.PENDING, JobStatus.FAILED_NO_SUCH_DEFINITION, JobStatus.FAILED_UNSUPPORTED_FORMAT))
+    Assert.assertEquals(rsp.responses.map(_.jobId).distinct.size, 3)
+    rsp.responses.foreach(r => Assert.assertTrue(new File(jobDir, r.jobId + ".entity").isFile))
+    Assert.assertEquals(Await.result((batchCoordinator ? JobNotificationRequest(rsp.responses.head.jobId, Some(JobStatus.COMPLETE))).mapTo[JobNotificationResponse],
+      timeout.duration).status, JobStatus.COMPLETE)
+    system.stop(batchCoordinator)
+  }
+
+  @Test
+  def fullQueueRejectsJob() {
+    val fullCoordinator = ActorDSL.actor(system)(new Coordinator(None, reportManager, None, 1, Some(0)) with TestReportGeneratorFactory)
+    val rsp = Await.result((fullCoordinator ? (ReportRequest("test_def", ReportType.PDF, None, Map.empty[String, String], "testUser"))).mapTo[ReportResponse], timeout.duration)
+    Assert.assertEquals(rsp.jobStatus, JobStatus.FAILED_QUEUE_FULL)
+    Assert.assertEquals(Await.result((fullCoordinator ? (StatusRequest(rsp.jobId))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.NO_SUCH_JOB)
+    system.stop(fullCoordinator)
+  }
+
+  @Test
+  def canCancelQueuedJob() {
+    val idleCoordinator = ActorDSL.actor(system)(new Coordinator(None, reportManager, None, 0) with TestReportGeneratorFactory)
+    val rsp = Await.result((idleCoordinator ? (ReportRequest("test_def", ReportType.PDF, None, Map.empty[String, String], "testUser"))).mapTo[ReportResponse], timeout.duration)
+    Assert.assertEquals(Await.result((idleCoordinator ? (CancelRequest(rsp.jobId))).mapTo[CancelResponse], timeout.duration).jobStatus, JobStatus.CANCELLED)
+    Assert.assertEquals(Await.result((idleCoordinator ? (StatusRequest(rsp.jobId))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.CANCELLED)
+    Assert.assertEquals(Await.result((idleCoordinator ? (QueuePositionRequest(rsp.jobId))).mapTo[QueuePositionResponse], timeout.duration).position, None)
+    idleCoordinator ! JobResponse(JobStatus.COMPLETE, Some("late"), JobRequest("test_def", ReportType.PDF, rsp.jobId, None, Map.empty[String, String], "testUser"))
+    Assert.assertEquals(Await.result((idleCoordinator ? (StatusRequest(rsp.jobId))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.CANCELLED)
+    Assert.assertEquals(Await.result((idleCoordinator ? (CancelRequest(-1L))).mapTo[CancelResponse], timeout.duration).jobStatus, JobStatus.NO_SUCH_JOB)
+    system.stop(idleCoordinator)
+  }
+
+  @Test
+  def cancelledRunPassesToAttachedJob() {
+    val defEnt = new DefinitionEntity(DateTime.now(), "handover_def", "default", null, "", null, null)
+    defEnt.setResultCacheSeconds(60)
+    reportManager.putDefinition("handover_def", "handover_def".getBytes, defEnt)
+    val idleCoordinator = ActorDSL.actor(system)(new Coordinator(None, reportManager, None, 0) with TestReportGeneratorFactory)
+    val jobIds = (1 to 3).map(i => Await.result((idleCoordinator ? (ReportRequest("handover_def", ReportType.PDF, None, Map.empty[String, String], "testUser")))
+      .mapTo[ReportResponse], timeout.duration).jobId)
+    def position(jobId: Long) = Await.result((idleCoordinator ? (QueuePositionRequest(jobId))).mapTo[QueuePositionResponse], timeout.duration).position
+    Assert.assertEquals(jobIds.map(position(_)).toList, List(Some(1), None, None))
+    Assert.assertEquals(Await.result((idleCoordinator ? (CancelRequest(jobIds(0)))).mapTo[CancelResponse], timeout.duration).jobStatus, JobStatus.CANCELLED)
+    Assert.assertEquals(jobIds.map(position(_)).toList, List(None, Some(1), None))
+    Assert.assertEquals(Await.result((idleCoordinator ? (StatusRequest(jobIds(2)))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.PENDING)
+    system.stop(idleCoordinator)
+  }
+
+  @Test
+  def rearmedNotificationIsAnswered() {
+    val idleCoordinator = ActorDSL.actor(system)(new Coordinator(None, reportManager, None, 0) with TestReportGeneratorFactory)
+    val rsp = Await.result((idleCoordinator ? (ReportRequest("test_def", ReportType.PDF, None, Map.empty[String, String], "testUser"))).mapTo[ReportResponse], timeout.duration)
+    for (i <- 1 to 3) Assert.assertTrue(Await.ready(idleCoordinator.ask(JobNotificationRequest(rsp.jobId, None, Some(JobStatus.PENDING)))(Timeout(50 millis)),
+      timeout.duration).value.get.isFailure)
+    val rearmed = idleCoordinator ? JobNotificationRequest(rsp.jobId, None, Some(JobStatus.PENDING))
+    Assert.assertEquals(Await.result((idleCoordinator ? (CancelRequest(rsp.jobId))).mapTo[CancelResponse], timeout.duration).jobStatus, JobStatus.CANCELLED)
+    Assert.assertEquals(Await.result(rearmed.mapTo[JobNotificationResponse], timeout.duration).status, JobStatus.CANCELLED)
+    system.stop(idleCoordinator)
+  }
+
+  @Test
+  def cancelledRestartingJobIsNotRestarted() {
+    val jobDir = createTempDirectory
+    try_(new FileOutputStream(new File(jobDir, "61.entity"))) { fos =>
+      mapper.writeValue(fos, new JobEntity(61L, JobStatus.IN_PROGRESS, DateTime.now, null, new ReportEntity(DateTime.now, DateTime.now.plusDays(7),
+        null, "test_def", "testUser", null, ReportType.PDF, null, null)))
+    }
+    val restartingCoordinator = ActorDSL.actor(system)(new Coordinator(Some(jobDir.getAbsolutePath), reportManager, None, 0) with TestReportGeneratorFactory)
+    Assert.assertEquals(Await.result((restartingCoordinator ? (StatusRequest(61L))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.RESTARTING)
+    Assert.assertEquals(Await.result((restartingCoordinator ? (CancelRequest(61L))).mapTo[CancelResponse], timeout.duration).jobStatus, JobStatus.CANCELLED)
+    restartingCoordinator ! RestartJobsRequest()
+    Assert.assertEquals(Await.result((restartingCoordinator ? (ReadinessRequest())).mapTo[ReadinessResponse], timeout.duration).jobsRestarted, 0)
+    Assert.assertEquals(Await.result((restartingCoordinator ? (StatusRequest(61L))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.CANCELLED)
+    system.stop(restartingCoordinator)
+  }
+
+  @Test
+  def fullBulkheadHoldsJobsBackWhileOthersRun() {
+    val heavyEnt = new DefinitionEntity(DateTime.now(), "heavy_def", "default", null, "", null, null)
+    heavyEnt.setBulkhead("heavy")
+    reportManager.putDefinition("heavy_def", "heavy_def".getBytes, heavyEnt)
+    val settings = DispatcherSettings(workerThreads = Some(2), bulkheads = Map("heavy" -> 0))
+    val dispatcherSystem = ActorSystem("dispatcher-test-system", settings.config(2))
+    val bulkheadCoordinator = dispatcherSystem.actorOf(akka.actor.Props(new Coordinator(None, reportManager, None, 2, bulkheads = settings.bulkheads) with TestReportGeneratorFactory).withDispatcher(DispatcherSettings.coordinatorDispatcherId))
+    try {
+      val heavy = Await.result((bulkheadCoordinator ? (ReportRequest("heavy_def", ReportType.PDF, None, Map.empty[String, String], "testUser"))).mapTo[ReportResponse], timeout.duration)
+      val light = Await.result((bulkheadCoordinator ? (ReportRequest("test_def", ReportType.PDF, None, Map.empty[String, String], "testUser"))).mapTo[ReportResponse], timeout.duration)
+      Assert.assertEquals(Await.result((bulkheadCoordinator ? JobNotificationRequest(light.jobId, Some(JobStatus.COMPLETE))).mapTo[JobNotificationResponse],
+        timeout.duration).status, JobStatus.COMPLETE)
+      Assert.assertEquals(Await.result((bulkheadCoordinator ? (StatusRequest(heavy.jobId))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.PENDING)
+      Assert.assertEquals(Await.result((bulkheadCoordinator ? (QueuePositionRequest(heavy.jobId))).mapTo[QueuePositionResponse], timeout.duration).position, Some(1))
+    } finally dispatcherSystem.shutdown()
+  }
+
+  @Test
+  def failedGeneratorStartsNoWorkers() {
+    val brokenCoordinator = ActorDSL.actor(system)(new Coordinator(None, reportManager, None, 2) with ReportGeneratorFactory {
+      def getReportGenerator(reportManager: ReportManager): ReportGenerator = new TestReportGenerator(reportManager) {
+        override def startup = throw new IllegalStateException("BIRT did not start")
+      }
+    })
+    brokenCoordinator ! NewWorkerRequest()
+    val rsp = Await.result((brokenCoordinator ? (ReportRequest("test_def", ReportType.PDF, None, Map.empty[String, String], "testUser"))).mapTo[ReportResponse], timeout.duration)
+    def readiness = Await.result((brokenCoordinator ? (ReadinessRequest())).mapTo[ReadinessResponse], timeout.duration)
+    // Poll until the failed startup has reached the coordinator
+    val deadline = 30.seconds.fromNow
+    var r = readiness
+    while (!(r.generatorStarted || r.generatorFailed) && deadline.hasTimeLeft) r = readiness
+    Assert.assertTrue(r.generatorFailed)
+    Assert.assertFalse(r.generatorStarted)
+    val status = Await.result((brokenCoordinator ? (QueueStatusRequest())).mapTo[QueueStatusResponse], timeout.duration)
+    Assert.assertEquals(status.workerCount, 3)
+    Assert.assertEquals(status.idleWorkers, 0)
+    Assert.assertEquals(Await.result((brokenCoordinator ? (StatusRequest(rsp.jobId))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.PENDING)
+    system.stop(brokenCoordinator)
+  }
+
+  @Test
+  def canRequestQueueStatus() {
+    val status = Await.result((coordinator ? (QueueStatusRequest())).mapTo[QueueStatusResponse], timeout.duration)
+    Assert.assertTrue(status.workerCount >= 5)
+    Assert.assertTrue(status.idleWorkers <= status.workerCount)
+    Assert.assertTrue(status.pendingJobs >= 0)
+    Assert.assertEquals(Await.result((coordinator ? (QueuePositionRequest(0))).mapTo[QueuePositionResponse], timeout.duration).position, None)
+  }
+
+  @Test
+  def fastJobFinishesBeforeSlowJob() {
+    reportManager.putDefinition("slow_def", "slow_def".getBytes, new DefinitionEntity(DateTime.now(), "slow_def", "default", null, "", null, null))
+    val twoWorkerCoordinator = ActorDSL.actor(system)(new Coordinator(None, reportManager, None, 2) with SlowDefReportGeneratorFactory)
+    def request(defId: String) = Await.result((twoWorkerCoordinator ? (ReportRequest(defId, ReportType.PDF, None, Map.empty[String, String], "testUser")))
+      .mapTo[ReportResponse], timeout.duration).jobId
+    def awaitStatus(jobId: Long, status: JobStatus) = Assert.assertEquals(Await.result((twoWorkerCoordinator ? JobNotificationRequest(jobId, Some(status)))
+      .mapTo[JobNotificationResponse], timeout.duration).status, status)
+    def status(jobId: Long) = Await.result((twoWorkerCoordinator ? (StatusRequest(jobId))).mapTo[StatusResponse], timeout.duration).jobStatus
+    def position(jobId: Long) = Await.result((twoWorkerCoordinator ? (QueuePositionRequest(jobId))).mapTo[QueuePositionResponse], timeout.duration).position
+
+    val slow = request("slow_def")
+    val fast = request("test_def")
+    awaitStatus(fast, JobStatus.COMPLETE)
+    Assert.assertEquals(status(slow), JobStatus.IN_PROGRESS)
+
+    // With both workers held by slow jobs, the next job waits at the head of the queue
+    val otherSlow = request("slow_def")
+    awaitStatus(otherSlow, JobStatus.IN_PROGRESS)
+    val queued = request("test_def")
+    val queueStatus = Await.result((twoWorkerCoordinator ? (QueueStatusRequest())).mapTo[QueueStatusResponse], timeout.duration)
+    Assert.assertEquals(queueStatus.pendingJobs, 1)
+    Assert.assertEquals(queueStatus.idleWorkers, 0)
+    Assert.assertEquals(queueStatus.workerCount, 2)
+    Assert.assertEquals(position(queued), Some(1))
+    Assert.assertEquals(position(slow), None)
+
+    Assert.assertEquals(Await.result((twoWorkerCoordinator ? (CancelRequest(slow))).mapTo[CancelResponse], timeout.duration).jobStatus, JobStatus.IN_PROGRESS)
+    awaitStatus(queued, JobStatus.COMPLETE)
+    Assert.assertEquals(status(slow), JobStatus.CANCELLED)
+    Assert.assertEquals(status(otherSlow), JobStatus.IN_PROGRESS)
+    Assert.assertEquals(position(queued), None)
+    Await.result((twoWorkerCoordinator ? (CancelRequest(otherSlow))).mapTo[CancelResponse], timeout.duration)
+    awaitStatus(otherSlow, JobStatus.CANCELLED)
+    system.stop(twoWorkerCoordinator)
+  }
+
+  @Test
+  def recoversPersistedJobsBeforeReady() {
+    val jobDir = createTempDirectory
+    try_(new FileOutputStream(new File(jobDir, "42.entity"))) { fos =>
+      mapper.writeValue(fos, new JobEntity(42L, JobStatus.FAILED, DateTime.now, null, null))
+    }
+    val recoveringCoordinator = ActorDSL.actor(system)(new Coordinator(Some(jobDir.getAbsolutePath), reportManager, None, 1) with TestReportGeneratorFactory)
+    Assert.assertEquals(Await.result((recoveringCoordinator ? (StatusRequest(42L))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.FAILED)
+    Assert.assertTrue(Await.result((recoveringCoordinator ? (JobsListRequest())).mapTo[JobsListResponse], timeout.duration).jobsList.contains("42"))
+    val readiness = Await.result((recoveringCoordinator ? (ReadinessRequest())).mapTo[ReadinessResponse], timeout.duration)
+    Assert.assertFalse(readiness.recovering)
+    Assert.assertEquals(readiness.jobsRecovered, 1)
+  }
+
+  @Test
+  def restartsUnfinishedJobsInThrottledBatches() {
+    val jobDir = createTempDirectory
+    val jobIds = List(51L, 52L, 53L)
+    jobIds.foreach(jobId => try_(new FileOutputStream(new File(jobDir, jobId + ".entity"))) { fos =>
+      mapper.writeValue(fos, new JobEntity(jobId, JobStatus.PENDING, DateTime.now, null, new ReportEntity(DateTime.now, DateTime.now.plusDays(7),
+        null, "test_def", "testUser", null, ReportType.PDF, null, null)))
+    })
+    val restartingCoordinator = ActorDSL.actor(system)(new Coordinator(Some(jobDir.getAbsolutePath), reportManager, None, 2,
+      restart = RestartSettings(batchSize = 1, interval = 200 milliseconds)) with TestReportGeneratorFactory)
+    Assert.assertEquals(Await.result((restartingCoordinator ? (StatusRequest(51L))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.RESTARTING)
+    restartingCoordinator ! RestartJobsRequest()
+    jobIds.foreach(jobId => Assert.assertEquals(Await.result((restartingCoordinator ? (JobNotificationRequest(jobId, Some(JobStatus.COMPLETE)))).mapTo[JobNotificationResponse],
+      timeout.duration).status, JobStatus.COMPLETE))
+    val readiness = Await.result((restartingCoordinator ? (ReadinessRequest())).mapTo[ReadinessResponse], timeout.duration)
+    Assert.assertEquals(readiness.jobsRestarting, 0)
+    Assert.assertEquals(readiness.jobsRestarted, jobIds.size)
+  }
+
+  @Test
+  def canPageThroughJobCatalog() {
+    val pagingCoordinator = ActorDSL.actor(system)(new Coordinator(None, reportManager, None, 0) with TestReportGeneratorFactory)
+    val jobIds = (1 to 5).map(i => Await.result((pagingCoordinator ? (ReportRequest("test_def", ReportType.PDF, None, Map.empty[String, String],
+      if (i == 3) "otherUser" else "testUser"))).mapTo[ReportResponse], timeout.duration).jobId).toList
+    val first = Await.result((pagingCoordinator ? (JobsCatalogRequest(None, JobQuery(limit = Some(2))))).mapTo[JobsCatalogResponse], timeout.duration)
+    Assert.assertEquals(first.catalog.map(_.getJobId.longValue), jobIds.take(2))
+    Assert.assertEquals(first.nextCursor, Some(jobIds(1)))
+    val rest = Await.result((pagingCoordinator ? (JobsListRequest(JobQuery(limit = Some(5), cursor = first.nextCursor)))).mapTo[JobsListResponse],
+      timeout.duration)
+    Assert.assertEquals(rest.jobsList.toList, jobIds.drop(2).map(_.toString))
+    Assert.assertEquals(rest.nextCursor, None)
+    val newest = Await.result((pagingCoordinator ? (JobsCatalogRequest(Some(JobCatalog.IN_PROGRESS), JobQuery(user = Some("testUser"),
+      limit = Some(1), descending = true)))).mapTo[JobsCatalogResponse], timeout.duration)
+    Assert.assertEquals(newest.catalog.map(_.getJobId.longValue), List(jobIds.last))
+    Assert.assertTrue(Await.result((pagingCoordinator ? (JobsCatalogRequest(Some(JobCatalog.COMPLETE), JobQuery(user = Some("otherUser")))))
+      .mapTo[JobsCatalogResponse], timeout.duration).catalog.isEmpty)
+    Assert.assertTrue(Await.result((pagingCoordinator ? (JobsListRequest(JobQuery(submittedTo = Some(DateTime.now.minusDays(1))))))
+      .mapTo[JobsListResponse], timeout.duration).jobsList.isEmpty)
+  }
+
   @Test
   def canRequestJobMap() {
     import com.ksmpartners.ernie.engine._
@@ -130,7 +370,7 @@ class ActorsTest extends TestLogger {
     var status = rptResp.jobStatus
     do {
       status = Await.result((coordinator ? (StatusRequest(rptResp.jobId))).mapTo[StatusResponse], timeout.duration).jobStatus
-    } while (status == JobStatus.IN_PROGRESS)
+    } while ((status == JobStatus.IN_PROGRESS) || (status == JobStatus.PENDING))
     val r = Await.result((coordinator ? (ResultRequest(rptResp.jobId))).mapTo[ResultResponse], timeout.duration)
     Assert.assertTrue(r.rptId isDefined)
     Assert.assertTrue(reportManager.getReport(r.rptId.get) isDefined)
@@ -178,6 +418,92 @@ class ActorsTest extends TestLogger {
 
   }
 
+  @Test
+  def identicalRequestsReuseCachedResult() {
+    val defEnt = new DefinitionEntity(DateTime.now(), "cached_def", "default", null, "", null, null)
+    defEnt.setResultCacheSeconds(60)
+    reportManager.putDefinition("cached_def", "cached_def".getBytes, defEnt)
+    val first = Await.result((coordinator ? (ReportRequest("cached_def", ReportType.PDF, None, Map("a" -> "1", "b" -> "2"), "testUser"))).mapTo[ReportResponse], timeout.duration)
+    Assert.assertEquals(Await.result((coordinator ? JobNotificationRequest(first.jobId, Some(JobStatus.COMPLETE))).mapTo[JobNotificationResponse], timeout.duration).status,
+      JobStatus.COMPLETE)
+    val firstRptId = Await.result((coordinator ? (ResultRequest(first.jobId))).mapTo[ResultResponse], timeout.duration).rptId
+
+    val second = Await.result((coordinator ? (ReportRequest("cached_def", ReportType.PDF, None, Map("b" -> "2", "a" -> "1"), "otherUser"))).mapTo[ReportResponse], timeout.duration)
+    Assert.assertEquals(second.jobStatus, JobStatus.COMPLETE)
+    Assert.assertTrue(second.jobId != first.jobId)
+    Assert.assertEquals(Await.result((coordinator ? (ResultRequest(second.jobId))).mapTo[ResultResponse], timeout.duration).rptId, firstRptId)
+
+    // A hit that asks for a longer retention keeps the shared output for that long
+    val longer = Await.result((coordinator ? (ReportRequest("cached_def", ReportType.PDF, Some(reportManager.getMaximumRetentionDays), Map("a" -> "1", "b" -> "2"), "testUser"))).mapTo[ReportResponse], timeout.duration)
+    Assert.assertEquals(longer.jobStatus, JobStatus.COMPLETE)
+    Assert.assertTrue(reportManager.getReport(firstRptId.get).get.getRetentionDate.isAfter(DateTime.now.plusDays(reportManager.getMaximumRetentionDays - 1)))
+
+    reportManager.putDefinition("cached_def", "cached_def".getBytes, defEnt)
+    val third = Await.result((coordinator ? (ReportRequest("cached_def", ReportType.PDF, None, Map("a" -> "1", "b" -> "2"), "testUser"))).mapTo[ReportResponse], timeout.duration)
+    Assert.assertEquals(third.jobStatus, JobStatus.PENDING)
+  }
+
+  @Test
+  def sharedResultOutlivesDeletedLeader() {
+    val defEnt = new DefinitionEntity(DateTime.now(), "shared_def", "default", null, "", null, null)
+    defEnt.setResultCacheSeconds(60)
+    reportManager.putDefinition("shared_def", "shared_def".getBytes, defEnt)
+    val leader = Await.result((coordinator ? (ReportRequest("shared_def", ReportType.PDF, None, Map("a" -> "1"), "testUser"))).mapTo[ReportResponse], timeout.duration)
+    Assert.assertEquals(Await.result((coordinator ? JobNotificationRequest(leader.jobId, Some(JobStatus.COMPLETE))).mapTo[JobNotificationResponse], timeout.duration).status,
+      JobStatus.COMPLETE)
+    val follower = Await.result((coordinator ? (ReportRequest("shared_def", ReportType.PDF, None, Map("a" -> "1"), "otherUser"))).mapTo[ReportResponse], timeout.duration)
+    Assert.assertEquals(follower.jobStatus, JobStatus.COMPLETE)
+
+    Assert.assertEquals(Await.result((coordinator ? (DeleteRequest(leader.jobId))).mapTo[DeleteResponse], timeout.duration).deleteStatus, DeleteStatus.SUCCESS)
+    Assert.assertEquals(Await.result((coordinator ? (StatusRequest(follower.jobId))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.COMPLETE)
+    val rptId = Await.result((coordinator ? (ResultRequest(follower.jobId))).mapTo[ResultResponse], timeout.duration).rptId
+    Assert.assertTrue(rptId.exists(reportManager.getReport(_).isDefined))
+
+    Assert.assertEquals(Await.result((coordinator ? (DeleteRequest(follower.jobId))).mapTo[DeleteResponse], timeout.duration).deleteStatus, DeleteStatus.SUCCESS)
+    Assert.assertFalse(reportManager.getReport(rptId.get).isDefined)
+  }
+
+  @Test
+  def runPastTimeoutEndsTimedOut() {
+    val slowCoordinator = ActorDSL.actor(system)(new Coordinator(None, reportManager, None, 1) with BlockingReportGeneratorFactory)
+    val rsp = Await.result((slowCoordinator ? (ReportRequest("test_def", ReportType.PDF, None, Map.empty[String, String], "testUser", timeout = Some(200 milliseconds)))).mapTo[ReportResponse], timeout.duration)
+    Assert.assertEquals(Await.result((slowCoordinator ? JobNotificationRequest(rsp.jobId, Some(JobStatus.TIMED_OUT))).mapTo[JobNotificationResponse], timeout.duration).status,
+      JobStatus.TIMED_OUT)
+    Assert.assertEquals(Await.result((slowCoordinator ? (StatusRequest(rsp.jobId))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.TIMED_OUT)
+    system.stop(slowCoordinator)
+  }
+
+  @Test
+  def canCancelRunningJob() {
+    val slowCoordinator = ActorDSL.actor(system)(new Coordinator(None, reportManager, None, 1) with BlockingReportGeneratorFactory)
+    val rsp = Await.result((slowCoordinator ? (ReportRequest("test_def", ReportType.PDF, None, Map.empty[String, String], "testUser", timeout = Some(1 minute)))).mapTo[ReportResponse], timeout.duration)
+    Assert.assertEquals(Await.result((slowCoordinator ? JobNotificationRequest(rsp.jobId, Some(JobStatus.IN_PROGRESS))).mapTo[JobNotificationResponse], timeout.duration).status,
+      JobStatus.IN_PROGRESS)
+    Assert.assertEquals(Await.result((slowCoordinator ? (CancelRequest(rsp.jobId))).mapTo[CancelResponse], timeout.duration).jobStatus, JobStatus.IN_PROGRESS)
+    Assert.assertEquals(Await.result((slowCoordinator ? JobNotificationRequest(rsp.jobId, Some(JobStatus.CANCELLED))).mapTo[JobNotificationResponse], timeout.duration).status,
+      JobStatus.CANCELLED)
+    Assert.assertEquals(Await.result((slowCoordinator ? (StatusRequest(rsp.jobId))).mapTo[StatusResponse], timeout.duration).jobStatus, JobStatus.CANCELLED)
+    system.stop(slowCoordinator)
+  }
+
+  @Test
+  def rendersStoredDocumentOnDemand() {
+    val rsp = Await.result((coordinator ? (ReportRequest("test_def", ReportType.PDF, None, Map.empty[String, String], "testUser"))).mapTo[ReportResponse], timeout.duration)
+    Await.result((coordinator ? JobNotificationRequest(rsp.jobId, Some(JobStatus.COMPLETE))).mapTo[JobNotificationResponse], timeout.duration)
+    val rptId = jobToRptId(rsp.jobId)
+    Assert.assertEquals(Await.result((coordinator ? RenderRequest(rsp.jobId, ReportType.PDF)).mapTo[RenderResponse], timeout.duration).rptId, Some(rptId))
+    Assert.assertEquals(Await.result((coordinator ? RenderRequest(rsp.jobId, ReportType.HTML)).mapTo[RenderResponse], timeout.duration).rptId, None)
+
+    reportManager.getReportDocument(rptId).createNewFile
+    val renditionId = ReportManager.renditionId(rptId, ReportType.HTML)
+    Assert.assertEquals(Await.result((coordinator ? RenderRequest(rsp.jobId, ReportType.HTML)).mapTo[RenderResponse], timeout.duration).rptId, Some(renditionId))
+    Assert.assertEquals(reportManager.getReport(renditionId).map(_.getReportType), Some(ReportType.HTML))
+
+    Assert.assertEquals(Await.result((coordinator ? (DeleteRequest(rsp.jobId))).mapTo[DeleteResponse], timeout.duration).deleteStatus, DeleteStatus.SUCCESS)
+    Assert.assertFalse(reportManager.hasReport(renditionId))
+    Assert.assertFalse(reportManager.getReportDocument(rptId).exists)
+  }
+
   @Test
   def jobWithoutRetentionDateUsesDefault() {
     import com.ksmpartners.ernie.engine._
@@ -210,6 +536,51 @@ trait TestReportGeneratorFactory extends ReportGeneratorFactory {
 
 }
 
+trait BlockingReportGeneratorFactory extends ReportGeneratorFactory {
+  private var rptGen: Option[BlockingReportGenerator] = None
+  def getReportGenerator(reportManager: ReportManager): ReportGenerator = rptGen getOrElse {
+    rptGen = Some(new BlockingReportGenerator(reportManager))
+    rptGen.get
+  }
+
+}
+
+trait SlowDefReportGeneratorFactory extends ReportGeneratorFactory {
+  private var rptGen: Option[BlockingReportGenerator] = None
+  def getReportGenerator(reportManager: ReportManager): ReportGenerator = rptGen getOrElse {
+    rptGen = Some(new BlockingReportGenerator(reportManager, _ == "slow_def"))
+    rptGen.get
+  }
+
+}
+
+/**
+ * Report generator whose runs of the definitions selected by blocks do not finish until they are asked to stop
+ */
+class BlockingReportGenerator(reportManager: ReportManager, blocks: String => Boolean = _ => true) extends TestReportGenerator(reportManager) {
+
+  private val cancelled = new java.util.concurrent.ConcurrentHashMap[String, java.util.concurrent.CountDownLatch]()
+
+  private def latch(rptId: String) = {
+    cancelled.putIfAbsent(rptId, new java.util.concurrent.CountDownLatch(1))
+    cancelled.get(rptId)
+  }
+
+  override def runReport(defId: String, rptId: String, rptType: ReportType, retentionDays: Option[Int], reportParameters: scala.collection.Map[String, String], userName: String) {
+    if (!running)
+      throw new IllegalStateException("ReportGenerator is not started")
+    if (!blocks(defId))
+      return super.runReport(defId, rptId, rptType, retentionDays, reportParameters, userName)
+    latch(rptId).await()
+    throw new ReportCancelledException(rptId)
+  }
+
+  override def cancelReport(rptId: String): Boolean = {
+    latch(rptId).countDown()
+    true
+  }
+}
+
 class TestReportGenerator(reportManager: ReportManager) extends ReportGenerator {
 
   protected var running = false
@@ -242,6 +613,20 @@ class TestReportGenerator(reportManager: ReportManager) extends ReportGenerator
     reportManager.updateReportEntity(entity)
   }
 
+  override def renderReport(rptId: String, rptType: ReportType): Option[String] =
+    reportManager.getReport(rptId).filter(_ => reportManager.getReportDocument(rptId).isFile).map(rpt => {
+      val renditionId = ReportManager.renditionId(rptId, rptType)
+      var entity = new mutable.HashMap[String, Any]()
+      entity += (ReportManager.rptId -> renditionId)
+      entity += (ReportManager.sourceDefId -> rpt.getSourceDefId)
+      entity += (ReportManager.reportType -> rptType)
+      entity += (ReportManager.createdUser -> rpt.getCreatedUser)
+      try_(reportManager.putReport(entity)) { os =>
+        os.write(renditionId.getBytes)
+      }
+      renditionId
+    })
+
   override def shutdown() {
     if (running)
       running = false
@@ -0,0 +1,53 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine
+
+import org.testng.annotations.Test
+import org.testng.Assert
+import scala.concurrent.duration._
+import com.ksmpartners.ernie.util.TestLogger
+
+class AutoscalerTest extends TestLogger {
+
+  private val scaler = new Autoscaler(AutoscaleSettings(minWorkers = 2, maxWorkers = 10, scaleUpWait = 1 second, maxCpuLoad = 0.8, maxStep = 3))
+
+  @Test
+  def addsWorkersWhenJobsWaitTooLong() {
+    Assert.assertEquals(scaler.target(4, 5, 2000L, 0, Some(0.2)), 7)
+    Assert.assertEquals(scaler.target(4, 2, 2000L, 0, None), 6)
+    Assert.assertEquals(scaler.target(9, 5, 2000L, 0, Some(0.2)), 10)
+    Assert.assertEquals(scaler.target(4, 5, 500L, 0, Some(0.2)), 4)
+  }
+
+  @Test
+  def holdsWhenCpuIsBusy() {
+    Assert.assertEquals(scaler.target(4, 5, 2000L, 0, Some(0.9)), 4)
+  }
+
+  @Test
+  def retiresIdleWorkersDownToMinimum() {
+    Assert.assertEquals(scaler.target(6, 0, 0L, 3, Some(0.2)), 3)
+    Assert.assertEquals(scaler.target(6, 0, 0L, 6, Some(0.2)), 2)
+    Assert.assertEquals(scaler.target(6, 1, 0L, 3, Some(0.2)), 6)
+    Assert.assertEquals(scaler.target(1, 0, 0L, 0, None), 2)
+  }
+
+  @Test
+  def cpuLoadIsAFraction() {
+    Autoscaler.processCpuLoad.map(load => Assert.assertTrue((load >= 0) && (load <= 1)))
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine
+
+import org.testng.annotations.Test
+import org.testng.Assert
+import com.ksmpartners.ernie.model._
+import org.joda.time.DateTime
+import com.ksmpartners.ernie.util.TestLogger
+
+class JobIndexTest extends TestLogger {
+
+  private def rptEntity(defId: String, user: String, retentionDate: DateTime): ReportEntity = {
+    val rptEnt = new ReportEntity()
+    rptEnt.setSourceDefId(defId)
+    rptEnt.setCreatedUser(user)
+    rptEnt.setRetentionDate(retentionDate)
+    rptEnt
+  }
+
+  @Test
+  def indexFollowsInPlaceUpdates() {
+    val index = new JobIndex
+    val retentionDate = DateTime.now.minusDays(1)
+    val jobEnt = new JobEntity(1L, JobStatus.PENDING, DateTime.now, null, rptEntity("def", "user", retentionDate))
+    index.update(1L, jobEnt, None)
+    index.update(2L, new JobEntity(2L, JobStatus.FAILED_NO_SUCH_DEFINITION, DateTime.now, null, null), None)
+    Assert.assertEquals(index.inCatalog(JobCatalog.IN_PROGRESS), Set(1L))
+    Assert.assertEquals(index.inCatalog(JobCatalog.FAILED), Set(2L))
+    Assert.assertEquals(index.forDefinition("def"), Set(1L))
+    Assert.assertEquals(index.forUser("user"), Set(1L))
+
+    jobEnt.setJobStatus(JobStatus.COMPLETE)
+    jobEnt.setRptEntity(null)
+    index.update(1L, jobEnt, None)
+    Assert.assertTrue(index.inCatalog(JobCatalog.IN_PROGRESS).isEmpty)
+    Assert.assertEquals(index.withStatus(JobStatus.COMPLETE), Set(1L))
+    Assert.assertEquals(index.definition(1L), Some("def"))
+    Assert.assertEquals(index.retentionBefore(DateTime.now), Set(1L))
+    Assert.assertTrue(index.retentionBefore(retentionDate).isEmpty)
+
+    index.update(1L, jobEnt, Some(rptEntity("def", "user", DateTime.now.plusDays(1))))
+    Assert.assertTrue(index.retentionBefore(DateTime.now).isEmpty)
+  }
+
+  @Test
+  def selectPagesInJobIdOrder() {
+    val index = new JobIndex
+    (1L to 40L).foreach(jobId => index.update(jobId, new JobEntity(jobId, if (jobId % 2 == 0) JobStatus.COMPLETE else JobStatus.FAILED,
+      DateTime.now, null, rptEntity(if (jobId == 7L) "rare" else "def", "user", DateTime.now)), None))
+    Assert.assertEquals(index.select(JobQuery()).take(3).toList, List(1L, 2L, 3L))
+    Assert.assertEquals(index.select(JobQuery(cursor = Some(38L))).toList, List(39L, 40L))
+    Assert.assertEquals(index.select(JobQuery(cursor = Some(3L), descending = true)).toList, List(2L, 1L))
+    Assert.assertEquals(index.select(JobQuery(statuses = Set(JobStatus.COMPLETE), cursor = Some(35L))).toList, List(36L, 38L, 40L))
+    Assert.assertEquals(index.select(JobQuery(defId = Some("rare"))).toList, List(7L))
+    Assert.assertTrue(index.select(JobQuery(defId = Some("rare"), statuses = Set(JobStatus.COMPLETE))).isEmpty)
+    Assert.assertEquals(index.select(JobQuery(user = Some("user")), Some(Set(5L, 3L))).toList, List(3L, 5L))
+  }
+
+  @Test
+  def selectMatchesSubmissionRange() {
+    val index = new JobIndex
+    val start = DateTime.now.minusDays(40)
+    (1L to 40L).foreach(jobId => index.update(jobId, new JobEntity(jobId, JobStatus.COMPLETE, start.plusDays(jobId.toInt), null,
+      rptEntity("def", "user", DateTime.now)), None))
+    Assert.assertEquals(index.select(JobQuery(submittedFrom = Some(start.plusDays(10)), submittedTo = Some(start.plusDays(13)))).toList, List(10L, 11L, 12L))
+    Assert.assertEquals(index.select(JobQuery(submittedTo = Some(start.plusDays(3)), descending = true)).toList, List(2L, 1L))
+    Assert.assertEquals(index.select(JobQuery(submittedFrom = Some(start.plusDays(5)), cursor = Some(20L))).take(2).toList, List(21L, 22L))
+    Assert.assertTrue(index.select(JobQuery(submittedFrom = Some(start.plusDays(41)))).isEmpty)
+  }
+}
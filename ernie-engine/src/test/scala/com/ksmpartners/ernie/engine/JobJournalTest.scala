@@ -0,0 +1,101 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine
+
+import org.testng.annotations.Test
+import org.testng.Assert
+import java.io.{ FileOutputStream, File }
+import com.ksmpartners.ernie.model._
+import com.ksmpartners.ernie.util.Utility._
+import com.ksmpartners.ernie.util.TestLogger
+import org.joda.time.DateTime
+
+class JobJournalTest extends TestLogger {
+
+  @Test
+  def replaysLatestStateOfEachJob() {
+    val dir = createTempDirectory
+    val journal = new JobJournal(dir, JournalSettings())
+    journal.start()
+    val jobEnt = new JobEntity(1L, JobStatus.PENDING, DateTime.now, null, null)
+    journal.append(1L, jobEnt)
+    jobEnt.setJobStatus(JobStatus.COMPLETE)
+    journal.append(1L, jobEnt)
+    journal.append(2L, new JobEntity(2L, JobStatus.FAILED, DateTime.now, null, null))
+    journal.close()
+
+    try_(new FileOutputStream(new File(dir, JobJournal.segmentPrefix + "1" + JobJournal.suffix), true)) { fos =>
+      fos.write("3\t{\"jobId\":3,\"jobSt".getBytes("UTF-8"))
+    }
+
+    val jobs = new JobJournal(dir, JournalSettings()).replay()
+    Assert.assertEquals(jobs.keySet, Set(1L, 2L))
+    Assert.assertEquals(jobs(1L).getJobStatus, JobStatus.COMPLETE)
+    Assert.assertEquals(jobs(2L).getJobStatus, JobStatus.FAILED)
+  }
+
+  @Test
+  def tornRecordFallsBackToPreviousRecord() {
+    val dir = createTempDirectory
+    val journal = new JobJournal(dir, JournalSettings())
+    journal.start()
+    journal.append(1L, new JobEntity(1L, JobStatus.PENDING, DateTime.now, null, null))
+    journal.close()
+
+    try_(new FileOutputStream(new File(dir, JobJournal.segmentPrefix + "1" + JobJournal.suffix), true)) { fos =>
+      fos.write("1\t{\"jobId\":1,\"jobSt".getBytes("UTF-8"))
+    }
+
+    val jobs = new JobJournal(dir, JournalSettings()).replay()
+    Assert.assertEquals(jobs.keySet, Set(1L))
+    Assert.assertEquals(jobs(1L).getJobStatus, JobStatus.PENDING)
+  }
+
+  @Test
+  def compactsFullSegmentsIntoSnapshot() {
+    val dir = createTempDirectory
+    val settings = JournalSettings(fsyncInterval = None, maxBatchSize = 1, segmentSize = 1, compactAfterSegments = 3)
+    val journal = new JobJournal(dir, settings)
+    journal.start()
+    for (i <- 1 to 10) journal.append(i % 4, new JobEntity(i % 4, JobStatus.IN_PROGRESS, DateTime.now, "" + i, null))
+    journal.close()
+
+    Assert.assertTrue(dir.listFiles.exists(_.getName.startsWith(JobJournal.snapshotPrefix)))
+    Assert.assertTrue(dir.listFiles.filter(_.getName.startsWith(JobJournal.segmentPrefix)).size <= settings.compactAfterSegments + 1)
+    val jobs = new JobJournal(dir, settings).replay()
+    Assert.assertEquals(jobs.keySet, Set(0L, 1L, 2L, 3L))
+    Assert.assertEquals(jobs(1L).getRptId, "9")
+    Assert.assertEquals(jobs(2L).getRptId, "10")
+  }
+
+  @Test
+  def compactionDropsDeletedJobs() {
+    val dir = createTempDirectory
+    val settings = JournalSettings(fsyncInterval = None, maxBatchSize = 1, segmentSize = 1, compactAfterSegments = 2)
+    val journal = new JobJournal(dir, settings)
+    journal.start()
+    journal.append(1L, new JobEntity(1L, JobStatus.COMPLETE, DateTime.now, "1", null))
+    journal.append(2L, new JobEntity(2L, JobStatus.COMPLETE, DateTime.now, "2", null))
+    journal.append(1L, new JobEntity(1L, JobStatus.DELETED, DateTime.now, "1", null))
+    journal.append(3L, new JobEntity(3L, JobStatus.PENDING, DateTime.now, null, null))
+    journal.close()
+
+    val jobs = new JobJournal(dir, settings).replay()
+    Assert.assertEquals(jobs.keySet, Set(2L, 3L))
+    Assert.assertEquals(jobs(3L).getJobStatus, JobStatus.PENDING)
+  }
+}
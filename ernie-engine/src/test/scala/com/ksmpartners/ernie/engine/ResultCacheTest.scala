@@ -0,0 +1,72 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine
+
+import org.testng.annotations.Test
+import org.testng.Assert
+import com.ksmpartners.ernie.model.ReportType
+import com.ksmpartners.ernie.util.TestLogger
+
+class ResultCacheTest extends TestLogger {
+
+  @Test
+  def keyIgnoresParameterOrder() {
+    val key = ResultCache.key("def", 1L, ReportType.PDF, Map("a" -> "1", "b" -> "2"))
+    Assert.assertEquals(ResultCache.key("def", 1L, ReportType.PDF, Map("b" -> "2", "a" -> "1")), key)
+    Assert.assertFalse(ResultCache.key("def", 2L, ReportType.PDF, Map("a" -> "1", "b" -> "2")) == key)
+    Assert.assertFalse(ResultCache.key("def", 1L, ReportType.CSV, Map("a" -> "1", "b" -> "2")) == key)
+    Assert.assertFalse(ResultCache.key("def", 1L, ReportType.PDF, Map("a" -> "1", "b" -> "3")) == key)
+    Assert.assertFalse(ResultCache.key("def", 1L, ReportType.PDF, Map("a" -> "1", "b" -> " 2")) == key)
+  }
+
+  @Test
+  def attachedJobsShareFinishedRun() {
+    val cache = new ResultCache
+    cache.start("key", "def", 1L, 60)
+    Assert.assertEquals(cache.running("key"), Some(1L))
+    cache.attach(1L, 2L)
+    cache.attach(1L, 3L)
+    Assert.assertEquals(cache.finish(1L, Some("REPORT_1"), None, 0L), Set(2L, 3L))
+    Assert.assertEquals(cache.running("key"), None)
+    Assert.assertEquals(cache.result("key", 1000L), Some("REPORT_1"))
+    Assert.assertEquals(cache.result("key", 60000L), None)
+
+    cache.start("key", "def", 4L, 60)
+    cache.finish(4L, Some("REPORT_4"), Some(500L), 0L)
+    Assert.assertEquals(cache.result("key", 1000L), None)
+
+    cache.start("key", "def", 5L, 60)
+    cache.attach(5L, 6L)
+    cache.finish(5L, Some("REPORT_5"), None, 0L)
+    Assert.assertEquals(cache.reportDeleted("REPORT_5"), Set(6L))
+    Assert.assertEquals(cache.result("key", 1000L), None)
+  }
+
+  @Test
+  def stoppedRunPassesToEarliestAttachedJob() {
+    val cache = new ResultCache
+    cache.start("key", "def", 1L, 60)
+    cache.attach(1L, 3L)
+    cache.attach(1L, 2L)
+    Assert.assertEquals(cache.handOver(1L), Some(2L))
+    Assert.assertEquals(cache.running("key"), Some(2L))
+    Assert.assertEquals(cache.attached(2L), Set(3L))
+    Assert.assertEquals(cache.finish(2L, Some("REPORT_2"), None, 0L), Set(3L))
+    Assert.assertEquals(cache.result("key", 1000L), Some("REPORT_2"))
+    Assert.assertEquals(cache.handOver(4L), None)
+  }
+}
@@ -27,6 +27,7 @@ import org.slf4j.LoggerFactory
 import java.util
 import java.sql.Date
 import com.ksmpartners.ernie.util.TestLogger
+import com.ksmpartners.ernie.util.Utility._
 
 class BirtReportGeneratorTest extends BirtReportGeneratorFactory with TestLogger {
 
@@ -171,6 +172,22 @@ class BirtReportGeneratorTest extends BirtReportGeneratorFactory with TestLogger
     reportGenerator.runReport("test_def_var", "test_rpt_var_csv", ReportType.CSV, None, paramMap, "testUser")
   }
 
+  @Test
+  def cachesOpenedDesigns() {
+    reportGenerator.runReport("test_def", "test_rpt_cache_1", ReportType.CSV, None, "testUser")
+    val misses = getDesignCacheMisses
+    val hits = getDesignCacheHits
+    reportGenerator.runReport("test_def", "test_rpt_cache_2", ReportType.CSV, None, "testUser")
+    Assert.assertEquals(getDesignCacheMisses, misses)
+    Assert.assertEquals(getDesignCacheHits, hits + 1)
+    val file = new File(Thread.currentThread.getContextClassLoader.getResource("test_def.rptdesign").getPath)
+    val byteArr = new Array[Byte](file.length.asInstanceOf[Int])
+    try_(new FileInputStream(file)) { fis => fis.read(byteArr) }
+    reportManager.putDefinition("test_def", byteArr, reportManager.getDefinition("test_def").get.getEntity)
+    reportGenerator.runReport("test_def", "test_rpt_cache_3", ReportType.CSV, None, "testUser")
+    Assert.assertEquals(getDesignCacheMisses, misses + 1)
+  }
+
   @Test
   def canValidateReportDefinition() {
     var result = false
@@ -186,7 +203,7 @@ class BirtReportGeneratorTest extends BirtReportGeneratorFactory with TestLogger
     Assert.assertFalse(result)
   }
 
-  @Test(expectedExceptions = Array(classOf[IllegalStateException]), dependsOnMethods = Array("canGetAvailableDefs", "canRunExistingDef", "canValidateReportDefinition", "canRunExistingDefWithParam", "nullParamsThrowsException", "canRunExistingDefWithDefaultParam", "startEngineIsIdempotent"))
+  @Test(expectedExceptions = Array(classOf[IllegalStateException]), dependsOnMethods = Array("canGetAvailableDefs", "canRunExistingDef", "canValidateReportDefinition", "canRunExistingDefWithParam", "nullParamsThrowsException", "canRunExistingDefWithDefaultParam", "startEngineIsIdempotent", "cachesOpenedDesigns"))
   def cantRunExistingReportWithStoppedGenerator() {
     val rptGen = new BirtReportGenerator(new MemoryReportManager)
     rptGen.startup
@@ -225,6 +242,16 @@ class BirtReportGeneratorTest extends BirtReportGeneratorFactory with TestLogger
     Assert.assertEquals(any, "Anything")
   }
 
+  @Test
+  def csvFieldsAreQuotedOnlyWhenNeeded() {
+    Assert.assertEquals(csvField(null), "")
+    Assert.assertEquals(csvField(21), "21")
+    Assert.assertEquals(csvField("plain"), "plain")
+    Assert.assertEquals(csvField("a,b"), "\"a,b\"")
+    Assert.assertEquals(csvField("say \"hi\""), "\"say \"\"hi\"\"\"")
+    Assert.assertEquals(csvField("two\nlines"), "\"two\nlines\"")
+  }
+
   @Test(expectedExceptions = Array(classOf[UnsupportedDataTypeException]))
   def unsupportedDataTypeThrowsException() {
     stringToBirtParamData("false", new ParameterEntity("var", "bad_type", false, "true"))
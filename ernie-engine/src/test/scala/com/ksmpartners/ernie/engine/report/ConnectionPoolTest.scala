@@ -0,0 +1,66 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine.report
+
+import org.testng.annotations.Test
+import org.testng.Assert
+import java.sql.SQLException
+import scala.concurrent.duration._
+import com.ksmpartners.ernie.util.TestLogger
+
+class ConnectionPoolTest extends TestLogger {
+
+  private def derby(name: String, maxActive: Int) = new ConnectionPool(name, DataSourceSettings("jdbc:derby:memory:" + name + ";create=true",
+    driverClass = Some("org.apache.derby.jdbc.EmbeddedDriver"), maxActive = maxActive, maxIdle = maxActive, maxWait = 100 milliseconds))
+
+  @Test
+  def reusesReturnedConnections() {
+    val pool = derby("reuse", 2)
+    val conn = pool.getConnection
+    val rs = conn.createStatement.executeQuery("VALUES 1")
+    Assert.assertTrue(rs.next)
+    Assert.assertEquals(rs.getInt(1), 1)
+    Assert.assertEquals(pool.statistics.active, 1)
+    conn.close()
+    Assert.assertTrue(conn.isClosed)
+    Assert.assertEquals(pool.statistics.active, 0)
+    Assert.assertEquals(pool.statistics.idle, 1)
+
+    pool.getConnection.close()
+    Assert.assertEquals(pool.statistics.idle, 1)
+    Assert.assertEquals(pool.statistics.acquired, 2L)
+    pool.close()
+    Assert.assertEquals(pool.statistics.idle, 0)
+  }
+
+  @Test
+  def exhaustedPoolTimesOut() {
+    val pool = derby("exhausted", 1)
+    val conn = pool.getConnection
+    try {
+      pool.getConnection
+      Assert.fail("Expected SQLException")
+    } catch {
+      case e: SQLException => Assert.assertEquals(pool.statistics.timeouts, 1L)
+    }
+    conn.close()
+    conn.close()
+    Assert.assertEquals(pool.statistics.active, 0)
+    pool.getConnection.close()
+    pool.close()
+  }
+}
@@ -79,4 +79,15 @@ class DefinitionTest {
     Assert.assertNotNull(defi.getUnsupportedReportTypes)
   }
 
+  @Test
+  def canGetCsvResultSet() {
+    val entity = new DefinitionEntity()
+    Assert.assertEquals(new Definition(entity).getCsvResultSet, None)
+    entity.setCsvResultSet(" ")
+    Assert.assertEquals(new Definition(entity).getCsvResultSet, None)
+    entity.setCsvResultSet("rows")
+    Assert.assertEquals(new Definition(entity).getCsvResultSet, Some("rows"))
+    Assert.assertEquals(new Definition(entity).getEntity.getCsvResultSet, "rows")
+  }
+
 }
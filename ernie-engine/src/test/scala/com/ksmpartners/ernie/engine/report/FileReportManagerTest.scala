@@ -141,6 +141,26 @@ class FileReportManagerTest extends TestLogger {
     Assert.assertEquals(buf, "RPT_1".getBytes)
   }
 
+  @Test
+  def canTransferReportContent() {
+    val out = new ByteArrayOutputStream()
+    try_(reportManager.getReportChannel("rpt_2").get) { content =>
+      Assert.assertEquals(content.size, 5L)
+      Assert.assertEquals(content.transferTo(java.nio.channels.Channels.newChannel(out)), 5L)
+      Assert.assertEquals(content.transferTo(2, 10, java.nio.channels.Channels.newChannel(out)), 3L)
+    }
+    Assert.assertEquals(new String(out.toByteArray), "RPT_2T_2")
+    try_(reportManager.getReportChannel("rpt_3").get) { content =>
+      val buf = new Array[Byte](10)
+      Assert.assertEquals(content.openStream(1, 3).read(buf), 3)
+      Assert.assertEquals(new String(buf, 0, 3), "PT_")
+      Assert.assertEquals(content.openStream(4, 10).read(buf), 1)
+    }
+    try_(reportManager.getReportChannel("rpt_2").get) { content =>
+      Assert.assertEquals(content.map().get.get(0), 'R'.toByte)
+    }
+  }
+
   @Test
   def testHas() {
     Assert.assertTrue(reportManager.hasDefinition(defs("def_1")))
@@ -23,7 +23,8 @@ import scala.collection._
 import org.joda.time.DateTime
 import org.slf4j.{ LoggerFactory, Logger }
 import com.ksmpartners.ernie.util.TestLogger
-import java.io.{ ByteArrayInputStream, File }
+import java.io.{ ByteArrayInputStream, ByteArrayOutputStream, File }
+import com.ksmpartners.ernie.util.Utility._
 
 class MemoryReportManagerTest extends TestLogger {
 
@@ -116,6 +117,15 @@ class MemoryReportManagerTest extends TestLogger {
 
   }
 
+  @Test
+  def definitionVersionChangesWithContent() {
+    val version = reportManager.getDefinitionVersion("def_4")
+    Assert.assertEquals(reportManager.getDefinitionVersion("def_4"), version)
+    reportManager.putDefinition("def_4", "DEF_4".getBytes, reportManager.getDefinition("def_4").get.getEntity)
+    Assert.assertTrue(reportManager.getDefinitionVersion("def_4") != version)
+    Assert.assertTrue(new MemoryReportManager().getDefinitionVersion("def_4") != reportManager.getDefinitionVersion("def_4"))
+  }
+
   @Test()
   def testGet() {
     val buf: Array[Byte] = new Array(5)
@@ -125,6 +135,24 @@ class MemoryReportManagerTest extends TestLogger {
     Assert.assertEquals(buf, "RPT_1".getBytes)
   }
 
+  @Test
+  def canTransferReportContent() {
+    val out = new ByteArrayOutputStream()
+    try_(reportManager.getReportChannel("rpt_2").get) { content =>
+      Assert.assertEquals(content.size, 5L)
+      Assert.assertEquals(content.transferTo(java.nio.channels.Channels.newChannel(out)), 5L)
+      Assert.assertEquals(content.transferTo(2, 10, java.nio.channels.Channels.newChannel(out)), 3L)
+    }
+    Assert.assertEquals(new String(out.toByteArray), "RPT_2T_2")
+    try_(reportManager.getReportChannel("rpt_3").get) { content =>
+      val buf = new Array[Byte](10)
+      Assert.assertEquals(content.openStream(1, 3).read(buf), 3)
+      Assert.assertEquals(new String(buf, 0, 3), "PT_")
+      Assert.assertEquals(content.openStream(4, 10).read(buf), 1)
+    }
+    Assert.assertEquals(reportManager.getReportChannel("no_such_rpt"), None)
+  }
+
   @Test
   def testHas() {
     Assert.assertTrue(reportManager.hasDefinition("def_1"))
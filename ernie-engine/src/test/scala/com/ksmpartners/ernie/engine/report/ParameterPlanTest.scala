@@ -0,0 +1,69 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package com.ksmpartners.ernie.engine.report
+
+import org.testng.annotations.Test
+import org.testng.Assert
+import com.ksmpartners.ernie.model.{ DefinitionEntity, JobStatus, ParameterEntity }
+import com.ksmpartners.ernie.util.TestLogger
+import org.joda.time.DateTime
+
+class ParameterPlanTest extends TestLogger {
+
+  private val params = java.util.Arrays.asList(new ParameterEntity("count", "integer", false, "10"),
+    new ParameterEntity("when", "date", false, "2013-08-04"), new ParameterEntity("note", "string", true, null))
+  private val plan = new ParameterPlan(params)
+
+  @Test
+  def bindsValuesAndDefaults() {
+    val bound = plan.bind(Map("count" -> "21"))
+    Assert.assertEquals(bound("count"), 21)
+    Assert.assertEquals(bound("when"), new java.sql.Date(113, 7, 4))
+    Assert.assertTrue(bound.contains("note"))
+    Assert.assertEquals(plan.check(Map("count" -> "21", "note" -> "hello")), None)
+  }
+
+  @Test
+  def passesValuesThroughWithoutParameters() {
+    Assert.assertEquals(new ParameterPlan(null).bind(Map("anything" -> "value")), Map("anything" -> "value"))
+  }
+
+  @Test
+  def checkReportsFailureStatus() {
+    Assert.assertEquals(plan.check(Map("unknown" -> "1")), Some(JobStatus.FAILED_INVALID_PARAMETER_VALUES))
+    Assert.assertEquals(plan.check(Map("count" -> "many")), Some(JobStatus.FAILED_INVALID_PARAMETER_VALUES))
+    Assert.assertEquals(plan.check(Map("count" -> "")), Some(JobStatus.FAILED_PARAMETER_NULL))
+    Assert.assertEquals(new ParameterPlan(java.util.Arrays.asList(new ParameterEntity("bad", "bad_type", true, "x"))).check(Map.empty),
+      Some(JobStatus.FAILED_UNSUPPORTED_PARAMETER_TYPE))
+  }
+
+  @Test
+  def reportManagerRecompilesPlanOnlyWhenDefinitionChanges() {
+    val reportManager = new MemoryReportManager
+    val entity = new DefinitionEntity(DateTime.now(), "plan_def", "default", null, "", null, null)
+    entity.setParams(params)
+    reportManager.putDefinition("plan_def", "DEF".getBytes, entity)
+    val first = reportManager.getParameterPlan("plan_def").get
+    Assert.assertSame(reportManager.getParameterPlan("plan_def").get, first)
+    reportManager.putDefinition("plan_def", "DEF".getBytes, new DefinitionEntity(DateTime.now(), "plan_def", "default", null, "", null, null))
+    val second = reportManager.getParameterPlan("plan_def").get
+    Assert.assertNotSame(second, first)
+    Assert.assertEquals(second.check(Map("unknown" -> "1")), None)
+    Assert.assertEquals(reportManager.getParameterPlan("no_such_def"), None)
+  }
+
+}
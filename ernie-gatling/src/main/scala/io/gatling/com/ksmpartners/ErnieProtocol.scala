@@ -257,9 +257,15 @@ class GetResultActionBuilder(j: Expression[Long] = value2Expression(-1L), waitFo
     var running = true
     import com.ksmpartners.ernie.model
     while (DateTime.now.isBefore(end) && running)
-      if ((res.errorOpt.map(f => if (f.isInstanceOf[ReportOutputException])
+      if (List(model.JobStatus.IN_PROGRESS, model.JobStatus.PENDING).contains(res.errorOpt.map(f => if (f.isInstanceOf[ReportOutputException])
         f.asInstanceOf[ReportOutputException].status getOrElse model.JobStatus.FAILED
-      else model.JobStatus.FAILED) getOrElse model.JobStatus.FAILED) == model.JobStatus.IN_PROGRESS) {
+      else model.JobStatus.FAILED) getOrElse model.JobStatus.FAILED)) {
+        val remaining = FiniteDuration(math.max(1L, end.getMillis - DateTime.now.getMillis), "milliseconds")
+        try {
+          scala.concurrent.Await.ready(build.getJobStatusFuture(job, Some(model.JobStatus.COMPLETE), None, remaining), remaining)
+        } catch {
+          case e: Exception =>
+        }
         res = getResult(job)
       } else running = false
     (ses, value2Expression(res))
@@ -684,7 +690,8 @@ class ErnieHttp(val aB: List[ActionBuilder]) extends ErnieGatling(aB) {
   def getResult(job: Option[Long], wait: Option[Duration]): ChainBuilder = exec(
     http("Get result request").get("/jobs/" + job.map(j => j.toString).getOrElse("${currentJob}") + "/result").header("Authorization", readSaml).header("Accept", "application/pdf").check(status.saveAs("resultStatus")))
     .doIf(session => session.get[Int]("resultStatus").getOrElse(400) != 200) {
-      pause(wait getOrElse (30 seconds))
+      exec(http("Wait for job request").get("/jobs/" + job.map(j => j.toString).getOrElse("${currentJob}") + "/status?wait=" + (wait getOrElse (30 seconds)).toSeconds)
+        .header("Authorization", readSaml).header("Accept", com.ksmpartners.ernie.model.ModelObject.TYPE_FULL))
         .exec(
           http("Get result request").get("/jobs/" + job.map(j => j.toString).getOrElse("${currentJob}") + "/result").header("Authorization", readSaml).header("Accept", "application/pdf").check(status.saveAs("resultStatus"), status.is(200)))
     }
@@ -14,8 +14,16 @@ limitations under the License.
 */
 
 package com.ksmpartners.ernie.api;
+import scala.Option;
 import scala.Some;
 import scala.concurrent.duration.FiniteDuration;
+import com.ksmpartners.ernie.engine.JournalSettings;
+import com.ksmpartners.ernie.engine.AutoscaleSettings;
+import com.ksmpartners.ernie.engine.DispatcherSettings;
+import com.ksmpartners.ernie.engine.RestartSettings;
+import com.ksmpartners.ernie.engine.report.DataSourceSettings;
+import scala.Tuple2;
+import scala.collection.immutable.Map$;
 
 /**
  * Provides a DSL for building a new ErnieConfiguration. See ErnieController for an example.
@@ -27,6 +35,14 @@ public class ErnieConfig {
     private final int defaultRetentionDays;
     private final int maxRetentionDays;
     private final int workerCount;
+    private final int maxQueueDepth;
+    private final JournalSettings journal;
+    private final java.util.Map<String, DataSourceSettings> dataSources;
+    private final AutoscaleSettings autoscale;
+    private final DispatcherSettings dispatchers;
+    private final RestartSettings restart;
+    private final int designCacheSize;
+    private final Boolean keepReportDocuments;
 
     public static class Builder {
 
@@ -35,16 +51,45 @@ public class ErnieConfig {
         private  int defaultRetentionDays;
         private  int maxRetentionDays;
         private  int workerCount;
+        private  int maxQueueDepth;
+        private  JournalSettings journal;
+        private  java.util.Map<String, DataSourceSettings> dataSources = new java.util.LinkedHashMap<String, DataSourceSettings>();
+        private  AutoscaleSettings autoscale;
+        private  DispatcherSettings dispatchers;
+        private  RestartSettings restart;
+        private  int designCacheSize = -1;
+        private  Boolean keepReportDocuments;
 
         public Builder(ReportManager reportManager) { this.reportManager = reportManager; }
         public Builder withDefaultRetentionDays(int defaultRetentionDays){this.defaultRetentionDays = defaultRetentionDays; return this; }
         public Builder withMaxRetentionDays(int maxRetentionDays){this.maxRetentionDays = maxRetentionDays; return this; }
         public Builder withWorkers(int workers){this.workerCount = workers; return this; }
         public Builder timeoutAfter(FiniteDuration timeout){this.timeout = timeout; return this; }
+        public Builder withMaxQueueDepth(int maxQueueDepth){this.maxQueueDepth = maxQueueDepth; return this; }
+        public Builder withJobJournal(JournalSettings journal){this.journal = journal; return this; }
+        public Builder withJobJournal(){this.journal = JournalSettings.defaults(); return this; }
+        public Builder withDataSource(String name, DataSourceSettings settings){this.dataSources.put(name, settings); return this; }
+        public Builder withAutoscaling(AutoscaleSettings autoscale){this.autoscale = autoscale; return this; }
+        public Builder withAutoscaling(){this.autoscale = AutoscaleSettings.defaults(); return this; }
+        public Builder withDispatchers(DispatcherSettings dispatchers){this.dispatchers = dispatchers; return this; }
+        public Builder withDispatchers(){this.dispatchers = DispatcherSettings.defaults(); return this; }
+        public Builder withRestartThrottle(RestartSettings restart){this.restart = restart; return this; }
+        public Builder withRestartThrottle(){this.restart = RestartSettings.defaults(); return this; }
+        public Builder withDesignCacheSize(int designCacheSize){this.designCacheSize = designCacheSize; return this; }
+        public Builder withKeepReportDocuments(boolean keepReportDocuments){this.keepReportDocuments = keepReportDocuments; return this; }
 
         public ErnieConfiguration build() {
             return new ErnieConfiguration(reportManager, new Some<FiniteDuration>(timeout), new Some<Object>(new Integer(defaultRetentionDays)), new Some<Object>(new Integer(maxRetentionDays)),
-                    new Some<Object>(new Integer(workerCount)));
+                    new Some<Object>(new Integer(workerCount)), maxQueueDepth > 0 ? new Some<Object>(new Integer(maxQueueDepth)) : Option.<Object>apply(null),
+                    Option.apply(journal), scalaDataSources(), Option.apply(autoscale), Option.apply(dispatchers), Option.apply(restart),
+                    designCacheSize >= 0 ? new Some<Object>(new Integer(designCacheSize)) : Option.<Object>apply(null),
+                    Option.<Object>apply(keepReportDocuments));
+        }
+
+        private scala.collection.immutable.Map scalaDataSources() {
+            scala.collection.immutable.Map m = Map$.MODULE$.empty();
+            for (java.util.Map.Entry<String, DataSourceSettings> e : dataSources.entrySet()) m = m.$plus(new Tuple2<String, DataSourceSettings>(e.getKey(), e.getValue()));
+            return m;
         }
     }
 
@@ -54,6 +99,14 @@ public class ErnieConfig {
         this.defaultRetentionDays = builder.defaultRetentionDays;
         this.maxRetentionDays = builder.maxRetentionDays;
         this.workerCount = builder.workerCount;
+        this.maxQueueDepth = builder.maxQueueDepth;
+        this.journal = builder.journal;
+        this.dataSources = builder.dataSources;
+        this.autoscale = builder.autoscale;
+        this.dispatchers = builder.dispatchers;
+        this.restart = builder.restart;
+        this.designCacheSize = builder.designCacheSize;
+        this.keepReportDocuments = builder.keepReportDocuments;
     }
 }
 
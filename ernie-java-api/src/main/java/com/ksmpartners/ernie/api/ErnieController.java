@@ -18,20 +18,29 @@ import akka.pattern.AskTimeoutException;
 import com.ksmpartners.ernie.api.ErnieBuilder.*;
 import com.ksmpartners.ernie.api.ErnieControl;
 import com.ksmpartners.ernie.api.ErnieEngine;
+import com.ksmpartners.ernie.engine.JobQuery;
+import com.ksmpartners.ernie.engine.report.ReportContent;
 import com.ksmpartners.ernie.model.*;
 import scala.None$;
 import scala.Option;
 import scala.Some;
 import scala.Tuple2;
 import scala.collection.Seq;
+import scala.collection.immutable.List$;
 import scala.collection.immutable.Map$;
 import scala.concurrent.duration.FiniteDuration;
+import scala.runtime.AbstractFunction1;
+import scala.runtime.BoxedUnit;
+import scala.util.Try;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * API for interacting with Ernie. For example:
@@ -243,6 +252,105 @@ public class ErnieController {
         return res;
     }
 
+    /**
+     * Create and start a report generation job for each of requests, submitting them to the engine together.
+     * @param requests the definition, output format, retention period and report parameters of each job; a retention period of 0 selects the default
+     * @param userName username of the user creating the jobs
+     * @throws AskTimeoutException if request times out
+     * @throws ErnieEngineNotStartedException if ErnieController.start() was not called
+     * @return the generated job ID and [[com.ksmpartners.ernie.model.JobStatus]] of each request, in the order of requests
+     */
+    public List<JobEntity> createJobs(List<ReportRequest> requests, String userName) throws ErnieEngineNotStartedException {
+        if (api == null) throw new ErnieEngineNotStartedException();
+        List<Tuple2<Object, JobStatus>> results = scala.collection.JavaConversions.seqAsJavaList(
+                api.createJobs(scala.collection.JavaConversions.asScalaBuffer(requests).toList(), userName));
+        List<JobEntity> res = new ArrayList<JobEntity>();
+        for (Tuple2<Object, JobStatus> result : results) {
+            JobEntity jobEnt = new JobEntity();
+            jobEnt.setJobId((Long) result._1());
+            jobEnt.setJobStatus(result._2());
+            res.add(jobEnt);
+        }
+        return res;
+    }
+
+    /**
+     * Create and start a report generation job without waiting for the engine, and follow it until it finishes.
+     * @param defId an existing report definition/design
+     * @param rptType the report output format
+     * @param reportParameters a set of BIRT Report Parameters corresponding to the parameters specified in the report definition.
+     * @param userName username of the user creating the job
+     * @param listener receives the job's lifecycle events, or null
+     * @param executor runs the listener's methods; ignored if listener is null
+     * @throws ErnieEngineNotStartedException if ErnieController.start() was not called
+     * @return a handle that completes with the job's final status, or fails with an AskTimeoutException if the engine does not accept the job
+     */
+    public JobFuture submitJob(String defId, ReportType rptType, Map<String,String> reportParameters, String userName, JobListener listener,
+                               Executor executor) throws ErnieEngineNotStartedException {
+        if (api == null) throw new ErnieEngineNotStartedException();
+        final JobFuture job = new JobFuture(this, listener, executor);
+        scala.collection.immutable.Map m = Map$.MODULE$.empty();
+        if (reportParameters != null) m = m.$plus$plus(scala.collection.JavaConversions.mapAsScalaMap(reportParameters));
+        api.async().createJob(defId, rptType, Option.<Object>apply(null), m, userName, List$.MODULE$.<ReportType>empty(), Option.<FiniteDuration>apply(null))
+                .onComplete(new AbstractFunction1<Try<Tuple2<Object, JobStatus>>, BoxedUnit>() {
+                    public BoxedUnit apply(Try<Tuple2<Object, JobStatus>> result) {
+                        if (result.isFailure()) job.failed(result.failed().get());
+                        else follow((Long) result.get()._1(), result.get()._2(), job);
+                        return BoxedUnit.UNIT;
+                    }
+                }, api.executionContext());
+        return job;
+    }
+
+    /**
+     * Create and start a report generation job without waiting for the engine, and follow it until it finishes.
+     * @throws ErnieEngineNotStartedException if ErnieController.start() was not called
+     * @return a handle that completes with the job's final status
+     */
+    public JobFuture submitJob(String defId, ReportType rptType, Map<String,String> reportParameters, String userName) throws ErnieEngineNotStartedException {
+        return submitJob(defId, rptType, reportParameters, userName, null, null);
+    }
+
+    /**
+     * Follow an existing job until it finishes. The listener first receives the event for the job's current status.
+     * @param jobId the job to follow
+     * @param listener receives the job's lifecycle events, or null
+     * @param executor runs the listener's methods; ignored if listener is null
+     * @throws ErnieEngineNotStartedException if ErnieController.start() was not called
+     * @return a handle that completes with the job's final status, which is NO_SUCH_JOB if jobId does not exist
+     */
+    public JobFuture watchJob(final Long jobId, JobListener listener, Executor executor) throws ErnieEngineNotStartedException {
+        if (api == null) throw new ErnieEngineNotStartedException();
+        final JobFuture job = new JobFuture(this, listener, executor);
+        api.async().getJobStatus(jobId).onComplete(new AbstractFunction1<Try<JobStatus>, BoxedUnit>() {
+            public BoxedUnit apply(Try<JobStatus> result) {
+                if (result.isFailure()) job.failed(result.failed().get());
+                else follow(jobId, result.get(), job);
+                return BoxedUnit.UNIT;
+            }
+        }, api.executionContext());
+        return job;
+    }
+
+    /**
+     * Pass the job's status, and each status it moves to, to job until it finishes.
+     */
+    private void follow(long jobId, JobStatus status, final JobFuture job) {
+        job.accepted(jobId, status);
+        api.async().watchJob(jobId, status, new AbstractFunction1<JobStatus, BoxedUnit>() {
+            public BoxedUnit apply(JobStatus changed) {
+                job.changed(changed);
+                return BoxedUnit.UNIT;
+            }
+        }).onComplete(new AbstractFunction1<Try<JobStatus>, BoxedUnit>() {
+            public BoxedUnit apply(Try<JobStatus> result) {
+                if (result.isFailure()) job.failed(result.failed().get());
+                else job.finished(result.get());
+                return BoxedUnit.UNIT;
+            }
+        }, api.executionContext());
+    }
+
     /**
      * Get the status of a given job ID
      * @param jobId to interrogate
@@ -279,6 +387,22 @@ public class ErnieController {
         return scala.collection.JavaConversions.asJavaList(api.getJobCatalog(none));
     }
 
+    /**
+     * Get a page of a catalog of jobs.
+     * @param catalog optionally specify a subset of jobs to retrieve; may be null
+     * @param query filters, page size, cursor and order of the page, for example JobQuery.all().withLimit(100); pass the nextCursor of one
+     *              page to JobQuery.after to get the next
+     * @throws AskTimeoutException if request times out
+     * @throws ErnieEngineNotStartedException if ErnieController.start() was not called
+     * @return a JobsCatalogResponse holding the JobEntity list of the page and the cursor of the following page, or null if there is none.
+     */
+    public JobsCatalogResponse getJobCatalog(JobCatalog catalog, JobQuery query)  throws ErnieEngineNotStartedException {
+        if (api == null) throw new ErnieEngineNotStartedException();
+        com.ksmpartners.ernie.engine.JobsCatalogResponse page = api.getJobCatalog(Option.apply(catalog), query);
+        return new JobsCatalogResponse(new ArrayList<JobEntity>(scala.collection.JavaConversions.asJavaList(page.catalog())),
+                page.nextCursor().isDefined() ? (Long) page.nextCursor().get() : null);
+    }
+
     /**
      * Get a list of all job IDs as strings.
      * @throws AskTimeoutException if request times out
@@ -289,6 +413,16 @@ public class ErnieController {
         return scala.collection.JavaConversions.asJavaList(api.getJobList());
     }
 
+    /**
+     * Return true if the report generator has started and all persisted jobs have been recovered.
+     * @throws AskTimeoutException if request times out
+     * @throws ErnieEngineNotStartedException if ErnieController.start() was not called
+     */
+    public boolean isReady() throws ErnieEngineNotStartedException {
+        if (api == null) throw new ErnieEngineNotStartedException();
+        return api.isReady();
+    }
+
     /**
      * Return all existing definition IDs.
      * @throws ErnieEngineNotStartedException if ErnieController.start() was not called
@@ -359,6 +493,53 @@ public class ErnieController {
         else return (InputStream) res.get();
     }
 
+    /**
+     * Retrieve job output as a ReportContent, whose size is known and which can be written to a channel without being copied through
+     * the heap. The caller must close it.
+     * @param jobId the jobId whose output is to be retrieved
+     * @throws AskTimeoutException if request times out
+     * @throws NotFoundException if jobId is not found
+     * @throws ErnieEngineNotStartedException if ErnieController.start() was not called
+     * @return the report output
+     */
+    public ReportContent getReportContent(Long jobId) throws ErnieEngineNotStartedException, NotFoundException {
+        if (api == null) throw new ErnieEngineNotStartedException();
+        Option<ReportContent> res = api.getReportContent(jobId);
+        if (res.isEmpty()) throw new NotFoundException(jobId + " not found");
+        else return res.get();
+    }
+
+    /**
+     * Write job output to target, such as a socket or file channel, without copying it through the heap where the report manager allows.
+     * @param jobId the jobId whose output is to be written
+     * @param target the channel to write to; it is not closed
+     * @throws AskTimeoutException if request times out
+     * @throws NotFoundException if jobId is not found
+     * @throws ErnieEngineNotStartedException if ErnieController.start() was not called
+     * @return the number of bytes written
+     */
+    public long transferReportOutput(Long jobId, WritableByteChannel target) throws ErnieEngineNotStartedException, NotFoundException, IOException {
+        ReportContent content = getReportContent(jobId);
+        try {
+            return content.transferTo(target);
+        } finally {
+            content.close();
+        }
+    }
+
+    /**
+     * Cancel a job. A job that has not started is cancelled at once; a running job is asked to stop and is marked CANCELLED once it has.
+     * @param jobId the job to cancel
+     * @throws AskTimeoutException if request times out
+     * @throws ErnieEngineNotStartedException if ErnieController.start() was not called
+     * @return CANCELLED if the job was cancelled at once, IN_PROGRESS if its run has been asked to stop, NO_SUCH_JOB if the job does not
+     *         exist, or the status of a job that had already finished
+     */
+    public JobStatus cancelJob(Long jobId) throws ErnieEngineNotStartedException {
+        if (api == null) throw new ErnieEngineNotStartedException();
+        return api.cancelJob(jobId);
+    }
+
     /**
      * Delete a job's output and any associated metadata
      * @param jobId the job whose output and metadata is to be deleted
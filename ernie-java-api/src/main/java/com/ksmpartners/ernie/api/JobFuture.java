@@ -0,0 +1,184 @@
+/*
+	Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+
+package com.ksmpartners.ernie.api;
+
+import com.ksmpartners.ernie.model.JobEntity;
+import com.ksmpartners.ernie.model.JobStatus;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Handle on a report generation job returned by ErnieController.submitJob and ErnieController.watchJob. It completes when the job
+ * reaches a status other than PENDING, IN_PROGRESS or RESTARTING, yielding a JobEntity holding the job ID and that status. The handle is
+ * driven by the engine's job notifications, so waiting on it does not poll the engine.
+ */
+public class JobFuture implements Future<JobEntity> {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final ErnieController controller;
+    private final JobListener listener;
+    private final Executor executor;
+    private volatile Long jobId = null;
+    private volatile JobStatus jobStatus = null;
+    private volatile Throwable failure = null;
+    private volatile boolean cancelled = false;
+    /** Listener events waiting for the one being run on the executor, if any, to return */
+    private final Queue<Runnable> events = new ArrayDeque<Runnable>();
+    private Runnable activeEvent = null;
+
+    JobFuture(ErnieController controller, JobListener listener, Executor executor) {
+        this.controller = controller;
+        this.listener = listener;
+        this.executor = executor;
+    }
+
+    /**
+     * Return the ID of the job, or null if the engine has not yet accepted it.
+     */
+    public Long getJobId() {
+        return jobId;
+    }
+
+    /**
+     * Return the last status the job was seen to reach, or null if the engine has not yet accepted it.
+     */
+    public JobStatus getJobStatus() {
+        return jobStatus;
+    }
+
+    /**
+     * Record that the engine has accepted the job with the given status.
+     */
+    void accepted(long jobId, JobStatus status) {
+        this.jobId = jobId;
+        changed(status);
+    }
+
+    /**
+     * Record that the job has moved to status, and pass the change to the listener. Events are handed to the executor one at a time, each
+     * once the previous one has returned, so the listener sees them in order even on an executor with several threads.
+     */
+    void changed(final JobStatus status) {
+        jobStatus = status;
+        if (listener == null) return;
+        final long id = jobId;
+        post(new Runnable() {
+            public void run() {
+                switch (status) {
+                    case PENDING:
+                    case RESTARTING:
+                        listener.jobQueued(id);
+                        break;
+                    case IN_PROGRESS:
+                        listener.jobStarted(id);
+                        break;
+                    case COMPLETE:
+                        listener.jobCompleted(id);
+                        break;
+                    default:
+                        listener.jobFailed(id, status);
+                }
+            }
+        });
+    }
+
+    private synchronized void post(final Runnable event) {
+        events.offer(new Runnable() {
+            public void run() {
+                try {
+                    event.run();
+                } finally {
+                    postNext();
+                }
+            }
+        });
+        if (activeEvent == null) postNext();
+    }
+
+    private synchronized void postNext() {
+        activeEvent = events.poll();
+        if (activeEvent != null) executor.execute(activeEvent);
+    }
+
+    /**
+     * Complete this handle with the job's final status.
+     */
+    void finished(JobStatus status) {
+        jobStatus = status;
+        done.countDown();
+    }
+
+    /**
+     * Complete this handle with the failure of a request to the engine.
+     */
+    void failed(Throwable t) {
+        failure = t;
+        done.countDown();
+    }
+
+    /**
+     * Cancel the job through ErnieController.cancelJob. The handle is cancelled if the engine cancelled the job at once or has asked its
+     * worker to stop it; mayInterruptIfRunning is ignored, as a running job is always asked to stop.
+     * @return false if the handle has completed, the engine has not yet accepted the job, or the job had already finished
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone() || jobId == null) return false;
+        JobStatus status;
+        try {
+            status = controller.cancelJob(jobId);
+        } catch (ErnieEngineNotStartedException e) {
+            throw new IllegalStateException(e);
+        }
+        if (status != JobStatus.CANCELLED && status != JobStatus.IN_PROGRESS) return false;
+        cancelled = true;
+        done.countDown();
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public JobEntity get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    public JobEntity get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) throw new TimeoutException("Job " + jobId + " has not finished");
+        return result();
+    }
+
+    private JobEntity result() throws ExecutionException {
+        if (cancelled) throw new CancellationException("Job " + jobId + " was cancelled");
+        if (failure != null) throw new ExecutionException(failure);
+        JobEntity res = new JobEntity();
+        res.setJobId(jobId);
+        res.setJobStatus(jobStatus);
+        return res;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+	Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+
+package com.ksmpartners.ernie.api;
+
+import com.ksmpartners.ernie.model.JobStatus;
+
+/**
+ * Receives the lifecycle events of a report generation job followed through ErnieController.submitJob or ErnieController.watchJob.
+ * Each event is handed to the Executor supplied with the listener, in the order the job reaches the corresponding status. An event is not
+ * handed over until the listener has returned from the previous one, so events of the same job never run concurrently.
+ */
+public interface JobListener {
+
+    /**
+     * The job is waiting for a worker, either because it has just been accepted or because it is being restarted.
+     */
+    void jobQueued(long jobId);
+
+    /**
+     * A worker has started generating the job's report.
+     */
+    void jobStarted(long jobId);
+
+    /**
+     * The job has completed and its report output is available.
+     */
+    void jobCompleted(long jobId);
+
+    /**
+     * The job has finished without report output.
+     * @param status the reason, for example FAILED, FAILED_QUEUE_FULL, CANCELLED, TIMED_OUT or NO_SUCH_JOB
+     */
+    void jobFailed(long jobId, JobStatus status);
+}
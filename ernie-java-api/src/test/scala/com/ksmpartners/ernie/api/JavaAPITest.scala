@@ -150,6 +150,13 @@ class JavaAPITest { //extends TestLogger {
     Assert.assertTrue(ernie.getJobCatalog().size > 0)
   }
 
+  @Test(dependsOnGroups = Array("setup"), groups = Array("main"))
+  def getJobCatalogPage() {
+    val page = ernie.getJobCatalog(null, com.ksmpartners.ernie.engine.JobQuery.all.withLimit(1))
+    Assert.assertEquals(page.getJobsCatalog.size, 1)
+    if (ernie.getJobCatalog().size > 1) Assert.assertEquals(page.getNextCursor, page.getJobsCatalog.get(0).getJobId)
+  }
+
   @Test(dependsOnGroups = Array("setup"), groups = Array("main"))
   def getJobList() {
     Assert.assertTrue(ernie.getJobList.size > 0)
@@ -165,6 +172,67 @@ class JavaAPITest { //extends TestLogger {
     Assert.assertFalse(inProgress)
   }
 
+  class RecordingListener extends JobListener {
+    val events = new java.util.concurrent.CopyOnWriteArrayList[String]
+    def jobQueued(jobId: Long) { events.add("queued") }
+    def jobStarted(jobId: Long) { events.add("started") }
+    def jobCompleted(jobId: Long) { events.add("completed") }
+    def jobFailed(jobId: Long, status: com.ksmpartners.ernie.model.JobStatus) { events.add(status.toString) }
+  }
+
+  val callerThread = new java.util.concurrent.Executor {
+    def execute(r: Runnable) { r.run() }
+  }
+
+  @Test(dependsOnMethods = Array("init"))
+  def submitJobForMissingDefinition() {
+    val listener = new RecordingListener
+    val job = ernie.submitJob("test", ReportType.PDF, null, "test", listener, callerThread)
+    val result = job.get(30, java.util.concurrent.TimeUnit.SECONDS)
+    Assert.assertEquals(result.getJobStatus, com.ksmpartners.ernie.model.JobStatus.FAILED_NO_SUCH_DEFINITION)
+    Assert.assertEquals(result.getJobId, job.getJobId)
+    Assert.assertTrue(job.isDone)
+    Assert.assertFalse(job.cancel(true))
+    Assert.assertEquals(listener.events.toArray.toList, List("FAILED_NO_SUCH_DEFINITION"))
+  }
+
+  @Test(dependsOnMethods = Array("init"))
+  def watchMissingJob() {
+    val listener = new RecordingListener
+    val result = ernie.watchJob(Long.MaxValue, listener, callerThread).get(30, java.util.concurrent.TimeUnit.SECONDS)
+    Assert.assertEquals(result.getJobStatus, com.ksmpartners.ernie.model.JobStatus.NO_SUCH_JOB)
+    Assert.assertEquals(listener.events.toArray.toList, List("NO_SUCH_JOB"))
+  }
+
+  @Test
+  def listenerEventsKeepOrderOnPooledExecutor() {
+    val listener = new RecordingListener {
+      override def jobQueued(jobId: Long) {
+        Thread.sleep(200)
+        super.jobQueued(jobId)
+      }
+    }
+    val pool = java.util.concurrent.Executors.newFixedThreadPool(4)
+    try {
+      val job = new JobFuture(null, listener, pool)
+      job.accepted(1L, com.ksmpartners.ernie.model.JobStatus.PENDING)
+      job.changed(com.ksmpartners.ernie.model.JobStatus.IN_PROGRESS)
+      job.changed(com.ksmpartners.ernie.model.JobStatus.COMPLETE)
+      val endTime = DateTime.now.plusSeconds(30)
+      while (listener.events.size < 3 && DateTime.now.isBefore(endTime)) Thread.sleep(10)
+      Assert.assertEquals(listener.events.toArray.toList, List("queued", "started", "completed"))
+    } finally pool.shutdown()
+  }
+
+  @Test(dependsOnGroups = Array("setup"), groups = Array("main"))
+  def submitJobCompletes() {
+    val listener = new RecordingListener
+    val job = ernie.submitJob(defId, ReportType.PDF, null, "test", listener, callerThread)
+    Assert.assertEquals(job.get(5, java.util.concurrent.TimeUnit.MINUTES).getJobStatus, com.ksmpartners.ernie.model.JobStatus.COMPLETE)
+    Assert.assertEquals(listener.events.get(0), "queued")
+    Assert.assertEquals(listener.events.get(listener.events.size - 1), "completed")
+  }
+
   @Test(dependsOnGroups = Array("main"), groups = Array("completed"))
   def getRptEnt() {
     testException(() => ernie.getReportEntity(-1L), classOf[MissingArgumentException])
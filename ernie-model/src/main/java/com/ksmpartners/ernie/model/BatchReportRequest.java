@@ -0,0 +1,40 @@
+/**
+ * This source code file is the intellectual property of KSM Technology Partners LLC.
+ * The contents of this file may not be reproduced, published, or distributed in any
+ * form, except as allowed in a license agreement between KSM Technology Partners LLC
+ * and a licensee. Copyright 2012 KSM Technology Partners LLC.  All rights reserved.
+ */
+
+
+package com.ksmpartners.ernie.model;
+
+import java.util.List;
+
+/**
+ * A JSONable class used to serialize a list of report requests submitted together.
+ */
+public class BatchReportRequest extends ModelObject {
+
+    private List<ReportRequest> requests;
+
+    public BatchReportRequest() {}
+
+    public BatchReportRequest(List<ReportRequest> requests) {
+        this.requests = requests;
+    }
+
+    /**
+     * Return the report requests, in the order in which jobs are created for them.
+     */
+    public List<ReportRequest> getRequests() {
+        return requests;
+    }
+
+    /**
+     * Set the report requests, in the order in which jobs are created for them.
+     */
+    public void setRequests(List<ReportRequest> requests) {
+        this.requests = requests;
+    }
+
+}
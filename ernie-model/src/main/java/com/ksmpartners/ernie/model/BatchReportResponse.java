@@ -0,0 +1,40 @@
+/**
+ * This source code file is the intellectual property of KSM Technology Partners LLC.
+ * The contents of this file may not be reproduced, published, or distributed in any
+ * form, except as allowed in a license agreement between KSM Technology Partners LLC
+ * and a licensee. Copyright 2012 KSM Technology Partners LLC.  All rights reserved.
+ */
+
+
+package com.ksmpartners.ernie.model;
+
+import java.util.List;
+
+/**
+ * A JSONable class used to serialize the job IDs and statuses created for a BatchReportRequest.
+ */
+public class BatchReportResponse extends ModelObject {
+
+    private List<ReportResponse> responses;
+
+    public BatchReportResponse() {}
+
+    public BatchReportResponse(List<ReportResponse> responses) {
+        this.responses = responses;
+    }
+
+    /**
+     * Return one ReportResponse for each submitted request, in the order of the requests.
+     */
+    public List<ReportResponse> getResponses() {
+        return responses;
+    }
+
+    /**
+     * Set one ReportResponse for each submitted request, in the order of the requests.
+     */
+    public void setResponses(List<ReportResponse> responses) {
+        this.responses = responses;
+    }
+
+}
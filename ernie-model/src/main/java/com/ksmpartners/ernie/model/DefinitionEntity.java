@@ -34,6 +34,10 @@ public class DefinitionEntity extends ModelObject {
     private List<ParameterEntity> params;
     private String defDescription;
     private List<ReportType> unsupportedReportTypes;
+    private Integer resultCacheSeconds;
+    private Integer timeoutSeconds;
+    private String bulkhead;
+    private String csvResultSet;
 
     public DefinitionEntity() {}
 
@@ -140,4 +144,62 @@ public class DefinitionEntity extends ModelObject {
     public void setParams(List<ParameterEntity> params) {
         this.params = params;
     }
+
+    /**
+     * Return the number of seconds for which output generated from this report design may be reused by identical requests,
+     * or null if identical requests always generate new output. A value of 0 only coalesces identical requests made while a run is in progress.
+     */
+    public Integer getResultCacheSeconds() {
+        return resultCacheSeconds;
+    }
+
+    /**
+     * Set the number of seconds for which output generated from this report design may be reused by identical requests.
+     */
+    public void setResultCacheSeconds(Integer resultCacheSeconds) {
+        this.resultCacheSeconds = resultCacheSeconds;
+    }
+
+    /**
+     * Return the number of seconds a job generated from this report design may run before it is stopped, or null if jobs may run indefinitely.
+     */
+    public Integer getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    /**
+     * Set the number of seconds a job generated from this report design may run before it is stopped.
+     */
+    public void setTimeoutSeconds(Integer timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * Return the name of the bulkhead that limits how many jobs generated from this report design run at once, or null if none does.
+     */
+    public String getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Set the name of the bulkhead that limits how many jobs generated from this report design run at once.
+     */
+    public void setBulkhead(String bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+
+    /**
+     * Return the name of the table or other data-bound element whose rows CSV reports of this report design extract directly, without
+     * laying out or rendering the report, or null if CSV reports are rendered.
+     */
+    public String getCsvResultSet() {
+        return csvResultSet;
+    }
+
+    /**
+     * Set the name of the table or other data-bound element whose rows CSV reports of this report design extract directly.
+     */
+    public void setCsvResultSet(String csvResultSet) {
+        this.csvResultSet = csvResultSet;
+    }
 }
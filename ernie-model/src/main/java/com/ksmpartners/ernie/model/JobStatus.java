@@ -34,6 +34,8 @@ public enum JobStatus {
     FAILED_UNSUPPORTED_PARAMETER_TYPE,
     /** The specified definition ID does not exist */
     FAILED_NO_SUCH_DEFINITION,
+    /** The job queue was full when the job was requested */
+    FAILED_QUEUE_FULL,
     /** Job was deleted */
     DELETED,
     /** Job was IN_PROGRESS/PENDING when server shut down and is now restarting */
@@ -41,6 +43,10 @@ public enum JobStatus {
     /** Job does not exist */
     NO_SUCH_JOB,
     /** Job is expired */
-    EXPIRED;
+    EXPIRED,
+    /** Job was cancelled before it completed */
+    CANCELLED,
+    /** Job ran longer than its timeout and was stopped */
+    TIMED_OUT;
 
 }
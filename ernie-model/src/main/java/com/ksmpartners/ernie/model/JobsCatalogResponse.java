@@ -10,11 +10,13 @@ package com.ksmpartners.ernie.model;
 import java.util.List;
 
 /**
- * A JSONable class used to serialize a catalog of report generation job metadata.
+ * A JSONable class used to serialize a catalog of report generation job metadata. A catalog may be one page of a larger catalog, in which
+ * case nextCursor identifies the page that follows.
  */
 public class JobsCatalogResponse extends ModelObject {
 
     private List<JobEntity> jobsCatalog;
+    private Long nextCursor;
 
     public JobsCatalogResponse() {}
 
@@ -22,6 +24,11 @@ public class JobsCatalogResponse extends ModelObject {
         this.jobsCatalog = jobsCatalog;
     }
 
+    public JobsCatalogResponse(List<JobEntity> jobsCatalog, Long nextCursor) {
+        this.jobsCatalog = jobsCatalog;
+        this.nextCursor = nextCursor;
+    }
+
     /**
      * Return the JobEntity list.
      */
@@ -36,4 +43,18 @@ public class JobsCatalogResponse extends ModelObject {
         this.jobsCatalog = jobsCatalog;
     }
 
+    /**
+     * Return the cursor of the following page, or null if this is the last page.
+     */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Set the cursor of the following page.
+     */
+    public void setNextCursor(Long nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
 }
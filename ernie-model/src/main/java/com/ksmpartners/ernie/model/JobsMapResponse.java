@@ -10,11 +10,13 @@ package com.ksmpartners.ernie.model;
 import java.util.Map;
 
 /**
- * A JSONable class used to serialize a map of report generation job identifiers.
+ * A JSONable class used to serialize a map of report generation job identifiers. A map may be one page of a larger map, in which case
+ * nextCursor identifies the page that follows.
  */
 public class JobsMapResponse extends ModelObject {
 
     private Map<String, String> jobsMap;
+    private Long nextCursor;
 
     public JobsMapResponse() {}
 
@@ -22,6 +24,11 @@ public class JobsMapResponse extends ModelObject {
         this.jobsMap = jobsMap;
     }
 
+    public JobsMapResponse(Map<String, String> jobsMap, Long nextCursor) {
+        this.jobsMap = jobsMap;
+        this.nextCursor = nextCursor;
+    }
+
     /**
      * Return the map of report generation job identifiers
      */
@@ -36,4 +43,18 @@ public class JobsMapResponse extends ModelObject {
         this.jobsMap = jobsMap;
     }
 
+    /**
+     * Return the cursor of the following page, or null if this is the last page.
+     */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Set the cursor of the following page.
+     */
+    public void setNextCursor(Long nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
 }
@@ -76,6 +76,8 @@ public class SerializationTest {
         TestUtil.verifySerialization(ReportDefinitionMapResponse.class);
         TestUtil.verifySerialization(JobsMapResponse.class);
         TestUtil.verifySerialization(DefinitionEntity.class);
+        TestUtil.verifySerialization(BatchReportRequest.class);
+        TestUtil.verifySerialization(BatchReportResponse.class);
     }
 
     @Test
@@ -0,0 +1,95 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ksmpartners.ernie.server
+
+import org.joda.time.{ DateTime, DateTimeZone }
+import org.joda.time.format.DateTimeFormat
+import java.util.Locale
+
+/**
+ * The part of a resource's content that a request selects through its Range header
+ */
+sealed abstract class RangeSelection
+
+/**
+ * Selection of the whole content, made when a request has no usable Range header
+ */
+case object WholeContent extends RangeSelection
+
+/**
+ * Selection of a range that lies entirely beyond the end of the content, which is answered with 416
+ */
+case object UnsatisfiableRange extends RangeSelection
+
+/**
+ * Selection of the bytes from first to last inclusive
+ */
+case class ByteRange(first: Long, last: Long) extends RangeSelection {
+
+  def length: Long = last - first + 1
+
+  /**
+   * Return the value of the Content-Range header of a 206 response carrying this range of content of size bytes
+   */
+  def contentRange(size: Long): String = "bytes " + first + "-" + last + "/" + size
+}
+
+/**
+ * Parsing of the Range and If-Range headers of downloads. Only a single byte range is served; a request for several ranges, or with
+ * a malformed Range header, is served the whole content as HTTP allows.
+ */
+object ByteRange {
+
+  private val spec = """(?i)bytes=(\d*)-(\d*)""".r
+  private val httpDateFormat = DateTimeFormat.forPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'").withZone(DateTimeZone.UTC).withLocale(Locale.US)
+
+  /**
+   * Return the part of content of size bytes selected by the Range header value range
+   */
+  def select(range: Option[String], size: Long): RangeSelection = try {
+    range.map(_.trim.replaceAll("\\s", "")) match {
+      case Some(spec(first, last)) if (first.nonEmpty || last.nonEmpty) => {
+        if (first.isEmpty) {
+          val suffix = last.toLong
+          if ((suffix == 0) || (size == 0)) UnsatisfiableRange else ByteRange(math.max(size - suffix, 0), size - 1)
+        } else if (last.nonEmpty && (last.toLong < first.toLong)) WholeContent
+        else if (first.toLong >= size) UnsatisfiableRange
+        else ByteRange(first.toLong, if (last.isEmpty) size - 1 else math.min(last.toLong, size - 1))
+      }
+      case _ => WholeContent
+    }
+  } catch {
+    case e: NumberFormatException => WholeContent
+  }
+
+  /**
+   * Return whether the If-Range header value ifRange allows a range of a representation with etag and lastModified to be served.
+   * A request without If-Range always does; otherwise the entity tag must match exactly, or the date must equal lastModified.
+   */
+  def ifRangeMatches(ifRange: Option[String], etag: String, lastModified: Option[DateTime]): Boolean = ifRange.map(_.trim).forall(v =>
+    if (v.startsWith("\"") || v.startsWith("W/")) v == etag
+    else lastModified.exists(m => parseHttpDate(v).exists(_.getMillis == (m.getMillis / 1000) * 1000)))
+
+  /**
+   * Return d formatted as an HTTP date
+   */
+  def httpDate(d: DateTime): String = httpDateFormat.print(d)
+
+  private def parseHttpDate(s: String): Option[DateTime] = try {
+    Some(httpDateFormat.parseDateTime(s))
+  } catch {
+    case e: IllegalArgumentException => None
+  }
+}
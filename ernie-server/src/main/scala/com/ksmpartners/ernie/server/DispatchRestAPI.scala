@@ -30,6 +30,13 @@ object DispatchRestAPI extends RestGenerator with JsonTranslator {
     def toResponse = InMemoryResponse(Array(), headers, cookies, 504)
   }
 
+  /**
+   * Response indicating that the server is overloaded, advising the client to retry after retryAfter seconds
+   */
+  case class TooManyRequestsResponse(retryAfter: Long) extends LiftResponse with HeaderDefaults {
+    def toResponse = InMemoryResponse(Array(), ("Retry-After", retryAfter.toString) :: headers, cookies, 429)
+  }
+
   /**
    * Wrap a TimeoutResponse and message with in an ErnieError case class
    */
@@ -39,6 +46,7 @@ object DispatchRestAPI extends RestGenerator with JsonTranslator {
    * Shutdown the ernie server
    */
   def shutdown() {
+    metrics.unregister()
     ServiceRegistry.shutDown
   }
 
@@ -63,15 +71,18 @@ object DispatchRestAPI extends RestGenerator with JsonTranslator {
 
   val reportDetail = Resource(Left("detail"), "Report details", false, List(getReportDetail, headReportDetail))
   val jobResult = Resource(Left("result"), "Job results", false, List(getJobResult, headJobResult, deleteJobResult), reportDetail)
-  val jobStatus = Resource(Left("status"), "Job status", false, List(getJobStatus, headJobStatus))
-  val job = Resource(Right(Variable("job_id")), "Job resource", false, List(getJob, headJob), jobStatus, jobResult)
+  val jobStatusEvents = Resource(Left("events"), "Job status events", false, List(getJobStatusEvents))
+  val jobStatus = Resource(Left("status"), "Job status", false, List(getJobStatus, headJobStatus), jobStatusEvents)
+  val job = Resource(Right(Variable("job_id")), "Job resource", false, List(getJob, headJob, deleteJob), jobStatus, jobResult)
   val expiredCatalog = Resource(Left("expired"), "Expired catalog", false, List(purgeExpired, getExpiredCatalog, headExpiredCatalog))
   val failedCatalog = Resource(Left("failed"), "Failed catalog", false, List(getFailedCatalog, headFailedCatalog))
   val deletedCatalog = Resource(Left("deleted"), "Deleted catalog", false, List(getDeletedCatalog, headDeletedCatalog))
   val completeCatalog = Resource(Left("complete"), "Complete catalog", false, List(getCompleteCatalog, headCompleteCatalog))
   val jobsCatalog = Resource(Left("catalog"), "Full catalog", false, List(getCatalog, headCatalog))
   val jobsSwagger = Resource(Left("jobsapi"), "Jobs JSON", false, jobsJSON :: Nil)
-  val jobs = Resource(Left("jobs"), "Jobs api", true, List(getJobsList, headJobsList, postJob), job, jobsCatalog, completeCatalog, expiredCatalog, failedCatalog, deletedCatalog)
+  val jobsBatch = Resource(Left("batch"), "Batch job submission", false, List(postJobsBatch))
+  val jobs = Resource(Left("jobs"), "Jobs api", true, List(getJobsList, headJobsList, postJob), job, jobsBatch, jobsCatalog, completeCatalog, expiredCatalog, failedCatalog,
+    deletedCatalog)
 
   val design = Resource(Left("rptdesign"), "Definition rptdesign", false, List(putDesign))
   val defi = Resource(Right(Variable("def_id")), "Definition resource", false, List(getDef, headDef, deleteDef), design)
@@ -80,7 +91,11 @@ object DispatchRestAPI extends RestGenerator with JsonTranslator {
 
   val swagger = Resource(Left("resources"), "Resources JSON", false, resourcesJSON :: Nil)
 
-  protected val api = jobs :: defs :: swagger :: jobsSwagger :: defsSwagger :: Nil
+  val readiness = Resource(Left("ready"), "Server readiness", false, List(getReadiness, headReadiness))
+
+  val metricsResource = Resource(Left("metrics"), "Action metrics", false, List(getMetrics, headMetrics))
+
+  protected val api = jobs :: defs :: swagger :: jobsSwagger :: defsSwagger :: readiness :: metricsResource :: Nil
 
   var jobsAPI: JObject = null
   var defsAPI: JObject = null
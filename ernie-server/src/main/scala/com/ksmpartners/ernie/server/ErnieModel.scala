@@ -113,7 +113,11 @@ object ErnieModels {
       ("createdUser" -> ("type" -> "string")) ~
       ("paramNames" -> ("type" -> "Array") ~ ("items" -> ("type" -> "string"))) ~
       ("params" -> ("type" -> "Array") ~ ("items" -> ("type" -> "ParameterEntity"))) ~
-      ("unsupportedReportTypes" -> ("type" -> "Array") ~ ("items" -> ("type" -> "string")))) ~
+      ("unsupportedReportTypes" -> ("type" -> "Array") ~ ("items" -> ("type" -> "string"))) ~
+      ("resultCacheSeconds" -> ("type" -> "int")) ~
+      ("timeoutSeconds" -> ("type" -> "int")) ~
+      ("bulkhead" -> ("type" -> "string")) ~
+      ("csvResultSet" -> ("type" -> "string"))) ~
       ("id" -> "DefinitionEntity")))
   val definitionResponse = ("DefinitionResponse" ->
     (("properties" -> JNothing) ~
@@ -124,10 +128,12 @@ object ErnieModels {
   val deleteDefinitionResponse = ("DefinitionDeleteResponse" ->
     (("properties" -> ("deleteStatus" -> ("type" -> "string"))) ~
       ("id" -> "DefinitionDeleteResponse")))
-  val jobsMapResponse = ("jobStatusMap" -> ("id" -> "jobStatusMap") ~ ("properties" -> ("jobStatusMap" ->
-    (("type" -> "Array") ~ ("items" -> ("type" -> "string")) ~ ("description" -> "Jobs map")))))
-  val jobsCatalogResponse = ("JobsCatalogResponse" -> ("id" -> "JobsCatalogResponse") ~ ("properties" -> ("jobsCatalog" ->
-    (("type" -> "Array") ~ ("items" -> ("$ref" -> "JobEntity"))))))
+  val jobsMapResponse = ("jobStatusMap" -> ("id" -> "jobStatusMap") ~ ("properties" -> (("jobStatusMap" ->
+    (("type" -> "Array") ~ ("items" -> ("type" -> "string")) ~ ("description" -> "Jobs map"))) ~
+    ("nextCursor" -> ("type" -> "long") ~ ("description" -> "Cursor of the next page, if there is one")))))
+  val jobsCatalogResponse = ("JobsCatalogResponse" -> ("id" -> "JobsCatalogResponse") ~ ("properties" -> (("jobsCatalog" ->
+    (("type" -> "Array") ~ ("items" -> ("$ref" -> "JobEntity")))) ~
+    ("nextCursor" -> ("type" -> "long") ~ ("description" -> "Cursor of the next page, if there is one")))))
   val reportDefinitionMapResponse = ("reportDefMap" -> ("id" -> "reportDefMap") ~ ("properties" -> ("reportDefMap" ->
     (("type" -> "Array") ~ ("items" -> ("type" -> "string")) ~ ("description" -> "Defs map")))))
   val reportEntity = ("ReportEntity" ->
@@ -155,11 +161,23 @@ object ErnieModels {
       ("jobId" -> ("type" -> "long")) ~
       ("jobStatus" -> ("type" -> "string"))) ~
       ("id" -> "ReportResponse")))
+  val reportRequest = ("ReportRequest" ->
+    (("properties" ->
+      ("defId" -> ("type" -> "string")) ~
+      ("rptType" -> ("type" -> "string")) ~
+      ("retentionDays" -> ("type" -> "int")) ~
+      ("reportParameters" -> ("type" -> "Array") ~ ("description" -> "Report parameters") ~ ("items" -> ("type" -> "string")))) ~
+      ("id" -> "ReportRequest")))
+  val batchReportRequest = ("BatchReportRequest" -> ("id" -> "BatchReportRequest") ~ ("properties" -> ("requests" ->
+    (("type" -> "Array") ~ ("items" -> ("$ref" -> "ReportRequest"))))))
+  val batchReportResponse = ("BatchReportResponse" -> ("id" -> "BatchReportResponse") ~ ("properties" -> ("responses" ->
+    (("type" -> "Array") ~ ("items" -> ("$ref" -> "ReportResponse"))))))
   val statusResponse = ("StatusResponse" ->
     (("properties" -> ("jobStatus" -> ("type" -> "string"))) ~
       ("id" -> "StatusResponse")))
   val models = definitionEntity ~ definitionResponse ~ deleteResponse ~ jobEntity ~ jobsCatalogResponse ~ jobsMapResponse ~
-    reportDefinitionMapResponse ~ reportEntity ~ reportResponse ~ statusResponse ~ deleteDefinitionResponse ~ parameterEntity ~ definitionEntity
+    reportDefinitionMapResponse ~ reportEntity ~ reportResponse ~ statusResponse ~ deleteDefinitionResponse ~ parameterEntity ~ definitionEntity ~
+    reportRequest ~ batchReportRequest ~ batchReportResponse
 }
 
 /**
@@ -172,25 +190,39 @@ object ErnieRequestTemplates {
   val results = List(Product("application/pdf", ""), Product("application/csv", ""), Product("application/html", ""))
   val jsonFile = List(Product("json", "json"))
 
-  val getJobsList = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter), ServiceRegistry.jobsResource.getJobsListAction)
+  val pageParams = List(Parameter("limit", "query", "int"), Parameter("cursor", "query", "long"), Parameter("order", "query", "string", "asc"),
+    Parameter("status", "query", "string"), Parameter("defId", "query", "string"), Parameter("user", "query", "string"),
+    Parameter("from", "query", "Date"), Parameter("to", "query", "Date"))
+
+  val getJobsList = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter), ServiceRegistry.jobsResource.getJobsListAction, pageParams: _*)
   val headJobsList = getToHead(getJobsList)
+  val getReadiness = RequestTemplate(GetRequest, justJSON, Nil, ServiceRegistry.jobsResource.getReadinessAction)
+  val headReadiness = getToHead(getReadiness)
+  val getMetrics = RequestTemplate(GetRequest, justJSON, List(readAuthFilter), ServiceRegistry.jobsResource.getMetricsAction)
+  val headMetrics = getToHead(getMetrics)
   val postJob = RequestTemplate(PostRequest, justJSON, List(writeRunAuthFilter, jsonFilter), ServiceRegistry.jobsResource.postJobAction, Parameter("ReportRequest", "body", "ReportRequest"))
-  val getCatalog = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter), ServiceRegistry.jobsResource.getJobsCatalogAction)
+  val postJobsBatch = RequestTemplate(PostRequest, justJSON, List(writeRunAuthFilter, jsonFilter), ServiceRegistry.jobsResource.postJobsBatchAction,
+    Parameter("BatchReportRequest", "body", "BatchReportRequest"))
+  val getCatalog = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter), ServiceRegistry.jobsResource.getJobsCatalogAction, pageParams: _*)
   val headCatalog = getToHead(getCatalog)
-  val getCompleteCatalog = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter), ServiceRegistry.jobsResource.getCompleteCatalogAction)
+  val getCompleteCatalog = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter), ServiceRegistry.jobsResource.getCompleteCatalogAction, pageParams: _*)
   val headCompleteCatalog = getToHead(getCompleteCatalog)
-  val getFailedCatalog = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter), ServiceRegistry.jobsResource.getFailedCatalogAction)
+  val getFailedCatalog = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter), ServiceRegistry.jobsResource.getFailedCatalogAction, pageParams: _*)
   val headFailedCatalog = getToHead(getFailedCatalog)
-  val getDeletedCatalog = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter), ServiceRegistry.jobsResource.getDeletedCatalogAction)
+  val getDeletedCatalog = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter), ServiceRegistry.jobsResource.getDeletedCatalogAction, pageParams: _*)
   val headDeletedCatalog = getToHead(getDeletedCatalog)
-  val getExpiredCatalog = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter), ServiceRegistry.jobsResource.getExpiredCatalogAction)
+  val getExpiredCatalog = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter), ServiceRegistry.jobsResource.getExpiredCatalogAction, pageParams: _*)
   val headExpiredCatalog = getToHead(getExpiredCatalog)
   val purgeExpired = RequestTemplate(DeleteRequest, justJSON, List(writeAuthFilter, jsonFilter), ServiceRegistry.jobsResource.purgeAction)
   val getJob = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter, idFilter), ServiceRegistry.jobEntityResource.getJobDetailAction)
   val headJob = getToHead(getJob)
-  val getJobStatus = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter, idFilter), ServiceRegistry.jobStatusResource.getJobStatusAction)
+  val deleteJob = RequestTemplate(DeleteRequest, justJSON, List(writeAuthFilter, jsonFilter, idFilter), ServiceRegistry.jobEntityResource.cancelJobAction)
+  val getJobStatus = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter, idFilter), ServiceRegistry.jobStatusResource.getJobStatusAction,
+    Parameter("wait", "query", "int"))
   val headJobStatus = getToHead(getJobStatus)
-  val getJobResult = RequestTemplate(GetRequest, results, List(readAuthFilter, idFilter), ServiceRegistry.jobResultsResource.getJobResultAction, Parameter("Accept", "header", "string"))
+  val getJobStatusEvents = RequestTemplate(GetRequest, List(Product("text/event-stream", "")), List(readAuthFilter, idFilter), ServiceRegistry.jobStatusResource.getJobStatusEventsAction)
+  val getJobResult = RequestTemplate(GetRequest, results, List(readAuthFilter, idFilter), ServiceRegistry.jobResultsResource.getJobResultAction, Parameter("Accept", "header", "string"),
+    Parameter("Range", "header", "string"), Parameter("If-Range", "header", "string"))
   val headJobResult = getToHead(getJobResult)
   val deleteJobResult = RequestTemplate(DeleteRequest, justJSON, List(writeAuthFilter, jsonFilter, idFilter), ServiceRegistry.jobResultsResource.deleteReportAction)
   val getReportDetail = RequestTemplate(GetRequest, justJSON, List(readAuthFilter, jsonFilter, idFilter), ServiceRegistry.jobResultsResource.getDetailAction)
@@ -20,15 +20,41 @@ import java.util.Properties
 object PropertyNames {
   val propertiesFileNameProp = "ernie.props"
   val keystoreLocProp = "keystore.location"
+  /** Maximum number of validated SAML tokens SAMLFilter keeps so that repeated requests skip parsing and signature checks */
+  val samlCacheSizeProp = "saml.assertion.cache.size"
   val authModeProp = "authentication.mode"
   val rptDefsDirProp = "rpt.def.dir"
   val outputDirProp = "output.dir"
   val workerCountProp = "worker.count"
+  val autoscaleEnabledProp = "worker.autoscale.enabled"
+  val autoscaleMinWorkersProp = "worker.autoscale.min"
+  val autoscaleMaxWorkersProp = "worker.autoscale.max"
+  val autoscaleScaleUpWaitProp = "worker.autoscale.scale.up.wait.ms"
+  val autoscaleIdleCooldownProp = "worker.autoscale.idle.cooldown.ms"
+  val autoscaleMaxCpuLoadProp = "worker.autoscale.max.cpu.load"
   val jobDirProp = "jobs.dir"
   val swaggerDocsProp = "swagger.docs"
   val defaultRetentionPeriod = "retention.period.default"
   val maximumRetentionPeriod = "retention.period.maximum"
   val requestTimeoutSeconds = "request.timeout.seconds"
+  val maxQueueDepthProp = "job.queue.max.depth"
+  val journalEnabledProp = "job.journal.enabled"
+  val journalFsyncIntervalProp = "job.journal.fsync.interval.ms"
+  val journalSegmentSizeProp = "job.journal.segment.size"
+  val reportDocumentsEnabledProp = "report.documents.enabled"
+  val designCacheSizeProp = "report.design.cache.size"
+  /** Comma separated names of JDBC connection pools; each is configured by properties prefixed with dataSourcePrefix and its name */
+  val dataSourceNamesProp = "datasource.names"
+  val dataSourcePrefix = "datasource."
+  val dispatchersEnabledProp = "dispatchers.enabled"
+  val workerThreadsProp = "dispatchers.worker.threads"
+  val coordinatorPinnedProp = "dispatchers.coordinator.pinned"
+  val callbackThreadsProp = "dispatchers.callback.threads"
+  val restartBatchSizeProp = "job.restart.batch.size"
+  val restartIntervalProp = "job.restart.interval.ms"
+  /** Comma separated names of bulkheads; each limits its jobs to the value of the property bulkheadPrefix + name + ".max.jobs" */
+  val bulkheadNamesProp = "bulkhead.names"
+  val bulkheadPrefix = "bulkhead."
 }
 
 /** Dependency injection trait to advertise dependence on a java.util.Properties instance */
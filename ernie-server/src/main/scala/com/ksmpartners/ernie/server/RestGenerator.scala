@@ -26,10 +26,11 @@ import net.liftweb.http.InMemoryResponse
 import net.liftweb.common.Full
 import net.liftweb.http.MethodNotAllowedResponse
 import com.ksmpartners.ernie.server.RestGenerator.Variable
-import com.ksmpartners.ernie.api.ReportOutputException
+import com.ksmpartners.ernie.api.{ ErrorKey, ReportOutputException }
 import com.ksmpartners.ernie.server.RestGenerator.Resource
 import com.ksmpartners.ernie.server.RestGenerator.Package
 import net.liftweb.http.auth.{ Role, AuthRole }
+import com.ksmpartners.ernie.util.ActionMetrics
 
 /**
  * Companion singleton for RestGenerator trait.
@@ -89,6 +90,7 @@ object RestGenerator {
      */
     def send(reason: Option[String]): Box[LiftResponse] = {
       log.info("Response: " + toResponse(reason).response.getClass + ". Reason: {}", toResponse(reason).reason)
+      chosenError.set(this)
       Full(toResponse(reason))
     }
 
@@ -96,8 +98,22 @@ object RestGenerator {
      * Return the boxed response and log
      */
     def send(): Box[LiftResponse] = send(None)
+
+    /**
+     * The key under which a response built from this error is counted in metrics: the type of its exception, or else the reason it was
+     * declared with, or else its status code
+     */
+    def key: String = exception.map(ErrorKey(_)) getOrElse (resp match {
+      case r: ResponseWithReason => r.reason
+      case r => statusCode(r).toString
+    })
   }
 
+  /**
+   * The ErnieError last sent or chosen by checkResponse on this thread, cleared by apiCall around each action
+   */
+  private val chosenError = new ThreadLocal[ErnieError]
+
   /**
    * Represent an action that can be performed by an ernie dependency
    * @param name the plain-text name of the action
@@ -110,16 +126,51 @@ object RestGenerator {
   case class Action(name: String, func: (Package) => Box[LiftResponse], summary: String, notes: String, responseClass: String, errors: ErnieError*)
 
   /**
-   * Safely invoke an action. If no exception is thrown, invoke a post-processing function on the result. Otherwise, convert the exception to a response.
+   * Call counts, error counts and latency histograms of each action invoked through apiCall, keyed by action name and registered over
+   * JMX under type RestAction. Errors are keyed by the ErnieError the response was built from; see errorKey.
+   */
+  val metrics = new ActionMetrics("RestAction")
+
+  /**
+   * Safely invoke an action and record its latency and outcome in metrics. If no exception is thrown, invoke a post-processing function on the result. Otherwise, convert the exception to a response.
+   * A response whose status code is not 2xx is recorded as an error, whether it was returned by then or converted from an exception.
    * @param call an anonymous function that performs an unsafe operation
    * @param then a post-processing function to be executed on successful invocation of call
    * @tparam B the return value of call
    */
-  def apiCall[B](a: Action, call: Any => B, then: B => Box[LiftResponse]): Box[LiftResponse] = try {
-    val res = call.apply()
-    then(res)
-  } catch {
-    case e: Exception => checkResponse(a, Some(e))
+  def apiCall[B](a: Action, call: Any => B, then: B => Box[LiftResponse]): Box[LiftResponse] = {
+    val start = System.nanoTime
+    chosenError.remove()
+    try {
+      val res = call.apply()
+      val response = then(res)
+      metrics.record(a.name, start, errorKey(response, None))
+      response
+    } catch {
+      case e: Exception => {
+        val response = checkResponse(a, Some(e))
+        metrics.record(a.name, start, errorKey(response, Some(e)))
+        response
+      }
+    } finally chosenError.remove()
+  }
+
+  /**
+   * Return the metrics error key of response if its status code is not 2xx, and null otherwise. The key is that of the ErnieError the
+   * response was sent from or chosen for e, or else the type of e, or else the status code.
+   */
+  private def errorKey(response: Box[LiftResponse], e: Option[Exception]): String =
+    response.map(statusCode(_)).filter(c => (c < 200) || (c >= 300)).map(c => Option(chosenError.get).map(_.key) orElse e.map(ErrorKey(_)) getOrElse c.toString) openOr null
+
+  /**
+   * Return the HTTP status code of response, without rendering the body of the common response types
+   */
+  def statusCode(response: LiftResponse): Int = response match {
+    case r: ResponseWithReason => statusCode(r.response)
+    case r: BasicResponse => r.code
+    case r: JsonResponse => r.code
+    case r: PlainTextResponse => r.code
+    case r => r.toResponse.code
   }
 
   /**
@@ -127,21 +178,23 @@ object RestGenerator {
    */
   def checkResponse(a: Action, e: Option[Exception]): Box[LiftResponse] = if (e.isDefined) {
     val errors = a.errors
-    var result: List[ResponseWithReason] = Nil
+    var result: List[(ErnieError, ResponseWithReason)] = Nil
     errors.foreach(f => {
       if ((f.exception.isDefined) && (e.get.getClass == f.exception.get.getClass)) {
         if (e.get.isInstanceOf[ReportOutputException]) {
           if (e.get.asInstanceOf[ReportOutputException].status.toList.contains(f.exception.get.asInstanceOf[ReportOutputException].status.getOrElse(null)))
-            result.::=(f.toResponse(e.map(f => f.getMessage)))
-        } else result.::=(f.toResponse(e.map(f => f.getMessage)))
+            result.::=((f, f.toResponse(e.map(f => f.getMessage))))
+        } else result.::=((f, f.toResponse(e.map(f => f.getMessage))))
       }
     })
     if (result.isEmpty) {
       log.debug("Response: Internal Server Error. Reason: {}", e.get.getMessage)
       Full(ResponseWithReason(InternalServerErrorResponse(), e.get.getMessage))
     } else {
-      log.debug("Response: " + result.head.response.getClass.getSimpleName + ", reason: {}", result.head.reason)
-      Full(result.head)
+      val (error, response) = result.head
+      log.debug("Response: " + response.response.getClass.getSimpleName + ", reason: {}", response.reason)
+      chosenError.set(error)
+      Full(response)
     }
   } else net.liftweb.common.Empty
 
@@ -25,7 +25,8 @@ import com.ksmpartners.ernie.server.filter.SAMLConstants._
 import com.ksmpartners.ernie.server.PropertyNames._
 import com.ksmpartners.ernie.server.filter.SAMLFilter._
 import scala.collection._
-import java.io.InputStream
+import java.io.{ File, InputStream }
+import java.security.{ KeyStore, MessageDigest }
 
 /**
  * Servlet filter used for SAML authentication.
@@ -40,6 +41,20 @@ class SAMLFilter extends Filter {
     ksl
   }
 
+  private val validatedCacheSize: Int = Integer.getInteger(samlCacheSizeProp, 1000)
+
+  private var keyStore: KeyStore = null
+  private var keyStoreVersion = (0L, 0L)
+  private var keyStoreChecked = 0L
+
+  /**
+   * Least recently used cache of validated tokens keyed by the digest of the encoded token. Entries are dropped once their assertion
+   * passes NotOnOrAfter, and all entries are dropped when the keystore changes. All access must synchronize on the cache itself.
+   */
+  private val validated = new java.util.LinkedHashMap[String, ValidatedToken](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: java.util.Map.Entry[String, ValidatedToken]): Boolean = size > validatedCacheSize
+  }
+
   def init(config: FilterConfig) {}
 
   def doFilter(req: ServletRequest, res: ServletResponse, chain: FilterChain) {
@@ -74,34 +89,82 @@ class SAMLFilter extends Filter {
     // ENCODED_TOKEN = DEFLATED + Base64 encoded
     // Need to Decode, then INFLATE
     val encodedSamlToken = samlTokenHeader.substring(samlTokenHeader.indexOf(" "), samlTokenHeader.length)
-    val deflatedSamlToken = Base64Util.decode(encodedSamlToken.getBytes("UTF-8"))
-
-    var userName: String = null
-    var roles: Set[String] = new mutable.HashSet[String]
-
-    try_(new DeflateEncoderDecoder().inflateToken(deflatedSamlToken)) { samlTokenStream =>
-      val samlProcessor = getSAMLProcessor(samlTokenStream)
-
-      val attr = samlProcessor.getAttributes
-      userName = (attr.get(userNameProp).asInstanceOf[java.util.ArrayList[String]]).get(0)
-      val rolesPropObj = attr.get(rolesProp).asInstanceOf[java.util.ArrayList[java.lang.Object]].toArray
-      for (role <- rolesPropObj) {
-        roles += role.toString
+    val trusted = trustedKeyStore
+    val digest = tokenDigest(encodedSamlToken)
+    val token = cachedToken(digest) getOrElse {
+      val deflatedSamlToken = Base64Util.decode(encodedSamlToken.getBytes("UTF-8"))
+
+      var userName: String = null
+      var roles: Set[String] = new mutable.HashSet[String]
+      var notOnOrAfter: Option[Long] = None
+
+      try_(new DeflateEncoderDecoder().inflateToken(deflatedSamlToken)) { samlTokenStream =>
+        val samlProcessor = getSAMLProcessor(samlTokenStream, trusted)
+
+        val attr = samlProcessor.getAttributes
+        userName = (attr.get(userNameProp).asInstanceOf[java.util.ArrayList[String]]).get(0)
+        val rolesPropObj = attr.get(rolesProp).asInstanceOf[java.util.ArrayList[java.lang.Object]].toArray
+        for (role <- rolesPropObj) {
+          roles += role.toString
+        }
+        notOnOrAfter = Option(samlProcessor.getNotOnOrAfter).map(_.getMillis)
       }
+      val validToken = ValidatedToken(userName, roles, notOnOrAfter)
+      if (notOnOrAfter.isDefined) validated.synchronized(validated.put(digest, validToken))
+      validToken
     }
-    new SAMLHttpServletRequestWrapper(req, userName, roles)
+    new SAMLHttpServletRequestWrapper(req, token.userName, token.roles)
   }
 
-  private def getSAMLProcessor(samlTokenStream: InputStream): SAMLProcessor = {
+  /**
+   * Return a SAMLProcessor that has parsed and validated the token read from samlTokenStream against the trusted keystore
+   */
+  protected def getSAMLProcessor(samlTokenStream: InputStream, trusted: KeyStore): SAMLProcessor = {
     val samlProcessor = new SAMLProcessor
 
-    samlProcessor.setKeystoreLocation(keystoreLoc)
+    samlProcessor.setKeyStore(trusted)
 
     samlProcessor.parse(samlTokenStream)
     samlProcessor.validate()
     samlProcessor
   }
 
+  /**
+   * Return the validated token with the given digest if it is cached and its assertion has not expired.
+   */
+  private def cachedToken(digest: String): Option[ValidatedToken] = validated.synchronized {
+    val token = Option(validated.get(digest))
+    if (token.exists(_.notOnOrAfter.forall(_ <= currentTimeMillis))) {
+      validated.remove(digest)
+      None
+    } else token
+  }
+
+  /**
+   * Return the trusted keystore, loading it again if its file has changed since it was last loaded. The file is checked at most once per
+   * keystoreCheckInterval. Cached tokens are dropped whenever the keystore is loaded, as they may have been trusted through a removed certificate.
+   */
+  private def trustedKeyStore: KeyStore = synchronized {
+    val now = currentTimeMillis
+    if (keyStore == null || now - keyStoreChecked >= keystoreCheckInterval) {
+      keyStoreChecked = now
+      val file = new File(keystoreLoc)
+      val version = (file.lastModified, file.length)
+      if (keyStore == null || version != keyStoreVersion) {
+        keyStore = SAMLProcessor.loadKeyStore(keystoreLoc)
+        keyStoreVersion = version
+        validated.synchronized(validated.clear())
+        log.info("Loaded keystore {}", keystoreLoc)
+      }
+    }
+    keyStore
+  }
+
+  /**
+   * Return the current time in milliseconds, against which cached tokens expire and the keystore is checked for changes
+   */
+  protected def currentTimeMillis: Long = System.currentTimeMillis
+
   def destroy() {}
 
 }
@@ -112,6 +175,18 @@ class SAMLFilter extends Filter {
 object SAMLFilter {
   private val log: Logger = LoggerFactory.getLogger("com.ksmpartners.ernie.server.filter.SAMLFilter")
 
+  /** Minimum time in milliseconds between checks of the keystore file for changes */
+  val keystoreCheckInterval = 1000L
+
+  /** A token that has passed validation, and the time in milliseconds from which its assertion is no longer valid */
+  case class ValidatedToken(userName: String, roles: Set[String], notOnOrAfter: Option[Long])
+
+  /**
+   * Return the Base64 encoded SHA-256 digest of an encoded SAML token.
+   */
+  def tokenDigest(encodedSamlToken: String): String =
+    new String(Base64Util.encode(MessageDigest.getInstance("SHA-256").digest(encodedSamlToken.trim.getBytes("UTF-8"))), "UTF-8")
+
   class SAMLHttpServletRequestWrapper(req: HttpServletRequest, userName: String, roles: Set[String])
       extends HttpServletRequestWrapper(req) {
     override def isUserInRole(role: String): Boolean = roles.contains(role)
@@ -21,7 +21,7 @@ import java.io.IOException
 import java.util
 import collection.JavaConversions._
 import org.slf4j.{ LoggerFactory, Logger }
-import com.ksmpartners.ernie.server.{ DispatchRestAPI, JsonTranslator }
+import com.ksmpartners.ernie.server.{ ByteRange, DispatchRestAPI, JsonTranslator, UnsatisfiableRange, WholeContent }
 import com.ksmpartners.ernie.model._
 import com.ksmpartners.ernie.server.service.JobDependencies.log
 import net.liftweb.http.StreamingResponse
@@ -34,84 +34,174 @@ import net.liftweb.http.BadResponse
 import net.liftweb.http.GoneResponse
 import com.ksmpartners.ernie.server.filter.AuthUtil
 import com.ksmpartners.ernie.server.RestGenerator._
+import com.ksmpartners.ernie.server.RestGenerator
+import com.ksmpartners.ernie.util.ActionMetrics
 import com.ksmpartners.ernie.api
+import com.ksmpartners.ernie.engine
+import com.ksmpartners.ernie.engine.report.ReportContent
+import net.liftweb.http.rest.RestContinuation
+import net.liftweb.util.Helpers.tryo
+import java.util.concurrent.{ TimeUnit, LinkedBlockingQueue }
+import scala.concurrent.duration.FiniteDuration
+import scala.concurrent.{ ExecutionContext, Future }
+import scala.util.{ Failure, Success }
+import akka.pattern.AskTimeoutException
 
 /**
  * Dependencies for starting and interacting with jobs for the creation of reports.
  */
 trait JobDependencies extends RequiresAPI {
 
+  /** Callbacks of status Futures run on the API's callback dispatcher rather than the global pool */
+  private implicit def callbackContext: ExecutionContext = ernie.executionContext
+
   /**
    * Resource for handling HTTP requests at /jobs.
    */
   class JobsResource extends JsonTranslator {
 
-    val getJobsListAction = Action("getJobsMap", getMap(_: Package), "Return a map of jobId to URI", "", "jobStatusMap",
-      DispatchRestAPI.timeoutErnieError("Jobs list"))
+    val invalidQuery = ErnieError(ResponseWithReason(BadResponse(), "Invalid query parameter"), None)
+    val getJobsListAction = Action("getJobsMap", getMap(_: Package), "Return a page of the map of jobId to URI",
+      "Pages hold at most limit jobs; pass the nextCursor of a page as the cursor parameter to get the next", "jobStatusMap",
+      DispatchRestAPI.timeoutErnieError("Jobs list"), invalidQuery)
     /**
-     * Return a Box[ListResponse] containing a map of jobId to URI for that jobId.
+     * Return a Box[ListResponse] containing a page of the map of jobId to URI for that jobId.
      * @param p a set of parameters for this request
      */
-    def getMap(p: Package): Box[LiftResponse] = getMap
+    def getMap(p: Package): Box[LiftResponse] = query(p.req).map(getMap(_)) openOr invalidQuery.send
+
+    /**
+     * Return a Box[ListResponse] containing the first page of the map of jobId to URI for that jobId.
+     */
+    def getMap: Box[LiftResponse] = getMap(engine.JobQuery(limit = Some(JobsResource.defaultPageSize)))
 
     /**
-     * Return a Box[ListResponse] containing a map of jobId to URI for that jobId.
+     * Return a Box[ListResponse] containing the page of the map of jobId to URI for that jobId selected by q.
      */
-    def getMap: Box[LiftResponse] =
-      apiCall(getJobsListAction, _ => ernie.getJobList, (list: List[String]) =>
+    def getMap(q: engine.JobQuery): Box[LiftResponse] =
+      apiCall(getJobsListAction, _ => ernie.getJobList(q), (page: engine.JobsListResponse) =>
         {
-          val jobsMap: util.Map[String, String] = new util.HashMap
-          list.foreach({ jobId =>
+          val jobsMap: util.Map[String, String] = new util.LinkedHashMap
+          page.jobsList.foreach({ jobId =>
             jobsMap.put(jobId, "/jobs/" + jobId)
           })
-          getJsonResponse(new model.JobsMapResponse(jobsMap))
+          getJsonResponse(new model.JobsMapResponse(jobsMap, page.nextCursor.map(Long.box(_)).orNull))
         })
 
-    val getJobsCatalogAction = Action("getJobsCatalog", getCatalog(_: Package)(None), "Return a catalog of all JobEntities", "", "JobsCatalogResponse", DispatchRestAPI.timeoutErnieError("Jobs catalog"))
-    val getFailedCatalogAction = Action("getFailedJobsCatalog", getCatalog(_: Package)(Some("failed")), "Return a catalog of failed jobs' JobEntities", "", "JobsCatalogResponse", DispatchRestAPI.timeoutErnieError("Jobs catalog"))
-    val getCompleteCatalogAction = Action("getCompleteJobsCatalog", getCatalog(_: Package)(Some("complete")), "Return a catalog of complete jobs' JobEntities", "", "JobsCatalogResponse", DispatchRestAPI.timeoutErnieError("Jobs catalog"))
-    val getExpiredCatalogAction = Action("getExpiredJobsCatalog", getCatalog(_: Package)(Some("expired")), "Return a catalog of expired jobs' JobEntities", "", "JobsCatalogResponse", DispatchRestAPI.timeoutErnieError("Jobs catalog"))
-    val getDeletedCatalogAction = Action("getDeletedJobsCatalog", getCatalog(_: Package)(Some("deleted")), "Return a catalog of deleted jobs' JobEntities", "", "JobsCatalogResponse", DispatchRestAPI.timeoutErnieError("Jobs catalog"))
+    /**
+     * Return the JobQuery described by the parameters of req, or Empty if a parameter is invalid. Parameters are limit (at most
+     * JobsResource.maxPageSize, and JobsResource.defaultPageSize if absent), cursor, order (asc or desc), status (a comma separated list of
+     * JobStatus names), defId, user, and from and to (ISO 8601 submission times).
+     */
+    def query(req: Req): Box[engine.JobQuery] = tryo {
+      def param(name: String) = req.param(name).map(_.trim).filter(_.nonEmpty)
+      engine.JobQuery(
+        statuses = param("status").map(_.split(",").map(s => JobStatus.valueOf(s.trim.toUpperCase)).toSet) openOr Set.empty[JobStatus],
+        defId = param("defId"),
+        user = param("user"),
+        submittedFrom = param("from").map(org.joda.time.DateTime.parse(_)),
+        submittedTo = param("to").map(org.joda.time.DateTime.parse(_)),
+        limit = Some(math.min(param("limit").map(_.toInt) openOr JobsResource.defaultPageSize, JobsResource.maxPageSize)),
+        cursor = param("cursor").map(_.toLong),
+        descending = param("order").map(o => if (o.equalsIgnoreCase("desc")) true else if (o.equalsIgnoreCase("asc")) false
+        else throw new IllegalArgumentException("Invalid order " + o)) openOr false)
+    }
+
+    private val catalogNotes = "Pages hold at most limit jobs; pass the nextCursor of a page as the cursor parameter to get the next"
+    val getJobsCatalogAction = Action("getJobsCatalog", getCatalog(_: Package)(None), "Return a page of the catalog of all JobEntities", catalogNotes, "JobsCatalogResponse", DispatchRestAPI.timeoutErnieError("Jobs catalog"), invalidQuery)
+    val getFailedCatalogAction = Action("getFailedJobsCatalog", getCatalog(_: Package)(Some("failed")), "Return a page of the catalog of failed jobs' JobEntities", catalogNotes, "JobsCatalogResponse", DispatchRestAPI.timeoutErnieError("Jobs catalog"), invalidQuery)
+    val getCompleteCatalogAction = Action("getCompleteJobsCatalog", getCatalog(_: Package)(Some("complete")), "Return a page of the catalog of complete jobs' JobEntities", catalogNotes, "JobsCatalogResponse", DispatchRestAPI.timeoutErnieError("Jobs catalog"), invalidQuery)
+    val getExpiredCatalogAction = Action("getExpiredJobsCatalog", getCatalog(_: Package)(Some("expired")), "Return a page of the catalog of expired jobs' JobEntities", catalogNotes, "JobsCatalogResponse", DispatchRestAPI.timeoutErnieError("Jobs catalog"), invalidQuery)
+    val getDeletedCatalogAction = Action("getDeletedJobsCatalog", getCatalog(_: Package)(Some("deleted")), "Return a page of the catalog of deleted jobs' JobEntities", catalogNotes, "JobsCatalogResponse", DispatchRestAPI.timeoutErnieError("Jobs catalog"), invalidQuery)
 
     /**
-     * Return a Box[ListResponse] containing a catalog of all JobEntities.
+     * Return a Box[ListResponse] containing the page of a catalog of JobEntities described by the parameters of the request.
      * @param p a set of parameters for this request
      */
-    def getCatalog(p: Package)(catalog: Option[String]): Box[LiftResponse] = getCatalog(catalog)
+    def getCatalog(p: Package)(catalog: Option[String]): Box[LiftResponse] = query(p.req).map(getCatalog(catalog, _)) openOr invalidQuery.send
 
     /**
-     * Return a Box[ListResponse] containing a catalog of all JobEntities.
+     * Return a Box[ListResponse] containing the first page of a catalog of all JobEntities.
      */
     def getCatalog(): Box[LiftResponse] = getCatalog(None)
 
     /**
-     * Return a Box[ListResponse] containing a catalog of all JobEntities.
+     * Return a Box[ListResponse] containing the first page of a catalog of JobEntities.
      * @param cat optionally, retrieve this subset of jobs
      */
-    def getCatalog(cat: Option[String]): Box[LiftResponse] = {
+    def getCatalog(cat: Option[String]): Box[LiftResponse] = getCatalog(cat, engine.JobQuery(limit = Some(JobsResource.defaultPageSize)))
+
+    /**
+     * Return a Box[ListResponse] containing a page of a catalog of JobEntities.
+     * @param cat optionally, retrieve this subset of jobs
+     * @param q the filters, page size, cursor and order of the page
+     */
+    def getCatalog(cat: Option[String], q: engine.JobQuery): Box[LiftResponse] = {
       apiCall(getJobsCatalogAction, _ =>
         cat.getOrElse("").toLowerCase match {
-          case "failed" => ernie.getJobCatalog(Some(JobCatalog.FAILED))
-          case "complete" => ernie.getJobCatalog(Some(JobCatalog.COMPLETE))
-          case "expired" => ernie.getJobCatalog(Some(JobCatalog.EXPIRED))
-          case "deleted" => ernie.getJobCatalog(Some(JobCatalog.DELETED))
-          case _ => ernie.getJobCatalog(None)
-        }, (catalog: List[JobEntity]) => {
+          case "failed" => ernie.getJobCatalog(Some(JobCatalog.FAILED), q)
+          case "complete" => ernie.getJobCatalog(Some(JobCatalog.COMPLETE), q)
+          case "expired" => ernie.getJobCatalog(Some(JobCatalog.EXPIRED), q)
+          case "deleted" => ernie.getJobCatalog(Some(JobCatalog.DELETED), q)
+          case _ => ernie.getJobCatalog(None, q)
+        }, (page: engine.JobsCatalogResponse) => {
         val jobsCatalog: util.ArrayList[JobEntity] = new util.ArrayList
-        catalog.foreach(f => jobsCatalog.add(f))
-        getJsonResponse(new JobsCatalogResponse(jobsCatalog))
+        page.catalog.foreach(f => jobsCatalog.add(f))
+        getJsonResponse(new JobsCatalogResponse(jobsCatalog, page.nextCursor.map(Long.box(_)).orNull))
       })
     }
 
+    val getReadinessAction = Action("getReadiness", getReadiness(_: Package), "Return whether the report generator has started and all persisted jobs have been recovered",
+      "Responds 200 when ready and 503 while starting", "ReadinessResponse", DispatchRestAPI.timeoutErnieError("Readiness"))
+
+    /**
+     * Return a JSON description of the server's readiness, with status 200 if ready to serve all requests or 503 while starting.
+     * @param p a set of parameters for this request
+     */
+    def getReadiness(p: Package): Box[LiftResponse] = apiCall(getReadinessAction, _ => ernie.getReadiness, (r: engine.ReadinessResponse) => {
+      import net.liftweb.json.JsonDSL._
+      Full(JsonResponse(("ready" -> r.ready) ~ ("generatorStarted" -> r.generatorStarted) ~ ("generatorFailed" -> r.generatorFailed) ~ ("recovering" -> r.recovering) ~
+        ("jobsRecovered" -> r.jobsRecovered) ~ ("jobsRestarting" -> r.jobsRestarting) ~ ("jobsRestarted" -> r.jobsRestarted), Nil, Nil,
+        if (r.ready) 200 else 503))
+    })
+
+    val getMetricsAction = Action("getMetrics", getMetrics(_: Package), "Return call counts, error counts and latency percentiles of each REST action and API call",
+      "Latencies are in milliseconds. The same metrics are registered over JMX in the com.ksmpartners.ernie domain", "MetricsResponse")
+
+    /**
+     * Return a JSON description of the metrics recorded by [[com.ksmpartners.ernie.server.RestGenerator.apiCall]] and by the API, keyed by action name.
+     * @param p a set of parameters for this request
+     */
+    def getMetrics(p: Package): Box[LiftResponse] = {
+      import net.liftweb.json.JsonAST._
+      import net.liftweb.json.JsonDSL._
+      def toJson(metrics: util.Map[String, ActionMetrics.Statistics]): JObject = JObject(metrics.toList.sortBy(_._1).map(m => {
+        val s = m._2
+        JField(m._1, ("count" -> s.count) ~ ("errorCount" -> s.errorCount) ~ ("errors" -> s.errors.toMap.map(e => e._1 -> e._2.longValue)) ~
+          ("meanMillis" -> s.meanMillis) ~ ("p50Millis" -> s.p50Millis) ~ ("p95Millis" -> s.p95Millis) ~ ("p99Millis" -> s.p99Millis) ~
+          ("maxMillis" -> s.maxMillis))
+      }))
+      Full(JsonResponse(("rest" -> toJson(RestGenerator.metrics.getStatistics)) ~ ("api" -> toJson(ernie.metrics.getStatistics))))
+    }
+
     val retentionDateExceedsMaximum = ErnieError(ResponseWithReason(BadResponse(), "Retention date exceeds maximum"), None)
     val retentionDateBeforeRequest = ErnieError(ResponseWithReason(BadResponse(), "Retention date before request time"), None)
     val noSuchDefinition = ErnieError(ResponseWithReason(BadResponse(), "No such definition ID"), None)
     val serverError = ErnieError(ResponseWithReason(InternalServerErrorResponse(), "Server error"), None)
     val invalidRequest = ErnieError(BadResponse(), None)
+    val queueFull = ErnieError(ResponseWithReason(DispatchRestAPI.TooManyRequestsResponse(1), "Job queue is full"), None)
     val postJobAction = Action("postJob", post(_: Package), "Schedules the submitted job", "", "ReportResponse",
       DispatchRestAPI.timeoutErnieError("Job creation"),
       ErnieError(BadResponse(), Some(api.MissingArgumentException("No request body"))),
-      retentionDateExceedsMaximum, retentionDateBeforeRequest, noSuchDefinition, serverError, invalidRequest)
+      retentionDateExceedsMaximum, retentionDateBeforeRequest, noSuchDefinition, serverError, invalidRequest, queueFull)
+
+    /**
+     * Return a 429 response whose Retry-After header is the average time a job currently waits for a worker, rounded up to the next second.
+     */
+    def queueFullResponse(): Box[LiftResponse] = {
+      val averageWait = try { ernie.getQueueStatus.averageWait } catch { case e: Exception => 0L }
+      ErnieError(ResponseWithReason(DispatchRestAPI.TooManyRequestsResponse(math.max(1L, (averageWait + 999L) / 1000L)), "Job queue is full"), None).send
+    }
 
     /**
      * POST a serialized ReportRequest.
@@ -129,6 +219,7 @@ trait JobDependencies extends RequiresAPI {
               if (resp._2 == JobStatus.FAILED_RETENTION_DATE_EXCEEDS_MAXIMUM) retentionDateExceedsMaximum.send
               else if (resp._2 == JobStatus.FAILED_RETENTION_DATE_PAST) retentionDateBeforeRequest.send
               else if (resp._2 == JobStatus.FAILED_NO_SUCH_DEFINITION) noSuchDefinition.send(Some("No such definition ID: " + req.getDefId))
+              else if (resp._2 == JobStatus.FAILED_QUEUE_FULL) queueFullResponse
               else getJsonResponse(new model.ReportResponse(resp._1, resp._2), 201, List(("Location", hostAndPath + "/jobs/" + resp._1)))
             })
         }
@@ -163,6 +254,39 @@ trait JobDependencies extends RequiresAPI {
      */
     def post(req: Req): Box[LiftResponse] = post(req.body, req.hostAndPath, AuthUtil.getUserName(req))
 
+    val postJobsBatchAction = Action("postJobsBatch", postBatch(_: Package), "Schedules each of the submitted jobs",
+      "Responds 200 with the jobId and status of each request, in order; requests that fail do not affect the others", "BatchReportResponse",
+      DispatchRestAPI.timeoutErnieError("Batch job creation"), serverError, invalidRequest)
+
+    /**
+     * POST a serialized BatchReportRequest, creating a job for each of its requests.
+     * @param body the body of the request, containing a serialized BatchReportRequest
+     * @param userName the user posting the request
+     */
+    def postBatch(body: Box[Array[Byte]], userName: String): Box[LiftResponse] = {
+      try {
+        val requests = body.map(deserialize(_, classOf[model.BatchReportRequest])).flatMap(b => Box !! b.getRequests)
+        if (requests.isEmpty) invalidRequest.send(Some("No requests"))
+        else apiCall[List[(Long, JobStatus)]](postJobsBatchAction, _ => ernie.createJobs(requests.open_!.toList, userName),
+          resp => getJsonResponse(new model.BatchReportResponse(resp.map(r => new model.ReportResponse(r._1, r._2))), 200))
+      } catch {
+        case e: IOException => {
+          log.error("Caught exception while handling request: {}", e.getMessage)
+          invalidRequest.send(Some("Invalid request"))
+        }
+        case e: Exception => {
+          log.error("Caught exception while handling request: {}", e.getMessage)
+          serverError.send
+        }
+      }
+    }
+
+    /**
+     * POST a serialized BatchReportRequest.
+     * @param p a set of parameters for this request
+     */
+    def postBatch(p: Package): Box[LiftResponse] = postBatch(p.req.body, AuthUtil.getUserName(p.req))
+
     val unexpectedErrorWithException = ErnieError(InternalServerErrorResponse(), Some(new Exception()))
     val purgeAction = Action("purgeExpired", purge(_: Package), "Purges expired jobs", "", "void", DispatchRestAPI.timeoutErnieError("Purge"), unexpectedErrorWithException)
 
@@ -209,6 +333,28 @@ trait JobDependencies extends RequiresAPI {
           getJsonResponse(jobEnt.get)
         else jobNotFound.send)
     }
+
+    val jobFinished = ErnieError(ResponseWithReason(ConflictResponse(), "Job has already finished"), None)
+    val cancelJobAction = Action("cancelJob", cancel(_: Package), "Cancel a job, stopping it if it is running", "", "StatusResponse",
+      DispatchRestAPI.timeoutErnieError("Job cancel"), jobNotFound, jobFinished)
+
+    /**
+     * Cancel the given job. Responds 200 with status CANCELLED if the job was cancelled at once, or 202 with status IN_PROGRESS if the job is
+     * running and has been asked to stop.
+     * @param p a set of parameters for this request
+     */
+    def cancel(p: Package): Box[LiftResponse] = if (p.params.length != 1) Full(ResponseWithReason(BadResponse(), "Invalid job ID")) else cancel(p.params(0).data.toString)
+
+    /**
+     * Cancel the given job.
+     */
+    def cancel(jobId: String): Box[LiftResponse] = {
+      apiCall[JobStatus](cancelJobAction, _ => ernie.cancelJob(jobId.toLong), jobStatus =>
+        if (jobStatus == JobStatus.CANCELLED) getJsonResponse(new model.StatusResponse(jobStatus))
+        else if (jobStatus == JobStatus.IN_PROGRESS) getJsonResponse(new model.StatusResponse(jobStatus), 202)
+        else if (jobStatus == JobStatus.NO_SUCH_JOB) jobNotFound.send
+        else jobFinished.send)
+    }
   }
 
   /**
@@ -223,9 +369,14 @@ trait JobDependencies extends RequiresAPI {
 
     /**
      * Return a Box[ListResponse] containing status for the given jobId.
+     * If the request has a wait parameter and the job has not finished, respond once the job's status changes or after wait seconds.
      * @param p a set of parameters for this request
      */
-    def get(p: Package): Box[LiftResponse] = if (p.params.length != 1) Full(ResponseWithReason(BadResponse(), "Invalid job ID")) else get(p.params(0).data.toString)
+    def get(p: Package): Box[LiftResponse] = if (p.params.length != 1) Full(ResponseWithReason(BadResponse(), "Invalid job ID"))
+    else p.req.param("wait").flatMap(w => tryo(w.toLong)) match {
+      case Full(seconds) if (seconds > 0) => get(p.params(0).data.toString, math.min(seconds, JobStatusResource.maxWaitSeconds))
+      case _ => get(p.params(0).data.toString)
+    }
 
     /**
      * Return a Box[ListResponse] containing status for the given jobId.
@@ -235,6 +386,117 @@ trait JobDependencies extends RequiresAPI {
         if (jobStatus == JobStatus.DELETED) jobGone.send
         else getJsonResponse(new model.StatusResponse(jobStatus)))
     }
+
+    /**
+     * Long-poll for the status of the given jobId. If the job is pending or in progress, the response is deferred until its status changes
+     * or waitSeconds have passed, and otherwise it is immediate.
+     */
+    def get(jobId: String, waitSeconds: Long): Box[LiftResponse] =
+      getOnChange(jobId, waitSeconds).map(response => RestContinuation.async(reply => response onSuccess { case r => reply(r) })) openOr get(jobId)
+
+    /**
+     * If the given jobId is pending or in progress, return the status response to be sent once its status changes or waitSeconds have
+     * passed. Return Empty if the job has finished or its status cannot be read, as the response is then immediate.
+     */
+    def getOnChange(jobId: String, waitSeconds: Long): Box[Future[LiftResponse]] = {
+      val current = tryo(ernie.getJobStatus(jobId.toLong))
+      current.filter(engine.JobIndex.activeStatuses.contains(_)).map(status =>
+        ernie.getJobStatusFuture(jobId.toLong, None, Some(status), FiniteDuration(waitSeconds, TimeUnit.SECONDS))
+          .map(n => get(jobId) openOr InternalServerErrorResponse()) recover { case e => get(jobId) openOr InternalServerErrorResponse() })
+    }
+
+    val getJobStatusEventsAction: Action = Action("getJobStatusEvents", getEvents(_), "Return a text/event-stream of status changes for given jobId",
+      "The stream ends once the job has finished", "byte", DispatchRestAPI.timeoutErnieError("Job status events"), jobGone, unexpectedError)
+
+    /**
+     * Return a Server-Sent Events stream of the status changes of the given jobId.
+     * @param p a set of parameters for this request
+     */
+    def getEvents(p: Package): Box[LiftResponse] = if (p.params.length != 1) Full(ResponseWithReason(BadResponse(), "Invalid job ID")) else getEvents(p.params(0).data.toString)
+
+    /**
+     * Return a Server-Sent Events stream of the status changes of the given jobId. Each event carries a serialized StatusResponse.
+     * The stream starts with the current status and ends once the job has finished; comments are sent while the job is idle to keep the connection open.
+     */
+    def getEvents(jobId: String): Box[LiftResponse] = {
+      apiCall[JobStatus](getJobStatusEventsAction, _ => ernie.getJobStatus(jobId.toLong), jobStatus =>
+        if (jobStatus == JobStatus.DELETED) jobGone.send
+        else {
+          val events = new StatusEventStream(jobId.toLong, jobStatus)
+          Full(StreamingResponse(events, () => events.close(), -1, List("Content-Type" -> "text/event-stream", "Cache-Control" -> "no-cache"), Nil, 200))
+        })
+    }
+
+    /**
+     * Source of the bytes of a Server-Sent Events stream for jobId, fed by job status notifications.
+     */
+    class StatusEventStream(jobId: Long, first: JobStatus) {
+      private val events = new LinkedBlockingQueue[Option[Array[Byte]]]()
+      @volatile private var closed = false
+      private var chunk: Array[Byte] = Array.empty[Byte]
+      private var pos = 0
+
+      next(first)
+
+      private def next(status: JobStatus) {
+        events.put(Some(("event: status\ndata: " + serialize(new model.StatusResponse(status)) + "\n\n").getBytes("UTF-8")))
+        if (engine.JobIndex.activeStatuses.contains(status)) await(status) else events.put(None)
+      }
+
+      private def await(status: JobStatus): Unit = if (!closed) {
+        ernie.getJobStatusFuture(jobId, None, Some(status), FiniteDuration(JobStatusResource.maxWaitSeconds, TimeUnit.SECONDS)) onComplete {
+          case Success(n) => next(n.status)
+          case Failure(e: AskTimeoutException) => {
+            events.put(Some(":\n\n".getBytes("UTF-8")))
+            await(status)
+          }
+          case Failure(e) => events.put(None)
+        }
+      }
+
+      /**
+       * Copy the next bytes of the stream into buf, blocking until an event is available.
+       * @return the number of bytes copied, or -1 once the stream has ended.
+       */
+      def read(buf: Array[Byte]): Int = {
+        if (pos >= chunk.length) events.take() match {
+          case Some(bytes) => {
+            chunk = bytes
+            pos = 0
+          }
+          case None => {
+            events.put(None)
+            return -1
+          }
+        }
+        val count = math.min(buf.length, chunk.length - pos)
+        System.arraycopy(chunk, pos, buf, 0, count)
+        pos += count
+        count
+      }
+
+      def close() {
+        closed = true
+      }
+    }
+  }
+
+  /**
+   * Companion object for JobsResource
+   */
+  object JobsResource {
+    /** Page size of job lists and catalogs requested without a limit */
+    val defaultPageSize = 1000
+    /** Largest page of a job list or catalog that may be requested */
+    val maxPageSize = 10000
+  }
+
+  /**
+   * Companion object for JobStatusResource
+   */
+  object JobStatusResource {
+    /** Longest time a status long-poll or event stream waits for a status change before responding */
+    val maxWaitSeconds = 60L
   }
 
   /**
@@ -269,30 +531,71 @@ trait JobDependencies extends RequiresAPI {
      * Overloaded function to include the web service request details to ensure correct Accept.
      */
     def get(jobId: String, req: Box[Req]): Box[LiftResponse] = {
-      apiCall[(Option[java.io.InputStream], Option[ReportEntity])](getJobResultAction, _ => (ernie.getReportOutput(jobId.toLong), ernie.getReportEntity(jobId.toLong)), rptOutput =>
+      apiCall[(Option[ReportContent], Option[ReportEntity])](getJobResultAction, _ => (ernie.getReportContent(jobId.toLong), ernie.getReportEntity(jobId.toLong)), rptOutput =>
         {
           if (rptOutput._1.isDefined && rptOutput._2.isDefined) {
-            val fileStream = rptOutput._1.get
+            val content = rptOutput._1.get
             val rptEnt = rptOutput._2.get
-            val header: List[(String, String)] =
-              ("Content-Type" -> ("application/" + rptEnt.getReportType.toString.toLowerCase)) ::
-                ("Content-Length" -> fileStream.available.toString) ::
-                ("Content-Disposition" -> ("attachment; filename=\"" + rptEnt.getRptId + "." + rptEnt.getReportType.toString.toLowerCase + "\"")) :: Nil
-            if (!req.isEmpty && !req.open_!.headers.contains(("Accept", header(0)._2))) {
-              fileStream.close
-              notAcceptable.send(Some("Resource only serves " + rptEnt.getReportType.toString.toLowerCase))
-            } else {
-              log.debug("Response: Streaming Response.")
-              Full(StreamingResponse(
-                fileStream,
-                () => { fileStream.close() }, // On end method.
-                fileStream.available,
-                header, Nil, 200))
-            }
-          } else jobNotFound.send
+            if (!req.isEmpty && !req.open_!.headers.contains(("Accept", contentType(rptEnt.getReportType)))) {
+              content.close
+              // Other formats can be rendered from the job's stored report document, if it has one
+              acceptedTypes(req.open_!).view.flatMap(t => ernie.getReportContent(jobId.toLong, t).map(t -> _)).headOption match {
+                case Some((rptType, rendition)) => stream(rendition, rptEnt, rptType, req)
+                case None => notAcceptable.send(Some("Resource only serves " + rptEnt.getReportType.toString.toLowerCase))
+              }
+            } else stream(content, rptEnt, rptEnt.getReportType, req)
+          } else {
+            rptOutput._1.map(_.close())
+            jobNotFound.send
+          }
         })
     }
 
+    private def contentType(rptType: ReportType) = "application/" + rptType.toString.toLowerCase
+
+    /**
+     * Return the report types named by the Accept headers of req
+     */
+    private def acceptedTypes(req: Req): List[ReportType] = ReportType.values.toList.filter(t => req.headers.contains(("Accept", contentType(t))))
+
+    /**
+     * Return a response streaming content, the output of rptEnt as rptType, whose length is taken from the report manager rather than
+     * from the stream. A request whose Range header selects a single byte range, and whose If-Range header, if any, matches the
+     * output's entity tag or finish date, is served that range with 206.
+     */
+    private def stream(content: ReportContent, rptEnt: ReportEntity, rptType: ReportType, req: Box[Req]): Box[LiftResponse] = {
+      val size = content.size
+      val lastModified = Option(rptEnt.getFinishDate)
+      val etag = "\"" + rptEnt.getRptId + "-" + rptType + "-" + size + "-" + lastModified.map(_.getMillis).getOrElse(0L) + "\""
+      val header: List[(String, String)] =
+        ("Content-Type" -> contentType(rptType)) ::
+          ("Content-Disposition" -> ("attachment; filename=\"" + rptEnt.getRptId + "." + rptType.toString.toLowerCase + "\"")) ::
+          ("Accept-Ranges" -> "bytes") ::
+          ("ETag" -> etag) :: lastModified.map(d => "Last-Modified" -> ByteRange.httpDate(d)).toList
+      val range = req.toOption.filter(r => ByteRange.ifRangeMatches(r.header("If-Range").toOption, etag, lastModified))
+        .map(r => ByteRange.select(r.header("Range").toOption, size)) getOrElse WholeContent
+      range match {
+        case UnsatisfiableRange => {
+          content.close()
+          log.debug("Response: Requested Range Not Satisfiable.")
+          Full(InMemoryResponse(Array(), ("Content-Range" -> ("bytes */" + size)) :: header, Nil, 416))
+        }
+        case r: ByteRange => {
+          log.debug("Response: Partial Content {}", r.contentRange(size))
+          Full(StreamingResponse(content.openStream(r.first, r.length), () => { content.close() },
+            r.length, ("Content-Length" -> r.length.toString) :: ("Content-Range" -> r.contentRange(size)) :: header, Nil, 206))
+        }
+        case WholeContent => {
+          log.debug("Response: Streaming Response.")
+          Full(StreamingResponse(
+            content.openStream(),
+            () => { content.close() }, // On end method.
+            size,
+            ("Content-Length" -> size.toString) :: header, Nil, 200))
+        }
+      }
+    }
+
     val invalidId = ErnieError(BadResponse(), None)
     val getDetailAction = Action("getResultDetail", getDetail(_), "Retrieves details for output from a given jobId", "", "ReportEntity",
       DispatchRestAPI.timeoutErnieError("Job detail"),
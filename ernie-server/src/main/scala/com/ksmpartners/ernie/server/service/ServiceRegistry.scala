@@ -23,6 +23,8 @@ import com.ksmpartners.ernie.server.RequiresProperties
 import com.ksmpartners.ernie.api._
 import ErnieBuilder._
 import java.util.concurrent.TimeUnit
+import com.ksmpartners.ernie.engine.{ AutoscaleSettings, DispatcherSettings, JournalSettings, RestartSettings }
+import com.ksmpartners.ernie.engine.report.DataSourceSettings
 
 /**
  * Object that registers the services used by the stateless dispatch
@@ -81,12 +83,63 @@ object ServiceRegistry extends JobDependencies
     val defaultRetentionDays: Int = try { properties.get(defaultRetentionPeriod).toString.toInt } catch { case e: Exception => 25 }
     val maximumRetentionDays: Int = try { properties.get(maximumRetentionPeriod).toString.toInt } catch { case e: Exception => 50 }
 
-    ErnieEngine(ernieBuilder withFileReportManager (jobDir, rptDefsDir, outputDir)
-      timeoutAfter (scala.concurrent.duration.FiniteDuration(to, TimeUnit.MILLISECONDS))
-      withDefaultRetentionDays (defaultRetentionDays)
-      withMaxRetentionDays (maximumRetentionDays)
-      withWorkers (workerCount)
-      build ()).start
+    val builder = ernieBuilder withFileReportManager (jobDir, rptDefsDir, outputDir) timeoutAfter (scala.concurrent.duration.FiniteDuration(to, TimeUnit.MILLISECONDS)) withDefaultRetentionDays (defaultRetentionDays) withMaxRetentionDays (maximumRetentionDays) withWorkers (workerCount)
+
+    val queueBuilder = if (properties.stringPropertyNames.contains(maxQueueDepthProp))
+      builder withMaxQueueDepth (properties.get(maxQueueDepthProp).toString.toInt)
+    else builder
+
+    val journalBuilder = if (properties.getProperty(journalEnabledProp, "false").toBoolean) {
+      val fsyncInterval = properties.getProperty(journalFsyncIntervalProp, "0").toLong
+      queueBuilder withJobJournal (JournalSettings(
+        fsyncInterval = if (fsyncInterval > 0) Some(scala.concurrent.duration.FiniteDuration(fsyncInterval, TimeUnit.MILLISECONDS)) else None,
+        segmentSize = properties.getProperty(journalSegmentSizeProp, (16L * 1024 * 1024).toString).toLong))
+    } else queueBuilder
+
+    val dataSourceBuilder = properties.getProperty(dataSourceNamesProp, "").split(",").map(_.trim).filter(_.nonEmpty).foldLeft(journalBuilder)((b, name) => {
+      def prop(key: String) = Option(properties.getProperty(dataSourcePrefix + name + "." + key)).map(_.trim).filter(_.nonEmpty)
+      val maxActive = prop("max.active").map(_.toInt) getOrElse 8
+      b withDataSource (name, DataSourceSettings(prop("url").getOrElse(throw new RuntimeException("Properties file does not contain property " +
+        dataSourcePrefix + name + ".url")), prop("user"), prop("password"), prop("driver"), maxActive, prop("max.idle").map(_.toInt) getOrElse maxActive,
+        scala.concurrent.duration.FiniteDuration(prop("max.wait.ms").map(_.toLong) getOrElse 30000L, TimeUnit.MILLISECONDS)))
+    })
+
+    val scaleBuilder = if (properties.getProperty(autoscaleEnabledProp, "false").toBoolean) {
+      val defaults = AutoscaleSettings()
+      dataSourceBuilder withAutoscaling (AutoscaleSettings(
+        minWorkers = properties.getProperty(autoscaleMinWorkersProp, defaults.minWorkers.toString).toInt,
+        maxWorkers = properties.getProperty(autoscaleMaxWorkersProp, defaults.maxWorkers.toString).toInt,
+        scaleUpWait = scala.concurrent.duration.FiniteDuration(properties.getProperty(autoscaleScaleUpWaitProp, defaults.scaleUpWait.toMillis.toString).toLong,
+          TimeUnit.MILLISECONDS),
+        idleCooldown = scala.concurrent.duration.FiniteDuration(properties.getProperty(autoscaleIdleCooldownProp, defaults.idleCooldown.toMillis.toString).toLong,
+          TimeUnit.MILLISECONDS),
+        maxCpuLoad = properties.getProperty(autoscaleMaxCpuLoadProp, defaults.maxCpuLoad.toString).toDouble))
+    } else dataSourceBuilder
+
+    val dispatcherBuilder = if (properties.getProperty(dispatchersEnabledProp, "false").toBoolean) {
+      val defaults = DispatcherSettings()
+      val settings = DispatcherSettings(
+        workerThreads = Option(properties.getProperty(workerThreadsProp)).map(_.trim).filter(_.nonEmpty).map(_.toInt),
+        pinnedCoordinator = properties.getProperty(coordinatorPinnedProp, defaults.pinnedCoordinator.toString).toBoolean,
+        callbackThreads = properties.getProperty(callbackThreadsProp, defaults.callbackThreads.toString).toInt)
+      scaleBuilder withDispatchers (properties.getProperty(bulkheadNamesProp, "").split(",").map(_.trim).filter(_.nonEmpty).foldLeft(settings)((d, name) =>
+        d withBulkhead (name, Option(properties.getProperty(bulkheadPrefix + name + ".max.jobs")).map(_.trim.toInt).getOrElse(
+          throw new RuntimeException("Properties file does not contain property " + bulkheadPrefix + name + ".max.jobs")))))
+    } else scaleBuilder
+
+    val restartDefaults = RestartSettings()
+    val restartBuilder = dispatcherBuilder withRestartThrottle (RestartSettings(
+      properties.getProperty(restartBatchSizeProp, restartDefaults.batchSize.toString).toInt,
+      scala.concurrent.duration.FiniteDuration(properties.getProperty(restartIntervalProp, restartDefaults.interval.toMillis.toString).toLong,
+        TimeUnit.MILLISECONDS)))
+
+    val designCacheBuilder = if (properties.stringPropertyNames.contains(designCacheSizeProp))
+      restartBuilder withDesignCacheSize (properties.get(designCacheSizeProp).toString.toInt)
+    else restartBuilder
+
+    val reportDocumentsBuilder = designCacheBuilder withKeepReportDocuments (properties.getProperty(reportDocumentsEnabledProp, "false").toBoolean)
+
+    ErnieEngine(reportDocumentsBuilder build ()).start
 
   }
 
@@ -0,0 +1,56 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ksmpartners.ernie.server
+
+import org.testng.annotations.Test
+import org.testng.Assert
+import org.joda.time.{ DateTime, DateTimeZone }
+import com.ksmpartners.ernie.util.TestLogger
+
+class ByteRangeTest extends TestLogger {
+
+  @Test
+  def selectsSingleRanges() {
+    Assert.assertEquals(ByteRange.select(Some("bytes=0-99"), 1000), ByteRange(0, 99))
+    Assert.assertEquals(ByteRange.select(Some("bytes=500-"), 1000), ByteRange(500, 999))
+    Assert.assertEquals(ByteRange.select(Some("bytes=-100"), 1000), ByteRange(900, 999))
+    Assert.assertEquals(ByteRange.select(Some("bytes=900-2000"), 1000), ByteRange(900, 999))
+    Assert.assertEquals(ByteRange(900, 999).contentRange(1000), "bytes 900-999/1000")
+  }
+
+  @Test
+  def servesWholeContentForUnusableRanges() {
+    Assert.assertEquals(ByteRange.select(None, 1000), WholeContent)
+    Assert.assertEquals(ByteRange.select(Some("bytes=0-1,5-6"), 1000), WholeContent)
+    Assert.assertEquals(ByteRange.select(Some("bytes=9-1"), 1000), WholeContent)
+    Assert.assertEquals(ByteRange.select(Some("items=0-1"), 1000), WholeContent)
+  }
+
+  @Test
+  def rejectsRangesBeyondContent() {
+    Assert.assertEquals(ByteRange.select(Some("bytes=1000-"), 1000), UnsatisfiableRange)
+    Assert.assertEquals(ByteRange.select(Some("bytes=-0"), 1000), UnsatisfiableRange)
+  }
+
+  @Test
+  def ifRangeMustMatchValidator() {
+    val modified = new DateTime(2013, 8, 4, 10, 15, 30, 250, DateTimeZone.UTC)
+    Assert.assertTrue(ByteRange.ifRangeMatches(None, "\"a\"", None))
+    Assert.assertTrue(ByteRange.ifRangeMatches(Some("\"a\""), "\"a\"", None))
+    Assert.assertFalse(ByteRange.ifRangeMatches(Some("\"b\""), "\"a\"", None))
+    Assert.assertTrue(ByteRange.ifRangeMatches(Some(ByteRange.httpDate(modified)), "\"a\"", Some(modified)))
+    Assert.assertFalse(ByteRange.ifRangeMatches(Some(ByteRange.httpDate(modified.plusMinutes(1))), "\"a\"", Some(modified)))
+  }
+}
@@ -624,7 +624,7 @@ class FailureTest extends WebSpec(() => Unit) with TestSetupUtilities {
         val resp = DispatchRestAPI(req)()
         resp.map(r =>
           if (r.isInstanceOf[PlainTextResponse]) {
-            if (DispatchRestAPI.deserialize(resp.open_!.asInstanceOf[PlainTextResponse].toResponse.data, classOf[StatusResponse]).getJobStatus != JobStatus.IN_PROGRESS) {
+            if (!List(JobStatus.IN_PROGRESS, JobStatus.PENDING).contains(DispatchRestAPI.deserialize(resp.open_!.asInstanceOf[PlainTextResponse].toResponse.data, classOf[StatusResponse]).getJobStatus)) {
               jobRunning = false
               Assert.assertTrue(DispatchRestAPI.deserialize(resp.open_!.asInstanceOf[PlainTextResponse].toResponse.data, classOf[StatusResponse]).getJobStatus == JobStatus.FAILED_INVALID_PARAMETER_VALUES)
               failed = true
@@ -668,7 +668,7 @@ class FailureTest extends WebSpec(() => Unit) with TestSetupUtilities {
         val resp = DispatchRestAPI(req)()
         resp.map(r =>
           if (r.isInstanceOf[PlainTextResponse])
-            if (DispatchRestAPI.deserialize(resp.open_!.asInstanceOf[PlainTextResponse].toResponse.data, classOf[StatusResponse]).getJobStatus != JobStatus.IN_PROGRESS) {
+            if (!List(JobStatus.IN_PROGRESS, JobStatus.PENDING).contains(DispatchRestAPI.deserialize(resp.open_!.asInstanceOf[PlainTextResponse].toResponse.data, classOf[StatusResponse]).getJobStatus)) {
             jobRunning = false
             Assert.assertEquals(DispatchRestAPI.deserialize(resp.open_!.asInstanceOf[PlainTextResponse].toResponse.data, classOf[StatusResponse]).getJobStatus, JobStatus.FAILED_PARAMETER_NULL)
           })
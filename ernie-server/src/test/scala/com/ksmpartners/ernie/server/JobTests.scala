@@ -350,6 +350,79 @@ class JobTest extends WebSpec(() => Unit) with TestSetupUtilities {
     }
   }
 
+  @Test(dependsOnMethods = Array("canCompleteJob"))
+  def canGetOutputDownloadRange() {
+    val (size, etag) = outputDownloadSizeAndETag(testJobID)
+    val mockReq = new MockReadAuthReq("/jobs/" + testJobID + "/result")
+    mockReq.headers += ("Accept" -> List("application/pdf"))
+    mockReq.headers += ("Range" -> List("bytes=0-99"))
+    mockReq.headers += ("If-Range" -> List(etag))
+
+    MockWeb.testReq(mockReq) { req =>
+      val respBox = DispatchRestAPI(req)()
+      Assert.assertTrue(respBox.isDefined)
+      Assert.assertTrue(respBox.open_!.isInstanceOf[StreamingResponse])
+
+      val resultResp = respBox.open_!.asInstanceOf[StreamingResponse]
+      Assert.assertEquals(resultResp.code, 206)
+      Assert.assertEquals(resultResp.size, 100L)
+      Assert.assertTrue(resultResp.headers.contains(("Content-Length", "100")))
+      Assert.assertTrue(resultResp.headers.contains(("Content-Range", "bytes 0-99/" + size)))
+    }
+  }
+
+  @Test(dependsOnMethods = Array("canCompleteJob"))
+  def mismatchedIfRangeGetsWholeOutputDownload() {
+    val (size, _) = outputDownloadSizeAndETag(testJobID)
+    val mockReq = new MockReadAuthReq("/jobs/" + testJobID + "/result")
+    mockReq.headers += ("Accept" -> List("application/pdf"))
+    mockReq.headers += ("Range" -> List("bytes=0-99"))
+    mockReq.headers += ("If-Range" -> List("\"stale-" + testJobID + "\""))
+
+    MockWeb.testReq(mockReq) { req =>
+      val respBox = DispatchRestAPI(req)()
+      Assert.assertTrue(respBox.isDefined)
+      Assert.assertTrue(respBox.open_!.isInstanceOf[StreamingResponse])
+
+      val resultResp = respBox.open_!.asInstanceOf[StreamingResponse]
+      Assert.assertEquals(resultResp.code, 200)
+      Assert.assertEquals(resultResp.size, size)
+      Assert.assertTrue(resultResp.headers.contains(("Content-Length", size.toString)))
+      Assert.assertFalse(resultResp.headers.exists(_._1 == "Content-Range"))
+    }
+  }
+
+  @Test(dependsOnMethods = Array("canCompleteJob"))
+  def unsatisfiableRangeReturns416() {
+    val (size, _) = outputDownloadSizeAndETag(testJobID)
+    val mockReq = new MockReadAuthReq("/jobs/" + testJobID + "/result")
+    mockReq.headers += ("Accept" -> List("application/pdf"))
+    mockReq.headers += ("Range" -> List("bytes=" + size + "-"))
+
+    MockWeb.testReq(mockReq) { req =>
+      val resp = DispatchRestAPI(req)()
+      Assert.assertTrue(resp.isDefined)
+      Assert.assertEquals(resp.open_!.toResponse.code, 416)
+      Assert.assertTrue(resp.open_!.toResponse.headers.contains(("Content-Range", "bytes */" + size)))
+    }
+  }
+
+  /**
+   * Return the size and entity tag of the whole PDF output of jobId
+   */
+  private def outputDownloadSizeAndETag(jobId: Long): (Long, String) = {
+    val mockReq = new MockReadAuthReq("/jobs/" + jobId + "/result")
+    mockReq.headers += ("Accept" -> List("application/pdf"))
+
+    MockWeb.testReq(mockReq) { req =>
+      val resultResp = DispatchRestAPI(req)().open_!.asInstanceOf[StreamingResponse]
+      resultResp.onEnd()
+      Assert.assertEquals(resultResp.code, 200)
+      Assert.assertTrue(resultResp.size > 100L, "Output is too small to take a range of")
+      (resultResp.size, resultResp.headers.find(_._1 == "ETag").map(_._2).get)
+    }
+  }
+
   @Test(dependsOnMethods = Array("canCompleteJob"))
   def cantGetPDFOutputDownloadWithHTMLAcceptHeader() {
     val mockReq = new MockReadAuthReq("/jobs/" + testJobID + "/result")
@@ -462,6 +535,68 @@ class JobTest extends WebSpec(() => Unit) with TestSetupUtilities {
     }
   }
 
+  @Test
+  def canPostJobsBatch() {
+    val mockReq = new MockWriteAuthReq("/jobs/batch")
+    mockReq.method = "POST"
+    mockReq.headers += ("Accept" -> List(ModelObject.TYPE_FULL))
+
+    val pdfReq = new ReportRequest()
+    pdfReq.setDefId(testDef)
+    pdfReq.setRptType(ReportType.PDF)
+    val csvReq = new ReportRequest()
+    csvReq.setDefId(testDef)
+    csvReq.setRptType(ReportType.CSV)
+    mockReq.body = DispatchRestAPI.serialize(new BatchReportRequest(JavaConversions.seqAsJavaList(List(pdfReq, csvReq)))).getBytes
+
+    MockWeb.testReq(mockReq) { req =>
+      val resp = DispatchRestAPI(req)()
+      Assert.assertTrue(resp.isDefined)
+      Assert.assertTrue(resp.open_!.isInstanceOf[PlainTextResponse])
+      Assert.assertEquals(resp.open_!.toResponse.code, 200)
+      val batchResponse: BatchReportResponse = DispatchRestAPI.deserialize(resp.open_!.asInstanceOf[PlainTextResponse].toResponse.data, classOf[BatchReportResponse])
+      Assert.assertEquals(batchResponse.getResponses.size, 2)
+      Assert.assertTrue(JavaConversions.asScalaBuffer(batchResponse.getResponses).forall(_.getJobId > -1L))
+      Assert.assertTrue(batchResponse.getResponses.get(0).getJobId != batchResponse.getResponses.get(1).getJobId)
+    }
+  }
+
+  @Test
+  def cantPostEmptyJobsBatch() {
+    val mockReq = new MockWriteAuthReq("/jobs/batch")
+    mockReq.method = "POST"
+    mockReq.headers += ("Accept" -> List(ModelObject.TYPE_FULL))
+    mockReq.body = Array[Byte]()
+
+    MockWeb.testReq(mockReq) { req =>
+      val resp = DispatchRestAPI(req)()
+      Assert.assertTrue(resp.isDefined)
+      Assert.assertEquals(resp.open_!.toResponse.code, 400)
+    }
+
+    mockReq.body = DispatchRestAPI.serialize(new BatchReportRequest(new java.util.ArrayList[ReportRequest]())).getBytes
+
+    MockWeb.testReq(mockReq) { req =>
+      val resp = DispatchRestAPI(req)()
+      Assert.assertTrue(resp.isDefined)
+      Assert.assertEquals(resp.open_!.toResponse.code, 400)
+    }
+  }
+
+  @Test
+  def cantPostMalformedJobsBatch() {
+    val mockReq = new MockWriteAuthReq("/jobs/batch")
+    mockReq.method = "POST"
+    mockReq.headers += ("Accept" -> List(ModelObject.TYPE_FULL))
+    mockReq.body = "{\"requests\": [{\"defId\": ".getBytes
+
+    MockWeb.testReq(mockReq) { req =>
+      val resp = DispatchRestAPI(req)()
+      Assert.assertTrue(resp.isDefined)
+      Assert.assertEquals(resp.open_!.toResponse.code, 400)
+    }
+  }
+
   @Test(dependsOnMethods = Array("canCompleteJob"))
   def canGetReportDetail() {
     val mockReq = new MockReadAuthReq("/jobs/" + testJobID + "/result/detail")
@@ -511,6 +646,27 @@ class JobTest extends WebSpec(() => Unit) with TestSetupUtilities {
     }
   }
 
+  @Test(dependsOnMethods = Array("canGetCSVOutputDownload"))
+  def canPageJobsCatalog() {
+    val mockReq = new MockReadAuthReq("/jobs/catalog?limit=1&order=desc")
+
+    mockReq.headers += ("Accept" -> List(ModelObject.TYPE_FULL))
+
+    MockWeb.testReq(mockReq) { req =>
+      val resp = DispatchRestAPI(req)()
+      Assert.assertTrue(resp.isDefined)
+      Assert.assertEquals(resp.open_!.toResponse.code, 200)
+      val jobCatalogResp: JobsCatalogResponse = DispatchRestAPI.deserialize(resp.open_!.asInstanceOf[PlainTextResponse].toResponse.data, classOf[JobsCatalogResponse])
+      Assert.assertEquals(jobCatalogResp.getJobsCatalog.size, 1)
+    }
+
+    val badReq = new MockReadAuthReq("/jobs/catalog?limit=none")
+    badReq.headers += ("Accept" -> List(ModelObject.TYPE_FULL))
+    MockWeb.testReq(badReq) { req =>
+      Assert.assertEquals(DispatchRestAPI(req)().open_!.toResponse.code, 400)
+    }
+  }
+
   @Test(dependsOnMethods = Array("canGetCSVOutputDownload"))
   def canGetCompleteJobsCatalog() {
     val mockReq = new MockReadAuthReq("/jobs/complete")
@@ -19,10 +19,12 @@ import com.ksmpartners.ernie.server.PropertyNames._
 import net.liftweb.mocks.{ MockHttpServletResponse, MockHttpServletRequest }
 import javax.servlet.{ ServletResponse, ServletRequest, FilterChain }
 import javax.servlet.http.HttpServletResponse
-import java.io.{ ByteArrayOutputStream, FileOutputStream, FileInputStream, File }
+import java.io.{ ByteArrayOutputStream, FileOutputStream, FileInputStream, File, InputStream }
+import java.security.KeyStore
 import com.ksmpartners.ernie.util.Utility._
 import org.apache.cxf.rs.security.saml.DeflateEncoderDecoder
-import com.ksmpartners.ernie.util.Base64Util
+import com.ksmpartners.ernie.util.{ Base64Util, SAMLProcessor }
+import org.joda.time.DateTime
 import com.ksmpartners.ernie.server.filter.SAMLConstants._
 import org.testng.Assert
 import org.slf4j.{ LoggerFactory, Logger }
@@ -88,6 +90,84 @@ class SAMLFilterTest extends TestLogger {
     Assert.assertEquals(chain.userName, "readWriteUser")
   }
 
+  @Test
+  def repeatedTokenReturns200() {
+    val filter = new CountingSAMLFilter
+    for (i <- 1 to 2) {
+      val req = new MockHttpServletRequest
+      val resp = new MockResp
+      val chain = new Chain
+
+      req.headers += (authHeaderProp -> List(getSamlHeaderVal(readWriteMode)))
+
+      filter.doFilter(req, resp, chain)
+
+      Assert.assertEquals(resp.getStatusCode, 200)
+      Assert.assertEquals(chain.userName, "readWriteUser")
+    }
+    // The second request was served from the cache
+    Assert.assertEquals(filter.validations, 1)
+  }
+
+  @Test
+  def changedKeystoreClearsCache() {
+    val keystore = File.createTempFile("keystore", ".jks")
+    keystore.deleteOnExit()
+    try_(new FileInputStream(System.getProperty(keystoreLocProp))) { in =>
+      try_(new FileOutputStream(keystore)) { out =>
+        val buf = new Array[Byte](4096)
+        var n = in.read(buf)
+        while (n > 0) {
+          out.write(buf, 0, n)
+          n = in.read(buf)
+        }
+      }
+    }
+    val defaultKeystore = System.getProperty(keystoreLocProp)
+    System.setProperty(keystoreLocProp, keystore.getPath)
+    val filter = try new CountingSAMLFilter finally System.setProperty(keystoreLocProp, defaultKeystore)
+
+    Assert.assertEquals(authenticate(filter, readWriteMode), 200)
+    Assert.assertEquals(authenticate(filter, readWriteMode), 200)
+    Assert.assertEquals(filter.validations, 1)
+
+    keystore.setLastModified(keystore.lastModified - 60000L)
+    filter.clock += SAMLFilter.keystoreCheckInterval
+    Assert.assertEquals(authenticate(filter, readWriteMode), 200)
+    Assert.assertEquals(filter.validations, 2)
+  }
+
+  @Test
+  def expiredTokenIsValidatedAgain() {
+    val filter = new CountingSAMLFilter
+    filter.notOnOrAfter = new DateTime(filter.clock + 60000L)
+
+    Assert.assertEquals(authenticate(filter, readWriteMode), 200)
+    Assert.assertEquals(authenticate(filter, readWriteMode), 200)
+    Assert.assertEquals(filter.validations, 1)
+
+    filter.clock += 60000L
+    Assert.assertEquals(authenticate(filter, readWriteMode), 200)
+    Assert.assertEquals(filter.validations, 2)
+  }
+
+  /**
+   * Pass a request carrying the token of mode through filter, and return the response status
+   */
+  private def authenticate(filter: SAMLFilter, mode: String): Int = {
+    val req = new MockHttpServletRequest
+    val resp = new MockResp
+    req.headers += (authHeaderProp -> List(getSamlHeaderVal(mode)))
+    filter.doFilter(req, resp, new Chain)
+    resp.getStatusCode
+  }
+
+  @Test
+  def tokenDigestIdentifiesToken() {
+    Assert.assertEquals(SAMLFilter.tokenDigest(new String(encodeToken(readMode))), SAMLFilter.tokenDigest(new String(encodeToken(readMode))))
+    Assert.assertFalse(SAMLFilter.tokenDigest(new String(encodeToken(readMode))) == SAMLFilter.tokenDigest(new String(encodeToken(writeMode))))
+  }
+
   def getSamlHeaderVal(mode: String): String = "SAML " + (new String(encodeToken(mode)))
 
   def encodeToken(mode: String): Array[Byte] = {
@@ -112,6 +192,28 @@ class SAMLFilterTest extends TestLogger {
     bos
   }
 
+  /**
+   * Filter that counts the tokens it validates and runs on a clock set by the test. Tokens are parsed but their signature and conditions
+   * are not checked, and each is given notOnOrAfter in place of its own, so that caching can be followed whatever the tokens' dates.
+   */
+  class CountingSAMLFilter extends SAMLFilter {
+    var validations = 0
+    var clock = System.currentTimeMillis
+    var notOnOrAfter = new DateTime(clock + 3600000L)
+
+    override protected def currentTimeMillis: Long = clock
+
+    override protected def getSAMLProcessor(samlTokenStream: InputStream, trusted: KeyStore): SAMLProcessor = {
+      validations += 1
+      val samlProcessor = new SAMLProcessor {
+        override def getNotOnOrAfter: DateTime = notOnOrAfter
+      }
+      samlProcessor.setKeyStore(trusted)
+      samlProcessor.parse(samlTokenStream)
+      samlProcessor
+    }
+  }
+
   class MockResp extends MockHttpServletResponse(null, null) {
     def getStatusCode: Int = statusCode
   }
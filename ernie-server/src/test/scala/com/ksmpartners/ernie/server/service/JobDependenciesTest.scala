@@ -26,7 +26,8 @@ import net.liftweb.common.{ Full, Box }
 import net.liftweb.http._
 import org.testng.Assert
 
-import com.ksmpartners.ernie.server.{ DispatchRestAPI, JsonTranslator, service }
+import com.ksmpartners.ernie.server.{ DispatchRestAPI, JsonTranslator, RestGenerator, service }
+import com.ksmpartners.ernie.server.RestGenerator.Package
 import service.ServiceRegistry._
 import org.slf4j.{ LoggerFactory, Logger }
 import scala.Array
@@ -35,8 +36,11 @@ import net.liftweb.http.StreamingResponse
 import net.liftweb.http.ResponseWithReason
 
 import net.liftweb.common.Full
+import scala.concurrent.Await
+import scala.concurrent.duration._
 
 import com.ksmpartners.ernie.util.TestLogger
+import com.ksmpartners.ernie.api.{ ErnieBuilder, ErnieEngine }
 
 class JobDependenciesTest extends TestLogger {
 
@@ -129,6 +133,94 @@ class JobDependenciesTest extends TestLogger {
     val resultRespBox = jobResultsResource.get("7777")
 
     Assert.assertEquals(resultRespBox.open_!.toResponse.code, 404)
+    Assert.assertTrue(RestGenerator.metrics.getStatistics.get("getJobResult").errors.get("NotFoundException") >= 1L)
+  }
+
+  @Test
+  def canGetMetrics() {
+    jobsResource.getReadiness(Package(null))
+    Assert.assertTrue(RestGenerator.metrics.getStatistics.get("getReadiness").count >= 1)
+
+    val resp = jobsResource.getMetrics(Package(null)).open_!.toResponse.asInstanceOf[InMemoryResponse]
+    Assert.assertEquals(resp.code, 200)
+    Assert.assertTrue(new String(resp.data).contains("\"getReadiness\""))
+  }
+
+  @Test
+  def statusLongPollReturnsOnStatusChange() {
+    val idle = new IdleJobDependencies(createTempDirectory, createTempDirectory)
+    try {
+      val jobId = postJob(new idle.JobsResource)
+      val start = System.currentTimeMillis
+      val reply = new idle.JobStatusResource().getOnChange(jobId.toString, 30L).open_!
+      Assert.assertFalse(reply.isCompleted)
+      Assert.assertEquals(new idle.JobEntityResource().cancel(jobId.toString).open_!.toResponse.code, 200)
+
+      val resp = Await.result(reply, 10 seconds).asInstanceOf[PlainTextResponse]
+      Assert.assertTrue(System.currentTimeMillis - start < 30000L)
+      Assert.assertEquals(DispatchRestAPI.deserialize(resp.text, classOf[model.StatusResponse]).getJobStatus, JobStatus.CANCELLED)
+    } finally idle.shutDown()
+  }
+
+  @Test
+  def statusLongPollReturnsAfterWait() {
+    val idle = new IdleJobDependencies(createTempDirectory, createTempDirectory)
+    try {
+      val jobId = postJob(new idle.JobsResource)
+      val start = System.currentTimeMillis
+      val resp = Await.result(new idle.JobStatusResource().getOnChange(jobId.toString, 1L).open_!, 10 seconds).asInstanceOf[PlainTextResponse]
+      Assert.assertTrue(System.currentTimeMillis - start >= 1000L)
+      Assert.assertEquals(resp.code, 200)
+      Assert.assertEquals(DispatchRestAPI.deserialize(resp.text, classOf[model.StatusResponse]).getJobStatus, JobStatus.PENDING)
+    } finally idle.shutDown()
+  }
+
+  @Test(timeOut = 60000L)
+  def statusEventStreamEndsOnTerminalStatus() {
+    val idle = new IdleJobDependencies(createTempDirectory, createTempDirectory)
+    try {
+      val jobId = postJob(new idle.JobsResource)
+      val resp = new idle.JobStatusResource().getEvents(jobId.toString).open_!.asInstanceOf[StreamingResponse]
+      Assert.assertEquals(resp.code, 200)
+      Assert.assertTrue(resp.headers.contains(("Content-Type", "text/event-stream")))
+
+      val buf = new Array[Byte](4096)
+      val first = new String(buf, 0, resp.data.read(buf), "UTF-8")
+      Assert.assertTrue(first.startsWith("event: status\n"))
+      Assert.assertTrue(first.contains("\"jobStatus\":\"PENDING\""))
+
+      Assert.assertEquals(new idle.JobEntityResource().cancel(jobId.toString).open_!.toResponse.code, 200)
+      val rest = new ByteArrayOutputStream
+      var count = resp.data.read(buf)
+      while (count >= 0) {
+        rest.write(buf, 0, count)
+        count = resp.data.read(buf)
+      }
+      Assert.assertTrue(rest.toString("UTF-8").contains("\"jobStatus\":\"CANCELLED\""))
+      resp.onEnd()
+    } finally idle.shutDown()
+  }
+
+  @Test
+  def fullQueueReturnsTooManyRequests() {
+    val idle = new IdleJobDependencies(createTempDirectory, createTempDirectory, Some(1))
+    try {
+      val jobs = new idle.JobsResource
+      postJob(jobs)
+      val resp = jobs.post(Full("""{"defId":"test_def","rptType":"PDF"}""".getBytes), "testUser").open_!.toResponse
+      Assert.assertEquals(resp.code, 429)
+      val retryAfter = resp.headers.find(_._1 == "Retry-After").map(_._2.toLong)
+      Assert.assertTrue(retryAfter.exists(_ >= 1L))
+    } finally idle.shutDown()
+  }
+
+  /**
+   * Post a job for test_def through jobs and return its ID
+   */
+  private def postJob(jobs: JobDependencies#JobsResource): Long = {
+    val resp = jobs.post(Full("""{"defId":"test_def","rptType":"PDF"}""".getBytes), "testUser").open_!.asInstanceOf[PlainTextResponse]
+    Assert.assertEquals(resp.code, 201)
+    DispatchRestAPI.deserialize(resp.text, classOf[model.ReportResponse]).getJobId
   }
 
   @Test(enabled = false)
@@ -151,3 +243,15 @@ class JobDependenciesTest extends TestLogger {
 
 }
 
+/**
+ * Job dependencies backed by an engine of their own, which has no workers so that the jobs submitted to it stay PENDING. If maxQueueDepth
+ * is given, jobs submitted once that many are pending are rejected.
+ */
+class IdleJobDependencies(jobDir: File, outputDir: File, maxQueueDepth: Option[Int] = None) extends JobDependencies {
+  protected val ernie = {
+    val builder = ErnieBuilder() withFileReportManager (jobDir.getAbsolutePath, "./src/test/resources/in", outputDir.getAbsolutePath) withWorkers (0)
+    ErnieEngine((maxQueueDepth.map(builder withMaxQueueDepth (_)) getOrElse builder) build ()).start
+  }
+
+  def shutDown() = ernie.shutDown()
+}
@@ -0,0 +1,312 @@
+package com.ksmpartners.ernie.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Request counts, error counts and latency histograms of named actions, such as REST resources or API calls. Recording a call
+ * costs a few atomic increments and takes no locks, so metrics can stay enabled in production. Latencies are kept in a fixed
+ * histogram of four buckets per power of two microseconds, so percentiles are reported to within 25% of the true value.
+ * Each action is registered as an MXBean named com.ksmpartners.ernie:type=&lt;type&gt;,name=&lt;action&gt; on the platform
+ * MBeanServer the first time it is recorded. If another instance of the same type already registered that name, an instance key unique
+ * to this object is added to it. The MXBean's mean and percentiles come from a snapshot of the histogram taken at most once a second, so
+ * that reading all of its attributes walks the histogram once.
+ */
+public class ActionMetrics {
+
+    // Logger
+    private static final Logger LOG = LoggerFactory.getLogger(ActionMetrics.class);
+
+    public static final String JMX_DOMAIN = "com.ksmpartners.ernie";
+
+    // Buckets 0 to 3 hold exact microseconds; each later power of two is split in four. The last bucket (about 19 hours) is unbounded.
+    private static final int BUCKETS = 144;
+
+    // Longest time the MXBean of an action serves the same snapshot of its statistics
+    private static final long SNAPSHOT_NANOS = 1000000000L;
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger(0);
+
+    private final String type;
+    private final MBeanServer mbeanServer;
+    private final int instance = INSTANCES.incrementAndGet();
+    private final ConcurrentHashMap<String, Action> actions = new ConcurrentHashMap<String, Action>();
+
+    /**
+     * Create metrics whose MXBeans are registered on the platform MBeanServer under the given type.
+     */
+    public ActionMetrics(String type) {
+        this(type, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * @param type the type key of the ObjectName of each action's MXBean
+     * @param mbeanServer where to register MXBeans, or null to not register any
+     */
+    public ActionMetrics(String type, MBeanServer mbeanServer) {
+        this.type = type;
+        this.mbeanServer = mbeanServer;
+    }
+
+    /**
+     * Record one call of action that began at startNanos, as returned by System.nanoTime, and ended now.
+     *
+     * @param error the kind of error the call ended with, or null if it succeeded
+     */
+    public void record(String action, long startNanos, String error) {
+        get(action).record(System.nanoTime() - startNanos, error);
+    }
+
+    /**
+     * Return the metrics of each action recorded so far, keyed by action name.
+     */
+    public Map<String, Statistics> getStatistics() {
+        Map<String, Statistics> stats = new HashMap<String, Statistics>();
+        for (Map.Entry<String, Action> e : actions.entrySet()) {
+            stats.put(e.getKey(), e.getValue().getStatistics());
+        }
+        return stats;
+    }
+
+    /**
+     * Unregister the MXBeans of all actions and drop their metrics.
+     */
+    public void unregister() {
+        for (Map.Entry<String, Action> e : actions.entrySet()) {
+            if (e.getValue().objectName != null && mbeanServer != null) {
+                try {
+                    mbeanServer.unregisterMBean(e.getValue().objectName);
+                } catch (JMException ex) {
+                    LOG.debug("Could not unregister metrics of {}: " + ex.getMessage(), e.getKey());
+                }
+            }
+        }
+        actions.clear();
+    }
+
+    private Action get(String action) {
+        Action a = actions.get(action);
+        if (a == null) {
+            Action created = new Action();
+            a = actions.putIfAbsent(action, created);
+            if (a == null) {
+                a = created;
+                register(action, a);
+            }
+        }
+        return a;
+    }
+
+    private void register(String action, Action a) {
+        if (mbeanServer == null) return;
+        try {
+            try {
+                a.objectName = register(a, new ObjectName(JMX_DOMAIN + ":type=" + ObjectName.quote(type) + ",name=" + ObjectName.quote(action)));
+            } catch (InstanceAlreadyExistsException e) {
+                // Another instance of the same type registered this action first
+                a.objectName = register(a, new ObjectName(JMX_DOMAIN + ":type=" + ObjectName.quote(type) + ",name=" + ObjectName.quote(action) +
+                        ",instance=" + instance));
+            }
+        } catch (JMException e) {
+            LOG.warn("Could not register metrics of {}: " + e.getMessage(), action);
+        }
+    }
+
+    private ObjectName register(Action a, ObjectName name) throws JMException {
+        mbeanServer.registerMBean(new StandardMBean(a, ActionMXBean.class, true), name);
+        return name;
+    }
+
+    /**
+     * Return the histogram bucket holding the given latency in microseconds.
+     */
+    static int bucket(long micros) {
+        if (micros < 4) return (int) Math.max(micros, 0L);
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exp - 2)) & 3;
+        return Math.min(4 * (exp - 1) + sub, BUCKETS - 1);
+    }
+
+    /**
+     * Return the greatest latency in microseconds held by the given histogram bucket.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < 4) return bucket;
+        int exp = bucket / 4 + 1;
+        return ((5L + bucket % 4) << (exp - 2)) - 1;
+    }
+
+    /**
+     * JMX view of the metrics of one action. Latencies are in milliseconds.
+     */
+    public interface ActionMXBean {
+        long getCount();
+
+        long getErrorCount();
+
+        Map<String, Long> getErrors();
+
+        double getMeanMillis();
+
+        double getMaxMillis();
+
+        double getP50Millis();
+
+        double getP95Millis();
+
+        double getP99Millis();
+    }
+
+    /**
+     * The counters and latency histogram of one action
+     */
+    private static class Action implements ActionMXBean {
+        final AtomicLong count = new AtomicLong(0L);
+        final AtomicLong errorCount = new AtomicLong(0L);
+        final AtomicLong totalMicros = new AtomicLong(0L);
+        final AtomicLong maxMicros = new AtomicLong(0L);
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        final ConcurrentHashMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+        volatile ObjectName objectName = null;
+        private volatile Statistics snapshot = null;
+        private volatile long snapshotNanos = 0L;
+
+        void record(long nanos, String error) {
+            long micros = nanos / 1000L;
+            count.incrementAndGet();
+            totalMicros.addAndGet(micros);
+            histogram.incrementAndGet(bucket(micros));
+            long max = maxMicros.get();
+            while (micros > max && !maxMicros.compareAndSet(max, micros)) max = maxMicros.get();
+            if (error != null) {
+                errorCount.incrementAndGet();
+                AtomicLong c = errors.get(error);
+                if (c == null) {
+                    AtomicLong created = new AtomicLong(0L);
+                    c = errors.putIfAbsent(error, created);
+                    if (c == null) c = created;
+                }
+                c.incrementAndGet();
+            }
+        }
+
+        Statistics getStatistics() {
+            long[] counts = new long[BUCKETS];
+            long n = 0L;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram.get(i);
+                n += counts[i];
+            }
+            long max = maxMicros.get();
+            long[] p = percentiles(counts, n, max, 0.50, 0.95, 0.99);
+            Statistics stats = new Statistics(count.get(), errorCount.get(), getErrors(), millis(n == 0L ? 0L : totalMicros.get() / n),
+                    millis(max), millis(p[0]), millis(p[1]), millis(p[2]));
+            snapshotNanos = System.nanoTime();
+            snapshot = stats;
+            return stats;
+        }
+
+        /**
+         * Return the statistics last computed if they are recent enough, and otherwise compute them
+         */
+        private Statistics snapshot() {
+            Statistics stats = snapshot;
+            return (stats != null && System.nanoTime() - snapshotNanos < SNAPSHOT_NANOS) ? stats : getStatistics();
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getErrorCount() {
+            return errorCount.get();
+        }
+
+        public Map<String, Long> getErrors() {
+            Map<String, Long> result = new HashMap<String, Long>();
+            for (Map.Entry<String, AtomicLong> e : errors.entrySet()) {
+                result.put(e.getKey(), e.getValue().get());
+            }
+            return result;
+        }
+
+        public double getMeanMillis() {
+            return snapshot().meanMillis;
+        }
+
+        public double getMaxMillis() {
+            return millis(maxMicros.get());
+        }
+
+        public double getP50Millis() {
+            return snapshot().p50Millis;
+        }
+
+        public double getP95Millis() {
+            return snapshot().p95Millis;
+        }
+
+        public double getP99Millis() {
+            return snapshot().p99Millis;
+        }
+
+        /**
+         * Return the latency in microseconds at each of quantiles, which must be in increasing order, in one pass over the histogram
+         */
+        private static long[] percentiles(long[] counts, long n, long max, double... quantiles) {
+            long[] result = new long[quantiles.length];
+            if (n == 0L) return result;
+            int q = 0;
+            long seen = 0L;
+            for (int i = 0; i < counts.length && q < quantiles.length; i++) {
+                seen += counts[i];
+                while (q < quantiles.length && seen >= (long) Math.ceil(quantiles[q] * n)) result[q++] = Math.min(upperBound(i), max);
+            }
+            while (q < quantiles.length) result[q++] = max;
+            return result;
+        }
+
+        private static double millis(long micros) {
+            return micros / 1000.0;
+        }
+    }
+
+    /**
+     * Represents the calls of one action recorded so far. Latencies are in milliseconds.
+     */
+    public static class Statistics {
+        public final long count;
+        public final long errorCount;
+        public final Map<String, Long> errors;
+        public final double meanMillis;
+        public final double maxMillis;
+        public final double p50Millis;
+        public final double p95Millis;
+        public final double p99Millis;
+
+        public Statistics(long count, long errorCount, Map<String, Long> errors, double meanMillis, double maxMillis, double p50Millis,
+                          double p95Millis, double p99Millis) {
+            this.count = count;
+            this.errorCount = errorCount;
+            this.errors = errors;
+            this.meanMillis = meanMillis;
+            this.maxMillis = maxMillis;
+            this.p50Millis = p50Millis;
+            this.p95Millis = p95Millis;
+            this.p99Millis = p99Millis;
+        }
+    }
+}
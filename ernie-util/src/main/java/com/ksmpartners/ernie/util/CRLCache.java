@@ -0,0 +1,293 @@
+package com.ksmpartners.ernie.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of Certificate Revocation Lists keyed by distribution point URL. A CRL is downloaded on first use and kept until its
+ * nextUpdate time, or for maxAgeMillis if it has none. Shortly before that time the CRL is refreshed in the background, and until a
+ * refresh succeeds the last good CRL is served for up to graceMillis past its nextUpdate. Only a caller that finds no usable CRL waits
+ * for a download. Supports HTTP, HTTPS, FTP, file and LDAP based URLs, each read with timeoutMillis connect and read timeouts.
+ */
+public class CRLCache {
+
+    // Logger
+    private static final Logger LOG = LoggerFactory.getLogger(CRLCache.class);
+
+    // System properties read by the default constructor
+    public static final String TIMEOUT_PARAM = "crl.fetch.timeout.ms";
+    public static final String GRACE_PARAM = "crl.cache.grace.ms";
+    public static final String MAX_AGE_PARAM = "crl.cache.max.age.ms";
+    public static final String REFRESH_AHEAD_PARAM = "crl.cache.refresh.ahead.ms";
+
+    // Minimum time between background refreshes of a distribution point after one fails
+    private static final long RETRY_MILLIS = 30000L;
+
+    private final int timeoutMillis;
+    private final long graceMillis;
+    private final long maxAgeMillis;
+    private final long refreshAheadMillis;
+    private final Executor refresher;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Create a cache configured by the crl.* system properties, defaulting to a 10 second timeout, a one hour grace window, a one hour
+     * lifetime for CRLs without nextUpdate, and refreshes starting five minutes ahead. Refreshes run on a single daemon thread.
+     */
+    public CRLCache() {
+        this(Integer.getInteger(TIMEOUT_PARAM, 10000), Long.getLong(GRACE_PARAM, 3600000L), Long.getLong(MAX_AGE_PARAM, 3600000L),
+                Long.getLong(REFRESH_AHEAD_PARAM, 300000L), daemonRefresher());
+    }
+
+    /**
+     * @param timeoutMillis connect and read timeout of each download
+     * @param graceMillis how long past its nextUpdate the last good CRL is served while it cannot be refreshed
+     * @param maxAgeMillis how long a CRL without nextUpdate is kept
+     * @param refreshAheadMillis how long before its nextUpdate a CRL is refreshed in the background
+     * @param refresher runs background refreshes
+     */
+    public CRLCache(int timeoutMillis, long graceMillis, long maxAgeMillis, long refreshAheadMillis, Executor refresher) {
+        this.timeoutMillis = timeoutMillis;
+        this.graceMillis = graceMillis;
+        this.maxAgeMillis = maxAgeMillis;
+        this.refreshAheadMillis = refreshAheadMillis;
+        this.refresher = refresher;
+    }
+
+    /**
+     * Return the CRL published at the given distribution point, downloading it only if no usable CRL is cached.
+     *
+     * @throws CertificateVerificationException if the CRL must be downloaded and can not be
+     */
+    public X509CRL getCRL(String distributionPoint) throws CertificateVerificationException {
+        Entry entry = entries.get(distributionPoint);
+        if (entry == null) {
+            Entry created = new Entry();
+            entry = entries.putIfAbsent(distributionPoint, created);
+            if (entry == null) entry = created;
+        }
+
+        X509CRL crl = entry.crl;
+        long now = System.currentTimeMillis();
+        if (crl != null && now < entry.expires + graceMillis) {
+            if (now >= entry.expires - refreshAheadMillis) refreshLater(distributionPoint, entry);
+            if (now >= entry.expires) LOG.debug("Serving CRL from {} past its next update", distributionPoint);
+            return crl;
+        }
+
+        synchronized (entry) {
+            // Another caller may have downloaded it while this one waited
+            if (entry.crl != null && entry.crl != crl && System.currentTimeMillis() < entry.expires + graceMillis) return entry.crl;
+            return fetch(distributionPoint, entry);
+        }
+    }
+
+    /**
+     * Return the fetch count, failure count, latency and next update of each distribution point, keyed by URL.
+     */
+    public Map<String, Statistics> getStatistics() {
+        Map<String, Statistics> stats = new HashMap<String, Statistics>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            stats.put(e.getKey(), new Statistics(entry.fetches.get(), entry.failures.get(), entry.lastLatency, entry.totalLatency.get(),
+                    entry.lastError, entry.crl == null ? null : new Date(entry.expires)));
+        }
+        return stats;
+    }
+
+    /**
+     * Drop all cached CRLs and statistics.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Refresh the CRL of distributionPoint on the refresher unless a refresh is already pending or one failed within RETRY_MILLIS.
+     */
+    private void refreshLater(final String distributionPoint, final Entry entry) {
+        if (System.currentTimeMillis() < entry.retryAfter || !entry.refreshing.compareAndSet(false, true)) return;
+        try {
+            refresher.execute(new Runnable() {
+                public void run() {
+                    try {
+                        synchronized (entry) {
+                            fetch(distributionPoint, entry);
+                        }
+                    } catch (CertificateVerificationException e) {
+                        // Recorded by fetch; the last good CRL stays in use
+                        entry.retryAfter = System.currentTimeMillis() + RETRY_MILLIS;
+                    } finally {
+                        entry.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Download the CRL of distributionPoint into entry, recording the latency and any failure.
+     */
+    private X509CRL fetch(String distributionPoint, Entry entry) throws CertificateVerificationException {
+        long start = System.nanoTime();
+        try {
+            X509CRL crl = download(distributionPoint);
+            long latency = (System.nanoTime() - start) / 1000000L;
+            entry.fetches.incrementAndGet();
+            entry.lastLatency = latency;
+            entry.totalLatency.addAndGet(latency);
+            entry.expires = crl.getNextUpdate() != null ? crl.getNextUpdate().getTime() : System.currentTimeMillis() + maxAgeMillis;
+            entry.crl = crl;
+            LOG.debug("Fetched CRL from {} in " + latency + " ms", distributionPoint);
+            return crl;
+        } catch (Exception e) {
+            long latency = (System.nanoTime() - start) / 1000000L;
+            entry.failures.incrementAndGet();
+            entry.lastLatency = latency;
+            entry.lastError = e.getMessage();
+            LOG.warn("Could not fetch CRL from " + distributionPoint + " after " + latency + " ms: {}", e.getMessage());
+            if (e instanceof CertificateVerificationException) throw (CertificateVerificationException) e;
+            else throw new CertificateVerificationException("Can not download CRL from: " + distributionPoint, e);
+        }
+    }
+
+    /**
+     * Downloads CRL from given URL. Supports http, https, ftp, file and ldap based
+     * URLs.
+     */
+    private X509CRL download(String crlURL) throws IOException, CertificateException, CRLException,
+            CertificateVerificationException, NamingException {
+        if (crlURL.startsWith("http://") || crlURL.startsWith("https://") || crlURL.startsWith("ftp://") || crlURL.startsWith("file:")) {
+            return downloadFromURL(crlURL);
+        } else if (crlURL.startsWith("ldap://")) {
+            return downloadFromLDAP(crlURL);
+        } else {
+            throw new CertificateVerificationException("Can not download CRL from certificate " + "distribution point: "
+                    + crlURL);
+        }
+    }
+
+    /**
+     * Downloads a CRL from given LDAP url, e.g.
+     * ldap://ldap.infonotary.com/dc=identity-ca,dc=infonotary,dc=com
+     */
+    private X509CRL downloadFromLDAP(String ldapURL) throws CertificateException, NamingException, CRLException,
+            CertificateVerificationException {
+        Hashtable<String, String> env = new Hashtable<String, String>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, ldapURL);
+        env.put("com.sun.jndi.ldap.connect.timeout", String.valueOf(timeoutMillis));
+        env.put("com.sun.jndi.ldap.read.timeout", String.valueOf(timeoutMillis));
+
+        DirContext ctx = new InitialDirContext(env);
+        try {
+            Attributes avals = ctx.getAttributes("");
+            Attribute aval = avals.get("certificateRevocationList;binary");
+            byte[] val = aval == null ? null : (byte[]) aval.get();
+            if ((val == null) || (val.length == 0)) {
+                throw new CertificateVerificationException("Can not download CRL from: " + ldapURL);
+            } else {
+                InputStream inStream = new ByteArrayInputStream(val);
+                CertificateFactory cf = CertificateFactory.getInstance("X.509");
+                return (X509CRL) cf.generateCRL(inStream);
+            }
+        } finally {
+            ctx.close();
+        }
+    }
+
+    /**
+     * Downloads a CRL from given HTTP/HTTPS/FTP/file URL, e.g.
+     * http://crl.infonotary.com/crl/identity-ca.crl
+     */
+    private X509CRL downloadFromURL(String crlURL) throws IOException, CertificateException, CRLException {
+        URLConnection connection = new URL(crlURL).openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        InputStream crlStream = new BufferedInputStream(connection.getInputStream());
+        try {
+            CertificateFactory cf = CertificateFactory.getInstance("X.509");
+            return (X509CRL) cf.generateCRL(crlStream);
+        } finally {
+            crlStream.close();
+        }
+    }
+
+    private static Executor daemonRefresher() {
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "crl-refresh");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        return executor;
+    }
+
+    /**
+     * The cached CRL of a distribution point and the record of its downloads
+     */
+    private static class Entry {
+        volatile X509CRL crl = null;
+        volatile long expires = 0L;
+        volatile long retryAfter = 0L;
+        volatile long lastLatency = 0L;
+        volatile String lastError = null;
+        final AtomicLong fetches = new AtomicLong(0L);
+        final AtomicLong failures = new AtomicLong(0L);
+        final AtomicLong totalLatency = new AtomicLong(0L);
+        final AtomicBoolean refreshing = new AtomicBoolean(false);
+    }
+
+    /**
+     * Represents the download history of one distribution point
+     */
+    public static class Statistics {
+        public final long fetches;
+        public final long failures;
+        public final long lastLatencyMillis;
+        public final long totalLatencyMillis;
+        public final String lastError;
+        public final Date nextUpdate;
+
+        public Statistics(long fetches, long failures, long lastLatencyMillis, long totalLatencyMillis, String lastError, Date nextUpdate) {
+            this.fetches = fetches;
+            this.failures = failures;
+            this.lastLatencyMillis = lastLatencyMillis;
+            this.totalLatencyMillis = totalLatencyMillis;
+            this.lastError = lastError;
+            this.nextUpdate = nextUpdate;
+        }
+    }
+}
@@ -1,49 +1,13 @@
 package com.ksmpartners.ernie.util;
 
-import org.bouncycastle.asn1.ASN1InputStream;
-import org.bouncycastle.asn1.DERIA5String;
-import org.bouncycastle.asn1.DERObject;
-import org.bouncycastle.asn1.DEROctetString;
-import org.bouncycastle.asn1.x509.*;
-
-import javax.naming.Context;
-import javax.naming.NamingException;
-import javax.naming.directory.Attribute;
-import javax.naming.directory.Attributes;
-import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.security.cert.*;
-import java.util.ArrayList;
-import java.util.Hashtable;
-import java.util.List;
-
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.security.cert.CRLException;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.List;
 
-import javax.naming.Context;
-import javax.naming.NamingException;
-import javax.naming.directory.Attribute;
-import javax.naming.directory.Attributes;
-import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
-
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.DERIA5String;
 import org.bouncycastle.asn1.DERObject;
@@ -59,7 +23,8 @@ import org.bouncycastle.asn1.x509.X509Extensions;
  * Class that verifies CRLs for given X509 certificate. Extracts the CRL
  * distribution points from the certificate (if available) and checks the
  * certificate revocation status against the CRLs coming from the distribution
- * points. Supports HTTP, HTTPS, FTP and LDAP based URLs.
+ * points. Supports HTTP, HTTPS, FTP, file and LDAP based URLs. CRLs are read
+ * through a CRLCache, so a distribution point is not contacted on every check.
  *
  * Found this on the net:
  * http://www.nakov.com/blog/2009/12/01/x509-certificate-validation-in-java-build-and-verify-chain-and-verify-clr-with-bouncy-castle/
@@ -68,10 +33,28 @@ import org.bouncycastle.asn1.x509.X509Extensions;
  */
 public class CRLVerifier {
 
+    // CRLs downloaded from distribution points, shared by all verifications
+    private static volatile CRLCache cache = new CRLCache();
+
+    /**
+     * Return the cache from which CRLs are read.
+     */
+    public static CRLCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Replace the cache from which CRLs are read, for example with one configured with other timeouts.
+     */
+    public static void setCache(CRLCache crlCache) {
+        if (crlCache == null) throw new IllegalArgumentException("CRL cache can not be null");
+        cache = crlCache;
+    }
+
     /**
      * Extracts the CRL distribution points from the certificate (if available)
      * and checks the certificate revocation status against the CRLs coming from
-     * the distribution points. Supports HTTP, HTTPS, FTP and LDAP based URLs.
+     * the distribution points, which are read through the cache.
      *
      * @param cert
      *            the certificate to be checked for revocation
@@ -82,7 +65,7 @@ public class CRLVerifier {
         try {
             List<String> crlDistPoints = getCrlDistributionPoints(cert);
             for (String crlDP : crlDistPoints) {
-                X509CRL crl = downloadCRL(crlDP);
+                X509CRL crl = cache.getCRL(crlDP);
                 if (crl.isRevoked(cert)) {
                     throw new CertificateVerificationException("The certificate is revoked by CRL: " + crlDP);
                 }
@@ -92,70 +75,11 @@ public class CRLVerifier {
                 throw (CertificateVerificationException) ex;
             } else {
                 throw new CertificateVerificationException("Can not verify CRL for certificate: "
-                        + cert.getSubjectX500Principal());
+                        + cert.getSubjectX500Principal(), ex);
             }
         }
     }
 
-    /**
-     * Downloads CRL from given URL. Supports http, https, ftp and ldap based
-     * URLs.
-     */
-    private static X509CRL downloadCRL(String crlURL) throws IOException, CertificateException, CRLException,
-            CertificateVerificationException, NamingException {
-        if (crlURL.startsWith("http://") || crlURL.startsWith("https://") || crlURL.startsWith("ftp://")) {
-            X509CRL crl = downloadCRLFromWeb(crlURL);
-            return crl;
-        } else if (crlURL.startsWith("ldap://")) {
-            X509CRL crl = downloadCRLFromLDAP(crlURL);
-            return crl;
-        } else {
-            throw new CertificateVerificationException("Can not download CRL from certificate " + "distribution point: "
-                    + crlURL);
-        }
-    }
-
-    /**
-     * Downloads a CRL from given LDAP url, e.g.
-     * ldap://ldap.infonotary.com/dc=identity-ca,dc=infonotary,dc=com
-     */
-    private static X509CRL downloadCRLFromLDAP(String ldapURL) throws CertificateException, NamingException, CRLException,
-            CertificateVerificationException {
-        Hashtable<String, String> env = new Hashtable<String, String>();
-        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
-        env.put(Context.PROVIDER_URL, ldapURL);
-
-        DirContext ctx = new InitialDirContext(env);
-        Attributes avals = ctx.getAttributes("");
-        Attribute aval = avals.get("certificateRevocationList;binary");
-        byte[] val = (byte[]) aval.get();
-        if ((val == null) || (val.length == 0)) {
-            throw new CertificateVerificationException("Can not download CRL from: " + ldapURL);
-        } else {
-            InputStream inStream = new ByteArrayInputStream(val);
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
-            X509CRL crl = (X509CRL) cf.generateCRL(inStream);
-            return crl;
-        }
-    }
-
-    /**
-     * Downloads a CRL from given HTTP/HTTPS/FTP URL, e.g.
-     * http://crl.infonotary.com/crl/identity-ca.crl
-     */
-    private static X509CRL downloadCRLFromWeb(String crlURL) throws MalformedURLException, IOException,
-            CertificateException, CRLException {
-        URL url = new URL(crlURL);
-        InputStream crlStream = url.openStream();
-        try {
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
-            X509CRL crl = (X509CRL) cf.generateCRL(crlStream);
-            return crl;
-        } finally {
-            crlStream.close();
-        }
-    }
-
     /**
      * Extracts all CRL distribution point URLs from the
      * "CRL Distribution Point" extension in a X.509 certificate. If CRL
@@ -118,6 +118,9 @@ public class SAMLProcessor {
     // Should we  check certs against CRL
     private boolean CRLCheckEnabled = true;
 
+    // Parser pool shared by all processors, built with the schema on first use. BasicParserPool is thread safe
+    private static BasicParserPool parserPool;
+
     static {
         // initialize the opensaml library once
         try {
@@ -148,19 +151,8 @@ public class SAMLProcessor {
         // Null check
         if (samlData == null) throw new SAMLParseException(READER_CAN_NOT_BE_NULL);
 
-        // Load the schema
-        Schema schema;
-        try {
-            schema = SAMLSchemaBuilder.getSAML11Schema();
-        } catch (SAXException e) {
-            throw new SAMLParseException(e);
-        }
-
         // get parser pool manager
-        BasicParserPool parserPoolManager = new BasicParserPool();
-        parserPoolManager.setNamespaceAware(true);
-        parserPoolManager.setIgnoreElementContentWhitespace(true);
-        parserPoolManager.setSchema(schema);
+        BasicParserPool parserPoolManager = getParserPool();
 
         // parse xml file
         Document document;
@@ -173,6 +165,30 @@ public class SAMLProcessor {
         }
     }
 
+    /**
+     * Return the parser pool shared by all processors, loading the schema and building the pool on first use
+     *
+     * @throws SAMLParseException if the schema can not be loaded
+     */
+    private static synchronized BasicParserPool getParserPool() throws SAMLParseException {
+        if (parserPool == null) {
+            // Load the schema
+            Schema schema;
+            try {
+                schema = SAMLSchemaBuilder.getSAML11Schema();
+            } catch (SAXException e) {
+                throw new SAMLParseException(e);
+            }
+
+            BasicParserPool pool = new BasicParserPool();
+            pool.setNamespaceAware(true);
+            pool.setIgnoreElementContentWhitespace(true);
+            pool.setSchema(schema);
+            parserPool = pool;
+        }
+        return parserPool;
+    }
+
     /**
      * Validate a SAML Response Assertion for validity against x509
      *
@@ -325,11 +341,29 @@ public class SAMLProcessor {
      * @param keystoreLoc File path to keystore
      */
     public void setKeystoreLocation(String keystoreLoc) {
+        setKeyStore(loadKeyStore(keystoreLoc));
+    }
+
+    /**
+     * Load the keystore at the given location, closing the file once it has been read. The result can be shared by processors
+     * through setKeyStore.
+     *
+     * @param keystoreLoc File path to keystore
+     * @throws IllegalArgumentException if keystoreLoc is null or does not hold a readable keystore
+     */
+    public static KeyStore loadKeyStore(String keystoreLoc) {
         if (keystoreLoc == null)
             throw new IllegalArgumentException(KEYSTORE_LOCATION_CAN_NOT_BE_NULL);
         try {
-            this.keyStoreLocation = new FileInputStream(keystoreLoc);
-        } catch (FileNotFoundException e) {
+            InputStream in = new FileInputStream(keystoreLoc);
+            try {
+                KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+                keyStore.load(in, null);
+                return keyStore;
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
             throw new IllegalArgumentException(e);
         }
     }
@@ -423,6 +457,18 @@ public class SAMLProcessor {
         attributes = roles;
     }
 
+    /**
+     * Return the NotOnOrAfter time of the parsed assertion, after which it is no longer valid, or null if it has none
+     */
+    public DateTime getNotOnOrAfter() {
+
+        if (assertion == null)
+            throw new IllegalStateException(MUST_CALL_PARSE_FIRST);
+
+        Conditions conditions = assertion.getConditions();
+        return conditions == null ? null : conditions.getNotOnOrAfter();
+    }
+
     /**
      * Return the attribute map
      *
@@ -0,0 +1,98 @@
+package com.ksmpartners.ernie.util;
+
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * Test class for ActionMetrics
+ */
+public class ActionMetricsTest {
+
+    private static final long MILLI = 1000000L;
+
+    @Test
+    public void bucketsCoverAllLatencies() {
+        for (long micros = 0L; micros < 100000L; micros++) {
+            int bucket = ActionMetrics.bucket(micros);
+            assertTrue(micros <= ActionMetrics.upperBound(bucket));
+            if (bucket > 0) assertTrue(micros > ActionMetrics.upperBound(bucket - 1));
+        }
+        assertEquals(ActionMetrics.bucket(Long.MAX_VALUE), ActionMetrics.bucket(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    public void countsCallsAndErrors() {
+        ActionMetrics metrics = new ActionMetrics("test", null);
+        long now = System.nanoTime();
+        metrics.record("get", now, null);
+        metrics.record("get", now, "TimeoutException");
+        metrics.record("get", now, "TimeoutException");
+        metrics.record("put", now, "NotFoundException");
+
+        ActionMetrics.Statistics get = metrics.getStatistics().get("get");
+        assertEquals(3L, get.count);
+        assertEquals(2L, get.errorCount);
+        assertEquals(Long.valueOf(2L), get.errors.get("TimeoutException"));
+        assertEquals(1L, metrics.getStatistics().get("put").count);
+        assertNull(metrics.getStatistics().get("delete"));
+    }
+
+    @Test
+    public void estimatesPercentiles() {
+        ActionMetrics metrics = new ActionMetrics("test", null);
+        for (int i = 1; i <= 100; i++) {
+            metrics.record("get", System.nanoTime() - i * MILLI, null);
+        }
+
+        ActionMetrics.Statistics stats = metrics.getStatistics().get("get");
+        assertEquals(100L, stats.count);
+        assertTrue(stats.maxMillis >= 100.0);
+        assertTrue(stats.p50Millis >= 50.0 && stats.p50Millis <= 50.0 * 1.25 + 1.0);
+        assertTrue(stats.p95Millis >= 95.0 && stats.p95Millis <= stats.maxMillis);
+        assertTrue(stats.p99Millis >= stats.p95Millis && stats.p99Millis <= stats.maxMillis);
+        assertTrue(stats.meanMillis >= 50.5);
+    }
+
+    @Test
+    public void registersMXBeans() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ActionMetrics metrics = new ActionMetrics("test", server);
+        metrics.record("get", System.nanoTime(), "TimeoutException");
+
+        ObjectName name = new ObjectName(ActionMetrics.JMX_DOMAIN + ":type=\"test\",name=\"get\"");
+        assertTrue(server.isRegistered(name));
+        assertEquals(1L, server.getAttribute(name, "Count"));
+        assertEquals(1L, server.getAttribute(name, "ErrorCount"));
+
+        metrics.unregister();
+        assertFalse(server.isRegistered(name));
+        assertTrue(metrics.getStatistics().isEmpty());
+    }
+
+    @Test
+    public void instancesOfOneTypeRegisterApart() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ActionMetrics first = new ActionMetrics("test", server);
+        ActionMetrics second = new ActionMetrics("test", server);
+        first.record("get", System.nanoTime(), null);
+        second.record("get", System.nanoTime(), null);
+        second.record("get", System.nanoTime(), null);
+
+        ObjectName pattern = new ObjectName(ActionMetrics.JMX_DOMAIN + ":type=\"test\",name=\"get\",*");
+        assertEquals(2, server.queryNames(pattern, null).size());
+        for (ObjectName name : server.queryNames(pattern, null)) {
+            assertEquals(name.getKeyProperty("instance") == null ? 1L : 2L, server.getAttribute(name, "Count"));
+        }
+
+        second.unregister();
+        assertEquals(1, server.queryNames(pattern, null).size());
+        first.unregister();
+        assertTrue(server.queryNames(pattern, null).isEmpty());
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.ksmpartners.ernie.util;
+
+import org.bouncycastle.x509.X509V2CRLGenerator;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509CRL;
+import java.util.Date;
+import java.util.concurrent.Executor;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * Test class for CRLCache, serving CRLs from file URLs
+ */
+public class CRLCacheTest {
+
+    private static final long HOUR = 3600000L;
+
+    private KeyPair keys;
+
+    // Runs background refreshes on the calling thread so that their outcome can be checked at once
+    private final Executor callerThread = new Executor() {
+        public void execute(Runnable r) {
+            r.run();
+        }
+    };
+
+    @BeforeClass
+    public void setup() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(1024);
+        keys = gen.generateKeyPair();
+    }
+
+    @Test
+    public void cachesUntilNextUpdate() throws Exception {
+        File crlFile = writeCRL(new Date(System.currentTimeMillis() + HOUR));
+        String url = crlFile.toURI().toURL().toString();
+        CRLCache cache = new CRLCache(1000, 0L, HOUR, 0L, callerThread);
+
+        X509CRL crl = cache.getCRL(url);
+        assertTrue(crlFile.delete());
+        assertSame(crl, cache.getCRL(url));
+
+        CRLCache.Statistics stats = cache.getStatistics().get(url);
+        assertEquals(1L, stats.fetches);
+        assertEquals(0L, stats.failures);
+        assertEquals(crl.getNextUpdate(), stats.nextUpdate);
+    }
+
+    @Test
+    public void servesLastGoodCRLWithinGrace() throws Exception {
+        File crlFile = writeCRL(new Date(System.currentTimeMillis() - 60000L));
+        String url = crlFile.toURI().toURL().toString();
+        CRLCache cache = new CRLCache(1000, HOUR, HOUR, 0L, callerThread);
+
+        X509CRL crl = cache.getCRL(url);
+        assertTrue(crlFile.delete());
+        assertSame(crl, cache.getCRL(url));
+        assertSame(crl, cache.getCRL(url));
+
+        CRLCache.Statistics stats = cache.getStatistics().get(url);
+        assertEquals(1L, stats.fetches);
+        assertEquals(1L, stats.failures);
+        assertNotNull(stats.lastError);
+    }
+
+    @Test
+    public void refreshesBeyondGrace() throws Exception {
+        File crlFile = writeCRL(new Date(System.currentTimeMillis() - 60000L));
+        String url = crlFile.toURI().toURL().toString();
+        CRLCache cache = new CRLCache(1000, 0L, HOUR, 0L, callerThread);
+
+        cache.getCRL(url);
+        assertTrue(crlFile.delete());
+        try {
+            cache.getCRL(url);
+            fail("Expected CertificateVerificationException");
+        } catch (CertificateVerificationException e) {
+            assertEquals(1L, cache.getStatistics().get(url).failures);
+        }
+    }
+
+    @Test(expectedExceptions = CertificateVerificationException.class)
+    public void rejectsUnsupportedDistributionPoint() throws Exception {
+        new CRLCache(1000, 0L, HOUR, 0L, callerThread).getCRL("gopher://crl.example.com/ca.crl");
+    }
+
+    private File writeCRL(Date nextUpdate) throws Exception {
+        X509V2CRLGenerator gen = new X509V2CRLGenerator();
+        gen.setIssuerDN(new X500Principal("CN=Ernie Test CA"));
+        gen.setThisUpdate(new Date(System.currentTimeMillis() - 2 * HOUR));
+        gen.setNextUpdate(nextUpdate);
+        gen.setSignatureAlgorithm("SHA256withRSA");
+        X509CRL crl = gen.generate(keys.getPrivate());
+
+        File file = File.createTempFile("ernie", ".crl");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(crl.getEncoded());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}